@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import com.android.car.messenger.impl.datamodels.util.AvatarLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the group avatar layout computed for each group conversation of a list fetch, see
+ * AvatarUtil#generateDestRectArray.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AvatarLayoutBenchmark {
+    private static final int AVATAR_SIZE_PX = 112;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int mConversationCount;
+
+    @Param({"2", "3", "4"})
+    public int mGroupSize;
+
+    @Benchmark
+    public void generateDestRects(Blackhole blackhole) {
+        for (int i = 0; i < mConversationCount; i++) {
+            blackhole.consume(
+                    AvatarLayout.generateDestRects(
+                            AVATAR_SIZE_PX,
+                            AVATAR_SIZE_PX,
+                            /* cropToCircle= */ true,
+                            mGroupSize));
+        }
+    }
+}
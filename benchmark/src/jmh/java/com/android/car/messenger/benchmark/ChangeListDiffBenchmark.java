@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import com.android.car.messenger.core.util.CollectionUtil;
+import com.android.car.messenger.impl.datamodels.util.LongHashSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measures the added and removed conversation diff computed on every provider change, see
+ * ConversationsPerDeviceFetchManager#postChangeIfFound, on string ids as before and on the thread
+ * ids as primitive longs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChangeListDiffBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int mConversationCount;
+
+    private List<String> mPreviousIds;
+    private List<String> mCurrentIds;
+    private LongHashSet mPreviousThreadIds;
+    private LongHashSet mCurrentThreadIds;
+
+    @Setup
+    public void setUp() {
+        mPreviousIds = SyntheticData.createConversationIds(mConversationCount);
+        mCurrentIds = SyntheticData.createChangedConversationIds(mPreviousIds);
+        mPreviousThreadIds = toThreadIds(mPreviousIds);
+        mCurrentThreadIds = toThreadIds(mCurrentIds);
+    }
+
+    @Benchmark
+    public void getAddedAndRemoved(Blackhole blackhole) {
+        blackhole.consume(
+                CollectionUtil.getDifference(mCurrentIds, mPreviousIds, Function.identity()));
+        blackhole.consume(
+                CollectionUtil.getDifference(mPreviousIds, mCurrentIds, Function.identity()));
+    }
+
+    @Benchmark
+    public void getAddedAndRemovedThreadIds(Blackhole blackhole) {
+        blackhole.consume(mCurrentThreadIds.difference(mPreviousThreadIds));
+        blackhole.consume(mPreviousThreadIds.difference(mCurrentThreadIds));
+    }
+
+    private static LongHashSet toThreadIds(List<String> ids) {
+        LongHashSet threadIds = new LongHashSet(ids.size());
+        for (String id : ids) {
+            threadIds.add(Long.parseLong(id));
+        }
+        return threadIds;
+    }
+}
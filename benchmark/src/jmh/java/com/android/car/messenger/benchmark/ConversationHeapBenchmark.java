@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import com.android.car.messenger.benchmark.SyntheticData.FakeMessage;
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+import com.android.car.messenger.impl.datamodels.util.ParticipantTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap held by a loaded conversation list, as the conversation objects built per
+ * message with a new sender each, an extras map and the avatar pixels, against the compact form
+ * kept by the lists since, see CompactConversation.
+ *
+ * <p>Each operation builds and returns the whole list, and message texts are shared by both, so
+ * the bytes allocated per operation are the size of the list's structure. Run with the gc
+ * profiler and compare gc.alloc.rate.norm:
+ *
+ * <pre>
+ *   ./gradlew :benchmark:jmh -PjmhIncludes=ConversationHeap -PjmhProfilers=gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConversationHeapBenchmark {
+    /** Distinct contacts the conversations are with, so senders repeat across threads */
+    private static final int CONTACT_COUNT = 200;
+    /** Pixels of a conversation avatar bitmap, as drawn by AvatarUtil */
+    private static final int AVATAR_PIXELS = 112 * 112;
+
+    @Param({"1000"})
+    public int mThreadCount;
+
+    private List<List<FakeMessage>> mMessageLists;
+    private List<String> mTexts;
+    private String[] mNames;
+    private String[] mUris;
+    private ParticipantTable mParticipants;
+
+    @Setup
+    public void setUp() {
+        mMessageLists = SyntheticData.createMessageLists(mThreadCount);
+        mTexts = new ArrayList<>(SyntheticData.MESSAGES_PER_CONVERSATION);
+        for (int i = 0; i < SyntheticData.MESSAGES_PER_CONVERSATION; i++) {
+            mTexts.add("Message " + i);
+        }
+        mNames = new String[CONTACT_COUNT + 1];
+        mUris = new String[CONTACT_COUNT + 1];
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            mNames[i] = "Contact " + i;
+            mUris[i] = "+1555" + (1_000_000 + i);
+        }
+        mNames[CONTACT_COUNT] = "Driver";
+        // The table outlives the lists, so its participants are known after the first load
+        mParticipants = new ParticipantTable();
+        compactConversations();
+    }
+
+    @Benchmark
+    public List<HeavyConversation> heavyConversations() {
+        List<HeavyConversation> conversations = new ArrayList<>(mThreadCount);
+        for (int i = 0; i < mThreadCount; i++) {
+            int contact = i % CONTACT_COUNT;
+            List<FakeMessage> fakeMessages = mMessageLists.get(i);
+            List<HeavyMessage> messages = new ArrayList<>(fakeMessages.size());
+            for (int j = fakeMessages.size() - 1; j >= 0; j--) {
+                FakeMessage fakeMessage = fakeMessages.get(j);
+                int sender = fakeMessage.mSent ? CONTACT_COUNT : contact;
+                // A sender is built for every message read from the cursor
+                HeavyPerson person =
+                        new HeavyPerson(copy(mNames[sender]), copy(mUris[sender]));
+                messages.add(
+                        new HeavyMessage(
+                                mTexts.get(j), fakeMessage.mTimestamp, person, 1, status(j)));
+            }
+            List<HeavyPerson> participants = new ArrayList<>(1);
+            participants.add(new HeavyPerson(copy(mNames[contact]), copy(mUris[contact])));
+            Map<String, Object> extras = new HashMap<>();
+            extras.put("last_reply_timestamp", fakeMessages.get(0).mTimestamp);
+            extras.put("last_reply_text", mTexts.get(0));
+            conversations.add(
+                    new HeavyConversation(
+                            Integer.toString(i + 1),
+                            mNames[contact],
+                            extras,
+                            participants,
+                            messages,
+                            new int[AVATAR_PIXELS]));
+        }
+        return conversations;
+    }
+
+    @Benchmark
+    public List<CompactConversation> compactConversations() {
+        List<CompactConversation> conversations = new ArrayList<>(mThreadCount);
+        for (int i = 0; i < mThreadCount; i++) {
+            int contact = i % CONTACT_COUNT;
+            List<FakeMessage> fakeMessages = mMessageLists.get(i);
+            CompactConversation.Builder builder =
+                    new CompactConversation.Builder(Integer.toString(i + 1))
+                            .setTitle(mNames[contact])
+                            .setAvatarKey(mUris[contact])
+                            .setReply(fakeMessages.get(0).mTimestamp, mTexts.get(0))
+                            .addParticipant(mParticipants.intern(mNames[contact], mUris[contact]));
+            for (int j = fakeMessages.size() - 1; j >= 0; j--) {
+                FakeMessage fakeMessage = fakeMessages.get(j);
+                int sender = fakeMessage.mSent ? CONTACT_COUNT : contact;
+                builder.addMessage(
+                        mTexts.get(j),
+                        fakeMessage.mTimestamp,
+                        mParticipants.intern(mNames[sender], mUris[sender]),
+                        1,
+                        status(j));
+            }
+            conversations.add(builder.build());
+        }
+        return conversations;
+    }
+
+    private static int status(int position) {
+        return position == 0 ? 2 : 1;
+    }
+
+    private static String copy(String string) {
+        return string == null ? null : new String(string);
+    }
+
+    /** A participant as androidx Person, without its icon and key */
+    static final class HeavyPerson {
+        final String mName;
+        final String mUri;
+
+        HeavyPerson(String name, String uri) {
+            mName = name;
+            mUri = uri;
+        }
+    }
+
+    /** A message as Conversation.Message */
+    static final class HeavyMessage {
+        final String mText;
+        final long mTimestamp;
+        final HeavyPerson mSender;
+        final int mType;
+        final int mStatus;
+
+        HeavyMessage(String text, long timestamp, HeavyPerson sender, int type, int status) {
+            mText = text;
+            mTimestamp = timestamp;
+            mSender = sender;
+            mType = type;
+            mStatus = status;
+        }
+    }
+
+    /** A conversation as Conversation, with its extras bundle as a map and its icon's pixels */
+    static final class HeavyConversation {
+        final String mId;
+        final String mTitle;
+        final Map<String, Object> mExtras;
+        final List<HeavyPerson> mParticipants;
+        final List<HeavyMessage> mMessages;
+        final int[] mAvatarPixels;
+
+        HeavyConversation(
+                String id,
+                String title,
+                Map<String, Object> extras,
+                List<HeavyPerson> participants,
+                List<HeavyMessage> messages,
+                int[] avatarPixels) {
+            mId = id;
+            mTitle = title;
+            mExtras = extras;
+            mParticipants = participants;
+            mMessages = messages;
+            mAvatarPixels = avatarPixels;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import static java.util.Comparator.comparingLong;
+
+import com.android.car.messenger.benchmark.SyntheticData.FakeConversation;
+import com.android.car.messenger.core.util.CollectionUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sorting the conversation list by conversation timestamp, as done after each list
+ * fetch and mute change, against a comparator that computes the timestamp on every comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversationSortBenchmark {
+    private static final Comparator<FakeConversation> COMPARATOR =
+            comparingLong(FakeConversation::getTimestamp).reversed();
+
+    @Param({"10", "100", "1000", "10000"})
+    public int mConversationCount;
+
+    private List<FakeConversation> mConversations;
+
+    @Setup
+    public void setUp() {
+        mConversations = SyntheticData.createConversations(mConversationCount);
+    }
+
+    @Benchmark
+    public List<FakeConversation> sortDescending() {
+        List<FakeConversation> conversations = new ArrayList<>(mConversations);
+        CollectionUtil.sortDescending(conversations, FakeConversation::getTimestamp);
+        return conversations;
+    }
+
+    @Benchmark
+    public List<FakeConversation> sortWithComparator() {
+        List<FakeConversation> conversations = new ArrayList<>(mConversations);
+        conversations.sort(COMPARATOR);
+        return conversations;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import com.android.car.messenger.benchmark.SyntheticData.FakeMessage;
+import com.android.car.messenger.core.util.MessageSelection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the unread and read message selection run for each conversation of a list fetch, see
+ * MessageUtils#getUnreadMessages and MessageUtils#getReadMessagesAndReplyTimestamp.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageSelectionBenchmark {
+    private static final MessageSelection.MessageFields<FakeMessage> FIELDS =
+            new MessageSelection.MessageFields<FakeMessage>() {
+                @Override
+                public long getTimestamp(FakeMessage message) {
+                    return message.mTimestamp;
+                }
+
+                @Override
+                public boolean isUnread(FakeMessage message) {
+                    return message.mUnread;
+                }
+
+                @Override
+                public boolean isRead(FakeMessage message) {
+                    return !message.mUnread;
+                }
+
+                @Override
+                public boolean isSent(FakeMessage message) {
+                    return message.mSent;
+                }
+            };
+
+    @Param({"10", "100", "1000", "10000"})
+    public int mConversationCount;
+
+    private List<List<FakeMessage>> mMessageLists;
+
+    @Setup
+    public void setUp() {
+        mMessageLists = SyntheticData.createMessageLists(mConversationCount);
+    }
+
+    @Benchmark
+    public void getUnreadMessages(Blackhole blackhole) {
+        for (List<FakeMessage> messages : mMessageLists) {
+            // The selection sorts the unread messages in place, so work on a fresh list as the
+            // fetch does.
+            blackhole.consume(
+                    MessageSelection.getUnreadMessages(new ArrayList<>(messages), FIELDS));
+        }
+    }
+
+    @Benchmark
+    public void getReadMessagesAndLastReply(Blackhole blackhole) {
+        for (List<FakeMessage> messages : mMessageLists) {
+            blackhole.consume(MessageSelection.getReadMessagesAndLastReply(messages, FIELDS));
+        }
+    }
+}
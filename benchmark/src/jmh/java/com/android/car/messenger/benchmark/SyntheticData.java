@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Generates deterministic synthetic inputs shaped like the telephony data of a phone. */
+final class SyntheticData {
+    /** Messages fetched per conversation, as in ConversationFetchUtil */
+    static final int MESSAGES_PER_CONVERSATION = 10;
+
+    private static final long SEED = 20210901L;
+    private static final long START_TIME_MILLIS = 1_600_000_000_000L;
+    private static final long MAX_GAP_MILLIS = 60 * 60 * 1000L;
+    private static final long ONE_YEAR_MILLIS = 365 * 24 * 60 * 60 * 1000L;
+
+    private SyntheticData() {}
+
+    /** A message with the fields read by the message selection */
+    static final class FakeMessage {
+        final long mTimestamp;
+        final boolean mUnread;
+        final boolean mSent;
+
+        FakeMessage(long timestamp, boolean unread, boolean sent) {
+            mTimestamp = timestamp;
+            mUnread = unread;
+            mSent = sent;
+        }
+    }
+
+    /** A conversation with the fields read to compute its timestamp */
+    static final class FakeConversation {
+        final long mReplyTimestamp;
+        final List<FakeMessage> mMessages;
+
+        FakeConversation(long replyTimestamp, List<FakeMessage> messages) {
+            mReplyTimestamp = replyTimestamp;
+            mMessages = messages;
+        }
+
+        /** Mirrors ConversationUtil#getConversationTimestamp: scans for the last incoming one */
+        long getTimestamp() {
+            long lastIncoming = 0L;
+            for (FakeMessage message : mMessages) {
+                if (!message.mSent && message.mTimestamp > lastIncoming) {
+                    lastIncoming = message.mTimestamp;
+                }
+            }
+            return Math.max(mReplyTimestamp, lastIncoming);
+        }
+    }
+
+    /**
+     * Returns the messages of each conversation in descending order: a few unread incoming
+     * messages, then a mix of read incoming and sent messages.
+     */
+    static List<List<FakeMessage>> createMessageLists(int conversationCount) {
+        Random random = new Random(SEED);
+        List<List<FakeMessage>> conversations = new ArrayList<>(conversationCount);
+        for (int i = 0; i < conversationCount; i++) {
+            conversations.add(createMessages(random));
+        }
+        return conversations;
+    }
+
+    /** Returns conversations in random order */
+    static List<FakeConversation> createConversations(int conversationCount) {
+        Random random = new Random(SEED);
+        List<FakeConversation> conversations = new ArrayList<>(conversationCount);
+        for (int i = 0; i < conversationCount; i++) {
+            List<FakeMessage> messages = createMessages(random);
+            long replyTimestamp = 0L;
+            for (FakeMessage message : messages) {
+                if (message.mSent) {
+                    replyTimestamp = Math.max(replyTimestamp, message.mTimestamp);
+                }
+            }
+            conversations.add(new FakeConversation(replyTimestamp, messages));
+        }
+        Collections.shuffle(conversations, random);
+        return conversations;
+    }
+
+    /** Returns the ids of the conversations of an account, as strings like thread ids */
+    static List<String> createConversationIds(int conversationCount) {
+        List<String> ids = new ArrayList<>(conversationCount);
+        for (int i = 0; i < conversationCount; i++) {
+            ids.add(Integer.toString(i + 1));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the ids after a change: about 1% of the conversations removed and as many added,
+     * at least one of each.
+     */
+    static List<String> createChangedConversationIds(List<String> ids) {
+        int churn = Math.max(1, ids.size() / 100);
+        List<String> changed = new ArrayList<>(ids.subList(churn, ids.size()));
+        for (int i = 0; i < churn; i++) {
+            changed.add(Integer.toString(ids.size() + i + 1));
+        }
+        return changed;
+    }
+
+    private static List<FakeMessage> createMessages(Random random) {
+        List<FakeMessage> messages = new ArrayList<>(MESSAGES_PER_CONVERSATION);
+        long timestamp = START_TIME_MILLIS + (long) (random.nextDouble() * ONE_YEAR_MILLIS);
+        int unreadCount = random.nextInt(4);
+        for (int i = 0; i < MESSAGES_PER_CONVERSATION; i++) {
+            boolean unread = i < unreadCount;
+            boolean sent = !unread && random.nextInt(3) == 0;
+            messages.add(new FakeMessage(timestamp, unread, sent));
+            timestamp -= 1 + (long) (random.nextDouble() * MAX_GAP_MILLIS);
+        }
+        return messages;
+    }
+}
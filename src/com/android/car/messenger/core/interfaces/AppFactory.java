@@ -38,7 +38,7 @@ public abstract class AppFactory {
     protected static boolean sInitialized;
 
     // Context is required to initialize
-    @Nullable protected CarStateListener mCarStateListener;
+    @Nullable protected volatile CarStateListener mCarStateListener;
 
     /** Returns the Factory instance for the Application. */
     @NonNull
@@ -59,12 +59,23 @@ public abstract class AppFactory {
         sInstance = factory;
     }
 
-    /** Gets the Car State Listener */
+    /**
+     * Gets the Car State Listener.
+     *
+     * <p>Connecting to the car service is done on first use, which may be on a background thread
+     * warming up the app, so creation is synchronized.
+     */
     public final CarStateListener getCarStateListener() {
-        if (mCarStateListener == null) {
-            mCarStateListener = new CarStateListener(AppFactory.get().getContext());
+        CarStateListener carStateListener = mCarStateListener;
+        if (carStateListener == null) {
+            synchronized (this) {
+                if (mCarStateListener == null) {
+                    mCarStateListener = new CarStateListener(AppFactory.get().getContext());
+                }
+                carStateListener = mCarStateListener;
+            }
         }
-        return mCarStateListener;
+        return carStateListener;
     }
 
     /** Returns context most appropriate for UI context-requiring tasks. */
@@ -20,9 +20,12 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 
 import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.models.MessageHistoryPage;
+import com.android.car.messenger.core.models.SearchResults;
 import com.android.car.messenger.core.models.UserAccount;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * This interface allows the UI to communicate with the host app. The methods provides the data and
@@ -55,6 +58,36 @@ public interface DataModel {
     @NonNull
     LiveData<Collection<Conversation>> getConversations(@NonNull UserAccount userAccount);
 
+    /**
+     * Loads the next page of conversations for the given account, if any. The conversations
+     * returned by {@link #getConversations} are posted again with the page appended.
+     *
+     * @param userAccount The account whose conversation list needs more items
+     */
+    void loadMoreConversations(@NonNull UserAccount userAccount);
+
+    /**
+     * Get a page of the messages of a conversation before a page key, newest first.
+     *
+     * <p>Pass {@link MessageHistoryPage#NEWEST} for the newest page, then the {@link
+     * MessageHistoryPage#getNextPageKey()} of each page to go further back.
+     *
+     * @param conversationId The unique id for the conversation
+     * @param before Only messages before this key are returned
+     */
+    @NonNull
+    LiveData<MessageHistoryPage> getMessageHistory(
+            @NonNull String conversationId, @NonNull MessageHistoryPage.PageKey before);
+
+    /**
+     * Searches the text of the messages of the current accounts. Messages are indexed in the
+     * background, so the newest messages may be missing from the results for a short while.
+     *
+     * @param query The words to search for, the last one matching as a prefix
+     */
+    @NonNull
+    LiveData<SearchResults> searchMessages(@NonNull String query);
+
     /**
      * Callback is called when a conversation is removed from the telephony database.
      *
@@ -69,6 +102,9 @@ public interface DataModel {
      * {@link UserAccount#getConnectionTime}.
      *
      * <p>If no unread messages are found for the conversation id, the live data emits no data.
+     *
+     * <p>Each call returns a new subscription, delivered every conversation found after it is
+     * first observed, in order.
      */
     LiveData<Conversation> getUnreadMessages();
 
@@ -87,6 +123,17 @@ public interface DataModel {
      */
     void markAsRead(@NonNull String conversationId);
 
+    /**
+     * Called by UI to mark many conversations as read at once, such as for a mark all as read
+     * action. Only the unread messages are written, in a single batch.
+     *
+     * @param conversationIds The unique ids of the conversations
+     * @return the number of messages marked as read by conversation id, emitted once the batch is
+     *     applied. It is empty if the batch failed.
+     */
+    @NonNull
+    LiveData<Map<String, Integer>> markAsRead(@NonNull Collection<String> conversationIds);
+
     /**
      * Called by UI to reply to a conversation
      *
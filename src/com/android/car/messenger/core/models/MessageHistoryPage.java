@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.models;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.common.Conversation.Message;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A page of the message history of a conversation, newest first. The page before it is requested
+ * with {@link #getNextPageKey()}.
+ */
+public class MessageHistoryPage {
+    /** The key to request the newest page of a conversation */
+    @NonNull
+    public static final PageKey NEWEST =
+            new PageKey(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    @NonNull private final String mConversationId;
+    @NonNull private final List<Message> mMessages;
+    private final boolean mHasMore;
+    @NonNull private final PageKey mNextPageKey;
+
+    public MessageHistoryPage(
+            @NonNull String conversationId,
+            @NonNull List<Message> messages,
+            boolean hasMore,
+            @NonNull PageKey nextPageKey) {
+        mConversationId = conversationId;
+        mMessages = Collections.unmodifiableList(messages);
+        mHasMore = hasMore;
+        mNextPageKey = nextPageKey;
+    }
+
+    /** Returns the id of the conversation the messages belong to */
+    @NonNull
+    public String getConversationId() {
+        return mConversationId;
+    }
+
+    /** Returns the messages of the page, newest first */
+    @NonNull
+    public List<Message> getMessages() {
+        return mMessages;
+    }
+
+    /** Returns true if older messages may exist before this page */
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    /** Returns the key to pass to request the page before this one */
+    @NonNull
+    public PageKey getNextPageKey() {
+        return mNextPageKey;
+    }
+
+    /**
+     * Position in the message history of a conversation, before which a page starts.
+     *
+     * <p>SMS and MMS are stored apart, each with its own ids and MMS dates in seconds, so the key
+     * holds the date and id of the last message of each kind already paged. A message is before
+     * the key if it is older, or as old with a lower id, so messages sharing a date are neither
+     * skipped nor repeated.
+     */
+    public static final class PageKey {
+        private final long mSmsDate;
+        private final long mSmsId;
+        private final long mMmsDate;
+        private final long mMmsId;
+
+        /**
+         * @param smsDate the date in milliseconds of the last SMS paged
+         * @param smsId the id of the last SMS paged
+         * @param mmsDate the date in seconds of the last MMS paged
+         * @param mmsId the id of the last MMS paged
+         */
+        public PageKey(long smsDate, long smsId, long mmsDate, long mmsId) {
+            mSmsDate = smsDate;
+            mSmsId = smsId;
+            mMmsDate = mmsDate;
+            mMmsId = mmsId;
+        }
+
+        /** Returns the date in milliseconds of the last SMS paged */
+        public long getSmsDate() {
+            return mSmsDate;
+        }
+
+        /** Returns the id of the last SMS paged */
+        public long getSmsId() {
+            return mSmsId;
+        }
+
+        /** Returns the date in seconds of the last MMS paged */
+        public long getMmsDate() {
+            return mMmsDate;
+        }
+
+        /** Returns the id of the last MMS paged */
+        public long getMmsId() {
+            return mMmsId;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PageKey)) {
+                return false;
+            }
+            PageKey other = (PageKey) o;
+            return mSmsDate == other.mSmsDate
+                    && mSmsId == other.mSmsId
+                    && mMmsDate == other.mMmsDate
+                    && mMmsId == other.mMmsId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSmsDate, mSmsId, mMmsDate, mMmsId);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mSmsDate + "/" + mSmsId + "/" + mMmsDate + "/" + mMmsId;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.models;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a message search, best match first. Conversations are ranked by their number of
+ * matching messages, messages by how well their text matches.
+ */
+public class SearchResults {
+    @NonNull private final String mQuery;
+    @NonNull private final List<ConversationHit> mConversationHits;
+    @NonNull private final List<MessageHit> mMessageHits;
+
+    public SearchResults(
+            @NonNull String query,
+            @NonNull List<ConversationHit> conversationHits,
+            @NonNull List<MessageHit> messageHits) {
+        mQuery = query;
+        mConversationHits = Collections.unmodifiableList(conversationHits);
+        mMessageHits = Collections.unmodifiableList(messageHits);
+    }
+
+    /** Returns results with no hits for the query */
+    @NonNull
+    public static SearchResults empty(@NonNull String query) {
+        return new SearchResults(query, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /** Returns the query as entered by the user */
+    @NonNull
+    public String getQuery() {
+        return mQuery;
+    }
+
+    /** Returns the conversations with matching messages, best match first */
+    @NonNull
+    public List<ConversationHit> getConversationHits() {
+        return mConversationHits;
+    }
+
+    /** Returns the matching messages, best match first */
+    @NonNull
+    public List<MessageHit> getMessageHits() {
+        return mMessageHits;
+    }
+
+    /** A conversation with at least one matching message */
+    public static class ConversationHit {
+        @NonNull private final String mConversationId;
+        private final int mAccountId;
+        private final int mHitCount;
+        private final long mLatestTimestamp;
+
+        public ConversationHit(
+                @NonNull String conversationId, int accountId, int hitCount, long latestTimestamp) {
+            mConversationId = conversationId;
+            mAccountId = accountId;
+            mHitCount = hitCount;
+            mLatestTimestamp = latestTimestamp;
+        }
+
+        /** Returns the id of the conversation */
+        @NonNull
+        public String getConversationId() {
+            return mConversationId;
+        }
+
+        /** Returns the id of the account the conversation belongs to */
+        public int getAccountId() {
+            return mAccountId;
+        }
+
+        /** Returns the number of matching messages in the conversation */
+        public int getHitCount() {
+            return mHitCount;
+        }
+
+        /** Returns the timestamp in millisecond of the newest matching message */
+        public long getLatestTimestamp() {
+            return mLatestTimestamp;
+        }
+    }
+
+    /** A matching message */
+    public static class MessageHit {
+        @NonNull private final String mConversationId;
+        private final int mAccountId;
+        private final long mTimestamp;
+        @NonNull private final String mSnippet;
+
+        public MessageHit(
+                @NonNull String conversationId,
+                int accountId,
+                long timestamp,
+                @NonNull String snippet) {
+            mConversationId = conversationId;
+            mAccountId = accountId;
+            mTimestamp = timestamp;
+            mSnippet = snippet;
+        }
+
+        /** Returns the id of the conversation the message belongs to */
+        @NonNull
+        public String getConversationId() {
+            return mConversationId;
+        }
+
+        /** Returns the id of the account the message belongs to */
+        public int getAccountId() {
+            return mAccountId;
+        }
+
+        /** Returns the timestamp in millisecond of the message */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /** Returns the part of the message text around the match */
+        @NonNull
+        public String getSnippet() {
+            return mSnippet;
+        }
+    }
+}
@@ -42,8 +42,14 @@ import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.interfaces.DataModel;
 import com.android.car.messenger.core.shared.NotificationHandler;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.QueryRecorder;
+import com.android.car.messenger.core.util.ThreadUtil;
 import com.android.car.messenger.core.util.VoiceUtil;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.time.Duration;
 
 /** Service responsible for handling messaging events. */
@@ -156,6 +162,16 @@ public class MessengerService extends Service {
         L.d("onDestroy");
     }
 
+    @Override
+    protected void dump(
+            @NonNull FileDescriptor fd, @NonNull PrintWriter writer, @Nullable String[] args) {
+        writer.println("MessengerService");
+        Metrics.dump(writer);
+        QueryRecorder.dump(writer);
+        MainThreadGuard.dump(writer);
+        L.dumpRingLog(writer);
+    }
+
     @Override
     public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
         final int result = START_STICKY;
@@ -164,29 +180,31 @@ public class MessengerService extends Service {
             return result;
         }
 
+        // Voice actions reach the telephony provider and SmsManager, so they are handled off the
+        // main thread.
         final String action = intent.getAction();
         switch (action) {
             case ACTION_START:
                 // NO-OP
                 break;
             case ACTION_REPLY:
-                VoiceUtil.voiceReply(intent);
+                ThreadUtil.runOnBackground(() -> VoiceUtil.voiceReply(intent));
                 break;
             case ACTION_MUTE:
-                VoiceUtil.mute(intent);
+                ThreadUtil.runOnBackground(() -> VoiceUtil.mute(intent));
                 break;
             case ACTION_MARK_AS_READ:
-                VoiceUtil.markAsRead(intent);
+                ThreadUtil.runOnBackground(() -> VoiceUtil.markAsRead(intent));
                 break;
             case ACTION_DIRECT_SEND:
-                VoiceUtil.directSend(intent);
+                ThreadUtil.runOnBackground(() -> VoiceUtil.directSend(intent));
                 break;
             case TelephonyManager.ACTION_RESPOND_VIA_MESSAGE:
                 // Not currently supported. This was added to allow CarMessenger become the default
                 // SMS app.
                 break;
             default:
-                L.w("Unsupported action: " + action);
+                L.w("Unsupported action: %s", action);
         }
         return result;
     }
@@ -61,4 +61,16 @@ public final class MessageConstants {
 
     /** Key under which the user account/device id is provided. */
     @NonNull public static final String EXTRA_ACCOUNT_ID = "EXTRA_ACCOUNT_ID";
+
+    /**
+     * Key under which a conversation is flagged as stale: a provider query timed out, so the
+     * conversation was served from the local mirror and may be out of date.
+     */
+    @NonNull public static final String EXTRA_STALE = "EXTRA_STALE";
+
+    /**
+     * Key under which the cookie of the async trace section a new message conversation was
+     * detected under is provided.
+     */
+    @NonNull public static final String EXTRA_TRACE_COOKIE = "EXTRA_TRACE_COOKIE";
 }
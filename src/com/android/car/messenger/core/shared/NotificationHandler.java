@@ -23,6 +23,7 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
 import android.service.notification.StatusBarNotification;
 
 import androidx.annotation.NonNull;
@@ -35,6 +36,8 @@ import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.service.MessengerService;
 import com.android.car.messenger.core.ui.launcher.MessageLauncherActivity;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.TraceUtil;
 import com.android.car.messenger.core.util.VoiceUtil;
 
 /** Useful notification handler for posting messages */
@@ -49,6 +52,21 @@ public class NotificationHandler {
 
     /** Posts or updates a notification based on a conversation */
     public static void postNotification(Conversation conversation) {
+        Bundle extras = conversation.getExtras();
+        if (extras.containsKey(MessageConstants.EXTRA_TRACE_COOKIE)) {
+            TraceUtil.endAsyncSection(
+                    TraceUtil.ASYNC_NEW_MESSAGE_TO_NOTIFICATION,
+                    extras.getInt(MessageConstants.EXTRA_TRACE_COOKIE));
+        }
+        TraceUtil.beginSection(TraceUtil.POST_NOTIFICATION);
+        try {
+            postNotificationInternal(conversation);
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    private static void postNotificationInternal(@NonNull Conversation conversation) {
         int userAccountId = conversation.getExtras().getInt(EXTRA_ACCOUNT_ID, 0);
         if (userAccountId == 0) {
             L.w(
@@ -70,6 +88,11 @@ public class NotificationHandler {
                         context, channelId, tapToReadConversation, R.drawable.ic_message, null);
         notification.contentIntent = createContentIntent();
         notificationManager.notify(tapToReadConversation.getId().hashCode(), notification);
+        Metrics.increment(
+                Metrics.NOTIFICATIONS,
+                conversation.isMuted()
+                        ? Metrics.NOTIFICATION_POSTED_SILENT
+                        : Metrics.NOTIFICATION_POSTED);
     }
 
     private static PendingIntent createContentIntent() {
@@ -23,9 +23,11 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.car.messenger.R;
 import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.util.TraceUtil;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -42,14 +44,23 @@ public class ConversationItemAdapter extends RecyclerView.Adapter<ConversationIt
         void onPlayIconClicked(@NonNull Conversation conversation);
     }
 
+    /** Number of rows from the end at which the next page is requested */
+    private static final int LOAD_MORE_THRESHOLD = 5;
+
     @NonNull private final List<UIConversationItem> mUIConversationItems = new ArrayList<>();
     @NonNull private final OnConversationItemClickListener mOnConversationItemClickListener;
+    @Nullable private Runnable mOnLoadMoreListener;
 
     public ConversationItemAdapter(
             @NonNull OnConversationItemClickListener onConversationItemClickListener) {
         mOnConversationItemClickListener = onConversationItemClickListener;
     }
 
+    /** Sets the callback run when a row near the end of the list is bound */
+    public void setOnLoadMoreListener(@Nullable Runnable onLoadMoreListener) {
+        mOnLoadMoreListener = onLoadMoreListener;
+    }
+
     /** Sets conversation logs. */
     public void setConversationLogItems(@NonNull List<UIConversationItem> uIConversationItems) {
         mUIConversationItems.clear();
@@ -69,7 +80,15 @@ public class ConversationItemAdapter extends RecyclerView.Adapter<ConversationIt
 
     @Override
     public void onBindViewHolder(@NonNull ConversationItemViewHolder holder, int position) {
-        holder.bind(mUIConversationItems.get(position));
+        TraceUtil.beginSection(TraceUtil.BIND_ROW);
+        try {
+            holder.bind(mUIConversationItems.get(position));
+        } finally {
+            TraceUtil.endSection();
+        }
+        if (mOnLoadMoreListener != null && position >= getItemCount() - LOAD_MORE_THRESHOLD) {
+            mOnLoadMoreListener.run();
+        }
     }
 
     @Override
@@ -30,6 +30,7 @@ import com.android.car.messenger.core.models.ConnectionStatus;
 import com.android.car.messenger.core.models.UserAccount;
 import com.android.car.messenger.core.shared.MessageConstants;
 import com.android.car.messenger.core.ui.base.MessageListBaseFragment;
+import com.android.car.messenger.core.ui.launcher.MessageLauncherViewModel;
 import com.android.car.messenger.core.util.L;
 import com.android.car.messenger.core.util.VoiceUtil;
 import com.android.car.ui.toolbar.MenuItem;
@@ -48,6 +49,9 @@ public class ConversationListFragment extends MessageListBaseFragment
     @NonNull private static final String KEY_USER_ACCOUNT = "KEY_USER_ACCOUNT";
     @Nullable private ConversationItemAdapter mConversationItemAdapter;
     @Nullable private UserAccount mUserAccount;
+    private int mAccountCount;
+    // Menu items are only shown once the conversations or the empty state are
+    private boolean mMenuItemsShown;
 
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
@@ -66,6 +70,17 @@ public class ConversationListFragment extends MessageListBaseFragment
         getRecyclerView().setAdapter(mConversationItemAdapter);
         ConversationListViewModel viewModel =
                 new ViewModelProvider(this).get(ConversationListViewModel.class);
+        MessageLauncherViewModel launcherViewModel =
+                new ViewModelProvider(requireActivity()).get(MessageLauncherViewModel.class);
+        launcherViewModel
+                .getAccounts()
+                .observe(
+                        this,
+                        accounts -> {
+                            mAccountCount = accounts.size();
+                            resetMenuItems();
+                        });
+        mConversationItemAdapter.setOnLoadMoreListener(viewModel::loadMoreConversations);
 
         viewModel
                 .getConversations(mUserAccount)
@@ -110,45 +125,75 @@ public class ConversationListFragment extends MessageListBaseFragment
                 R.string.connect_bluetooth_button_text,
                 v -> startActivity(launchIntent),
                 true);
+        mMenuItemsShown = false;
         removeMenuItems();
     }
 
     private void removeMenuItems() {
         Activity activity = getActivity();
-        if (activity == null || mToolbar == null) {
+        if (activity == null || mToolbar == null || isHidden()) {
             return;
         }
         mToolbar.setMenuItems(new ArrayList<>());
     }
 
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        // The toolbar is shared with the fragments of the other accounts
+        if (!hidden) {
+            resetMenuItems();
+        }
+    }
+
+    private void resetMenuItems() {
+        if (!mMenuItemsShown) {
+            return;
+        }
+        removeMenuItems();
+        setMenuItems();
+    }
+
     private void setMenuItems() {
         Activity activity = getActivity();
-        if (activity == null || mUserAccount == null || mToolbar == null) {
+        mMenuItemsShown = true;
+        if (activity == null || mUserAccount == null || mToolbar == null || isHidden()) {
             return;
         }
         if (!mToolbar.getMenuItems().isEmpty()) {
             return;
         }
-        if (!getResources().getBoolean(R.bool.direct_send_supported)) {
-            return;
-        }
-        MenuItem newMessageButton =
-                new MenuItem.Builder(activity)
-                        .setIcon(R.drawable.ui_icon_edit)
-                        .setTinted(false)
-                        .setShowIconAndTitle(true)
-                        .setTitle(R.string.new_message)
-                        .setPrimary(true)
-                        .setOnClickListener(
-                                item ->
-                                        VoiceUtil.voiceRequestGenericCompose(
-                                                activity, mUserAccount))
-                        .build();
         ArrayList<MenuItem> menuItems = new ArrayList<>();
-        menuItems.add(newMessageButton);
+        if (mAccountCount > 1) {
+            MessageLauncherViewModel launcherViewModel =
+                    new ViewModelProvider(requireActivity()).get(MessageLauncherViewModel.class);
+            menuItems.add(
+                    new MenuItem.Builder(activity)
+                            .setIcon(R.drawable.ic_person)
+                            .setShowIconAndTitle(true)
+                            .setTitle(mUserAccount.getName())
+                            .setOnClickListener(item -> launcherViewModel.selectNextAccount())
+                            .build());
+        }
+        if (getResources().getBoolean(R.bool.direct_send_supported)) {
+            menuItems.add(createNewMessageButton(activity));
+        }
         mToolbar.setMenuItems(menuItems);
     }
 
+    @NonNull
+    private MenuItem createNewMessageButton(@NonNull Activity activity) {
+        return new MenuItem.Builder(activity)
+                .setIcon(R.drawable.ui_icon_edit)
+                .setTinted(false)
+                .setShowIconAndTitle(true)
+                .setTitle(R.string.new_message)
+                .setPrimary(true)
+                .setOnClickListener(
+                        item -> VoiceUtil.voiceRequestGenericCompose(activity, mUserAccount))
+                .build();
+    }
+
     @Override
     public void onConversationItemClicked(@NonNull Conversation conversation) {
         if (mUserAccount == null) {
@@ -33,9 +33,14 @@ import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.interfaces.DataModel;
 import com.android.car.messenger.core.models.UserAccount;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.core.util.TracedList;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /** View model for ConversationLogFragment which provides message history live data. */
@@ -44,6 +49,8 @@ public class ConversationListViewModel extends AndroidViewModel {
     @NonNull
     private final DataModel mDataModel;
 
+    @NonNull private static final String CACHE_NAME = "ui_conversation_log";
+
     @Nullable private UserAccount mUserAccount;
     @Nullable private LiveData<UIConversationLog> mUIConversationLogLiveData;
 
@@ -67,9 +74,12 @@ public class ConversationListViewModel extends AndroidViewModel {
             mutableLiveData.postValue(UIConversationLog.getDisconnectedState());
             return mutableLiveData;
         }
-        if (mUserAccount != null
-                && mUserAccount.getId() == userAccount.getId()
-                && mUIConversationLogLiveData != null) {
+        boolean cacheHit =
+                mUserAccount != null
+                        && mUserAccount.getId() == userAccount.getId()
+                        && mUIConversationLogLiveData != null;
+        Metrics.recordCacheLookup(CACHE_NAME, cacheHit);
+        if (cacheHit) {
             return mUIConversationLogLiveData;
         }
         mUserAccount = userAccount;
@@ -77,28 +87,62 @@ public class ConversationListViewModel extends AndroidViewModel {
         return mUIConversationLogLiveData;
     }
 
+    /** Requests the next page of conversations for the account last passed to getConversations */
+    public void loadMoreConversations() {
+        if (mUserAccount != null) {
+            mDataModel.loadMoreConversations(mUserAccount);
+        }
+    }
+
     private LiveData<UIConversationLog> createUIConversationLog(@NonNull UserAccount userAccount) {
         MediatorLiveData<UIConversationLog> mutableLiveData = new MediatorLiveData<>();
         mutableLiveData.postValue(UIConversationLog.getLoadingState());
+        // Conversion loads avatar drawables, so it runs off the main thread. Only the latest
+        // conversion is posted, as an older one may finish after a newer one.
+        AtomicInteger latestGeneration = new AtomicInteger();
         mutableLiveData.addSource(
                 subscribeToConversations(userAccount),
                 pair -> {
-                    CarUxRestrictions uxRestrictions = pair.first;
-                    Collection<Conversation> list = pair.second;
-                    List<UIConversationItem> data =
-                            list.stream()
-                                    .map(
-                                            conversation ->
-                                                    UIConversationItemConverter
-                                                            .convertToUIConversationItem(
-                                                                    conversation, uxRestrictions))
-                                    .collect(Collectors.toList());
-                    UIConversationLog log = UIConversationLog.getLoadedState(data);
-                    mutableLiveData.postValue(log);
+                    int generation = latestGeneration.incrementAndGet();
+                    if (pair.second instanceof TracedList) {
+                        TraceUtil.endAsyncSection(
+                                TraceUtil.ASYNC_PUBLISH_TO_UI,
+                                ((TracedList<?>) pair.second).getTraceCookie());
+                    }
+                    ThreadUtil.runOnBackground(
+                            () -> {
+                                UIConversationLog log = convertToUIConversationLog(pair);
+                                if (generation == latestGeneration.get()) {
+                                    mutableLiveData.postValue(log);
+                                }
+                            });
                 });
         return mutableLiveData;
     }
 
+    @NonNull
+    private static UIConversationLog convertToUIConversationLog(
+            @NonNull Pair<CarUxRestrictions, Collection<Conversation>> pair) {
+        CarUxRestrictions uxRestrictions = pair.first;
+        Collection<Conversation> list = pair.second;
+        List<UIConversationItem> data;
+        TraceUtil.beginSection(TraceUtil.CONVERT_TO_UI);
+        try {
+            data =
+                    list.stream()
+                            .map(
+                                    conversation ->
+                                            UIConversationItemConverter
+                                                    .convertToUIConversationItem(
+                                                            conversation, uxRestrictions))
+                            .collect(Collectors.toList());
+            TraceUtil.setRowCount(TraceUtil.CONVERT_TO_UI, data.size());
+        } finally {
+            TraceUtil.endSection();
+        }
+        return UIConversationLog.getLoadedState(data);
+    }
+
     private LiveData<Pair<CarUxRestrictions, Collection<Conversation>>> subscribeToConversations(
             @NonNull UserAccount userAccount) {
         final LiveData<Collection<Conversation>> liveData =
@@ -106,7 +150,7 @@ public class ConversationListViewModel extends AndroidViewModel {
         return Transformations.switchMap(
                 AppFactory.get().getCarStateListener().getUxrRestrictions(),
                 uxRestrictions -> {
-                    L.d("Got new ux restrictions: " + uxRestrictions);
+                    L.d("Got new ux restrictions: %s", uxRestrictions);
                     return Transformations.map(
                             liveData, conversations -> new Pair<>(uxRestrictions, conversations));
                 });
@@ -26,6 +26,7 @@ import com.android.car.messenger.R;
 import com.android.car.messenger.common.Conversation;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.util.ConversationUtil;
+import com.android.car.messenger.core.util.MainThreadGuard;
 
 import java.util.Objects;
 
@@ -130,6 +131,7 @@ public class UIConversationItemConverter {
 
     private static Drawable getConversationAvatar(
             @NonNull Context context, @NonNull Conversation conversation) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DECODE);
         return (conversation.getConversationIcon() != null)
                 ? conversation.getConversationIcon().loadDrawable(context)
                 : null;
@@ -17,10 +17,13 @@
 package com.android.car.messenger.core.ui.launcher;
 
 import android.os.Bundle;
-import androidx.fragment.app.Fragment;
-import androidx.fragment.app.FragmentActivity;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
@@ -30,9 +33,15 @@ import com.android.car.messenger.core.util.L;
 import com.android.car.ui.baselayout.Insets;
 import com.android.car.ui.baselayout.InsetsChangedListener;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * This is the launcher activity for the messaging app. This first routes to{@link
- * ConversationListFragment} or displays an error when no {@link UserAccount} are found.
+ * ConversationListFragment} of the selected {@link UserAccount} or displays an error when no {@link
+ * UserAccount} are found.
  */
 public class MessageLauncherActivity extends FragmentActivity implements InsetsChangedListener {
 
@@ -44,32 +53,54 @@ public class MessageLauncherActivity extends FragmentActivity implements InsetsC
 
         L.d("In onCreate: MessageLauncher");
         viewModel
-                .getAccounts()
+                .getSelectedAccount()
                 .observe(
                         this,
-                        accounts -> {
-                            L.d("Total number of accounts: " + accounts.size());
-                            // First version only takes one device until multi-account support is
-                            // added
-                            UserAccount primaryAccount =
-                                    !accounts.isEmpty() ? accounts.get(0) : null;
-                            String fragmentTag =
-                                    ConversationListFragment.getFragmentTag(primaryAccount);
-                            Fragment fragment =
-                                    getSupportFragmentManager().findFragmentByTag(fragmentTag);
-                            if (fragment == null) {
-                                fragment = ConversationListFragment.newInstance(primaryAccount);
-                            }
-                            setContentFragment(fragment, fragmentTag);
+                        selectedAccount -> {
+                            List<UserAccount> accounts = viewModel.getAccounts().getValue();
+                            L.d(
+                                    "Total number of accounts: %d",
+                                    accounts == null ? 0 : accounts.size());
+                            showAccountFragment(
+                                    selectedAccount,
+                                    accounts == null ? Collections.emptyList() : accounts);
                         });
     }
 
-    private void setContentFragment(Fragment fragment, String fragmentTag) {
-        getSupportFragmentManager().executePendingTransactions();
-        while (getSupportFragmentManager().getBackStackEntryCount() > 0) {
-            getSupportFragmentManager().popBackStackImmediate();
+    /**
+     * Shows the fragment of the selected account. The fragments of the other connected accounts
+     * are hidden rather than removed, so their conversations stay loaded for a quick switch back.
+     */
+    private void showAccountFragment(
+            @Nullable UserAccount selectedAccount, @NonNull List<UserAccount> accounts) {
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        fragmentManager.executePendingTransactions();
+        Set<String> accountTags = new HashSet<>();
+        for (UserAccount account : accounts) {
+            accountTags.add(ConversationListFragment.getFragmentTag(account));
         }
-        pushContentFragment(fragment, fragmentTag);
+        String fragmentTag = ConversationListFragment.getFragmentTag(selectedAccount);
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        for (Fragment fragment : fragmentManager.getFragments()) {
+            if (fragmentTag.equals(fragment.getTag())) {
+                continue;
+            }
+            if (accountTags.contains(fragment.getTag())) {
+                transaction.hide(fragment);
+            } else {
+                transaction.remove(fragment);
+            }
+        }
+        Fragment fragment = fragmentManager.findFragmentByTag(fragmentTag);
+        if (fragment == null) {
+            transaction.add(
+                    android.R.id.content,
+                    ConversationListFragment.newInstance(selectedAccount),
+                    fragmentTag);
+        } else {
+            transaction.show(fragment);
+        }
+        transaction.commit();
     }
 
     @Override
@@ -79,15 +110,6 @@ public class MessageLauncherActivity extends FragmentActivity implements InsetsC
         super.onResume();
     }
 
-    private void pushContentFragment(
-            @NonNull Fragment topContentFragment, @NonNull String fragmentTag) {
-        getSupportFragmentManager()
-                .beginTransaction()
-                .replace(android.R.id.content, topContentFragment, fragmentTag)
-                .addToBackStack(fragmentTag)
-                .commit();
-    }
-
     @Override
     public void onCarUiInsetsChanged(Insets insets) {
         // Do nothing, this is just a marker that we will handle the insets in fragments.
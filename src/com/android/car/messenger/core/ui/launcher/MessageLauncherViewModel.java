@@ -22,8 +22,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.Transformations;
 
+import com.android.car.messenger.R;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.interfaces.DataModel;
 import com.android.car.messenger.core.models.UserAccount;
@@ -35,12 +37,18 @@ import java.util.stream.Collectors;
 public class MessageLauncherViewModel extends AndroidViewModel {
     @NonNull private final DataModel mDataSource;
     @Nullable private LiveData<List<UserAccount>> mAccountsLiveData;
-    // We currently only support the primary account until multi-account support is added
-    private static final int DEVICE_LIMIT = 1;
+    @Nullable private MediatorLiveData<UserAccount> mSelectedAccountLiveData;
+    @Nullable private Integer mSelectedAccountId;
+    // Only the primary account is shown unless multi-account support is enabled
+    private final int mDeviceLimit;
 
     public MessageLauncherViewModel(@NonNull Application application) {
         super(application);
         mDataSource = AppFactory.get().getDataModel();
+        mDeviceLimit =
+                application.getResources().getBoolean(R.bool.multi_account_supported)
+                        ? Integer.MAX_VALUE
+                        : 1;
     }
 
     /** Get observable data with list of accounts/user accounts */
@@ -52,10 +60,64 @@ public class MessageLauncherViewModel extends AndroidViewModel {
         return mAccountsLiveData;
     }
 
+    /**
+     * Get observable data with the account whose conversations are shown: the last one selected
+     * while it is connected, the first account otherwise, or null if there are no accounts. It is
+     * emitted again on each change of {@link #getAccounts()}.
+     */
+    @NonNull
+    public LiveData<UserAccount> getSelectedAccount() {
+        if (mSelectedAccountLiveData == null) {
+            mSelectedAccountLiveData = new MediatorLiveData<>();
+            mSelectedAccountLiveData.addSource(getAccounts(), accounts -> updateSelectedAccount());
+        }
+        return mSelectedAccountLiveData;
+    }
+
+    /** Shows the conversations of the given account */
+    public void selectAccount(@NonNull UserAccount userAccount) {
+        mSelectedAccountId = userAccount.getId();
+        updateSelectedAccount();
+    }
+
+    /** Shows the conversations of the account after the selected one, wrapping around */
+    public void selectNextAccount() {
+        List<UserAccount> accounts = getAccounts().getValue();
+        UserAccount selectedAccount = getSelectedAccount().getValue();
+        if (accounts == null || accounts.isEmpty() || selectedAccount == null) {
+            return;
+        }
+        int index = indexOf(accounts, selectedAccount.getId());
+        selectAccount(accounts.get((index + 1) % accounts.size()));
+    }
+
+    private void updateSelectedAccount() {
+        if (mSelectedAccountLiveData == null) {
+            return;
+        }
+        List<UserAccount> accounts = getAccounts().getValue();
+        UserAccount selectedAccount = null;
+        if (accounts != null && !accounts.isEmpty()) {
+            int index = mSelectedAccountId == null ? -1 : indexOf(accounts, mSelectedAccountId);
+            selectedAccount = accounts.get(Math.max(index, 0));
+        }
+        // Set even if unchanged, so observers also see accounts that were removed
+        mSelectedAccountLiveData.setValue(selectedAccount);
+    }
+
+    private static int indexOf(@NonNull List<UserAccount> accounts, int accountId) {
+        for (int i = 0; i < accounts.size(); i++) {
+            if (accounts.get(i).getId() == accountId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private LiveData<List<UserAccount>> getAccountList() {
         return Transformations.map(
                 mDataSource.getAccounts(),
                 accountList ->
-                        accountList.stream().limit(DEVICE_LIMIT).collect(Collectors.toList()));
+                        accountList.stream().limit(mDeviceLimit).collect(Collectors.toList()));
     }
 }
@@ -134,14 +134,14 @@ public class CarStateListener {
         for (ProjectionStatus status : mProjectionDetails) {
             if (!status.isActive()) {
                 // Don't suppress UI for packages that aren't actively projecting.
-                L.d("skip non-projecting package " + status.getPackageName());
+                L.d("skip non-projecting package %s", status.getPackageName());
                 continue;
             }
 
             for (ProjectionStatus.MobileDevice device : status.getConnectedMobileDevices()) {
                 if (!device.isProjecting()) {
                     // Don't suppress UI for devices that aren't foreground.
-                    L.d("skip non-projecting device " + device.getName());
+                    L.d("skip non-projecting device %s", device.getName());
                     continue;
                 }
 
@@ -150,36 +150,33 @@ public class CarStateListener {
                                 PROJECTION_STATUS_EXTRA_DEVICE_STATE,
                                 ProjectionStatus.PROJECTION_STATE_ACTIVE_FOREGROUND)
                         != ProjectionStatus.PROJECTION_STATE_ACTIVE_FOREGROUND) {
-                    L.d("skip device " + device.getName() + " - not foreground");
+                    L.d("skip device %s - not foreground", device.getName());
                     continue;
                 }
 
                 Parcelable projectingBluetoothDevice =
                         extras.getParcelable(BluetoothDevice.EXTRA_DEVICE);
-                L.d("Device " + device.getName() + " has BT device " + projectingBluetoothDevice);
+                L.d("Device %s has BT device %s", device.getName(), projectingBluetoothDevice);
 
                 if (projectingBluetoothDevice == null) {
                     L.i(
-                            "Suppressing message notification - device "
-                                    + device
-                                    + " is projection, and does not specify a Bluetooth address");
+                            "Suppressing message notification - device %s is projection, and"
+                                    + " does not specify a Bluetooth address",
+                            device);
                     return true;
                 } else if (!(projectingBluetoothDevice instanceof BluetoothDevice)) {
                     L.e(
-                            "Device "
-                                    + device
-                                    + " has bad EXTRA_DEVICE value "
-                                    + projectingBluetoothDevice
-                                    + " - treating as unspecified");
+                            "Device %s has bad EXTRA_DEVICE value %s - treating as unspecified",
+                            device,
+                            projectingBluetoothDevice);
                     return true;
                 } else if (bluetoothAddress.equals(
                         ((BluetoothDevice) projectingBluetoothDevice).getAddress())) {
                     L.i(
-                            "Suppressing message notification - device "
-                                    + device
-                                    + "is projecting, and message is coming from device's"
-                                    + " Bluetooth address"
-                                    + bluetoothAddress);
+                            "Suppressing message notification - device %s is projecting, and"
+                                    + " message is coming from device's Bluetooth address %s",
+                            device,
+                            bluetoothAddress);
                     return true;
                 }
             }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Util class for collection operations on the data layer hot paths.
+ *
+ * <p>Only depends on the JDK, so it is also measured by the host side benchmarks.
+ */
+public final class CollectionUtil {
+    private CollectionUtil() {}
+
+    /**
+     * Returns the items of firstList whose key is not present in secondList, in linear time.
+     *
+     * @param key maps an item to the key it is compared by
+     */
+    @NonNull
+    public static <T, K> Set<T> getDifference(
+            @NonNull Collection<T> firstList,
+            @NonNull Collection<T> secondList,
+            @NonNull Function<T, K> key) {
+        Set<K> secondKeys = new HashSet<>(secondList.size() * 2);
+        for (T item : secondList) {
+            secondKeys.add(key.apply(item));
+        }
+        Set<T> difference = new HashSet<>();
+        for (T item : firstList) {
+            if (!secondKeys.contains(key.apply(item))) {
+                difference.add(item);
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Sorts the list in place by descending key. Each key is computed once, instead of once per
+     * comparison, and items with equal keys keep their order.
+     */
+    public static <T> void sortDescending(@NonNull List<T> list, @NonNull ToLongFunction<T> key) {
+        int size = list.size();
+        if (size < 2) {
+            return;
+        }
+        KeyedItem[] keyedItems = new KeyedItem[size];
+        for (int i = 0; i < size; i++) {
+            T item = list.get(i);
+            keyedItems[i] = new KeyedItem(key.applyAsLong(item), item);
+        }
+        Arrays.sort(keyedItems, (first, second) -> Long.compare(second.mKey, first.mKey));
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) keyedItems[i].mItem;
+            list.set(i, item);
+        }
+    }
+
+    private static final class KeyedItem {
+        private final long mKey;
+        @NonNull private final Object mItem;
+
+        KeyedItem(long key, @NonNull Object item) {
+            mKey = key;
+            mItem = item;
+        }
+    }
+}
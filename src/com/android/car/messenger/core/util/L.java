@@ -19,22 +19,83 @@ package com.android.car.messenger.core.util;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-/** Util class for logging. */
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Util class for logging.
+ *
+ * <p>The format and supplier variants check the log level before building the message, so they
+ * can be used on per-row paths: a disabled call with primitive or existing object arguments does
+ * not allocate. Calls are also recorded into an optional in-memory ring, see {@link
+ * #enableRingLog(int)}.
+ */
 public class L {
     @NonNull private static final String TAG = "CarMessenger";
 
+    @Nullable private static volatile RingLog sRingLog;
+
     private L() {}
 
+    /**
+     * Keeps the last {@code capacity} log calls of any level in memory, to be printed by {@link
+     * #dumpRingLog(PrintWriter)}. Messages are only formatted when dumped.
+     */
+    public static void enableRingLog(int capacity) {
+        enableRingLog(capacity, Log.VERBOSE);
+    }
+
+    /**
+     * Keeps the last {@code capacity} log calls of {@code minPriority} or above in memory, to be
+     * printed by {@link #dumpRingLog(PrintWriter)}. Messages are only formatted when dumped, and
+     * the suppliers of lower levels are not called for the ring.
+     *
+     * @param minPriority the lowest {@link Log} priority kept, such as {@link Log#DEBUG}
+     */
+    public static void enableRingLog(int capacity, int minPriority) {
+        sRingLog = capacity > 0 ? new RingLog(capacity, minPriority) : null;
+    }
+
+    /** Prints the log calls kept in memory, if enabled */
+    public static void dumpRingLog(@NonNull PrintWriter writer) {
+        RingLog ringLog = sRingLog;
+        if (ringLog == null) {
+            return;
+        }
+        writer.println("Recent logs:");
+        ringLog.dump(writer);
+    }
+
     /**
      * Logs verbose level logs if loggable.
      *
      * @param msg the message to log, as a format string
      */
     public static void v(@NonNull String msg) {
-        if (Log.isLoggable(TAG, Log.VERBOSE)) {
-            Log.v(TAG, msg);
-        }
+        log(Log.VERBOSE, msg);
+    }
+
+    /** Logs verbose level logs if loggable, formatting the message only if so. */
+    public static void v(@NonNull String format, @Nullable Object arg) {
+        log(Log.VERBOSE, format, arg);
+    }
+
+    /** Logs verbose level logs if loggable, formatting the message only if so. */
+    public static void v(@NonNull String format, long arg) {
+        log(Log.VERBOSE, format, arg);
+    }
+
+    /** Logs verbose level logs if loggable, formatting the message only if so. */
+    public static void v(@NonNull String format, @Nullable Object arg1, @Nullable Object arg2) {
+        log(Log.VERBOSE, format, arg1, arg2);
+    }
+
+    /** Logs verbose level logs if loggable, building the message only if so. */
+    public static void v(@NonNull Supplier<String> msgSupplier) {
+        log(Log.VERBOSE, msgSupplier);
     }
 
     /**
@@ -43,9 +104,27 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void d(@NonNull String msg) {
-        if (Log.isLoggable(TAG, Log.DEBUG)) {
-            Log.d(TAG, msg);
-        }
+        log(Log.DEBUG, msg);
+    }
+
+    /** Logs debug level logs if loggable, formatting the message only if so. */
+    public static void d(@NonNull String format, @Nullable Object arg) {
+        log(Log.DEBUG, format, arg);
+    }
+
+    /** Logs debug level logs if loggable, formatting the message only if so. */
+    public static void d(@NonNull String format, long arg) {
+        log(Log.DEBUG, format, arg);
+    }
+
+    /** Logs debug level logs if loggable, formatting the message only if so. */
+    public static void d(@NonNull String format, @Nullable Object arg1, @Nullable Object arg2) {
+        log(Log.DEBUG, format, arg1, arg2);
+    }
+
+    /** Logs debug level logs if loggable, building the message only if so. */
+    public static void d(@NonNull Supplier<String> msgSupplier) {
+        log(Log.DEBUG, msgSupplier);
     }
 
     /**
@@ -54,9 +133,17 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void i(@NonNull String msg) {
-        if (Log.isLoggable(TAG, Log.INFO)) {
-            Log.i(TAG, msg);
-        }
+        log(Log.INFO, msg);
+    }
+
+    /** Logs info level logs if loggable, formatting the message only if so. */
+    public static void i(@NonNull String format, @Nullable Object arg) {
+        log(Log.INFO, format, arg);
+    }
+
+    /** Logs info level logs if loggable, formatting the message only if so. */
+    public static void i(@NonNull String format, @Nullable Object arg1, @Nullable Object arg2) {
+        log(Log.INFO, format, arg1, arg2);
     }
 
     /**
@@ -65,9 +152,12 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void w(@NonNull String msg) {
-        if (Log.isLoggable(TAG, Log.WARN)) {
-            Log.w(TAG, msg);
-        }
+        log(Log.WARN, msg);
+    }
+
+    /** Logs warning level logs if loggable, formatting the message only if so. */
+    public static void w(@NonNull String format, @Nullable Object arg) {
+        log(Log.WARN, format, arg);
     }
 
     /**
@@ -76,9 +166,32 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void e(@NonNull String msg) {
+        record(Log.ERROR, msg, 0, null, null);
         Log.e(TAG, msg);
     }
 
+    /** Logs error level logs, formatting the message. */
+    public static void e(@NonNull String format, @Nullable Object arg) {
+        record(Log.ERROR, format, 1, arg, null);
+        Log.e(TAG, String.format(Locale.US, format, arg));
+    }
+
+    /** Logs error level logs, formatting the message. */
+    public static void e(@NonNull String format, @Nullable Object arg1, @Nullable Object arg2) {
+        record(Log.ERROR, format, 2, arg1, arg2);
+        Log.e(TAG, String.format(Locale.US, format, arg1, arg2));
+    }
+
+    /**
+     * Logs error level logs, formatting the message.
+     *
+     * @param e a throwable to log
+     */
+    public static void e(@NonNull String format, @Nullable Object arg, Throwable e) {
+        record(Log.ERROR, format, 1, arg, null);
+        Log.e(TAG, String.format(Locale.US, format, arg), e);
+    }
+
     /**
      * Logs warning level logs.
      *
@@ -86,6 +199,7 @@ public class L {
      * @param e a throwable to log
      */
     public static void e(@NonNull String msg, Throwable e) {
+        record(Log.ERROR, msg, 0, null, null);
         Log.e(TAG, msg, e);
     }
 
@@ -95,6 +209,7 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void wtf(@NonNull String msg) {
+        record(Log.ASSERT, msg, 0, null, null);
         Log.wtf(TAG, msg);
     }
 
@@ -105,6 +220,87 @@ public class L {
      * @param msg the message to log, as a format string
      */
     public static void wtf(Exception e, @NonNull String msg) {
+        record(Log.ASSERT, msg, 0, null, null);
         Log.wtf(TAG, msg, e);
     }
+
+    private static void log(int priority, @NonNull String msg) {
+        record(priority, msg, 0, null, null);
+        if (Log.isLoggable(TAG, priority)) {
+            Log.println(priority, TAG, msg);
+        }
+    }
+
+    private static void log(int priority, @NonNull String format, @Nullable Object arg) {
+        record(priority, format, 1, arg, null);
+        if (Log.isLoggable(TAG, priority)) {
+            Log.println(priority, TAG, String.format(Locale.US, format, arg));
+        }
+    }
+
+    private static void log(int priority, @NonNull String format, long arg) {
+        RingLog ringLog = sRingLog;
+        if (ringLog != null && ringLog.records(priority)) {
+            ringLog.add(getLevel(priority), format, arg);
+        }
+        if (Log.isLoggable(TAG, priority)) {
+            Log.println(priority, TAG, String.format(Locale.US, format, arg));
+        }
+    }
+
+    private static void log(
+            int priority,
+            @NonNull String format,
+            @Nullable Object arg1,
+            @Nullable Object arg2) {
+        record(priority, format, 2, arg1, arg2);
+        if (Log.isLoggable(TAG, priority)) {
+            Log.println(priority, TAG, String.format(Locale.US, format, arg1, arg2));
+        }
+    }
+
+    private static void log(int priority, @NonNull Supplier<String> msgSupplier) {
+        RingLog ringLog = sRingLog;
+        boolean recorded = ringLog != null && ringLog.records(priority);
+        boolean loggable = Log.isLoggable(TAG, priority);
+        if (!recorded && !loggable) {
+            return;
+        }
+        String msg = msgSupplier.get();
+        if (recorded) {
+            ringLog.add(getLevel(priority), msg, 0, null, null);
+        }
+        if (loggable) {
+            Log.println(priority, TAG, msg);
+        }
+    }
+
+    private static void record(
+            int priority,
+            @NonNull String format,
+            int argCount,
+            @Nullable Object arg1,
+            @Nullable Object arg2) {
+        RingLog ringLog = sRingLog;
+        if (ringLog != null && ringLog.records(priority)) {
+            ringLog.add(getLevel(priority), format, argCount, arg1, arg2);
+        }
+    }
+
+    private static char getLevel(int priority) {
+        switch (priority) {
+            case Log.VERBOSE:
+                return 'V';
+            case Log.DEBUG:
+                return 'D';
+            case Log.INFO:
+                return 'I';
+            case Log.WARN:
+                return 'W';
+            case Log.ERROR:
+                return 'E';
+            default:
+                return 'F';
+        }
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects provider and database queries, bitmap decodes and encodes and canvas composition running
+ * on the main thread in debuggable builds.
+ *
+ * <p>Each violation is counted per entry point, and the stack trace of its first occurrence is
+ * kept for {@link com.android.car.messenger.core.service.MessengerService#dump}. Tests can make
+ * violations throw, so a regression fails the test exercising the path.
+ */
+public final class MainThreadGuard {
+    /** A content provider query or update */
+    @NonNull public static final String PROVIDER_ACCESS = "provider access";
+
+    /** A query or write of one of the app's own databases */
+    @NonNull public static final String DATABASE_ACCESS = "database access";
+
+    /** A bitmap or drawable decode */
+    @NonNull public static final String DECODE = "decode";
+
+    /** A bitmap encode, such as writing an avatar to a file */
+    @NonNull public static final String ENCODE = "encode";
+
+    /** Drawing on a canvas, such as composing an avatar */
+    @NonNull public static final String CANVAS_COMPOSITION = "canvas composition";
+
+    @NonNull
+    private static final String CORE_UTIL_PACKAGE = "com.android.car.messenger.core.util.";
+
+    @NonNull
+    private static final String DATAMODELS_UTIL_PACKAGE =
+            "com.android.car.messenger.impl.datamodels.util.";
+
+    @NonNull
+    private static final ConcurrentHashMap<String, Violation> sViolations =
+            new ConcurrentHashMap<>();
+
+    private static volatile boolean sEnabled;
+    private static volatile boolean sThrowOnViolation;
+
+    private MainThreadGuard() {}
+
+    /** Enables the guard if the app is debuggable */
+    public static void init(@NonNull Context context) {
+        sEnabled = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    /** Enables the guard and makes violations throw an {@link IllegalStateException} */
+    @VisibleForTesting
+    public static void setThrowOnViolation(boolean throwOnViolation) {
+        sThrowOnViolation = throwOnViolation;
+        if (throwOnViolation) {
+            sEnabled = true;
+        }
+    }
+
+    /** Clears all recorded violations */
+    @VisibleForTesting
+    public static void reset() {
+        sViolations.clear();
+    }
+
+    /** Returns the number of violations recorded for all entry points */
+    public static long getViolationCount() {
+        long count = 0;
+        for (Violation violation : sViolations.values()) {
+            count += violation.mCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Records a violation if called on the main thread while the guard is enabled.
+     *
+     * @param operation the kind of work about to run, such as {@link #PROVIDER_ACCESS}
+     */
+    public static void checkNotMainThread(@NonNull String operation) {
+        if (!sEnabled || !ThreadUtil.isMainThread()) {
+            return;
+        }
+        IllegalStateException exception =
+                new IllegalStateException(operation + " on the main thread");
+        String key = operation + " from " + getCallSite(exception.getStackTrace());
+        Violation violation = sViolations.get(key);
+        if (violation == null) {
+            violation = sViolations.computeIfAbsent(key, it -> new Violation(exception));
+        }
+        violation.mCount.increment();
+        L.w("Main thread violation: %s", key);
+        if (sThrowOnViolation) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns the first frame outside the util packages, which is the entry point that should move
+     * its work off the main thread.
+     */
+    @NonNull
+    private static String getCallSite(@NonNull StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            if (!className.startsWith(CORE_UTIL_PACKAGE)
+                    && !className.startsWith(DATAMODELS_UTIL_PACKAGE)) {
+                return element.toString();
+            }
+        }
+        return stackTrace.length > 1 ? stackTrace[1].toString() : "unknown";
+    }
+
+    /** Prints the count and first stack trace of each violation */
+    public static void dump(@NonNull PrintWriter writer) {
+        writer.println("Main thread violations" + (sEnabled ? ":" : " (disabled):"));
+        Map<String, Violation> violations = new TreeMap<>(sViolations);
+        for (Map.Entry<String, Violation> entry : violations.entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().mCount.sum());
+            for (StackTraceElement element : entry.getValue().mFirstOccurrence.getStackTrace()) {
+                writer.println("      at " + element);
+            }
+        }
+    }
+
+    private static final class Violation {
+        @NonNull private final Throwable mFirstOccurrence;
+        @NonNull private final LongAdder mCount = new LongAdder();
+
+        Violation(@NonNull Throwable firstOccurrence) {
+            mFirstOccurrence = firstOccurrence;
+        }
+    }
+}
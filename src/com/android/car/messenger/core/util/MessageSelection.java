@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import static java.util.Comparator.comparingLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the unread and read messages of a conversation from its messages in descending order.
+ *
+ * <p>Messages are read through {@link MessageFields}, so the selection only depends on the JDK
+ * and is also measured by the host side benchmarks.
+ */
+public final class MessageSelection {
+    private MessageSelection() {}
+
+    /** Reads the fields of a message used by the selection */
+    public interface MessageFields<T> {
+        /** Returns the timestamp of the message */
+        long getTimestamp(@NonNull T message);
+
+        /** Returns true if the message is unread */
+        boolean isUnread(@NonNull T message);
+
+        /** Returns true if the message is read or has no read status */
+        boolean isRead(@NonNull T message);
+
+        /** Returns true if the message was sent by the user */
+        boolean isSent(@NonNull T message);
+    }
+
+    /** The read messages preceding the unread ones, and the last reply */
+    public static final class ReadMessages<T> {
+        @NonNull private final List<T> mMessages;
+        @Nullable private final T mLastReply;
+
+        ReadMessages(@NonNull List<T> messages, @Nullable T lastReply) {
+            mMessages = messages;
+            mLastReply = lastReply;
+        }
+
+        /** Returns the read messages in ascending order */
+        @NonNull
+        public List<T> getMessages() {
+            return mMessages;
+        }
+
+        /** Returns the last reply, if any */
+        @Nullable
+        public T getLastReply() {
+            return mLastReply;
+        }
+    }
+
+    /**
+     * Returns the leading unread messages in ascending order. The returned list is a view of the
+     * given list, sorted in place.
+     *
+     * @param messages The messages in descending order
+     */
+    @NonNull
+    public static <T> List<T> getUnreadMessages(
+            @NonNull List<T> messages, @NonNull MessageFields<T> fields) {
+        int i = 0;
+        for (T message : messages) {
+            if (!fields.isUnread(message)) {
+                break;
+            }
+            i++;
+        }
+        List<T> unreadMessages = messages.subList(0, i);
+        unreadMessages.sort(comparingLong(fields::getTimestamp));
+        return unreadMessages;
+    }
+
+    /**
+     * Returns the read messages after the last reply, and the last reply.
+     *
+     * @param messages The messages in descending order
+     */
+    @NonNull
+    public static <T> ReadMessages<T> getReadMessagesAndLastReply(
+            @NonNull List<T> messages, @NonNull MessageFields<T> fields) {
+        List<T> readMessages = new ArrayList<>();
+        T replyMessage = null;
+        long lastReply = 0L;
+
+        for (T message : messages) {
+            // Desired impact: 4. Reply -> 3. Messages -> 2. Reply -> 1 Messages (stop
+            // parsing at 2.)
+            // lastReply references 4., messages references 3.
+            // Desired impact: 3. Messages -> 2. Reply -> 1. Messages (stop parsing at 2.)
+            // lastReply references 2., messages references 3.
+            if (fields.isSent(message)) {
+                long timestamp = fields.getTimestamp(message);
+                if (lastReply < timestamp) {
+                    lastReply = timestamp;
+                    replyMessage = message;
+                }
+                if (!readMessages.isEmpty()) {
+                    break;
+                }
+            } else if (fields.isRead(message)) {
+                readMessages.add(message);
+            } else {
+                break;
+            }
+        }
+        readMessages.sort(comparingLong(fields::getTimestamp));
+        return new ReadMessages<>(readMessages, replyMessage);
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide registry of counters and latency histograms, printed by {@link
+ * com.android.car.messenger.core.service.MessengerService#dump}.
+ *
+ * <p>All updates are lock-free, so the data layer can record from its hot paths on any thread.
+ * Counters are keyed by a metric name and an optional key, such as a uri or a trigger source.
+ */
+public final class Metrics {
+    /** Number of queries, keyed by uri */
+    @NonNull public static final String QUERIES = "queries";
+
+    /** Number of rows read from queries, keyed by uri */
+    @NonNull public static final String ROWS_READ = "rows_read";
+
+    /** Number of conversation list fetches, keyed by trigger source */
+    @NonNull public static final String FETCHES = "fetches";
+
+    /**
+     * Number of conversation list fetches cancelled or left unpublished because a newer trigger
+     * superseded them, keyed by trigger source
+     */
+    @NonNull public static final String FETCHES_SUPERSEDED = "fetches_superseded";
+
+    /** Number of queries cancelled by their deadline, keyed by query class */
+    @NonNull public static final String QUERY_TIMEOUTS = "query_timeouts";
+
+    /** Number of cache hits, keyed by cache name */
+    @NonNull public static final String CACHE_HITS = "cache_hits";
+
+    /** Number of cache misses, keyed by cache name */
+    @NonNull public static final String CACHE_MISSES = "cache_misses";
+
+    /** Number of notifications, keyed by outcome */
+    @NonNull public static final String NOTIFICATIONS = "notifications";
+
+    /** Number of provider change callbacks, keyed by observer */
+    @NonNull public static final String OBSERVER_CALLBACKS = "observer_callbacks";
+
+    /**
+     * Number of outgoing messages queued and not yet sent or failed, keyed by account. Messages
+     * add to it when queued and subtract from it when done, so it reads as the queue depth.
+     */
+    @NonNull public static final String OUTBOX_DEPTH = "outbox_depth";
+
+    /** Number of outgoing message events, keyed by outcome */
+    @NonNull public static final String OUTBOX_RESULTS = "outbox_results";
+
+    /** Latency from queueing an outgoing message to its sent confirmation */
+    @NonNull public static final String LATENCY_SEND_MESSAGE = "send_message_ms";
+
+    /** Latency of a single conversation fetch */
+    @NonNull public static final String LATENCY_FETCH_CONVERSATION = "fetch_conversation_ms";
+
+    /** Latency of a full conversation list fetch */
+    @NonNull public static final String LATENCY_FETCH_CONVERSATION_LIST =
+            "fetch_conversation_list_ms";
+
+    /** Trigger source: a provider change */
+    @NonNull public static final String TRIGGER_OBSERVER = "observer";
+
+    /** Trigger source: a provider change naming the threads it changed */
+    @NonNull public static final String TRIGGER_OBSERVER_THREADS = "observer_threads";
+
+    /** Trigger source: first subscriber */
+    @NonNull public static final String TRIGGER_FIRST_LOAD = "first_load";
+
+    /** Trigger source: explicit refresh, such as the activity resuming */
+    @NonNull public static final String TRIGGER_REFRESH = "refresh";
+
+    /** Trigger source: the list scrolled near its end and needs the next page */
+    @NonNull public static final String TRIGGER_LOAD_MORE = "load_more";
+
+    /** Trigger source: a retry after a query timed out */
+    @NonNull public static final String TRIGGER_RETRY = "retry";
+
+    /** Outgoing message outcome: handed to the radio */
+    @NonNull public static final String OUTBOX_ATTEMPTED = "attempted";
+
+    /** Outgoing message outcome: confirmed sent */
+    @NonNull public static final String OUTBOX_SENT = "sent";
+
+    /** Outgoing message outcome: confirmed delivered */
+    @NonNull public static final String OUTBOX_DELIVERED = "delivered";
+
+    /** Outgoing message outcome: waiting for service, to be retried */
+    @NonNull public static final String OUTBOX_RETRIED = "retried";
+
+    /** Outgoing message outcome: failed or not sent in time */
+    @NonNull public static final String OUTBOX_FAILED = "failed";
+
+    /** Notification outcome: posted */
+    @NonNull public static final String NOTIFICATION_POSTED = "posted";
+
+    /** Notification outcome: posted silently as the conversation is muted */
+    @NonNull public static final String NOTIFICATION_POSTED_SILENT = "posted_silent";
+
+    /** Notification outcome: suppressed as a projection app is in the foreground */
+    @NonNull public static final String NOTIFICATION_SUPPRESSED = "suppressed_projection";
+
+    @NonNull private static final String NO_KEY = "";
+
+    @NonNull
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>>
+            sCounters = new ConcurrentHashMap<>();
+
+    @NonNull
+    private static final ConcurrentHashMap<String, Histogram> sHistograms =
+            new ConcurrentHashMap<>();
+
+    @NonNull private static final RateCounter sObserverCallbackRate = new RateCounter();
+
+    private static final long sStartTimeMillis = SystemClock.elapsedRealtime();
+
+    private Metrics() {}
+
+    /** Increments the counter with the given name */
+    public static void increment(@NonNull String name) {
+        add(name, NO_KEY, 1);
+    }
+
+    /** Increments the counter with the given name and key */
+    public static void increment(@NonNull String name, @NonNull String key) {
+        add(name, key, 1);
+    }
+
+    /** Adds the delta to the counter with the given name and key */
+    public static void add(@NonNull String name, @NonNull String key, long delta) {
+        getCounter(name, key).add(delta);
+    }
+
+    /** Records a cache lookup for the cache with the given name */
+    public static void recordCacheLookup(@NonNull String cacheName, boolean hit) {
+        increment(hit ? CACHE_HITS : CACHE_MISSES, cacheName);
+    }
+
+    /** Records a provider change callback for the observer with the given name */
+    public static void recordObserverCallback(@NonNull String observerName) {
+        increment(OBSERVER_CALLBACKS, observerName);
+        sObserverCallbackRate.increment();
+    }
+
+    /** Records a latency sample in milliseconds for the histogram with the given name */
+    public static void recordLatency(@NonNull String name, long millis) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            histogram = sHistograms.computeIfAbsent(name, it -> new Histogram());
+        }
+        histogram.record(millis);
+    }
+
+    /** Returns the current value of the counter with the given name and key */
+    public static long getCount(@NonNull String name, @NonNull String key) {
+        ConcurrentHashMap<String, LongAdder> counters = sCounters.get(name);
+        LongAdder counter = counters == null ? null : counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /** Prints all metrics */
+    public static void dump(@NonNull PrintWriter writer) {
+        long uptimeSeconds = (SystemClock.elapsedRealtime() - sStartTimeMillis) / 1000;
+        writer.println("Metrics (since " + uptimeSeconds + "s ago):");
+        writer.println(
+                "  observer callbacks in the last minute: "
+                        + sObserverCallbackRate.getLastMinuteCount());
+
+        for (Map.Entry<String, Map<String, LongAdder>> entry : sortedCounters().entrySet()) {
+            writer.println("  " + entry.getKey() + ":");
+            for (Map.Entry<String, LongAdder> counter : entry.getValue().entrySet()) {
+                String key = counter.getKey().isEmpty() ? "total" : counter.getKey();
+                writer.println("    " + key + ": " + counter.getValue().sum());
+            }
+        }
+        dumpCacheHitRates(writer);
+
+        Map<String, Histogram> histograms = new TreeMap<>(sHistograms);
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            writer.print("  " + entry.getKey() + ": ");
+            entry.getValue().dump(writer);
+        }
+    }
+
+    private static void dumpCacheHitRates(@NonNull PrintWriter writer) {
+        ConcurrentHashMap<String, LongAdder> hits = sCounters.get(CACHE_HITS);
+        if (hits == null) {
+            return;
+        }
+        writer.println("  cache_hit_rate:");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(hits).entrySet()) {
+            long hitCount = entry.getValue().sum();
+            long total = hitCount + getCount(CACHE_MISSES, entry.getKey());
+            long hitRate = total == 0 ? 0 : hitCount * 100 / total;
+            writer.println("    " + entry.getKey() + ": " + hitRate + "%");
+        }
+    }
+
+    @NonNull
+    private static Map<String, Map<String, LongAdder>> sortedCounters() {
+        Map<String, Map<String, LongAdder>> sorted = new TreeMap<>();
+        for (Map.Entry<String, ConcurrentHashMap<String, LongAdder>> entry :
+                sCounters.entrySet()) {
+            sorted.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+        }
+        return sorted;
+    }
+
+    @NonNull
+    private static LongAdder getCounter(@NonNull String name, @NonNull String key) {
+        // get before computeIfAbsent, as the latter may lock even when the key is present
+        ConcurrentHashMap<String, LongAdder> counters = sCounters.get(name);
+        if (counters == null) {
+            counters = sCounters.computeIfAbsent(name, it -> new ConcurrentHashMap<>());
+        }
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, it -> new LongAdder());
+        }
+        return counter;
+    }
+
+    /**
+     * Latency histogram with exponential buckets in milliseconds: bucket i holds samples in
+     * [2^(i-1), 2^i), with bucket 0 holding samples under 1ms. Percentiles are reported as the
+     * upper bound of the bucket they fall in.
+     */
+    private static final class Histogram {
+        private static final int BUCKET_COUNT = 20;
+
+        @NonNull private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        @NonNull private final LongAdder mCount = new LongAdder();
+        @NonNull private final LongAdder mSum = new LongAdder();
+        @NonNull private final AtomicLong mMax = new AtomicLong();
+
+        void record(long millis) {
+            long value = Math.max(0, millis);
+            int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+            mBuckets.incrementAndGet(bucket);
+            mCount.increment();
+            mSum.add(value);
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        void dump(@NonNull PrintWriter writer) {
+            long[] buckets = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+            writer.println(
+                    "count="
+                            + count
+                            + " avg="
+                            + (count == 0 ? 0 : mSum.sum() / count)
+                            + " p50<="
+                            + percentile(buckets, count, 50)
+                            + " p95<="
+                            + percentile(buckets, count, 95)
+                            + " p99<="
+                            + percentile(buckets, count, 99)
+                            + " max="
+                            + mMax.get());
+        }
+
+        private static long percentile(@NonNull long[] buckets, long count, int percentile) {
+            long threshold = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Counts events over a sliding one minute window, with one bucket per second. A bucket is reset
+     * by the first event of a new second, so a few concurrent events at a second boundary may be
+     * lost, which is acceptable for an operational view.
+     */
+    private static final class RateCounter {
+        private static final int WINDOW_SECONDS = 60;
+
+        @NonNull private final AtomicLongArray mSeconds = new AtomicLongArray(WINDOW_SECONDS);
+        @NonNull private final AtomicLongArray mCounts = new AtomicLongArray(WINDOW_SECONDS);
+
+        void increment() {
+            long second = SystemClock.elapsedRealtime() / 1000;
+            int index = (int) (second % WINDOW_SECONDS);
+            long bucketSecond = mSeconds.get(index);
+            if (bucketSecond != second && mSeconds.compareAndSet(index, bucketSecond, second)) {
+                mCounts.set(index, 0);
+            }
+            mCounts.incrementAndGet(index);
+        }
+
+        long getLastMinuteCount() {
+            long second = SystemClock.elapsedRealtime() / 1000;
+            long count = 0;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                if (second - mSeconds.get(i) < WINDOW_SECONDS) {
+                    count += mCounts.get(i);
+                }
+            }
+            return count;
+        }
+    }
+}
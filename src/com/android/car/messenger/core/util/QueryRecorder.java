@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Records every content resolver query into a fixed size in-memory ring buffer, and queries slower
+ * than a threshold into a second one, so they survive a burst of fast queries. Both are printed by
+ * {@link com.android.car.messenger.core.service.MessengerService#dump}.
+ *
+ * <p>Recording does not allocate: all slots are allocated up front and only hold primitives and
+ * references to strings that already exist at the call site.
+ */
+public final class QueryRecorder {
+    private static final int ALL_QUERIES_CAPACITY = 128;
+    private static final int SLOW_QUERIES_CAPACITY = 32;
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 200;
+
+    @NonNull
+    private static final RingBuffer sAllQueries = new RingBuffer(ALL_QUERIES_CAPACITY);
+
+    @NonNull
+    private static final RingBuffer sSlowQueries = new RingBuffer(SLOW_QUERIES_CAPACITY);
+
+    private static volatile long sSlowQueryThresholdNanos =
+            DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS * 1_000_000L;
+
+    private QueryRecorder() {}
+
+    /** Sets the wall time above which a query is flagged as slow. */
+    public static void setSlowQueryThresholdMillis(long thresholdMillis) {
+        sSlowQueryThresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    /**
+     * Records a finished query.
+     *
+     * @param stage the pipeline stage issuing the query, see {@link TraceUtil}
+     * @param uri the queried uri, with personal data masked
+     * @param selection the selection of the query, if any
+     * @param projectionSize the number of columns requested, or 0 for all columns
+     * @param rowCount the number of rows returned, or -1 if no cursor was returned
+     * @param startTimeMillis the wall clock time the query started
+     * @param durationNanos the time the query took
+     * @param cancelled true if the query was cancelled before completing
+     */
+    public static void record(
+            @NonNull String stage,
+            @NonNull String uri,
+            @Nullable String selection,
+            int projectionSize,
+            int rowCount,
+            long startTimeMillis,
+            long durationNanos,
+            boolean cancelled) {
+        sAllQueries.add(
+                stage,
+                uri,
+                selection,
+                projectionSize,
+                rowCount,
+                startTimeMillis,
+                durationNanos,
+                cancelled);
+        if (durationNanos >= sSlowQueryThresholdNanos) {
+            sSlowQueries.add(
+                    stage,
+                    uri,
+                    selection,
+                    projectionSize,
+                    rowCount,
+                    startTimeMillis,
+                    durationNanos,
+                    cancelled);
+        }
+    }
+
+    /** Prints the slow queries followed by the most recent queries */
+    public static void dump(@NonNull PrintWriter writer) {
+        writer.println(
+                "Slow queries (>= " + sSlowQueryThresholdNanos / 1_000_000L + "ms), newest first:");
+        sSlowQueries.dump(writer);
+        writer.println("Recent queries, newest first:");
+        sAllQueries.dump(writer);
+    }
+
+    /** Ring buffer of query records stored in parallel arrays */
+    private static final class RingBuffer {
+        @NonNull private final StampedRing mRing;
+        @NonNull private final String[] mStages;
+        @NonNull private final String[] mUris;
+        @NonNull private final String[] mSelections;
+        @NonNull private final int[] mProjectionSizes;
+        @NonNull private final int[] mRowCounts;
+        @NonNull private final long[] mStartTimes;
+        @NonNull private final long[] mDurations;
+        @NonNull private final boolean[] mCancelled;
+
+        RingBuffer(int capacity) {
+            mRing = new StampedRing(capacity);
+            mStages = new String[capacity];
+            mUris = new String[capacity];
+            mSelections = new String[capacity];
+            mProjectionSizes = new int[capacity];
+            mRowCounts = new int[capacity];
+            mStartTimes = new long[capacity];
+            mDurations = new long[capacity];
+            mCancelled = new boolean[capacity];
+        }
+
+        void add(
+                @NonNull String stage,
+                @NonNull String uri,
+                @Nullable String selection,
+                int projectionSize,
+                int rowCount,
+                long startTimeMillis,
+                long durationNanos,
+                boolean cancelled) {
+            long sequence = mRing.beginWrite();
+            int slot = mRing.slotOf(sequence);
+            mStages[slot] = stage;
+            mUris[slot] = uri;
+            mSelections[slot] = selection;
+            mProjectionSizes[slot] = projectionSize;
+            mRowCounts[slot] = rowCount;
+            mStartTimes[slot] = startTimeMillis;
+            mDurations[slot] = durationNanos;
+            mCancelled[slot] = cancelled;
+            mRing.endWrite(sequence);
+        }
+
+        void dump(@NonNull PrintWriter writer) {
+            SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+            mRing.dump(
+                    writer,
+                    /* newestFirst= */ true,
+                    slot ->
+                            "  "
+                                    + format.format(new Date(mStartTimes[slot]))
+                                    + " "
+                                    + mDurations[slot] / 1_000_000L
+                                    + "ms rows="
+                                    + mRowCounts[slot]
+                                    + " columns="
+                                    + mProjectionSizes[slot]
+                                    + (mCancelled[slot] ? " CANCELLED" : "")
+                                    + " stage="
+                                    + mStages[slot]
+                                    + " uri="
+                                    + mUris[slot]
+                                    + " selection="
+                                    + mSelections[slot]);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+
+/**
+ * In-memory ring of recent log calls for post-mortem dumps, stored unformatted in preallocated
+ * parallel arrays. Formatting is deferred to {@link #dump}.
+ *
+ * <p>Only immutable arguments are kept as is: strings, boxed primitives and primitives, so
+ * recording them does not allocate. Any other argument is captured as its string when logged,
+ * so the ring neither keeps it alive nor prints the state it has at dump time.
+ */
+final class RingLog {
+    @NonNull private final StampedRing mRing;
+    @NonNull private final long[] mTimes;
+    @NonNull private final char[] mLevels;
+    @NonNull private final String[] mFormats;
+    @NonNull private final Object[] mFirstArgs;
+    @NonNull private final Object[] mSecondArgs;
+    @NonNull private final long[] mLongArgs;
+    @NonNull private final int[] mArgCounts;
+    @NonNull private final boolean[] mHasLongArg;
+    private final int mMinPriority;
+
+    /**
+     * @param minPriority the lowest {@link android.util.Log} priority recorded, such as {@link
+     *     android.util.Log#DEBUG}
+     */
+    RingLog(int capacity, int minPriority) {
+        mMinPriority = minPriority;
+        mRing = new StampedRing(capacity);
+        mTimes = new long[capacity];
+        mLevels = new char[capacity];
+        mFormats = new String[capacity];
+        mFirstArgs = new Object[capacity];
+        mSecondArgs = new Object[capacity];
+        mLongArgs = new long[capacity];
+        mArgCounts = new int[capacity];
+        mHasLongArg = new boolean[capacity];
+    }
+
+    /** Returns true if log calls of the {@link android.util.Log} priority are recorded */
+    boolean records(int priority) {
+        return priority >= mMinPriority;
+    }
+
+    /** Records a log call with up to two object arguments */
+    void add(
+            char level,
+            @NonNull String format,
+            int argCount,
+            @Nullable Object firstArg,
+            @Nullable Object secondArg) {
+        long sequence = mRing.beginWrite();
+        int slot = mRing.slotOf(sequence);
+        mTimes[slot] = System.currentTimeMillis();
+        mLevels[slot] = level;
+        mFormats[slot] = format;
+        mArgCounts[slot] = argCount;
+        mFirstArgs[slot] = capture(firstArg);
+        mSecondArgs[slot] = capture(secondArg);
+        mHasLongArg[slot] = false;
+        mRing.endWrite(sequence);
+    }
+
+    /** Records a log call with a single primitive argument */
+    void add(char level, @NonNull String format, long arg) {
+        long sequence = mRing.beginWrite();
+        int slot = mRing.slotOf(sequence);
+        mTimes[slot] = System.currentTimeMillis();
+        mLevels[slot] = level;
+        mFormats[slot] = format;
+        mArgCounts[slot] = 1;
+        mFirstArgs[slot] = null;
+        mSecondArgs[slot] = null;
+        mLongArgs[slot] = arg;
+        mHasLongArg[slot] = true;
+        mRing.endWrite(sequence);
+    }
+
+    /** Prints the recorded log calls, oldest first */
+    void dump(@NonNull PrintWriter writer) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        mRing.dump(
+                writer,
+                /* newestFirst= */ false,
+                slot ->
+                        "  "
+                                + dateFormat.format(new Date(mTimes[slot]))
+                                + " "
+                                + mLevels[slot]
+                                + " "
+                                + format(slot));
+    }
+
+    /** Returns the argument if it is immutable, or its string otherwise */
+    @Nullable
+    private static Object capture(@Nullable Object arg) {
+        if (arg == null
+                || arg instanceof String
+                || arg instanceof Integer
+                || arg instanceof Long
+                || arg instanceof Boolean
+                || arg instanceof Character
+                || arg instanceof Short
+                || arg instanceof Byte
+                || arg instanceof Float
+                || arg instanceof Double) {
+            return arg;
+        }
+        return String.valueOf(arg);
+    }
+
+    @NonNull
+    private String format(int slot) {
+        String format = mFormats[slot];
+        try {
+            if (mHasLongArg[slot]) {
+                return String.format(Locale.US, format, mLongArgs[slot]);
+            }
+            switch (mArgCounts[slot]) {
+                case 0:
+                    return format;
+                case 1:
+                    return String.format(Locale.US, format, mFirstArgs[slot]);
+                default:
+                    return String.format(Locale.US, format, mFirstArgs[slot], mSecondArgs[slot]);
+            }
+        } catch (IllegalFormatException e) {
+            return format;
+        }
+    }
+}
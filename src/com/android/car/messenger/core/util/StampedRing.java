@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+/**
+ * Claims the slots of a fixed size ring of records kept by the owner in preallocated parallel
+ * arrays, so recording does not allocate.
+ *
+ * <p>Writers claim a sequence number and stamp their slot with it once the record is complete.
+ * The dump skips slots whose stamp changes while reading, as those are being overwritten.
+ */
+final class StampedRing {
+    private static final long WRITING = -1;
+
+    private final int mCapacity;
+    @NonNull private final AtomicLong mNextSequence = new AtomicLong();
+    @NonNull private final AtomicLongArray mStamps;
+
+    StampedRing(int capacity) {
+        mCapacity = capacity;
+        mStamps = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mStamps.set(i, WRITING);
+        }
+    }
+
+    /** Claims the slot of the next record, which must be ended with {@link #endWrite} */
+    long beginWrite() {
+        long sequence = mNextSequence.getAndIncrement();
+        mStamps.set(slotOf(sequence), WRITING);
+        return sequence;
+    }
+
+    /** Publishes the record written to the slot claimed for the sequence */
+    void endWrite(long sequence) {
+        mStamps.set(slotOf(sequence), sequence);
+    }
+
+    /** Returns the slot of the arrays the record with the sequence is written to */
+    int slotOf(long sequence) {
+        return (int) (sequence % mCapacity);
+    }
+
+    /**
+     * Prints a line per complete record, formatted from its slot.
+     *
+     * @param newestFirst whether the newest record is printed first, or the oldest
+     * @param formatter returns the line of the record in a slot
+     */
+    void dump(
+            @NonNull PrintWriter writer,
+            boolean newestFirst,
+            @NonNull IntFunction<String> formatter) {
+        long newest = mNextSequence.get() - 1;
+        long oldest = Math.max(0, newest - mCapacity + 1);
+        for (long i = 0; i <= newest - oldest; i++) {
+            long sequence = newestFirst ? newest - i : oldest + i;
+            int slot = slotOf(sequence);
+            if (mStamps.get(slot) != sequence) {
+                continue;
+            }
+            String line = formatter.apply(slot);
+            if (mStamps.get(slot) == sequence) {
+                writer.println(line);
+            }
+        }
+    }
+}
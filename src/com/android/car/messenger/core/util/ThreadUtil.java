@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import android.os.Looper;
+import android.os.Process;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Util class for running work off the main thread. */
+public final class ThreadUtil {
+    private static final int BACKGROUND_THREAD_COUNT = 4;
+
+    @NonNull private static final String BACKGROUND_THREAD_PREFIX = "CarMessengerBg-";
+
+    @NonNull
+    private static final ThreadFactory sBackgroundThreadFactory =
+            new ThreadFactory() {
+                @NonNull private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(
+                            () -> {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            },
+                            BACKGROUND_THREAD_PREFIX + mCount.incrementAndGet());
+                }
+            };
+
+    @NonNull
+    private static final ExecutorService sBackgroundExecutor =
+            Executors.newFixedThreadPool(BACKGROUND_THREAD_COUNT, sBackgroundThreadFactory);
+
+    @NonNull private static final SparseArray<Lane> sAccountLanes = new SparseArray<>();
+
+    private ThreadUtil() {}
+
+    /** Returns the shared executor for disk, provider and binder work. */
+    @NonNull
+    public static Executor getBackgroundExecutor() {
+        return sBackgroundExecutor;
+    }
+
+    /** Runs the given work on the shared background executor. */
+    public static void runOnBackground(@NonNull Runnable runnable) {
+        sBackgroundExecutor.execute(runnable);
+    }
+
+    /**
+     * Returns the executor lane of an account. Work on a lane runs one task at a time, in order, on
+     * the shared background executor, and goes back to the end of its queue after each task. An
+     * account with a long backlog, such as a phone doing a large MAP sync, then holds at most one
+     * background thread and cannot starve the lanes of other accounts.
+     */
+    @NonNull
+    public static Executor getAccountExecutor(int accountId) {
+        synchronized (sAccountLanes) {
+            Lane lane = sAccountLanes.get(accountId);
+            if (lane == null) {
+                lane = new Lane();
+                sAccountLanes.put(accountId, lane);
+            }
+            return lane;
+        }
+    }
+
+    /**
+     * Returns a new serial executor, not tied to an account, that takes turns with the account
+     * lanes on the shared background executor.
+     */
+    @NonNull
+    public static Executor newSerialExecutor() {
+        return new Lane();
+    }
+
+    /** Returns true if the caller is running on the main thread. */
+    public static boolean isMainThread() {
+        return Looper.getMainLooper().isCurrentThread();
+    }
+
+    /** Serial executor taking turns with the other lanes on the shared background executor */
+    private static final class Lane implements Executor {
+        @NonNull private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private boolean mScheduled;
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            synchronized (this) {
+                mTasks.add(runnable);
+                if (mScheduled) {
+                    return;
+                }
+                mScheduled = true;
+            }
+            sBackgroundExecutor.execute(this::runNext);
+        }
+
+        private void runNext() {
+            Runnable task;
+            synchronized (this) {
+                task = mTasks.poll();
+            }
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } finally {
+                boolean hasMore;
+                synchronized (this) {
+                    hasMore = !mTasks.isEmpty();
+                    mScheduled = hasMore;
+                }
+                if (hasMore) {
+                    sBackgroundExecutor.execute(this::runNext);
+                }
+            }
+        }
+    }
+}
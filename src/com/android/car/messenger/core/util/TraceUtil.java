@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import android.database.Cursor;
+import android.os.Process;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Util class for adding trace sections to the fetch and render pipeline, so a single Perfetto
+ * capture shows the path from a provider change to a drawn row or posted notification.
+ *
+ * <p>Section names are only decorated with the thread id while tracing is enabled, so the calls
+ * are cheap otherwise.
+ */
+public final class TraceUtil {
+    /** Observer callback, from a provider change notification */
+    @NonNull public static final String OBSERVER_CALLBACK = "CarMessenger.onChange";
+
+    /** Query for the list of threads of a user account */
+    @NonNull public static final String QUERY_THREAD_LIST = "CarMessenger.queryThreadList";
+
+    /** Query for the metadata of a single thread */
+    @NonNull public static final String QUERY_THREAD = "CarMessenger.queryThread";
+
+    /** Query for the threads of the messages named by change notifications */
+    @NonNull
+    public static final String QUERY_CHANGED_MESSAGES = "CarMessenger.queryChangedMessages";
+
+    /** Full fetch of a single conversation */
+    @NonNull public static final String FETCH_CONVERSATION = "CarMessenger.fetchConversation";
+
+    /** Fetch of the conversation list of a user account */
+    @NonNull
+    public static final String FETCH_CONVERSATION_LIST = "CarMessenger.fetchConversationList";
+
+    /** Fetch of a page of older messages of a conversation */
+    @NonNull public static final String FETCH_MESSAGE_HISTORY = "CarMessenger.fetchMessageHistory";
+
+    /** Indexing of new messages into the search index */
+    @NonNull public static final String INDEX_MESSAGES = "CarMessenger.indexMessages";
+
+    /** Search of the message index */
+    @NonNull public static final String SEARCH_MESSAGES = "CarMessenger.searchMessages";
+
+    /** Query for the MMS messages of a conversation */
+    @NonNull public static final String QUERY_MMS = "CarMessenger.queryMms";
+
+    /** Query for the SMS messages of a conversation */
+    @NonNull public static final String QUERY_SMS = "CarMessenger.querySms";
+
+    /** Query for the text parts of an MMS message */
+    @NonNull public static final String QUERY_MMS_PARTS = "CarMessenger.queryMmsParts";
+
+    /** Query for the originator address of an MMS message */
+    @NonNull public static final String QUERY_MMS_ADDR = "CarMessenger.queryMmsAddr";
+
+    /** Fetch of all participants of a conversation */
+    @NonNull public static final String FETCH_CONTACTS = "CarMessenger.fetchContacts";
+
+    /** Query for a single contact */
+    @NonNull public static final String QUERY_CONTACT = "CarMessenger.queryContact";
+
+    /** Query for the phone number of a recipient id */
+    @NonNull
+    public static final String QUERY_CANONICAL_ADDRESS = "CarMessenger.queryCanonicalAddress";
+
+    /** Composition of the conversation avatar */
+    @NonNull public static final String COMPOSE_AVATAR = "CarMessenger.composeAvatar";
+
+    /** Query for new unread messages */
+    @NonNull public static final String QUERY_NEW_MESSAGES = "CarMessenger.queryNewMessages";
+
+    /** Conversion of conversations into UI items */
+    @NonNull public static final String CONVERT_TO_UI = "CarMessenger.convertToUi";
+
+    /** Binding of a UI item to a row */
+    @NonNull public static final String BIND_ROW = "CarMessenger.bindRow";
+
+    /** Posting of a message notification */
+    @NonNull public static final String POST_NOTIFICATION = "CarMessenger.postNotification";
+
+    /** Async section from a published conversation list to its UI conversion */
+    @NonNull public static final String ASYNC_PUBLISH_TO_UI = "CarMessenger.publishToUi";
+
+    /** Async section from a detected new message to its posted notification */
+    @NonNull
+    public static final String ASYNC_NEW_MESSAGE_TO_NOTIFICATION =
+            "CarMessenger.newMessageToNotification";
+
+    @NonNull private static final String ROWS_SUFFIX = "#rows";
+    @NonNull private static final String THREAD_ID_PREFIX = " tid=";
+
+    @NonNull private static final AtomicInteger sNextCookie = new AtomicInteger();
+
+    private TraceUtil() {}
+
+    /**
+     * Begins a section on the calling thread. Must be followed by {@link #endSection()} on the same
+     * thread, typically in a finally block.
+     */
+    public static void beginSection(@NonNull String sectionName) {
+        Trace.beginSection(Trace.isEnabled() ? withThreadId(sectionName) : sectionName);
+    }
+
+    /** Ends the last section begun on the calling thread. */
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Begins an async section that may end on a different thread.
+     *
+     * @return the cookie identifying the section among concurrent sections with the same name, to
+     *     carry with the value it traces and pass to {@link #endAsyncSection}
+     */
+    public static int beginAsyncSection(@NonNull String sectionName) {
+        int cookie = sNextCookie.incrementAndGet();
+        Trace.beginAsyncSection(sectionName, cookie);
+        return cookie;
+    }
+
+    /** Ends an async section begun with {@link #beginAsyncSection(String)}. */
+    public static void endAsyncSection(@NonNull String sectionName, int cookie) {
+        Trace.endAsyncSection(sectionName, cookie);
+    }
+
+    /** Records the number of rows a stage processed as a counter track. */
+    public static void setRowCount(@NonNull String sectionName, long rowCount) {
+        if (Trace.isEnabled()) {
+            Trace.setCounter(sectionName + ROWS_SUFFIX, rowCount);
+        }
+    }
+
+    /** Records the number of rows returned by a query as a counter track. */
+    public static void setRowCount(@NonNull String sectionName, @Nullable Cursor cursor) {
+        if (Trace.isEnabled()) {
+            Trace.setCounter(sectionName + ROWS_SUFFIX, cursor == null ? 0 : cursor.getCount());
+        }
+    }
+
+    @NonNull
+    private static String withThreadId(@NonNull String sectionName) {
+        return sectionName + THREAD_ID_PREFIX + Process.myTid();
+    }
+}
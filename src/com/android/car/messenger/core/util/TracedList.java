@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list carrying the cookie of the async trace section it was published under, so
+ * whoever consumes it ends that section.
+ *
+ * @param <E> the type of the elements
+ */
+public final class TracedList<E> extends AbstractList<E> implements RandomAccess {
+    @NonNull private final List<E> mList;
+    private final int mTraceCookie;
+
+    /** @param list an immutable list, which is not copied */
+    public TracedList(@NonNull List<E> list, int traceCookie) {
+        mList = list;
+        mTraceCookie = traceCookie;
+    }
+
+    /** Returns the cookie to pass to {@link TraceUtil#endAsyncSection} */
+    public int getTraceCookie() {
+        return mTraceCookie;
+    }
+
+    @Override
+    public E get(int index) {
+        return mList.get(index);
+    }
+
+    @Override
+    public int size() {
+        return mList.size();
+    }
+}
@@ -242,7 +242,7 @@ public class VoiceUtil {
             return;
         }
         final CharSequence message = bundle.getCharSequence(Intent.EXTRA_TEXT);
-        L.d("voiceReply: " + message);
+        L.d("voiceReply: %s", message);
         if (!TextUtils.isEmpty(message)) {
             AppFactory.get()
                     .getDataModel()
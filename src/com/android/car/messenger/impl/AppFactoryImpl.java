@@ -21,23 +21,34 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
+import android.content.res.Resources;
 import android.os.IBinder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
+import com.android.car.messenger.R;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.interfaces.DataModel;
 import com.android.car.messenger.core.service.MessengerService;
+import com.android.car.messenger.core.shared.MessageConstants;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.core.util.QueryRecorder;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.impl.datamodels.MessageIndexer;
 import com.android.car.messenger.impl.datamodels.TelephonyDataModel;
+import com.android.car.messenger.impl.datamodels.UserAccountLiveData;
+import com.android.car.messenger.impl.datamodels.util.QueryDeadlines;
+import com.android.car.messenger.impl.datamodels.util.QueryDeadlines.QueryClass;
 
 /* App Factory Implementation */
 class AppFactoryImpl extends AppFactory {
     @NonNull private Context mApplicationContext;
     @NonNull private DataModel mDataModel;
-    @NonNull private SharedPreferences mSharedPreferences;
-    @Nullable private MessengerService mMessengerService;
+    @Nullable private volatile SharedPreferences mSharedPreferences;
+    @Nullable private volatile MessengerService mMessengerService;
 
     @NonNull
     private final ServiceConnection mServiceConnection =
@@ -67,16 +78,43 @@ class AppFactoryImpl extends AppFactory {
         sRegistered = true;
 
         // At this point Factory is published. Services can now get initialized and depend on
-        // Factory.get().
+        // Factory.get(). Only lightweight handles are set here, anything requiring disk or binder
+        // work is resolved lazily by its getter or ahead of time by the warm up.
         factory.mApplicationContext = application.getApplicationContext();
-        factory.mDataModel = new TelephonyDataModel();
-        factory.mSharedPreferences =
-                PreferenceManager.getDefaultSharedPreferences(factory.mApplicationContext);
+        factory.mDataModel = new TelephonyDataModel(factory.mApplicationContext);
+        Resources resources = factory.mApplicationContext.getResources();
+        L.enableRingLog(
+                resources.getInteger(R.integer.ring_log_capacity),
+                resources.getInteger(R.integer.ring_log_min_priority));
+        MainThreadGuard.init(factory.mApplicationContext);
+        QueryRecorder.setSlowQueryThresholdMillis(
+                resources.getInteger(R.integer.slow_query_threshold_ms));
+        QueryDeadlines.setDeadlineMillis(
+                QueryClass.THREAD_LIST,
+                resources.getInteger(R.integer.thread_list_query_deadline_ms));
+        QueryDeadlines.setDeadlineMillis(
+                QueryClass.MESSAGES, resources.getInteger(R.integer.messages_query_deadline_ms));
+        QueryDeadlines.setDeadlineMillis(
+                QueryClass.PARTS, resources.getInteger(R.integer.parts_query_deadline_ms));
+        QueryDeadlines.setDeadlineMillis(
+                QueryClass.CONTACTS, resources.getInteger(R.integer.contacts_query_deadline_ms));
+        ThreadUtil.runOnBackground(factory::warmUp);
+    }
 
+    /**
+     * Resolves the heavyweight dependencies off the main thread, so the first caller on the main
+     * thread finds them ready instead of waiting on disk or binder work.
+     */
+    private void warmUp() {
         // Create Messenger Service
-        Intent intent = new Intent(factory.mApplicationContext, MessengerService.class);
-        factory.mApplicationContext.bindService(
-                intent, factory.mServiceConnection, Context.BIND_AUTO_CREATE);
+        Intent intent = new Intent(mApplicationContext, MessengerService.class);
+        mApplicationContext.bindService(intent, mServiceConnection, Context.BIND_AUTO_CREATE);
+
+        // Blocks until the preferences file is loaded from disk.
+        getSharedPreferences().contains(MessageConstants.KEY_MUTED_CONVERSATIONS);
+        UserAccountLiveData.getInstance();
+        getCarStateListener();
+        MessageIndexer.getInstance().start();
     }
 
     @Override
@@ -100,6 +138,16 @@ class AppFactoryImpl extends AppFactory {
     @Override
     @NonNull
     public SharedPreferences getSharedPreferences() {
-        return mSharedPreferences;
+        SharedPreferences sharedPreferences = mSharedPreferences;
+        if (sharedPreferences == null) {
+            synchronized (this) {
+                if (mSharedPreferences == null) {
+                    mSharedPreferences =
+                            PreferenceManager.getDefaultSharedPreferences(mApplicationContext);
+                }
+                sharedPreferences = mSharedPreferences;
+            }
+        }
+        return sharedPreferences;
     }
 }
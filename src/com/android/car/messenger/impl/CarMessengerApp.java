@@ -48,7 +48,7 @@ public class CarMessengerApp extends Application implements UncaughtExceptionHan
     public void uncaughtException(final Thread thread, final Throwable ex) {
         final boolean background = getMainLooper().getThread() != thread;
         if (background) {
-            L.e("Uncaught exception in background thread " + thread, ex);
+            L.e("Uncaught exception in background thread %s", thread, ex);
             final Handler handler = new Handler(getMainLooper());
             handler.post(() -> nullSafeUncaughtException(thread, ex));
         } else {
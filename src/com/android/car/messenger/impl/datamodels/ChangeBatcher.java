@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Collects the uris of change notifications arriving close together, and hands them to a
+ * consumer as one batch on an executor.
+ *
+ * <p>The telephony provider sends a change as several notifications, one for the changed row and
+ * more for its collection uris. Batching them lets the row uri tell what the others changed.
+ */
+class ChangeBatcher {
+    /** How long notifications are collected after the first one of a batch */
+    static final long BATCH_WINDOW_MILLIS = 50;
+
+    @NonNull private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull private final Executor mExecutor;
+    @NonNull private final Consumer<Set<Uri>> mConsumer;
+
+    // Guarded by this, as notifications arrive on binder threads
+    @NonNull private Set<Uri> mPendingUris = new HashSet<>();
+    private boolean mScheduled;
+
+    ChangeBatcher(@NonNull Executor executor, @NonNull Consumer<Set<Uri>> consumer) {
+        mExecutor = executor;
+        mConsumer = consumer;
+    }
+
+    /** Adds the uris of a notification to the next batch */
+    void add(@NonNull Collection<Uri> uris) {
+        synchronized (this) {
+            mPendingUris.addAll(uris);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        sHandler.postDelayed(() -> mExecutor.execute(this::dispatch), BATCH_WINDOW_MILLIS);
+    }
+
+    private void dispatch() {
+        Set<Uri> uris;
+        synchronized (this) {
+            uris = mPendingUris;
+            mPendingUris = new HashSet<>();
+            mScheduled = false;
+        }
+        mConsumer.accept(uris);
+    }
+}
@@ -24,6 +24,10 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.MediatorLiveData;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.TraceUtil;
+
+import java.util.Collection;
 
 /**
  * Abstract class for Content Provider live data implementations
@@ -35,12 +39,20 @@ public abstract class ContentProviderLiveData<T> extends MediatorLiveData<T> {
     private final ContentObserver mContentObserver =
             new ContentObserver(null) {
                 @Override
-                public void onChange(boolean selfChange) {
-                    onDataChange();
+                public void onChange(
+                        boolean selfChange, @NonNull Collection<Uri> uris, int flags) {
+                    Metrics.recordObserverCallback(mObserverName);
+                    TraceUtil.beginSection(TraceUtil.OBSERVER_CALLBACK);
+                    try {
+                        onDataChange(uris);
+                    } finally {
+                        TraceUtil.endSection();
+                    }
                 }
             };
 
     @NonNull private final Uri[] mUris;
+    @NonNull private final String mObserverName = getClass().getSimpleName();
     private boolean mIsRegistered = false;
 
     /** Constructor that takes in a list of content provider uris to observe */
@@ -77,4 +89,12 @@ public abstract class ContentProviderLiveData<T> extends MediatorLiveData<T> {
 
     /** Abstract method called on data change */
     public abstract void onDataChange();
+
+    /**
+     * Called on data change with the uris that changed. Reloads everything through {@link
+     * #onDataChange()} unless overridden to reload only what the uris name.
+     */
+    public void onDataChange(@NonNull Collection<Uri> uris) {
+        onDataChange();
+    }
 }
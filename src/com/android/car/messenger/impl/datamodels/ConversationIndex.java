@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Conversations ordered most recent first, by a key of their timestamp and id computed once when
+ * a conversation is added.
+ *
+ * <p>A single conversation is added, replaced, moved or removed in O(log n), without sorting the
+ * others again. The published list is an immutable snapshot. Taking one after a change copies the
+ * references of all the conversations, in O(n), but it is taken at most once per publish, and the
+ * conversations themselves are shared with the previous snapshot.
+ *
+ * <p>Conversations with the same timestamp are ordered by comparing their ids as strings, rather
+ * than kept in the order they were fetched in.
+ *
+ * <p>Not thread safe.
+ */
+class ConversationIndex {
+    @NonNull private final TreeMap<Key, CompactConversation> mConversations = new TreeMap<>();
+    @NonNull private final Map<String, Key> mKeys = new HashMap<>();
+    @Nullable private List<CompactConversation> mSnapshot;
+
+    /** Replaces the conversations of the index */
+    void replaceAll(@NonNull Collection<CompactConversation> conversations) {
+        mConversations.clear();
+        mKeys.clear();
+        for (CompactConversation conversation : conversations) {
+            upsert(conversation);
+        }
+        mSnapshot = null;
+    }
+
+    /** Adds the conversation, or replaces the one with the same id, moving it if its time did */
+    void upsert(@NonNull CompactConversation conversation) {
+        Key key = new Key(conversation.getTimestamp(), conversation.getId());
+        Key previousKey = mKeys.put(key.mId, key);
+        if (previousKey != null && previousKey.compareTo(key) != 0) {
+            mConversations.remove(previousKey);
+        }
+        mConversations.put(key, conversation);
+        mSnapshot = null;
+    }
+
+    /** Removes the conversation with the id, if any */
+    void remove(@NonNull String conversationId) {
+        Key key = mKeys.remove(conversationId);
+        if (key != null) {
+            mConversations.remove(key);
+            mSnapshot = null;
+        }
+    }
+
+    /** Returns the conversation with the id, or null if it is not in the index */
+    @Nullable
+    CompactConversation get(@NonNull String conversationId) {
+        Key key = mKeys.get(conversationId);
+        return key == null ? null : mConversations.get(key);
+    }
+
+    /** Returns the number of conversations */
+    int size() {
+        return mConversations.size();
+    }
+
+    /** Returns true if the conversation with the id is the least recent one */
+    boolean isLast(@NonNull String conversationId) {
+        return !mConversations.isEmpty() && mConversations.lastKey().mId.equals(conversationId);
+    }
+
+    /**
+     * Returns the conversations most recent first, as an immutable list copied in O(n) if the index
+     * changed since the last call
+     */
+    @NonNull
+    List<CompactConversation> snapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = Collections.unmodifiableList(new ArrayList<>(mConversations.values()));
+        }
+        return mSnapshot;
+    }
+
+    /** Orders by descending timestamp, then by id so conversations at the same time are kept */
+    private static class Key implements Comparable<Key> {
+        private final long mTimestamp;
+        @NonNull private final String mId;
+
+        Key(long timestamp, @NonNull String id) {
+            mTimestamp = timestamp;
+            mId = id;
+        }
+
+        @Override
+        public int compareTo(@NonNull Key other) {
+            int byTimestamp = Long.compare(other.mTimestamp, mTimestamp);
+            return byTimestamp != 0 ? byTimestamp : mId.compareTo(other.mId);
+        }
+    }
+}
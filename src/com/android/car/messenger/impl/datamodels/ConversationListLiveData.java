@@ -17,117 +17,567 @@
 package com.android.car.messenger.impl.datamodels;
 
 import static android.provider.Telephony.TextBasedSmsColumns.THREAD_ID;
+import static android.provider.Telephony.ThreadsColumns.DATE;
 
 import static com.android.car.messenger.impl.datamodels.util.ConversationFetchUtil.fetchConversation;
 import static com.android.car.messenger.impl.datamodels.util.ConversationFetchUtil.loadMutedList;
 
-import static java.util.Comparator.comparingLong;
-
 import android.content.SharedPreferences;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.CursorIndexOutOfBoundsException;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.provider.Telephony;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.android.car.messenger.R;
 import com.android.car.messenger.common.Conversation;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.models.UserAccount;
 import com.android.car.messenger.core.shared.MessageConstants;
-import com.android.car.messenger.core.util.ConversationUtil;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.core.util.TracedList;
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+import com.android.car.messenger.impl.datamodels.util.FetchGenerations;
+import com.android.car.messenger.impl.datamodels.util.FetchGenerations.Generation;
+import com.android.car.messenger.impl.datamodels.util.QueryTimeoutException;
+import com.android.car.messenger.impl.datamodels.util.RetryBackoff;
+import com.android.car.messenger.impl.datamodels.util.ThreadChangeResolver;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-/** Publishes a list of {@link Conversation} for a {@link UserAccount} to subscribers */
+/**
+ * Publishes a list of {@link Conversation} for a {@link UserAccount} to subscribers. Shared by
+ * the subscribers of the account through {@link ConversationRepository}.
+ */
 class ConversationListLiveData extends ContentProviderLiveData<Collection<Conversation>> {
+    /** How long the list keeps observing after its last subscriber left, before it is released */
+    static final long LINGER_MILLIS = 5_000;
+
     @NonNull private final UserAccount mUserAccount;
+    @NonNull private final ConversationMirror mMirror;
+    @NonNull private final Executor mExecutor;
+    // Serial and apart from the lane, so a local change is published without waiting for fetches
+    @NonNull private final Executor mPublishExecutor = ThreadUtil.newSerialExecutor();
+    @NonNull private final AtomicBoolean mObserverFetchQueued = new AtomicBoolean();
+    @NonNull private final FetchGenerations mGenerations = new FetchGenerations();
+    @NonNull private final RetryBackoff mRetryBackoff = new RetryBackoff();
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull private final Runnable mRetry = () -> startFetch(Metrics.TRIGGER_RETRY);
+    @NonNull private final Runnable mRelease = this::release;
+    @NonNull private final ChangeBatcher mChangeBatcher;
+    private final int mPageSize;
+    private final int mMaxHydratedConversations;
 
-    @NonNull
-    private static final Comparator<Conversation> sConversationComparator =
-            comparingLong(ConversationUtil::getConversationTimestamp).reversed();
+    // Guarded by this, as fetches run on background threads
+    private int mLimit;
+    private boolean mHasMore;
+    private boolean mLoadingMore;
+    // Main thread only, true while the list has no subscriber but is not released yet
+    private boolean mLingering;
+    // Main thread only, true while the sources replay their last values on activation
+    private boolean mActivating;
+    // The conversations last read from the provider or the mirror, before local changes, or
+    // null until the first are read
+    @Nullable private ConversationIndex mIndex;
 
     @NonNull
     private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceChangeListener =
-            (sharedPreferences, key) -> onSharedPreferenceChanged(key);
+            (sharedPreferences, key) ->
+                    mExecutor.execute(() -> onSharedPreferenceChanged(key));
 
-    ConversationListLiveData(@NonNull UserAccount userAccount) {
-        super(Telephony.MmsSms.CONTENT_URI);
+    ConversationListLiveData(
+            @NonNull UserAccount userAccount, @NonNull ConversationMirror mirror) {
+        // The message uris tell which threads a change is about
+        super(Telephony.MmsSms.CONTENT_URI, Telephony.Sms.CONTENT_URI, Telephony.Mms.CONTENT_URI);
         mUserAccount = userAccount;
+        mMirror = mirror;
+        // Fetches of an account run in order on its lane, so they never overlap
+        mExecutor = ThreadUtil.getAccountExecutor(userAccount.getId());
+        mChangeBatcher = new ChangeBatcher(mExecutor, this::refetchChangedThreads);
         // source to refresh the data to avoid stale data when resuming from background
-        addSource(RefreshLiveData.getInstance(), it -> onDataChange());
+        addSource(RefreshLiveData.getInstance(), it -> onRefresh());
+        Resources resources = AppFactory.get().getContext().getResources();
+        mPageSize = resources.getInteger(R.integer.conversation_page_size);
+        mMaxHydratedConversations = resources.getInteger(R.integer.max_hydrated_conversations);
+        mLimit = mPageSize;
+        addSource(LoadMoreLiveData.getInstance(), this::onLoadMore);
+        addSource(LocalChangeLiveData.getInstance(), it -> republish());
+    }
+
+    private void onRefresh() {
+        // The last refresh is redelivered on first activation, when onActive already loads
+        if (getValue() == null) {
+            return;
+        }
+        startFetch(Metrics.TRIGGER_REFRESH);
+    }
+
+    /** Grows the list by a page, for as long as the account has more threads */
+    private void onLoadMore(int accountId) {
+        // The last request is redelivered on each activation, which must not grow the list again
+        if (accountId != mUserAccount.getId() || getValue() == null || mActivating) {
+            return;
+        }
+        synchronized (this) {
+            if (mLoadingMore || !mHasMore) {
+                return;
+            }
+            mLoadingMore = true;
+            mLimit += mPageSize;
+        }
+        startFetch(Metrics.TRIGGER_LOAD_MORE);
     }
 
     @Override
     protected void onActive() {
+        if (mLingering) {
+            // Still observing and up to date, the new subscriber is replayed the last list
+            mLingering = false;
+            mMainHandler.removeCallbacks(mRelease);
+            return;
+        }
+        mActivating = true;
         super.onActive();
+        mActivating = false;
         SharedPreferences sharedPrefs = AppFactory.get().getSharedPreferences();
         sharedPrefs.registerOnSharedPreferenceChangeListener(mPreferenceChangeListener);
         if (getValue() == null) {
-            onDataChange();
+            startFetch(Metrics.TRIGGER_FIRST_LOAD);
         }
     }
 
     @Override
     protected void onInactive() {
+        // Released only if no subscriber comes back soon, so a resubscribe does not fetch again
+        mLingering = true;
+        mMainHandler.postDelayed(mRelease, LINGER_MILLIS);
+    }
+
+    /**
+     * Stops observing the provider, the preferences and the refresh signals, and cancels the
+     * fetches in flight. Does nothing while the list has subscribers. The list observes again if
+     * it is subscribed to after, from its first page.
+     */
+    @MainThread
+    void release() {
+        mMainHandler.removeCallbacks(mRelease);
+        if (!mLingering) {
+            return;
+        }
+        mLingering = false;
         super.onInactive();
         SharedPreferences sharedPrefs = AppFactory.get().getSharedPreferences();
         sharedPrefs.unregisterOnSharedPreferenceChangeListener(mPreferenceChangeListener);
+        mMainHandler.removeCallbacks(mRetry);
+        mGenerations.next();
+        synchronized (this) {
+            // Pages from the first again when observed again, so the fetches stay bounded
+            mLimit = mPageSize;
+        }
     }
 
     @Override
     public void onDataChange() {
-        Cursor cursor = ConversationsPerDeviceFetchManager.getCursor(mUserAccount.getId());
-        ArrayList<Conversation> conversations = new ArrayList<>();
-        while (cursor != null && cursor.moveToNext()) {
-            String conversationId = cursor.getString(cursor.getColumnIndex(THREAD_ID));
-            Conversation conversation = null;
-            try {
-                conversation = fetchConversation(conversationId);
-            } catch (CursorIndexOutOfBoundsException e) {
-                L.w("Error occurred fetching conversation Id " + conversationId);
-            } finally {
-                if (conversation != null) {
-                    conversations.add(conversation);
+        // A burst of changes needs only one fetch, which supersedes the one running, if any
+        if (mObserverFetchQueued.compareAndSet(false, true)) {
+            Generation generation = mGenerations.next();
+            mExecutor.execute(
+                    () -> {
+                        mObserverFetchQueued.set(false);
+                        fetchConversations(Metrics.TRIGGER_OBSERVER, generation);
+                    });
+        }
+    }
+
+    @Override
+    public void onDataChange(@NonNull Collection<Uri> uris) {
+        mChangeBatcher.add(uris);
+    }
+
+    /**
+     * Refetches only the threads named by a batch of change notifications, or fetches the whole
+     * list if they cannot be resolved or change which threads are listed.
+     *
+     * <p>This does not start a generation, so a full fetch in flight is not cancelled by a
+     * narrower one, but a newer full fetch cancels this one.
+     */
+    private void refetchChangedThreads(@NonNull Set<Uri> uris) {
+        if (getValue() == null) {
+            onDataChange();
+            return;
+        }
+        Generation generation = mGenerations.current();
+        CancellationSignal cancellationSignal = generation.getCancellationSignal();
+        try {
+            Set<String> threadIds =
+                    ThreadChangeResolver.resolveThreadIds(getContext(), uris, cancellationSignal);
+            if (threadIds == null && ThreadChangeResolver.isCollectionOnly(uris)) {
+                // The app's own writes are announced on collection uris only
+                threadIds = LocalChangeLiveData.getInstance().getRecentWrites(uris);
+            }
+            List<CompactConversation> refetched = new ArrayList<>();
+            if (threadIds == null || !syncThreads(threadIds, cancellationSignal, refetched)) {
+                onDataChange();
+                return;
+            }
+            Metrics.increment(Metrics.FETCHES, Metrics.TRIGGER_OBSERVER_THREADS);
+            int accountId = mUserAccount.getId();
+            boolean published = generation.publishIfCurrent(() -> publishChanged(refetched));
+            if (published && !isListed(refetched)) {
+                // A refetched conversation may now belong among the ones not loaded
+                int limit;
+                synchronized (this) {
+                    limit = mLimit;
+                }
+                List<CompactConversation> conversations =
+                        mMirror.getConversations(accountId, limit, loadMutedList());
+                generation.publishIfCurrent(() -> publish(conversations));
+            }
+        } catch (QueryTimeoutException e) {
+            L.w("Thread refetch timed out on a %s query", e.getQueryClass().getMetricsKey());
+            mMainHandler.postDelayed(mRetry, mRetryBackoff.nextDelayMillis());
+        } catch (OperationCanceledException e) {
+            Metrics.increment(Metrics.FETCHES_SUPERSEDED, Metrics.TRIGGER_OBSERVER_THREADS);
+        }
+    }
+
+    /**
+     * Refetches the conversations of the account among the threads into the mirror, whether or
+     * not their date changed, as a change such as a read flag does not move it.
+     *
+     * @param refetched receives the refetched conversations
+     * @return false if a full sync is needed instead, as a thread is new to the mirror or a
+     *     mirrored thread no longer exists
+     * @throws OperationCanceledException if the signal was cancelled
+     */
+    private boolean syncThreads(
+            @NonNull Set<String> threadIds,
+            @NonNull CancellationSignal cancellationSignal,
+            @NonNull List<CompactConversation> refetched) {
+        int accountId = mUserAccount.getId();
+        Set<String> mutedIds = loadMutedList();
+        Set<String> mirroredIds = mMirror.getThreadDates(accountId).keySet();
+        Set<String> foundIds = new HashSet<>();
+        Cursor cursor =
+                ConversationsPerDeviceFetchManager.getCursor(
+                        accountId, threadIds, cancellationSignal);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                String conversationId = cursor.getString(cursor.getColumnIndex(THREAD_ID));
+                long date = cursor.getLong(cursor.getColumnIndex(DATE));
+                if (!mirroredIds.contains(conversationId)) {
+                    // A new thread, or one older than the loaded ones, moves the others
+                    return false;
+                }
+                foundIds.add(conversationId);
+                // The read status of its messages may have changed on another device
+                MessageHistoryLiveData.evictConversation(conversationId);
+                cancellationSignal.throwIfCanceled();
+                try {
+                    Conversation conversation =
+                            fetchConversation(conversationId, cancellationSignal);
+                    // Muting is not mirrored, but read from the preferences when listed
+                    refetched.add(
+                            mMirror.putConversation(accountId, date, conversation)
+                                    .withMuted(mutedIds.contains(conversationId)));
+                } catch (CursorIndexOutOfBoundsException e) {
+                    L.w("Error occurred fetching conversation Id %s", conversationId);
                 }
             }
+        } finally {
+            cursor.close();
+        }
+        // Threads of other accounts are neither mirrored nor found
+        for (String threadId : threadIds) {
+            if (mirroredIds.contains(threadId) && !foundIds.contains(threadId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Publishes conversations read from the provider or the mirror, with local changes applied */
+    private void publish(@NonNull List<CompactConversation> conversations) {
+        synchronized (this) {
+            if (mIndex == null) {
+                mIndex = new ConversationIndex();
+            }
+            mIndex.replaceAll(conversations);
+        }
+        republish();
+    }
+
+    /**
+     * Publishes the listed conversations with the changed ones replaced and moved in place, so
+     * the others are neither read again nor sorted. Changed conversations not listed are skipped.
+     */
+    private void publishChanged(@NonNull Collection<CompactConversation> changed) {
+        synchronized (this) {
+            if (mIndex == null) {
+                return;
+            }
+            for (CompactConversation conversation : changed) {
+                if (mIndex.get(conversation.getId()) != null) {
+                    mIndex.upsert(conversation);
+                }
+            }
+        }
+        republish();
+    }
+
+    /**
+     * Returns true if the conversations are listed and none of them is the least recent of a full
+     * list, where it might have moved past conversations not loaded.
+     */
+    private synchronized boolean isListed(
+            @NonNull Collection<CompactConversation> conversations) {
+        if (mIndex == null) {
+            return false;
+        }
+        for (CompactConversation conversation : conversations) {
+            String conversationId = conversation.getId();
+            if (mIndex.get(conversationId) == null
+                    || (mIndex.size() >= mLimit && mIndex.isLast(conversationId))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the last conversations again with the current local changes applied. They are
+     * expanded on the publish executor, so a change shows without waiting for the fetches queued
+     * on the lane, and avatars are never decoded on the main thread.
+     */
+    private void republish() {
+        mPublishExecutor.execute(this::expandAndPublish);
+    }
+
+    private void expandAndPublish() {
+        List<CompactConversation> conversations;
+        synchronized (this) {
+            conversations = mIndex == null ? null : mIndex.snapshot();
+        }
+        if (conversations == null) {
+            return;
+        }
+        List<Conversation> expanded =
+                mMirror.expandAll(
+                        dehydrate(LocalChangeLiveData.getInstance().apply(conversations)));
+        // Set on the main thread rather than posted, as a post replaces the value still pending
+        mMainHandler.post(
+                () -> {
+                    if (!hasActiveObservers()) {
+                        // No one converts it, such as while lingering, so no section begins
+                        setValue(expanded);
+                        return;
+                    }
+                    // Each published list is its own section, so overlapping publishes do not
+                    // end each other's
+                    int cookie = TraceUtil.beginAsyncSection(TraceUtil.ASYNC_PUBLISH_TO_UI);
+                    setValue(new TracedList<>(expanded, cookie));
+                });
+    }
+
+    /**
+     * Returns the conversations with those past the first {@link #mMaxHydratedConversations}
+     * listed without their avatar, so memory stays bounded for accounts with thousands of threads
+     * while all of them can still be paged to.
+     */
+    @NonNull
+    private List<CompactConversation> dehydrate(@NonNull List<CompactConversation> conversations) {
+        if (conversations.size() <= mMaxHydratedConversations) {
+            return conversations;
+        }
+        List<CompactConversation> dehydrated = new ArrayList<>(conversations);
+        for (int i = mMaxHydratedConversations; i < dehydrated.size(); i++) {
+            dehydrated.set(i, dehydrated.get(i).withoutAvatar());
+        }
+        return dehydrated;
+    }
+
+    /**
+     * Queues a fetch on the account's lane. Every fetch reads the whole list, so a new one
+     * cancels the fetches in flight or still queued.
+     */
+    private void startFetch(@NonNull String trigger) {
+        mMainHandler.removeCallbacks(mRetry);
+        Generation generation = mGenerations.next();
+        mExecutor.execute(() -> fetchConversations(trigger, generation));
+    }
+
+    private void fetchConversations(@NonNull String trigger, @NonNull Generation generation) {
+        boolean loadMore = Metrics.TRIGGER_LOAD_MORE.equals(trigger);
+        try {
+            fetchConversationsInternal(trigger, generation);
+            mRetryBackoff.reset();
+        } catch (QueryTimeoutException e) {
+            L.w("Fetch timed out on a %s query", e.getQueryClass().getMetricsKey());
+            publishStale(generation);
+            if (!generation.isSuperseded()) {
+                mMainHandler.postDelayed(mRetry, mRetryBackoff.nextDelayMillis());
+            }
+        } catch (OperationCanceledException e) {
+            // Mirrored conversations are kept, so the newer fetch resumes the work done here
+            Metrics.increment(Metrics.FETCHES_SUPERSEDED, trigger);
+        } finally {
+            if (loadMore) {
+                synchronized (this) {
+                    mLoadingMore = false;
+                }
+            }
+        }
+    }
+
+    private void fetchConversationsInternal(
+            @NonNull String trigger, @NonNull Generation generation) {
+        CancellationSignal cancellationSignal = generation.getCancellationSignal();
+        cancellationSignal.throwIfCanceled();
+        Metrics.increment(Metrics.FETCHES, trigger);
+        long startTime = SystemClock.elapsedRealtime();
+        int limit;
+        synchronized (this) {
+            limit = mLimit;
+        }
+        int accountId = mUserAccount.getId();
+        if (Metrics.TRIGGER_FIRST_LOAD.equals(trigger)) {
+            // Show the mirrored conversations while the provider is read
+            List<CompactConversation> mirrored =
+                    mMirror.getConversations(accountId, limit, loadMutedList());
+            if (!mirrored.isEmpty()) {
+                generation.publishIfCurrent(() -> publish(mirrored));
+            }
+        }
+        boolean hasMore = syncMirror(limit, cancellationSignal);
+        synchronized (this) {
+            mHasMore = hasMore;
+        }
+        List<CompactConversation> conversations =
+                mMirror.getConversations(accountId, limit, loadMutedList());
+        Metrics.recordLatency(
+                Metrics.LATENCY_FETCH_CONVERSATION_LIST,
+                SystemClock.elapsedRealtime() - startTime);
+        TraceUtil.setRowCount(TraceUtil.FETCH_CONVERSATION_LIST, conversations.size());
+        boolean published = generation.publishIfCurrent(() -> publish(conversations));
+        if (!published) {
+            Metrics.increment(Metrics.FETCHES_SUPERSEDED, trigger);
+        }
+    }
+
+    /**
+     * Publishes the mirrored conversations flagged as stale, so the list shows what was last
+     * synced instead of waiting on the stalled provider. Nothing is published if the mirror is
+     * empty, as an empty list would read as having no conversations.
+     */
+    private void publishStale(@NonNull Generation generation) {
+        int limit;
+        synchronized (this) {
+            limit = mLimit;
+        }
+        List<CompactConversation> mirrored =
+                mMirror.getConversations(mUserAccount.getId(), limit, loadMutedList());
+        if (mirrored.isEmpty()) {
+            return;
+        }
+        List<CompactConversation> conversations = new ArrayList<>(mirrored.size());
+        for (CompactConversation conversation : mirrored) {
+            conversations.add(conversation.withStale());
+        }
+        generation.publishIfCurrent(() -> publish(conversations));
+    }
+
+    /**
+     * Fetches the conversations of the newest {@code limit} threads whose date changed since they
+     * were mirrored, and removes the mirrored conversations no longer in the provider.
+     *
+     * <p>Each conversation is mirrored as soon as it is fetched, so a cancelled sync keeps its
+     * progress.
+     *
+     * @return true if the account has more threads than the limit
+     * @throws OperationCanceledException if the signal was cancelled
+     */
+    private boolean syncMirror(int limit, @NonNull CancellationSignal cancellationSignal) {
+        int accountId = mUserAccount.getId();
+        mMirror.invalidateMissingAvatars();
+        Map<String, Long> mirroredDates = mMirror.getThreadDates(accountId);
+        Set<String> conversationIds = new HashSet<>();
+        long oldestDate = Long.MIN_VALUE;
+        // One extra row tells whether there is a next page
+        Cursor cursor =
+                ConversationsPerDeviceFetchManager.getCursor(
+                        accountId, limit + 1, cancellationSignal);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < limit && cursor.moveToNext(); i++) {
+                String conversationId = cursor.getString(cursor.getColumnIndex(THREAD_ID));
+                long date = cursor.getLong(cursor.getColumnIndex(DATE));
+                conversationIds.add(conversationId);
+                oldestDate = date;
+                Long mirroredDate = mirroredDates.get(conversationId);
+                if (mirroredDate != null && mirroredDate == date) {
+                    continue;
+                }
+                cancellationSignal.throwIfCanceled();
+                try {
+                    mMirror.putConversation(
+                            accountId, date, fetchConversation(conversationId, cancellationSignal));
+                } catch (CursorIndexOutOfBoundsException e) {
+                    L.w("Error occurred fetching conversation Id %s", conversationId);
+                }
+            }
+            boolean hasMore = cursor.getCount() > limit;
+            mMirror.retainConversations(
+                    accountId, conversationIds, hasMore ? oldestDate : Long.MIN_VALUE);
+            return hasMore;
+        } finally {
+            cursor.close();
         }
-        Collections.sort(conversations, sConversationComparator);
-        postValue(conversations);
     }
 
     private void onSharedPreferenceChanged(@NonNull String key) {
-        Collection<Conversation> conversations = getValue();
-        if (!MessageConstants.KEY_MUTED_CONVERSATIONS.equals(key) || conversations == null) {
+        if (!MessageConstants.KEY_MUTED_CONVERSATIONS.equals(key)) {
             return;
         }
         Set<String> mutedList = loadMutedList();
-        ArrayList<Conversation> finalConversations = new ArrayList<>();
-        boolean muteChange = false;
-        for (Conversation conversation : conversations) {
-            String conversationId = conversation.getId();
-            boolean wasPreviouslyMuted = conversation.isMuted();
-            boolean isMuted = mutedList.contains(conversationId);
-            if (isMuted == wasPreviouslyMuted) {
-                finalConversations.add(conversation);
-                continue;
-            }
-            Conversation.Builder builder = conversation.toBuilder();
-            builder.setMuted(isMuted);
-            finalConversations.add(builder.build());
-            muteChange = true;
-        }
-
-        if (muteChange) {
-            postValue(
-                    finalConversations.stream()
-                            .sorted(sConversationComparator)
-                            .collect(Collectors.toList()));
+        List<CompactConversation> changed = new ArrayList<>();
+        synchronized (this) {
+            if (mIndex == null) {
+                return;
+            }
+            for (CompactConversation conversation : mIndex.snapshot()) {
+                boolean isMuted = mutedList.contains(conversation.getId());
+                if (isMuted != conversation.isMuted()) {
+                    changed.add(conversation.withMuted(isMuted));
+                }
+            }
+        }
+        // Muting does not change the timestamp, so the conversations keep their place
+        if (!changed.isEmpty()) {
+            publishChanged(changed);
         }
     }
 }
@@ -0,0 +1,710 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.android.car.messenger.core.shared.MessageConstants.LAST_REPLY_TEXT_EXTRA;
+import static com.android.car.messenger.core.shared.MessageConstants.LAST_REPLY_TIMESTAMP_EXTRA;
+
+import android.annotation.SuppressLint;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.Person;
+import androidx.core.graphics.drawable.IconCompat;
+
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.common.Conversation.Message;
+import com.android.car.messenger.core.shared.MessageConstants;
+import com.android.car.messenger.core.util.ConversationUtil;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+import com.android.car.messenger.impl.datamodels.util.ContactUtils;
+import com.android.car.messenger.impl.datamodels.util.ParticipantTable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * App private mirror of the conversations shown in the conversation lists: the thread metadata,
+ * the window of recent messages, the resolved participants and the key of the conversation avatar.
+ *
+ * <p>For phones connected over bluetooth the telephony provider is backed by the MAP client and
+ * slow, so lists are published from the mirror and only threads whose date changed since they were
+ * mirrored are fetched from the provider again. Avatars are stored as files in the cache directory
+ * under their key, so conversations sharing participants share the file.
+ *
+ * <p>Conversations are read back as {@link CompactConversation}, with participants interned in a
+ * table shared by every conversation, and only expanded when read by the UI.
+ */
+public class ConversationMirror extends SQLiteOpenHelper {
+    /** The name of the mirror database file */
+    @NonNull public static final String DATABASE_NAME = "conversation_mirror.db";
+
+    private static final int DATABASE_VERSION = 1;
+    private static final int AVATAR_CACHE_SIZE = 64;
+    /** Thread date of a conversation to fetch again on the next sync */
+    private static final long DATE_INVALID = -1;
+
+    @NonNull private static final String CACHE_NAME = "mirror_avatars";
+    @NonNull private static final String AVATAR_DIRECTORY = "avatars";
+    @NonNull private static final String AVATAR_KEY_DELIMITER = "|";
+
+    @NonNull private static final String TABLE_THREADS = "threads";
+    @NonNull private static final String TABLE_MESSAGES = "messages";
+    @NonNull private static final String TABLE_PARTICIPANTS = "participants";
+
+    @NonNull private static final String CONVERSATION_ID = "conversation_id";
+    @NonNull private static final String ACCOUNT_ID = "account_id";
+    @NonNull private static final String THREAD_DATE = "thread_date";
+    @NonNull private static final String SORT_TIMESTAMP = "sort_timestamp";
+    @NonNull private static final String TITLE = "title";
+    @NonNull private static final String UNREAD_COUNT = "unread_count";
+    @NonNull private static final String REPLY_TIMESTAMP = "reply_timestamp";
+    @NonNull private static final String REPLY_TEXT = "reply_text";
+    @NonNull private static final String AVATAR_KEY = "avatar_key";
+    @NonNull private static final String POSITION = "position";
+    @NonNull private static final String TEXT = "text";
+    @NonNull private static final String TIMESTAMP = "timestamp";
+    @NonNull private static final String SENDER_NAME = "sender_name";
+    @NonNull private static final String SENDER_URI = "sender_uri";
+    @NonNull private static final String TYPE = "type";
+    @NonNull private static final String STATUS = "status";
+    @NonNull private static final String NAME = "name";
+    @NonNull private static final String URI = "uri";
+
+    @NonNull private final Context mContext;
+    @NonNull private final Person mUser =
+            new Person.Builder().setName(ContactUtils.DRIVER_NAME).build();
+    @NonNull private final ParticipantTable mParticipants = new ParticipantTable();
+
+    // Guarded by itself, as conversations are expanded on background threads
+    @NonNull private final SparseArray<Person> mPersons = new SparseArray<>();
+
+    @NonNull
+    private final LruCache<String, IconCompat> mAvatarCache = new LruCache<>(AVATAR_CACHE_SIZE);
+
+    // Guarded by itself. Conversations whose avatar file was cleared with the cache, found when
+    // expanded and marked stale by the next sync, so reads never write to the mirror
+    @NonNull private final Set<String> mMissingAvatarIds = new HashSet<>();
+
+    public ConversationMirror(@NonNull Context context) {
+        super(context, DATABASE_NAME, /* factory= */ null, DATABASE_VERSION);
+        mContext = context;
+    }
+
+    @Override
+    public void onConfigure(@NonNull SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(@NonNull SQLiteDatabase db) {
+        db.execSQL(
+                "CREATE TABLE "
+                        + TABLE_THREADS
+                        + " ("
+                        + CONVERSATION_ID
+                        + " TEXT PRIMARY KEY, "
+                        + ACCOUNT_ID
+                        + " INTEGER NOT NULL, "
+                        + THREAD_DATE
+                        + " INTEGER NOT NULL, "
+                        + SORT_TIMESTAMP
+                        + " INTEGER NOT NULL, "
+                        + TITLE
+                        + " TEXT, "
+                        + UNREAD_COUNT
+                        + " INTEGER NOT NULL, "
+                        + REPLY_TIMESTAMP
+                        + " INTEGER, "
+                        + REPLY_TEXT
+                        + " TEXT, "
+                        + AVATAR_KEY
+                        + " TEXT)");
+        db.execSQL(
+                "CREATE INDEX threads_account_sort ON "
+                        + TABLE_THREADS
+                        + " ("
+                        + ACCOUNT_ID
+                        + ", "
+                        + SORT_TIMESTAMP
+                        + " DESC)");
+        db.execSQL(
+                "CREATE TABLE "
+                        + TABLE_MESSAGES
+                        + " ("
+                        + CONVERSATION_ID
+                        + " TEXT NOT NULL REFERENCES "
+                        + TABLE_THREADS
+                        + " ON DELETE CASCADE, "
+                        + POSITION
+                        + " INTEGER NOT NULL, "
+                        + TEXT
+                        + " TEXT, "
+                        + TIMESTAMP
+                        + " INTEGER NOT NULL, "
+                        + SENDER_NAME
+                        + " TEXT, "
+                        + SENDER_URI
+                        + " TEXT, "
+                        + TYPE
+                        + " INTEGER NOT NULL, "
+                        + STATUS
+                        + " INTEGER NOT NULL, PRIMARY KEY ("
+                        + CONVERSATION_ID
+                        + ", "
+                        + POSITION
+                        + "))");
+        db.execSQL(
+                "CREATE TABLE "
+                        + TABLE_PARTICIPANTS
+                        + " ("
+                        + CONVERSATION_ID
+                        + " TEXT NOT NULL REFERENCES "
+                        + TABLE_THREADS
+                        + " ON DELETE CASCADE, "
+                        + POSITION
+                        + " INTEGER NOT NULL, "
+                        + NAME
+                        + " TEXT, "
+                        + URI
+                        + " TEXT, PRIMARY KEY ("
+                        + CONVERSATION_ID
+                        + ", "
+                        + POSITION
+                        + "))");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The mirror is rebuilt from the telephony provider, so nothing is lost by dropping it
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PARTICIPANTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_THREADS);
+        onCreate(db);
+    }
+
+    /**
+     * Returns the thread dates the conversations of the account were mirrored at, by conversation
+     * id. A conversation whose date differs from the provider's thread date is stale.
+     */
+    @NonNull
+    Map<String, Long> getThreadDates(int accountId) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        Map<String, Long> threadDates = new HashMap<>();
+        try (Cursor cursor =
+                getReadableDatabase()
+                        .query(
+                                TABLE_THREADS,
+                                new String[] {CONVERSATION_ID, THREAD_DATE},
+                                ACCOUNT_ID + " = " + accountId,
+                                /* selectionArgs= */ null,
+                                /* groupBy= */ null,
+                                /* having= */ null,
+                                /* orderBy= */ null)) {
+            while (cursor.moveToNext()) {
+                threadDates.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+        return threadDates;
+    }
+
+    /**
+     * Mirrors a conversation freshly fetched from the provider, replacing its previous copy.
+     *
+     * @return the compact form of the conversation, unmuted as muting is not mirrored
+     */
+    @NonNull
+    CompactConversation putConversation(
+            int accountId, long threadDate, @NonNull Conversation conversation) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        String conversationId = conversation.getId();
+        IconCompat icon = conversation.getConversationIcon();
+        // Only conversations with an avatar have a key, so one without is never seen as missing
+        String avatarKey = icon != null ? getAvatarKey(conversation.getParticipants()) : null;
+        if (avatarKey != null) {
+            saveAvatar(avatarKey, icon);
+        }
+        CompactConversation.Builder compact =
+                new CompactConversation.Builder(conversationId)
+                        .setTitle(toString(conversation.getConversationTitle()))
+                        .setUnreadCount(conversation.getUnreadCount())
+                        .setAvatarKey(avatarKey);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] conversationArgs = {conversationId};
+            db.delete(TABLE_THREADS, CONVERSATION_ID + " = ?", conversationArgs);
+
+            ContentValues values = new ContentValues();
+            values.put(CONVERSATION_ID, conversationId);
+            values.put(ACCOUNT_ID, accountId);
+            values.put(THREAD_DATE, threadDate);
+            values.put(SORT_TIMESTAMP, ConversationUtil.getConversationTimestamp(conversation));
+            values.put(TITLE, conversation.getConversationTitle());
+            values.put(UNREAD_COUNT, conversation.getUnreadCount());
+            Bundle extras = conversation.getExtras();
+            if (extras.containsKey(LAST_REPLY_TIMESTAMP_EXTRA)) {
+                values.put(REPLY_TIMESTAMP, extras.getLong(LAST_REPLY_TIMESTAMP_EXTRA));
+                values.put(REPLY_TEXT, extras.getString(LAST_REPLY_TEXT_EXTRA));
+                compact.setReply(
+                        extras.getLong(LAST_REPLY_TIMESTAMP_EXTRA),
+                        extras.getString(LAST_REPLY_TEXT_EXTRA));
+            }
+            values.put(AVATAR_KEY, avatarKey);
+            db.insert(TABLE_THREADS, /* nullColumnHack= */ null, values);
+
+            List<Message> messages = conversation.getMessages();
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                Person sender = message.getSender();
+                String senderName = toString(sender == null ? null : sender.getName());
+                String senderUri = sender == null ? null : sender.getUri();
+                values.clear();
+                values.put(CONVERSATION_ID, conversationId);
+                values.put(POSITION, i);
+                values.put(TEXT, message.getText());
+                values.put(TIMESTAMP, message.getTimestamp());
+                values.put(SENDER_NAME, senderName);
+                values.put(SENDER_URI, senderUri);
+                values.put(TYPE, message.getMessageType());
+                values.put(STATUS, message.getMessageStatus());
+                db.insert(TABLE_MESSAGES, /* nullColumnHack= */ null, values);
+                compact.addMessage(
+                        message.getText(),
+                        message.getTimestamp(),
+                        mParticipants.intern(senderName, senderUri),
+                        message.getMessageType(),
+                        message.getMessageStatus());
+            }
+
+            List<Person> participants = conversation.getParticipants();
+            for (int i = 0; i < participants.size(); i++) {
+                Person participant = participants.get(i);
+                String name = toString(participant.getName());
+                values.clear();
+                values.put(CONVERSATION_ID, conversationId);
+                values.put(POSITION, i);
+                values.put(NAME, name);
+                values.put(URI, participant.getUri());
+                db.insert(TABLE_PARTICIPANTS, /* nullColumnHack= */ null, values);
+                compact.addParticipant(mParticipants.intern(name, participant.getUri()));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return compact.build();
+    }
+
+    /**
+     * Marks the conversations found without their avatar file when expanded stale, so this sync
+     * fetches them again.
+     */
+    void invalidateMissingAvatars() {
+        List<String> conversationIds;
+        synchronized (mMissingAvatarIds) {
+            if (mMissingAvatarIds.isEmpty()) {
+                return;
+            }
+            conversationIds = new ArrayList<>(mMissingAvatarIds);
+            mMissingAvatarIds.clear();
+        }
+        for (String conversationId : conversationIds) {
+            invalidateConversation(conversationId);
+        }
+    }
+
+    /** Marks a conversation stale, so the next sync fetches it again */
+    void invalidateConversation(@NonNull String conversationId) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        ContentValues values = new ContentValues();
+        values.put(THREAD_DATE, DATE_INVALID);
+        getWritableDatabase()
+                .update(
+                        TABLE_THREADS,
+                        values,
+                        CONVERSATION_ID + " = ?",
+                        new String[] {conversationId});
+    }
+
+    /** Removes a conversation from the mirror */
+    void deleteConversation(@NonNull String conversationId) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        getWritableDatabase()
+                .delete(TABLE_THREADS, CONVERSATION_ID + " = ?", new String[] {conversationId});
+    }
+
+    /**
+     * Removes the conversations of the account no longer in the provider.
+     *
+     * @param conversationIds the ids of the account's conversations with a thread date of at least
+     *     {@code oldestThreadDate}, the window read from the provider
+     * @param oldestThreadDate conversations older than this date were not read from the provider,
+     *     so they are kept
+     */
+    void retainConversations(
+            int accountId, @NonNull Set<String> conversationIds, long oldestThreadDate) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        List<String> removedIds = new ArrayList<>();
+        try (Cursor cursor =
+                getReadableDatabase()
+                        .query(
+                                TABLE_THREADS,
+                                new String[] {CONVERSATION_ID},
+                                ACCOUNT_ID
+                                        + " = "
+                                        + accountId
+                                        + " AND ("
+                                        + THREAD_DATE
+                                        + " >= "
+                                        + oldestThreadDate
+                                        + " OR "
+                                        + THREAD_DATE
+                                        + " = "
+                                        + DATE_INVALID
+                                        + ")",
+                                /* selectionArgs= */ null,
+                                /* groupBy= */ null,
+                                /* having= */ null,
+                                /* orderBy= */ null)) {
+            while (cursor.moveToNext()) {
+                String conversationId = cursor.getString(0);
+                if (!conversationIds.contains(conversationId)) {
+                    removedIds.add(conversationId);
+                }
+            }
+        }
+        if (removedIds.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String conversationId : removedIds) {
+                db.delete(TABLE_THREADS, CONVERSATION_ID + " = ?", new String[] {conversationId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the most recent conversations of the account, most recent first, in their compact
+     * form. {@link #expand} builds the {@link Conversation} of one.
+     *
+     * @param limit the maximum number of conversations returned
+     * @param mutedConversationIds the ids of the muted conversations, which are not mirrored as
+     *     muting is read from the preferences
+     */
+    @NonNull
+    List<CompactConversation> getConversations(
+            int accountId, int limit, @NonNull Collection<String> mutedConversationIds) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        SQLiteDatabase db = getReadableDatabase();
+        Map<String, CompactConversation.Builder> buildersById = new LinkedHashMap<>();
+        String selection = ACCOUNT_ID + " = " + accountId;
+        try (Cursor cursor =
+                db.query(
+                        TABLE_THREADS,
+                        new String[] {
+                            CONVERSATION_ID,
+                            TITLE,
+                            UNREAD_COUNT,
+                            REPLY_TIMESTAMP,
+                            REPLY_TEXT,
+                            AVATAR_KEY
+                        },
+                        selection,
+                        /* selectionArgs= */ null,
+                        /* groupBy= */ null,
+                        /* having= */ null,
+                        SORT_TIMESTAMP + " DESC",
+                        Integer.toString(limit))) {
+            while (cursor.moveToNext()) {
+                String conversationId = cursor.getString(0);
+                CompactConversation.Builder builder =
+                        new CompactConversation.Builder(conversationId);
+                builder.setTitle(cursor.getString(1));
+                builder.setUnreadCount(cursor.getInt(2));
+                if (!cursor.isNull(3)) {
+                    builder.setReply(cursor.getLong(3), cursor.getString(4));
+                }
+                // The avatar is only read from its file when the conversation is expanded
+                builder.setAvatarKey(cursor.getString(5));
+                builder.setMuted(mutedConversationIds.contains(conversationId));
+                buildersById.put(conversationId, builder);
+            }
+        }
+        if (buildersById.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String inConversations =
+                " WHERE "
+                        + CONVERSATION_ID
+                        + " IN (SELECT "
+                        + CONVERSATION_ID
+                        + " FROM "
+                        + TABLE_THREADS
+                        + " WHERE "
+                        + selection
+                        + " ORDER BY "
+                        + SORT_TIMESTAMP
+                        + " DESC LIMIT "
+                        + limit
+                        + ") ORDER BY "
+                        + CONVERSATION_ID
+                        + ", "
+                        + POSITION;
+        try (Cursor cursor =
+                db.rawQuery(
+                        "SELECT "
+                                + TextUtils.join(
+                                        ", ",
+                                        new String[] {
+                                            CONVERSATION_ID,
+                                            TEXT,
+                                            TIMESTAMP,
+                                            SENDER_NAME,
+                                            SENDER_URI,
+                                            TYPE,
+                                            STATUS
+                                        })
+                                + " FROM "
+                                + TABLE_MESSAGES
+                                + inConversations,
+                        /* selectionArgs= */ null)) {
+            while (cursor.moveToNext()) {
+                buildersById
+                        .get(cursor.getString(0))
+                        .addMessage(
+                                cursor.getString(1),
+                                cursor.getLong(2),
+                                mParticipants.intern(cursor.getString(3), cursor.getString(4)),
+                                cursor.getInt(5),
+                                cursor.getInt(6));
+            }
+        }
+        try (Cursor cursor =
+                db.rawQuery(
+                        "SELECT "
+                                + CONVERSATION_ID
+                                + ", "
+                                + NAME
+                                + ", "
+                                + URI
+                                + " FROM "
+                                + TABLE_PARTICIPANTS
+                                + inConversations,
+                        /* selectionArgs= */ null)) {
+            while (cursor.moveToNext()) {
+                buildersById
+                        .get(cursor.getString(0))
+                        .addParticipant(
+                                mParticipants.intern(cursor.getString(1), cursor.getString(2)));
+            }
+        }
+
+        List<CompactConversation> conversations = new ArrayList<>(buildersById.size());
+        for (CompactConversation.Builder builder : buildersById.values()) {
+            conversations.add(builder.build());
+        }
+        return conversations;
+    }
+
+    /**
+     * Builds the {@link Conversation} of a compact conversation, loading its avatar. Senders and
+     * participants are built once per participant and shared by every conversation.
+     *
+     * <p>A conversation whose avatar file is missing is built without it, and fetched again by
+     * the next sync, see {@link #invalidateMissingAvatars()}.
+     */
+    @NonNull
+    @SuppressLint("WrongConstant") // The message type and status are mirrored as is
+    Conversation expand(@NonNull CompactConversation compact) {
+        Conversation.Builder builder =
+                new Conversation.Builder(mUser, compact.getId())
+                        .setConversationTitle(compact.getTitle())
+                        .setUnreadCount(compact.getUnreadCount())
+                        .setMuted(compact.isMuted());
+        if (compact.hasReply() || compact.isStale()) {
+            Bundle extras = new Bundle();
+            if (compact.hasReply()) {
+                extras.putLong(LAST_REPLY_TIMESTAMP_EXTRA, compact.getReplyTimestamp());
+                extras.putString(LAST_REPLY_TEXT_EXTRA, compact.getReplyText());
+            }
+            if (compact.isStale()) {
+                extras.putBoolean(MessageConstants.EXTRA_STALE, true);
+            }
+            builder.setExtras(extras);
+        }
+        String avatarKey = compact.getAvatarKey();
+        if (avatarKey != null) {
+            IconCompat avatar = loadAvatar(avatarKey);
+            if (avatar != null) {
+                builder.setConversationIcon(avatar);
+            } else {
+                synchronized (mMissingAvatarIds) {
+                    mMissingAvatarIds.add(compact.getId());
+                }
+            }
+        }
+        List<Message> messages = new ArrayList<>(compact.getMessageCount());
+        for (int i = 0; i < compact.getMessageCount(); i++) {
+            Message message =
+                    new Message(
+                            compact.getText(i),
+                            compact.getMessageTimestamp(i),
+                            getPerson(compact.getSender(i)));
+            message.setMessageType(compact.getMessageType(i));
+            message.setMessageStatus(compact.getMessageStatus(i));
+            messages.add(message);
+        }
+        builder.setMessages(messages);
+        List<Person> participants = new ArrayList<>(compact.getParticipantCount());
+        for (int i = 0; i < compact.getParticipantCount(); i++) {
+            participants.add(getPerson(compact.getParticipant(i)));
+        }
+        builder.setParticipants(participants);
+        return builder.build();
+    }
+
+    /**
+     * Returns the conversations expanded, as an immutable list. Called off the main thread, as
+     * avatars may be decoded from disk.
+     */
+    @NonNull
+    List<Conversation> expandAll(@NonNull List<CompactConversation> conversations) {
+        List<Conversation> expanded = new ArrayList<>(conversations.size());
+        for (CompactConversation conversation : conversations) {
+            expanded.add(expand(conversation));
+        }
+        return Collections.unmodifiableList(expanded);
+    }
+
+    @NonNull
+    private Person getPerson(int participant) {
+        synchronized (mPersons) {
+            Person person = mPersons.get(participant);
+            if (person == null) {
+                person =
+                        new Person.Builder()
+                                .setName(mParticipants.getName(participant))
+                                .setUri(mParticipants.getUri(participant))
+                                .build();
+                mPersons.put(participant, person);
+            }
+            return person;
+        }
+    }
+
+    /**
+     * Returns the key of the avatar composed from the participants, the same for every
+     * conversation with the same participants, or null if there are none.
+     */
+    @Nullable
+    private static String getAvatarKey(@NonNull List<Person> participants) {
+        List<String> uris = new ArrayList<>();
+        for (Person participant : participants) {
+            uris.add(participant.getUri() + "=" + participant.getName());
+        }
+        if (uris.isEmpty()) {
+            return null;
+        }
+        uris.sort(null);
+        return TextUtils.join(AVATAR_KEY_DELIMITER, uris);
+    }
+
+    private void saveAvatar(@NonNull String avatarKey, @NonNull IconCompat icon) {
+        mAvatarCache.put(avatarKey, icon);
+        Drawable drawable = icon.loadDrawable(mContext);
+        if (!(drawable instanceof BitmapDrawable)) {
+            return;
+        }
+        Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+        File file = getAvatarFile(avatarKey);
+        file.getParentFile().mkdirs();
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.ENCODE);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, /* quality= */ 100, outputStream);
+        } catch (IOException e) {
+            L.w("Unable to save the avatar of a conversation");
+        }
+    }
+
+    @Nullable
+    private IconCompat loadAvatar(@NonNull String avatarKey) {
+        IconCompat icon = mAvatarCache.get(avatarKey);
+        Metrics.recordCacheLookup(CACHE_NAME, icon != null);
+        if (icon != null) {
+            return icon;
+        }
+        File file = getAvatarFile(avatarKey);
+        if (!file.exists()) {
+            return null;
+        }
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DECODE);
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            return null;
+        }
+        icon = IconCompat.createWithBitmap(bitmap);
+        mAvatarCache.put(avatarKey, icon);
+        return icon;
+    }
+
+    @NonNull
+    private File getAvatarFile(@NonNull String avatarKey) {
+        String fileName =
+                UUID.nameUUIDFromBytes(avatarKey.getBytes(StandardCharsets.UTF_8)).toString();
+        return new File(new File(mContext.getCacheDir(), AVATAR_DIRECTORY), fileName + ".png");
+    }
+
+    @Nullable
+    private static String toString(@Nullable CharSequence charSequence) {
+        return charSequence == null ? null : charSequence.toString();
+    }
+}
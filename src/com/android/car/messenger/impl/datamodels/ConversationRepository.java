@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+
+import com.android.car.messenger.core.models.UserAccount;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Shares one {@link ConversationListLiveData} per account between all its subscribers, so
+ * screens subscribing to the same account do not each observe the provider and fetch the list.
+ *
+ * <p>A new subscriber is replayed the last list published. Once the last subscriber leaves, the
+ * list lingers for {@link ConversationListLiveData#LINGER_MILLIS} before it is released, so a
+ * quick resubscribe, such as on a configuration change, does not fetch again.
+ *
+ * <p>Lists are held weakly, so a released list stays shared for as long as anything holds it and
+ * may observe it again, and the account never has two lists at once.
+ */
+class ConversationRepository {
+    @NonNull private final ConversationMirror mMirror;
+    // Guarded by itself, as lists are requested from any thread
+    @NonNull
+    private final SparseArray<WeakReference<ConversationListLiveData>> mLists =
+            new SparseArray<>();
+
+    ConversationRepository(@NonNull ConversationMirror mirror) {
+        mMirror = mirror;
+    }
+
+    /** Returns the conversation list of the account, shared with its other subscribers */
+    @NonNull
+    ConversationListLiveData getConversations(@NonNull UserAccount userAccount) {
+        int accountId = userAccount.getId();
+        synchronized (mLists) {
+            WeakReference<ConversationListLiveData> reference = mLists.get(accountId);
+            ConversationListLiveData list = reference == null ? null : reference.get();
+            if (list == null) {
+                list = new ConversationListLiveData(userAccount, mMirror);
+                mLists.put(accountId, new WeakReference<>(list));
+            }
+            return list;
+        }
+    }
+}
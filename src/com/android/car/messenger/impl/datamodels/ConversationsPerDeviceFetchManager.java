@@ -19,12 +19,18 @@ package com.android.car.messenger.impl.datamodels;
 import static android.provider.Telephony.MmsSms.CONTENT_CONVERSATIONS_URI;
 import static android.provider.Telephony.TextBasedSmsColumns.SUBSCRIPTION_ID;
 import static android.provider.Telephony.TextBasedSmsColumns.THREAD_ID;
+import static android.provider.Telephony.ThreadsColumns.DATE;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.Telephony;
 import android.telephony.SubscriptionInfo;
+import android.text.TextUtils;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -34,13 +40,20 @@ import androidx.lifecycle.Observer;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.models.UserAccount;
-
-import java.util.ArrayList;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils;
+import com.android.car.messenger.impl.datamodels.util.LongHashSet;
+import com.android.car.messenger.impl.datamodels.util.QueryTimeoutException;
+import com.android.car.messenger.impl.datamodels.util.ThreadChangeResolver;
+
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.Executor;
+import java.util.stream.LongStream;
 
 /**
  * Holds the information on any changes made to a conversation list per device/user account
@@ -54,31 +67,53 @@ class ConversationsPerDeviceFetchManager {
     @NonNull
     private final MediatorLiveData<String> mRemovedConversationLiveData = new MediatorLiveData<>();
 
+    // Confined to mExecutor, where the change scans and the account removals run in order
     @NonNull
-    private final HashMap<Integer, ConversationIdChangeList> mCachedResults = new HashMap<>();
+    private final SparseArray<ConversationIdChangeList> mCachedResults = new SparseArray<>();
 
     @NonNull private static final Uri URI = CONTENT_CONVERSATIONS_URI;
 
+    @NonNull private static final String CACHE_NAME = "conversation_ids";
+
     @NonNull
     private static final String[] PROJECTION = {
-        SUBSCRIPTION_ID, THREAD_ID,
+        SUBSCRIPTION_ID, THREAD_ID, DATE,
     };
 
     @NonNull private final Context mContext;
 
+    // Serial, so scans never overlap
+    @NonNull private final Executor mExecutor = ThreadUtil.newSerialExecutor();
+
+    @NonNull
+    private final ChangeBatcher mChangeBatcher = new ChangeBatcher(mExecutor, this::onChangeBatch);
+
     @NonNull
     private final ContentObserver mObserver =
             new ContentObserver(null) {
                 @Override
-                public void onChange(boolean selfChange) {
-                    onDataChange();
+                public void onChange(
+                        boolean selfChange, @NonNull Collection<Uri> uris, int flags) {
+                    Metrics.recordObserverCallback(
+                            ConversationsPerDeviceFetchManager.class.getSimpleName());
+                    TraceUtil.beginSection(TraceUtil.OBSERVER_CALLBACK);
+                    try {
+                        mChangeBatcher.add(uris);
+                    } finally {
+                        TraceUtil.endSection();
+                    }
                 }
             };
 
     private ConversationsPerDeviceFetchManager() {
         mContext = AppFactory.get().getContext();
-        mContext.getContentResolver()
-                .registerContentObserver(URI, /* notifyForDescendants= */ false, mObserver);
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.registerContentObserver(URI, /* notifyForDescendants= */ false, mObserver);
+        // The message uris tell which threads a change is about
+        contentResolver.registerContentObserver(
+                Telephony.Sms.CONTENT_URI, /* notifyForDescendants= */ true, mObserver);
+        contentResolver.registerContentObserver(
+                Telephony.Mms.CONTENT_URI, /* notifyForDescendants= */ true, mObserver);
         mRemovedConversationLiveData.addSource(
                 UserAccountLiveData.getInstance(), onUserAccountRemovedObserver());
     }
@@ -91,15 +126,145 @@ class ConversationsPerDeviceFetchManager {
      */
     @Nullable
     public static Cursor getCursor(int accountId) {
+        return getCursor(
+                getAccountSelection(accountId),
+                /* sortOrder= */ null,
+                /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Returns a cursor over the newest conversations of the account, most recent first
+     *
+     * @param accountId searches for conversations based on id provided
+     * @param limit the maximum number of conversations returned
+     * @param cancellationSignal cancels the query once the fetch issuing it is superseded
+     */
+    @Nullable
+    public static Cursor getCursor(
+            int accountId, int limit, @Nullable CancellationSignal cancellationSignal) {
+        return getCursor(
+                getAccountSelection(accountId),
+                CursorUtils.DEFAULT_SORT_ORDER + " LIMIT " + limit,
+                cancellationSignal);
+    }
+
+    /**
+     * Returns a cursor over the conversations of the account among the given threads
+     *
+     * @param accountId searches for conversations based on id provided
+     * @param threadIds the threads to search
+     * @param cancellationSignal cancels the query once the fetch issuing it is superseded
+     */
+    @Nullable
+    public static Cursor getCursor(
+            int accountId,
+            @NonNull Collection<String> threadIds,
+            @Nullable CancellationSignal cancellationSignal) {
+        return getCursor(
+                getAccountSelection(accountId) + " AND " + getThreadSelection(threadIds),
+                /* sortOrder= */ null,
+                cancellationSignal);
+    }
+
+    @NonNull
+    private static String getAccountSelection(int accountId) {
+        return SUBSCRIPTION_ID + "=" + accountId;
+    }
+
+    @NonNull
+    private static String getThreadSelection(@NonNull Collection<String> threadIds) {
+        return THREAD_ID + " IN (" + TextUtils.join(",", threadIds) + ")";
+    }
+
+    @Nullable
+    private static Cursor getCursor(
+            @NonNull String selection,
+            @Nullable String sortOrder,
+            @Nullable CancellationSignal cancellationSignal) {
         Context context = AppFactory.get().getContext();
-        return context.getContentResolver()
-                .query(
-                        URI,
-                        PROJECTION,
-                        /* selection= */ SUBSCRIPTION_ID + "=" + accountId,
-                        /* selectionArgs= */ null,
+        TraceUtil.beginSection(TraceUtil.QUERY_THREAD_LIST);
+        try {
+            Cursor cursor =
+                    CursorUtils.query(
+                            context,
+                            TraceUtil.QUERY_THREAD_LIST,
+                            URI,
+                            PROJECTION,
+                            selection,
+                            sortOrder,
+                            cancellationSignal);
+            TraceUtil.setRowCount(TraceUtil.QUERY_THREAD_LIST, cursor);
+            return cursor;
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    /**
+     * Scans the thread lists of all accounts for added and removed threads, unless the changed
+     * uris name threads that were neither added nor removed.
+     */
+    private void onChangeBatch(@NonNull Set<Uri> uris) {
+        try {
+            Set<String> threadIds =
+                    ThreadChangeResolver.resolveThreadIds(
+                            mContext, uris, /* cancellationSignal= */ null);
+            if (threadIds == null && ThreadChangeResolver.isCollectionOnly(uris)) {
+                // The app's own writes are announced on collection uris only
+                threadIds = LocalChangeLiveData.getInstance().getRecentWrites(uris);
+            }
+            if (threadIds != null && !hasThreadSetChanged(threadIds)) {
+                return;
+            }
+        } catch (QueryTimeoutException e) {
+            L.w("Changed thread lookup timed out, scanning all threads");
+        }
+        onDataChange();
+    }
+
+    /** Returns true if one of the threads was added to or removed from its account */
+    private boolean hasThreadSetChanged(@NonNull Set<String> threadIds) {
+        LongHashSet foundIds = new LongHashSet(threadIds.size());
+        Cursor cursor =
+                getCursor(
+                        getThreadSelection(threadIds),
                         /* sortOrder= */ null,
                         /* cancellationSignal= */ null);
+        if (cursor == null) {
+            return true;
+        }
+        try {
+            int threadIdColumn = cursor.getColumnIndex(THREAD_ID);
+            int accountIdColumn = cursor.getColumnIndex(SUBSCRIPTION_ID);
+            while (cursor.moveToNext()) {
+                long conversationId = cursor.getLong(threadIdColumn);
+                int accountId = cursor.getInt(accountIdColumn);
+                ConversationIdChangeList cached = mCachedResults.get(accountId);
+                if (cached == null || !cached.getAllConversationIds().contains(conversationId)) {
+                    return true;
+                }
+                foundIds.add(conversationId);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String id : threadIds) {
+            long threadId;
+            try {
+                threadId = Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                return true;
+            }
+            if (foundIds.contains(threadId)) {
+                continue;
+            }
+            for (int i = 0; i < mCachedResults.size(); i++) {
+                if (mCachedResults.valueAt(i).getAllConversationIds().contains(threadId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private void onDataChange() {
@@ -110,7 +275,14 @@ class ConversationsPerDeviceFetchManager {
         }
         Collection<UserAccount> userAccounts = changeList.getAccounts();
         for (UserAccount userAccount : userAccounts) {
-            boolean changeDetected = postChangeIfFound(userAccount.getId());
+            boolean changeDetected;
+            try {
+                changeDetected = postChangeIfFound(userAccount.getId());
+            } catch (QueryTimeoutException e) {
+                // The next provider change compares against the same conversation ids
+                L.w("Conversation change scan timed out for account %d", userAccount.getId());
+                continue;
+            }
             // one change is posted per onDataUri call
             if (changeDetected) {
                 break;
@@ -125,20 +297,25 @@ class ConversationsPerDeviceFetchManager {
      */
     private boolean postChangeIfFound(int userAccountId) {
         Cursor cursor = getCursor(userAccountId);
-        ArrayList<String> currentConversationIds = new ArrayList<>();
-        while (cursor != null && cursor.moveToNext()) {
-            String conversationId = cursor.getString(cursor.getColumnIndex(THREAD_ID));
-            currentConversationIds.add(conversationId);
+        LongHashSet currentConversationIds =
+                new LongHashSet(cursor == null ? 0 : cursor.getCount());
+        if (cursor != null) {
+            try {
+                int threadIdColumn = cursor.getColumnIndex(THREAD_ID);
+                while (cursor.moveToNext()) {
+                    currentConversationIds.add(cursor.getLong(threadIdColumn));
+                }
+            } finally {
+                cursor.close();
+            }
         }
 
         // get updated changes
-        Collection<String> prevConversationIds =
-                getValueOrEmpty(userAccountId).getAllConversationIds();
-        Set<String> newConversations = getDifference(currentConversationIds, prevConversationIds);
-        Set<String> removedConversations =
-                getDifference(prevConversationIds, currentConversationIds);
+        LongHashSet prevConversationIds = getValueOrEmpty(userAccountId).getAllConversationIds();
+        long[] newConversations = currentConversationIds.difference(prevConversationIds);
+        long[] removedConversations = prevConversationIds.difference(currentConversationIds);
 
-        if (newConversations.isEmpty() && removedConversations.isEmpty()) {
+        if (newConversations.length == 0 && removedConversations.length == 0) {
             // Return early if no new conversations were added or removed since last change list.
             // However, if no conversations is found, post an empty changelist to allow
             // the subscriber update the UI with "no new conversations found"
@@ -159,7 +336,10 @@ class ConversationsPerDeviceFetchManager {
 
     private void postValueInternal(ConversationIdChangeList changeList) {
         mCachedResults.put(changeList.mUserAccountId, changeList);
-        changeList.getRemovedConversationIds().forEach(mRemovedConversationLiveData::postValue);
+        // Ids are strings from here on, as in Conversation#getId
+        changeList
+                .getRemovedConversationIds()
+                .forEach(id -> mRemovedConversationLiveData.postValue(Long.toString(id)));
     }
 
     /** Returns a live data that emits removed conversation ids */
@@ -170,26 +350,13 @@ class ConversationsPerDeviceFetchManager {
     @NonNull
     private ConversationIdChangeList getValueOrEmpty(int userAccountId) {
         ConversationIdChangeList cache = mCachedResults.get(userAccountId);
+        Metrics.recordCacheLookup(CACHE_NAME, cache != null);
         if (cache == null) {
             return new ConversationIdChangeList(userAccountId);
         }
         return cache;
     }
 
-    /**
-     * Returns a set that contains a difference between the two lists - firstList - secondList =
-     * result
-     *
-     * <p>This essentially points out which items or changes are not present in firstList.
-     */
-    @NonNull
-    private static Set<String> getDifference(
-            @NonNull Collection<String> firstList, @NonNull Collection<String> secondList) {
-        return firstList.stream()
-                .filter(it -> !secondList.contains(it))
-                .collect(Collectors.toSet());
-    }
-
     /** Gets the instance of {@link ConversationsPerDeviceFetchManager} */
     @NonNull
     public static ConversationsPerDeviceFetchManager getInstance() {
@@ -205,52 +372,55 @@ class ConversationsPerDeviceFetchManager {
             if (userAccountChangeList == null) {
                 return;
             }
-            userAccountChangeList
-                    .getRemovedAccounts()
-                    .forEach(
-                            removedAccount -> {
-                                ConversationIdChangeList conversationIdInfo =
-                                        mCachedResults.get(removedAccount.getId());
-                                if (conversationIdInfo == null) {
-                                    return;
-                                }
-                                conversationIdInfo.getAllConversationIds().stream()
-                                        .forEach(mRemovedConversationLiveData::postValue);
-                                mCachedResults.remove(removedAccount.getId());
-                            });
+            mExecutor.execute(
+                    () -> userAccountChangeList.getRemovedAccounts().forEach(this::onRemoved));
         };
     }
 
+    /** Posts every conversation of a removed account as removed, and forgets the account */
+    private void onRemoved(@NonNull UserAccount removedAccount) {
+        ConversationIdChangeList conversationIdInfo = mCachedResults.get(removedAccount.getId());
+        if (conversationIdInfo == null) {
+            return;
+        }
+        conversationIdInfo
+                .getAllConversationIds()
+                .forEach(id -> mRemovedConversationLiveData.postValue(Long.toString(id)));
+        mCachedResults.remove(removedAccount.getId());
+    }
+
     /**
      * Holds the list of conversation ids per {@link SubscriptionInfo#getSubscriptionId()}
      * Additional information such as which specific conversation ids have changed is also provided.
      */
     public static class ConversationIdChangeList {
+        @NonNull private static final long[] NO_IDS = new long[0];
+
         private final int mUserAccountId;
-        @NonNull private Collection<String> mConversationIds = new ArrayList<>();
-        @NonNull private Collection<String> mRemovedConversationIds = new ArrayList<>();
-        @NonNull private Collection<String> mAddedConversationIds = new ArrayList<>();
+        @NonNull private LongHashSet mConversationIds = new LongHashSet();
+        @NonNull private long[] mRemovedConversationIds = NO_IDS;
+        @NonNull private long[] mAddedConversationIds = NO_IDS;
 
         private ConversationIdChangeList(int userAccountId) {
             mUserAccountId = userAccountId;
         }
 
-        /* Returns the list of added conversation Ids */
+        /* Returns the set of all conversation Ids */
         @NonNull
-        public Collection<String> getAllConversationIds() {
+        public LongHashSet getAllConversationIds() {
             return mConversationIds;
         }
 
-        /* Returns the list of added conversation Ids */
+        /* Returns the list of removed conversation Ids */
         @NonNull
-        public Stream<String> getRemovedConversationIds() {
-            return mRemovedConversationIds.stream();
+        public LongStream getRemovedConversationIds() {
+            return Arrays.stream(mRemovedConversationIds);
         }
 
-        /* Returns the list of removed conversation Ids */
+        /* Returns the list of added conversation Ids */
         @NonNull
-        public Stream<String> getAddedConversationIds() {
-            return mAddedConversationIds.stream();
+        public LongStream getAddedConversationIds() {
+            return Arrays.stream(mAddedConversationIds);
         }
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+
+/**
+ * Load more live data for conversation lists to load their next page. It emits the id of the
+ * account whose list was scrolled near its end, and only that account's list grows.
+ */
+public class LoadMoreLiveData extends LiveData<Integer> {
+
+    @Nullable private static LoadMoreLiveData sInstance;
+
+    /** Gets the instance of {@link LoadMoreLiveData} */
+    @NonNull
+    public static LoadMoreLiveData getInstance() {
+        if (sInstance == null) {
+            sInstance = new LoadMoreLiveData();
+        }
+        return sInstance;
+    }
+
+    /** Posts the account id to listeners to load their next page */
+    public void loadMore(int accountId) {
+        postValue(accountId);
+    }
+}
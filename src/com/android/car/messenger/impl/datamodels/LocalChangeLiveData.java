@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.net.Uri;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+
+import com.android.car.messenger.core.util.CollectionUtil;
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Local change live data for conversation lists to show the user's actions before the provider
+ * confirms them. It emits whenever a change is made or rolled back, and lists then republish their
+ * conversations with {@link #apply}.
+ *
+ * <p>A change is kept until a conversation published from the provider shows it, so the list
+ * never flickers back to the old state in between. A read is also dropped once a newer message
+ * arrives, and a reply is confirmed by its text, as its timestamp comes from the phone's clock. A
+ * change never confirmed, such as one to a conversation not loaded in any list, is dropped after
+ * {@link #PENDING_TIMEOUT_MILLIS}.
+ */
+public class LocalChangeLiveData extends LiveData<Boolean> {
+    /** How long a change waits for the provider to confirm it */
+    static final long PENDING_TIMEOUT_MILLIS = 30_000;
+
+    /** How long after a write its change notifications are taken to be the app's own */
+    static final long OWN_WRITE_WINDOW_MILLIS = 2_000;
+
+    private static final long UNSEEN = -1;
+
+    @Nullable private static LocalChangeLiveData sInstance;
+
+    // Guarded by this, as changes are confirmed and rolled back on background threads
+    @NonNull private final Map<String, PendingRead> mPendingReads = new HashMap<>();
+    @NonNull private final Map<String, PendingMute> mPendingMutes = new HashMap<>();
+    @NonNull private final Map<String, PendingReply> mPendingReplies = new HashMap<>();
+    @NonNull private final Map<String, RecentWrite> mRecentWrites = new HashMap<>();
+
+    /** Gets the instance of {@link LocalChangeLiveData} */
+    @NonNull
+    public static synchronized LocalChangeLiveData getInstance() {
+        if (sInstance == null) {
+            sInstance = new LocalChangeLiveData();
+        }
+        return sInstance;
+    }
+
+    /** Shows the conversation as read */
+    public void addRead(@NonNull String conversationId) {
+        synchronized (this) {
+            mPendingReads.put(conversationId, new PendingRead(SystemClock.elapsedRealtime()));
+        }
+        notifyChanged();
+    }
+
+    /** Rolls back a read that failed */
+    public void removeRead(@NonNull String conversationId) {
+        synchronized (this) {
+            mPendingReads.remove(conversationId);
+        }
+        notifyChanged();
+    }
+
+    /** Shows the conversation as muted or unmuted */
+    public void addMute(@NonNull String conversationId, boolean mute) {
+        synchronized (this) {
+            mPendingMutes.put(
+                    conversationId, new PendingMute(mute, SystemClock.elapsedRealtime()));
+        }
+        notifyChanged();
+    }
+
+    /** Rolls back a mute or unmute that failed */
+    public void removeMute(@NonNull String conversationId) {
+        synchronized (this) {
+            mPendingMutes.remove(conversationId);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Shows the message as the last reply of the conversation.
+     *
+     * @return the timestamp of the reply, to roll it back with
+     */
+    public long addReply(@NonNull String conversationId, @NonNull String text) {
+        long timestamp = System.currentTimeMillis();
+        synchronized (this) {
+            mPendingReplies.put(
+                    conversationId,
+                    new PendingReply(text, timestamp, SystemClock.elapsedRealtime()));
+        }
+        notifyChanged();
+        return timestamp;
+    }
+
+    /** Rolls back a reply that failed to send, unless a newer reply replaced it */
+    public void removeReply(@NonNull String conversationId, long timestamp) {
+        synchronized (this) {
+            PendingReply reply = mPendingReplies.get(conversationId);
+            if (reply == null || reply.mTimestamp != timestamp) {
+                return;
+            }
+            mPendingReplies.remove(conversationId);
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Records that the app is about to write the conversation to the provider, so the change
+     * notifications that follow are known to be its own.
+     *
+     * @param notifiedUris the uris the provider announces the write on
+     */
+    public synchronized void onWrite(
+            @NonNull String conversationId, @NonNull Collection<Uri> notifiedUris) {
+        mRecentWrites.put(
+                conversationId, new RecentWrite(notifiedUris, SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Returns the ids of the conversations the app wrote to the provider recently, if every uri
+     * of a batch of change notifications is one their writes are announced on. The provider
+     * announces such writes on collection uris only, so these are the threads they changed.
+     *
+     * @return null if a uri was not announced by a recent write, so the batch may hold changes
+     *     made by others and needs a full reload
+     */
+    @Nullable
+    public synchronized Set<String> getRecentWrites(@NonNull Collection<Uri> uris) {
+        long now = SystemClock.elapsedRealtime();
+        mRecentWrites.values().removeIf(write -> now - write.mTime > OWN_WRITE_WINDOW_MILLIS);
+        Set<String> conversationIds = new HashSet<>();
+        for (Uri uri : uris) {
+            boolean announced = false;
+            for (Map.Entry<String, RecentWrite> entry : mRecentWrites.entrySet()) {
+                if (entry.getValue().isAnnouncedOn(uri)) {
+                    conversationIds.add(entry.getKey());
+                    announced = true;
+                }
+            }
+            if (!announced) {
+                return null;
+            }
+        }
+        return conversationIds.isEmpty() ? null : conversationIds;
+    }
+
+    /**
+     * Returns the conversations with the pending changes applied, sorted again if a reply moved
+     * one. Changes the conversations already show are confirmed and dropped.
+     */
+    @NonNull
+    public synchronized List<CompactConversation> apply(
+            @NonNull List<CompactConversation> conversations) {
+        long now = SystemClock.elapsedRealtime();
+        mPendingReads.values().removeIf(read -> now - read.mTime > PENDING_TIMEOUT_MILLIS);
+        mPendingMutes.values().removeIf(mute -> now - mute.mTime > PENDING_TIMEOUT_MILLIS);
+        mPendingReplies.values().removeIf(reply -> now - reply.mTime > PENDING_TIMEOUT_MILLIS);
+        if (mPendingReads.isEmpty() && mPendingMutes.isEmpty() && mPendingReplies.isEmpty()) {
+            return conversations;
+        }
+        List<CompactConversation> applied = new ArrayList<>(conversations.size());
+        boolean replied = false;
+        for (CompactConversation conversation : conversations) {
+            String conversationId = conversation.getId();
+            PendingRead read = mPendingReads.get(conversationId);
+            if (read != null) {
+                long lastMessageTimestamp = getLastMessageTimestamp(conversation);
+                if (read.mLastMessageTimestamp == UNSEEN) {
+                    // First shown since marked, so this is the message the user read up to
+                    read.mLastMessageTimestamp = lastMessageTimestamp;
+                }
+                if (conversation.getUnreadCount() == 0
+                        || lastMessageTimestamp > read.mLastMessageTimestamp) {
+                    // Confirmed, or a newer message arrived whose unread count is the provider's
+                    mPendingReads.remove(conversationId);
+                } else {
+                    conversation = conversation.withUnreadCount(0);
+                }
+            }
+            PendingMute mute = mPendingMutes.get(conversationId);
+            if (mute != null) {
+                if (conversation.isMuted() == mute.mMute) {
+                    mPendingMutes.remove(conversationId);
+                } else {
+                    conversation = conversation.withMuted(mute.mMute);
+                }
+            }
+            PendingReply reply = mPendingReplies.get(conversationId);
+            if (reply != null) {
+                long replyTimestamp =
+                        conversation.hasReply() ? conversation.getReplyTimestamp() : 0;
+                if (reply.mPreviousReplyTimestamp == UNSEEN) {
+                    // First shown since sent, so this is the reply before it
+                    reply.mPreviousReplyTimestamp = replyTimestamp;
+                }
+                if (replyTimestamp != reply.mPreviousReplyTimestamp
+                        && reply.hasText(conversation.getReplyText())) {
+                    mPendingReplies.remove(conversationId);
+                } else {
+                    conversation = conversation.withReply(reply.mTimestamp, reply.mText);
+                    replied = true;
+                }
+            }
+            applied.add(conversation);
+        }
+        if (replied) {
+            CollectionUtil.sortDescending(applied, CompactConversation::getTimestamp);
+        }
+        return applied;
+    }
+
+    /** Returns the timestamp of the newest message of the conversation, or 0 if it has none */
+    private static long getLastMessageTimestamp(@NonNull CompactConversation conversation) {
+        long timestamp = 0;
+        for (int i = 0; i < conversation.getMessageCount(); i++) {
+            timestamp = Math.max(timestamp, conversation.getMessageTimestamp(i));
+        }
+        return timestamp;
+    }
+
+    private void notifyChanged() {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            setValue(true);
+        } else {
+            postValue(true);
+        }
+    }
+
+    private static class PendingRead {
+        private final long mTime;
+        // The newest message when the read was first shown, or UNSEEN until then
+        private long mLastMessageTimestamp = UNSEEN;
+
+        PendingRead(long time) {
+            mTime = time;
+        }
+    }
+
+    private static class PendingMute {
+        private final boolean mMute;
+        private final long mTime;
+
+        PendingMute(boolean mute, long time) {
+            mMute = mute;
+            mTime = time;
+        }
+    }
+
+    private static class PendingReply {
+        @NonNull private final String mText;
+        private final long mTimestamp;
+        private final long mTime;
+        // The reply of the conversation when this one was first shown, or UNSEEN until then
+        private long mPreviousReplyTimestamp = UNSEEN;
+
+        PendingReply(@NonNull String text, long timestamp, long time) {
+            mText = text;
+            mTimestamp = timestamp;
+            mTime = time;
+        }
+
+        /** Returns true if the text is this reply's, as the provider may trim it */
+        boolean hasText(@Nullable String text) {
+            return text != null && mText.trim().equals(text.trim());
+        }
+    }
+
+    private static class RecentWrite {
+        @NonNull private final Collection<Uri> mNotifiedUris;
+        private final long mTime;
+
+        RecentWrite(@NonNull Collection<Uri> notifiedUris, long time) {
+            mNotifiedUris = notifiedUris;
+            mTime = time;
+        }
+
+        /** Returns true if the write is announced on the uri, ignoring a trailing slash */
+        boolean isAnnouncedOn(@NonNull Uri uri) {
+            for (Uri notifiedUri : mNotifiedUris) {
+                if (Objects.equals(notifiedUri.getAuthority(), uri.getAuthority())
+                        && notifiedUri.getPathSegments().equals(uri.getPathSegments())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+
+import com.android.car.messenger.R;
+import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.models.MessageHistoryPage;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.impl.datamodels.util.ConversationFetchUtil;
+import com.android.car.messenger.impl.datamodels.util.QueryTimeoutException;
+import com.android.car.messenger.impl.datamodels.util.RetryBackoff;
+
+/**
+ * Publishes a page of the message history of a conversation, before a page key.
+ *
+ * <p>Pages before the newest one are cached, so going back and forth through the history does not
+ * query them again. The newest page is always fetched, as new messages land in it. Cached pages
+ * are dropped when the read status of their conversation changes.
+ */
+class MessageHistoryLiveData extends LiveData<MessageHistoryPage> {
+    private static final int CACHE_PAGES = 32;
+
+    @NonNull private static final String CACHE_NAME = "message_history_pages";
+
+    @NonNull
+    private static final LruCache<String, MessageHistoryPage> sPageCache =
+            new LruCache<>(CACHE_PAGES);
+
+    @NonNull private final String mConversationId;
+    @NonNull private final MessageHistoryPage.PageKey mBefore;
+    @NonNull private final RetryBackoff mRetryBackoff = new RetryBackoff();
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    private final Runnable mRetry =
+            () -> {
+                if (hasActiveObservers()) {
+                    ThreadUtil.runOnBackground(this::load);
+                }
+            };
+
+    MessageHistoryLiveData(
+            @NonNull String conversationId, @NonNull MessageHistoryPage.PageKey before) {
+        mConversationId = conversationId;
+        mBefore = before;
+    }
+
+    /** Drops the cached pages of a conversation, such as when it is removed or read */
+    static void evictConversation(@NonNull String conversationId) {
+        String prefix = conversationId + "/";
+        for (String key : sPageCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                sPageCache.remove(key);
+            }
+        }
+    }
+
+    @Override
+    protected void onActive() {
+        super.onActive();
+        if (getValue() == null) {
+            ThreadUtil.runOnBackground(this::load);
+        }
+    }
+
+    private void load() {
+        boolean cacheable = !mBefore.equals(MessageHistoryPage.NEWEST);
+        String key = mConversationId + "/" + mBefore;
+        MessageHistoryPage page = cacheable ? sPageCache.get(key) : null;
+        if (cacheable) {
+            Metrics.recordCacheLookup(CACHE_NAME, page != null);
+        }
+        if (page == null) {
+            int pageSize =
+                    AppFactory.get()
+                            .getContext()
+                            .getResources()
+                            .getInteger(R.integer.message_history_page_size);
+            try {
+                page =
+                        ConversationFetchUtil.fetchMessageHistory(
+                                mConversationId, mBefore, pageSize);
+            } catch (QueryTimeoutException e) {
+                L.w("Message history timed out on a %s query", e.getQueryClass().getMetricsKey());
+                mMainHandler.postDelayed(mRetry, mRetryBackoff.nextDelayMillis());
+                return;
+            }
+            mRetryBackoff.reset();
+            if (cacheable) {
+                sPageCache.put(key, page);
+            }
+        }
+        postValue(page);
+    }
+}
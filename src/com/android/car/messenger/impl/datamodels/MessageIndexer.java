@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static android.provider.Telephony.TextBasedSmsColumns.THREAD_ID;
+import static android.provider.Telephony.ThreadsColumns.DATE;
+
+import android.car.drivingstate.CarUxRestrictions;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.BaseColumns;
+import android.provider.Telephony;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.models.SearchResults;
+import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.impl.datamodels.MessageSearchIndex.Entry;
+import com.android.car.messenger.impl.datamodels.MessageSearchIndex.Watermark;
+import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils.ContentType;
+import com.android.car.messenger.impl.datamodels.util.MessageUtils;
+import com.android.car.messenger.impl.datamodels.util.QueryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the {@link MessageSearchIndex} up to date with the telephony provider.
+ *
+ * <p>Indexing only starts once the main thread is idle, runs on its own lowest priority thread and
+ * only reads the messages newer than each conversation's watermark. It pauses while the UX is
+ * restricted, so it never competes with the driving UI, and resumes where it stopped.
+ */
+public class MessageIndexer {
+    private static final int BATCH_SIZE = 100;
+
+    @Nullable private static MessageIndexer sInstance;
+
+    @NonNull private final MessageSearchIndex mIndex;
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull private final AtomicBoolean mIndexingRequested = new AtomicBoolean();
+    // Conversations whose indexing was interrupted, as their watermark may sit among messages
+    // sharing the thread date. Only touched by the indexing thread
+    @NonNull private final Set<String> mInterruptedIds = new HashSet<>();
+    private volatile boolean mPaused;
+
+    @NonNull
+    private final ExecutorService mExecutor =
+            Executors.newSingleThreadExecutor(
+                    runnable ->
+                            new Thread(
+                                    () -> {
+                                        Process.setThreadPriority(
+                                                Process.THREAD_PRIORITY_LOWEST);
+                                        runnable.run();
+                                    },
+                                    "CarMessengerIndexer"));
+
+    @NonNull
+    private final ContentObserver mObserver =
+            new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    Metrics.recordObserverCallback(MessageIndexer.class.getSimpleName());
+                    requestIndexing();
+                }
+            };
+
+    private MessageIndexer() {
+        this(new MessageSearchIndex(AppFactory.get().getContext()));
+    }
+
+    @VisibleForTesting
+    MessageIndexer(@NonNull MessageSearchIndex index) {
+        mIndex = index;
+    }
+
+    /** Gets the instance of {@link MessageIndexer} */
+    @NonNull
+    public static synchronized MessageIndexer getInstance() {
+        if (sInstance == null) {
+            sInstance = new MessageIndexer();
+        }
+        return sInstance;
+    }
+
+    /** Starts listening for new messages, account and UX restriction changes */
+    public void start() {
+        Context context = AppFactory.get().getContext();
+        context.getContentResolver()
+                .registerContentObserver(
+                        Telephony.MmsSms.CONTENT_URI,
+                        /* notifyForDescendants= */ true,
+                        mObserver);
+        mMainHandler.post(
+                () -> {
+                    UserAccountLiveData.getInstance().observeForever(this::onAccountsChanged);
+                    ConversationsPerDeviceFetchManager.getInstance()
+                            .getRemovedConversationLiveData()
+                            .observeForever(this::onConversationRemoved);
+                    AppFactory.get()
+                            .getCarStateListener()
+                            .getUxrRestrictions()
+                            .observeForever(this::onUxRestrictionsChanged);
+                });
+    }
+
+    /** Searches the indexed messages of the current accounts */
+    @NonNull
+    SearchResults search(@NonNull String query) {
+        UserAccountChangeList changeList = UserAccountLiveData.getInstance().getValue();
+        List<Integer> accountIds = new ArrayList<>();
+        if (changeList != null) {
+            for (UserAccount userAccount : changeList.getAccounts()) {
+                accountIds.add(userAccount.getId());
+            }
+        }
+        TraceUtil.beginSection(TraceUtil.SEARCH_MESSAGES);
+        try {
+            return mIndex.search(query, accountIds);
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    private void onAccountsChanged(@Nullable UserAccountChangeList changeList) {
+        if (changeList == null) {
+            return;
+        }
+        List<Integer> removedAccountIds =
+                changeList
+                        .getRemovedAccounts()
+                        .map(UserAccount::getId)
+                        .collect(Collectors.toList());
+        if (!removedAccountIds.isEmpty()) {
+            mExecutor.execute(() -> removedAccountIds.forEach(mIndex::deleteAccount));
+        }
+        requestIndexing();
+    }
+
+    private void onConversationRemoved(@Nullable String conversationId) {
+        if (conversationId != null) {
+            mExecutor.execute(
+                    () -> {
+                        mIndex.deleteConversation(conversationId);
+                        mInterruptedIds.remove(conversationId);
+                    });
+        }
+    }
+
+    private void onUxRestrictionsChanged(@Nullable CarUxRestrictions uxRestrictions) {
+        boolean paused =
+                uxRestrictions != null && uxRestrictions.isRequiresDistractionOptimization();
+        if (mPaused == paused) {
+            return;
+        }
+        mPaused = paused;
+        L.d("Message indexing %s", paused ? "paused" : "resumed");
+        if (!paused) {
+            requestIndexing();
+        }
+    }
+
+    /** Schedules an indexing pass for the next time the main thread is idle */
+    private void requestIndexing() {
+        if (mPaused || !mIndexingRequested.compareAndSet(false, true)) {
+            return;
+        }
+        mMainHandler.post(
+                () ->
+                        Looper.myQueue()
+                                .addIdleHandler(
+                                        () -> {
+                                            mExecutor.execute(this::indexAll);
+                                            return false;
+                                        }));
+    }
+
+    private void indexAll() {
+        // Cleared first, so changes arriving during the pass schedule another one
+        mIndexingRequested.set(false);
+        UserAccountChangeList changeList = UserAccountLiveData.getInstance().getValue();
+        if (changeList == null) {
+            return;
+        }
+        TraceUtil.beginSection(TraceUtil.INDEX_MESSAGES);
+        try {
+            Map<String, Watermark> watermarks = mIndex.getWatermarks();
+            for (UserAccount userAccount : changeList.getAccounts()) {
+                if (!indexAccount(userAccount.getId(), watermarks)) {
+                    return;
+                }
+            }
+        } catch (QueryTimeoutException e) {
+            // Watermarks only advance past indexed batches, so the next pass resumes here
+            L.w("Message indexing timed out on a %s query", e.getQueryClass().getMetricsKey());
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    /** Returns false if indexing was paused before the account was fully indexed */
+    private boolean indexAccount(int accountId, @NonNull Map<String, Watermark> watermarks) {
+        Cursor cursor = ConversationsPerDeviceFetchManager.getCursor(accountId);
+        if (cursor == null) {
+            return true;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                String conversationId = cursor.getString(cursor.getColumnIndex(THREAD_ID));
+                long date = cursor.getLong(cursor.getColumnIndex(DATE));
+                Watermark watermark = watermarks.get(conversationId);
+                if (watermark != null
+                        && date <= watermark.getNewest()
+                        && !mInterruptedIds.contains(conversationId)) {
+                    continue;
+                }
+                if (watermark == null) {
+                    watermark = new Watermark();
+                }
+                // Cleared once both types are done, so a pause or timeout leaves it set
+                mInterruptedIds.add(conversationId);
+                if (!indexConversation(conversationId, accountId, watermark, ContentType.SMS)
+                        || !indexConversation(
+                                conversationId, accountId, watermark, ContentType.MMS)) {
+                    return false;
+                }
+                mInterruptedIds.remove(conversationId);
+            }
+        } finally {
+            cursor.close();
+        }
+        return true;
+    }
+
+    /**
+     * Indexes the messages of the type after the watermark in batches, advancing the watermark to
+     * the timestamp and id of the last message of each one, so a batch ending among messages
+     * sharing a timestamp resumes with the next of them.
+     *
+     * @return false if indexing was paused before the conversation was fully indexed
+     */
+    @VisibleForTesting
+    boolean indexConversation(
+            @NonNull String conversationId,
+            int accountId,
+            @NonNull Watermark watermark,
+            @NonNull ContentType contentType) {
+        while (true) {
+            if (mPaused) {
+                return false;
+            }
+            List<Entry> entries = new ArrayList<>();
+            int rowCount;
+            long lastTimestamp;
+            long lastId;
+            try (Cursor cursor =
+                    CursorUtils.getMessagesCursorAfter(
+                            conversationId,
+                            BATCH_SIZE,
+                            watermark.get(contentType),
+                            watermark.getId(contentType),
+                            contentType)) {
+                if (cursor == null) {
+                    return true;
+                }
+                rowCount = cursor.getCount();
+                lastTimestamp =
+                        MessageUtils.forEachIndexableMessage(
+                                cursor,
+                                (subscriptionId, timestamp, body) ->
+                                        entries.add(new Entry(subscriptionId, timestamp, body)));
+                if (lastTimestamp < 0 || !cursor.moveToLast()) {
+                    return true;
+                }
+                lastId = cursor.getLong(cursor.getColumnIndex(BaseColumns._ID));
+            }
+            mIndex.addMessages(
+                    conversationId, accountId, contentType, entries, lastTimestamp, lastId);
+            watermark.set(contentType, lastTimestamp, lastId);
+            if (rowCount < BATCH_SIZE) {
+                return true;
+            }
+        }
+    }
+}
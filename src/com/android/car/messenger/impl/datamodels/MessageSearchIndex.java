@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.core.models.SearchResults;
+import com.android.car.messenger.core.models.SearchResults.ConversationHit;
+import com.android.car.messenger.core.models.SearchResults.MessageHit;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils.ContentType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * App private full text index of the message bodies, with a watermark per conversation recording
+ * the newest SMS and MMS already indexed, by timestamp then id.
+ *
+ * <p>FTS4 is used, as FTS5 is not part of every platform build of SQLite.
+ */
+class MessageSearchIndex extends SQLiteOpenHelper {
+    @NonNull private static final String DATABASE_NAME = "message_search.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final int MAX_MESSAGE_HITS = 50;
+    private static final int MAX_CONVERSATION_HITS = 20;
+    private static final int SNIPPET_TOKENS = 10;
+
+    @NonNull private static final String TABLE_MESSAGES = "message_index";
+    @NonNull private static final String TABLE_WATERMARKS = "watermarks";
+    @NonNull private static final String BODY = "body";
+    @NonNull private static final String CONVERSATION_ID = "conversation_id";
+    @NonNull private static final String ACCOUNT_ID = "account_id";
+    @NonNull private static final String TIMESTAMP = "timestamp";
+    @NonNull private static final String SMS_WATERMARK = "sms_watermark";
+    @NonNull private static final String MMS_WATERMARK = "mms_watermark";
+    @NonNull private static final String SMS_WATERMARK_ID = "sms_watermark_id";
+    @NonNull private static final String MMS_WATERMARK_ID = "mms_watermark_id";
+
+    /**
+     * The newest SMS and MMS indexed for a conversation, by timestamp in millisecond then id, as
+     * messages may share a timestamp.
+     */
+    static class Watermark {
+        private long mSms;
+        private long mSmsId;
+        private long mMms;
+        private long mMmsId;
+
+        /** Returns the timestamp of the newest message indexed */
+        long getNewest() {
+            return Math.max(mSms, mMms);
+        }
+
+        /** Returns the timestamp of the newest message indexed of the type */
+        long get(@NonNull ContentType contentType) {
+            return contentType == ContentType.MMS ? mMms : mSms;
+        }
+
+        /** Returns the id of the newest message indexed of the type */
+        long getId(@NonNull ContentType contentType) {
+            return contentType == ContentType.MMS ? mMmsId : mSmsId;
+        }
+
+        /** Advances the watermark of the type to the message with the timestamp and id */
+        void set(@NonNull ContentType contentType, long timestamp, long id) {
+            if (contentType == ContentType.MMS) {
+                mMms = timestamp;
+                mMmsId = id;
+            } else {
+                mSms = timestamp;
+                mSmsId = id;
+            }
+        }
+    }
+
+    /** A message body to index */
+    static class Entry {
+        final int mAccountId;
+        final long mTimestamp;
+        @NonNull final String mBody;
+
+        Entry(int accountId, long timestamp, @NonNull String body) {
+            mAccountId = accountId;
+            mTimestamp = timestamp;
+            mBody = body;
+        }
+    }
+
+    MessageSearchIndex(@NonNull Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /** @param name the database file name, or null for an in-memory database */
+    MessageSearchIndex(@NonNull Context context, @Nullable String name) {
+        super(context, name, /* factory= */ null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(@NonNull SQLiteDatabase db) {
+        db.execSQL(
+                "CREATE VIRTUAL TABLE "
+                        + TABLE_MESSAGES
+                        + " USING fts4("
+                        + BODY
+                        + ", "
+                        + CONVERSATION_ID
+                        + ", "
+                        + ACCOUNT_ID
+                        + ", "
+                        + TIMESTAMP
+                        + ", notindexed="
+                        + CONVERSATION_ID
+                        + ", notindexed="
+                        + ACCOUNT_ID
+                        + ", notindexed="
+                        + TIMESTAMP
+                        + ", tokenize=unicode61)");
+        db.execSQL(
+                "CREATE TABLE "
+                        + TABLE_WATERMARKS
+                        + " ("
+                        + CONVERSATION_ID
+                        + " TEXT PRIMARY KEY, "
+                        + ACCOUNT_ID
+                        + " INTEGER NOT NULL, "
+                        + SMS_WATERMARK
+                        + " INTEGER NOT NULL DEFAULT 0, "
+                        + MMS_WATERMARK
+                        + " INTEGER NOT NULL DEFAULT 0, "
+                        + SMS_WATERMARK_ID
+                        + " INTEGER NOT NULL DEFAULT 0, "
+                        + MMS_WATERMARK_ID
+                        + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The index is rebuilt from the telephony provider, so nothing is lost by dropping it.
+        // Version 1 watermarks had no id, and may have skipped messages sharing a timestamp
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_WATERMARKS);
+        onCreate(db);
+    }
+
+    /** Returns the watermarks of all indexed conversations by conversation id */
+    @NonNull
+    Map<String, Watermark> getWatermarks() {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        Map<String, Watermark> watermarks = new HashMap<>();
+        try (Cursor cursor =
+                getReadableDatabase()
+                        .query(
+                                TABLE_WATERMARKS,
+                                new String[] {
+                                    CONVERSATION_ID,
+                                    SMS_WATERMARK,
+                                    SMS_WATERMARK_ID,
+                                    MMS_WATERMARK,
+                                    MMS_WATERMARK_ID
+                                },
+                                /* selection= */ null,
+                                /* selectionArgs= */ null,
+                                /* groupBy= */ null,
+                                /* having= */ null,
+                                /* orderBy= */ null)) {
+            while (cursor.moveToNext()) {
+                Watermark watermark = new Watermark();
+                watermark.set(ContentType.SMS, cursor.getLong(1), cursor.getLong(2));
+                watermark.set(ContentType.MMS, cursor.getLong(3), cursor.getLong(4));
+                watermarks.put(cursor.getString(0), watermark);
+            }
+        }
+        return watermarks;
+    }
+
+    /**
+     * Adds the messages of a conversation and advances its watermark for the type in one
+     * transaction, so an interrupted pass never indexes a message twice.
+     *
+     * @param lastTimestamp the timestamp of the newest message read, indexed or not
+     * @param lastId the id of the newest message read
+     */
+    void addMessages(
+            @NonNull String conversationId,
+            int accountId,
+            @NonNull ContentType contentType,
+            @NonNull List<Entry> entries,
+            long lastTimestamp,
+            long lastId) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Entry entry : entries) {
+                values.clear();
+                values.put(BODY, entry.mBody);
+                values.put(CONVERSATION_ID, conversationId);
+                values.put(ACCOUNT_ID, entry.mAccountId);
+                values.put(TIMESTAMP, entry.mTimestamp);
+                db.insert(TABLE_MESSAGES, /* nullColumnHack= */ null, values);
+            }
+            boolean mms = contentType == ContentType.MMS;
+            values.clear();
+            values.put(CONVERSATION_ID, conversationId);
+            values.put(ACCOUNT_ID, accountId);
+            db.insertWithOnConflict(
+                    TABLE_WATERMARKS,
+                    /* nullColumnHack= */ null,
+                    values,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+            values.clear();
+            values.put(mms ? MMS_WATERMARK : SMS_WATERMARK, lastTimestamp);
+            values.put(mms ? MMS_WATERMARK_ID : SMS_WATERMARK_ID, lastId);
+            db.update(
+                    TABLE_WATERMARKS,
+                    values,
+                    CONVERSATION_ID + " = ?",
+                    new String[] {conversationId});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Removes the messages and watermark of a conversation */
+    void deleteConversation(@NonNull String conversationId) {
+        delete(CONVERSATION_ID + " = ?", new String[] {conversationId});
+    }
+
+    /** Removes the messages and watermarks of every conversation of an account */
+    void deleteAccount(int accountId) {
+        // Bound arguments are strings, which never equal the integers stored in the FTS table
+        delete(ACCOUNT_ID + " = " + accountId, /* selectionArgs= */ null);
+    }
+
+    private void delete(@NonNull String selection, @Nullable String[] selectionArgs) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_MESSAGES, selection, selectionArgs);
+            db.delete(TABLE_WATERMARKS, selection, selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Searches the messages of the given accounts. Every word of the query must match, the last
+     * one as a prefix so results show up while typing.
+     *
+     * <p>Messages are ranked by their number of matching terms, then newest first. Conversations
+     * are ranked by their number of matching messages, then by their newest match.
+     */
+    @NonNull
+    SearchResults search(@NonNull String query, @NonNull Collection<Integer> accountIds) {
+        String matchQuery = toMatchQuery(query);
+        if (matchQuery == null || accountIds.isEmpty()) {
+            return SearchResults.empty(query);
+        }
+        String selection =
+                TABLE_MESSAGES
+                        + " MATCH ? AND "
+                        + ACCOUNT_ID
+                        + " IN ("
+                        + TextUtils.join(",", accountIds)
+                        + ")";
+        String[] selectionArgs = {matchQuery};
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.DATABASE_ACCESS);
+        SQLiteDatabase db = getReadableDatabase();
+        List<ConversationHit> conversationHits = new ArrayList<>();
+        List<MessageHit> messageHits = new ArrayList<>();
+        try {
+            try (Cursor cursor =
+                    db.rawQuery(
+                            "SELECT "
+                                    + CONVERSATION_ID
+                                    + ", "
+                                    + ACCOUNT_ID
+                                    + ", COUNT(*) AS hits, MAX("
+                                    + TIMESTAMP
+                                    + ") AS latest FROM "
+                                    + TABLE_MESSAGES
+                                    + " WHERE "
+                                    + selection
+                                    + " GROUP BY "
+                                    + CONVERSATION_ID
+                                    + " ORDER BY hits DESC, latest DESC LIMIT "
+                                    + MAX_CONVERSATION_HITS,
+                            selectionArgs)) {
+                while (cursor.moveToNext()) {
+                    conversationHits.add(
+                            new ConversationHit(
+                                    cursor.getString(0),
+                                    cursor.getInt(1),
+                                    cursor.getInt(2),
+                                    cursor.getLong(3)));
+                }
+            }
+            // The offsets() string holds four numbers per matching term, so its length grows
+            // with the number of matches, which is enough of a relevance measure for short texts
+            try (Cursor cursor =
+                    db.rawQuery(
+                            "SELECT "
+                                    + CONVERSATION_ID
+                                    + ", "
+                                    + ACCOUNT_ID
+                                    + ", "
+                                    + TIMESTAMP
+                                    + ", snippet("
+                                    + TABLE_MESSAGES
+                                    + ", '', '', '…', 0, "
+                                    + SNIPPET_TOKENS
+                                    + ") FROM "
+                                    + TABLE_MESSAGES
+                                    + " WHERE "
+                                    + selection
+                                    + " ORDER BY length(offsets("
+                                    + TABLE_MESSAGES
+                                    + ")) DESC, "
+                                    + TIMESTAMP
+                                    + " DESC LIMIT "
+                                    + MAX_MESSAGE_HITS,
+                            selectionArgs)) {
+                while (cursor.moveToNext()) {
+                    messageHits.add(
+                            new MessageHit(
+                                    cursor.getString(0),
+                                    cursor.getInt(1),
+                                    cursor.getLong(2),
+                                    cursor.getString(3)));
+                }
+            }
+        } catch (SQLiteException e) {
+            L.w("Search failed for a query of length %d", query.length());
+            return SearchResults.empty(query);
+        }
+        return new SearchResults(query, conversationHits, messageHits);
+    }
+
+    /**
+     * Converts the query typed by the user into an FTS query, with each word quoted so the FTS
+     * operators have no meaning, or null if the query has no words.
+     */
+    @Nullable
+    static String toMatchQuery(@NonNull String query) {
+        String[] words = query.replace('"', ' ').trim().split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append('"').append(words[i]);
+            if (i == words.length - 1) {
+                builder.append('*');
+            }
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+}
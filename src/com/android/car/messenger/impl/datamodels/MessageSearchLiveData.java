@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+
+import com.android.car.messenger.core.models.SearchResults;
+import com.android.car.messenger.core.util.ThreadUtil;
+
+/** Publishes the results of a search of the message index */
+class MessageSearchLiveData extends LiveData<SearchResults> {
+    @NonNull private final String mQuery;
+
+    MessageSearchLiveData(@NonNull String query) {
+        mQuery = query;
+    }
+
+    @Override
+    protected void onActive() {
+        super.onActive();
+        if (getValue() == null) {
+            ThreadUtil.runOnBackground(
+                    () -> postValue(MessageIndexer.getInstance().search(mQuery)));
+        }
+    }
+}
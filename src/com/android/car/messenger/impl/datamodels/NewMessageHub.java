@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.util.L;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs the new message detection of {@link NewMessageLiveData} once for all subscribers to new
+ * messages, and fans out each conversation found to every one of them.
+ *
+ * <p>Conversations found are appended to a bounded log, and each subscriber keeps its own cursor
+ * in it. A subscriber with no active observer, such as one whose lifecycle is stopped, catches up
+ * when it is observed again, without holding back the others. One that falls behind by more than
+ * {@link #CAPACITY} conversations skips the oldest.
+ *
+ * <p>The detection runs while at least one subscriber is observed. Main thread only, as the log
+ * is appended to by the detector's observer.
+ */
+class NewMessageHub {
+    @VisibleForTesting static final int CAPACITY = 64;
+
+    @NonNull private final Supplier<LiveData<Conversation>> mDetectorFactory;
+    @NonNull private final Observer<Conversation> mDetectorObserver = this::append;
+    @NonNull private final Conversation[] mLog = new Conversation[CAPACITY];
+    @NonNull private final List<Subscriber> mActiveSubscribers = new ArrayList<>();
+    // Sequence number of the next conversation appended to the log
+    private long mHead;
+    // Created on first subscribe, as the detector reads the app state when built
+    @Nullable private LiveData<Conversation> mDetector;
+
+    NewMessageHub() {
+        this(NewMessageLiveData::new);
+    }
+
+    @VisibleForTesting
+    NewMessageHub(@NonNull Supplier<LiveData<Conversation>> detectorFactory) {
+        mDetectorFactory = detectorFactory;
+    }
+
+    /**
+     * Returns a new subscription, delivering every conversation found after it is first observed.
+     */
+    @NonNull
+    LiveData<Conversation> subscribe() {
+        return new Subscriber();
+    }
+
+    @MainThread
+    private void append(@NonNull Conversation conversation) {
+        // The detector replays its last conversation when observed again
+        if (mHead > 0 && mLog[(int) ((mHead - 1) % CAPACITY)] == conversation) {
+            return;
+        }
+        mLog[(int) (mHead % CAPACITY)] = conversation;
+        mHead++;
+        // Copied, as an observer may stop observing while a conversation is delivered
+        for (Subscriber subscriber : new ArrayList<>(mActiveSubscribers)) {
+            subscriber.drain();
+        }
+    }
+
+    @MainThread
+    private void onActive(@NonNull Subscriber subscriber) {
+        mActiveSubscribers.add(subscriber);
+        if (mActiveSubscribers.size() == 1) {
+            if (mDetector == null) {
+                mDetector = mDetectorFactory.get();
+            }
+            mDetector.observeForever(mDetectorObserver);
+        }
+    }
+
+    @MainThread
+    private void onInactive(@NonNull Subscriber subscriber) {
+        mActiveSubscribers.remove(subscriber);
+        if (mActiveSubscribers.isEmpty() && mDetector != null) {
+            mDetector.removeObserver(mDetectorObserver);
+        }
+    }
+
+    /** A subscription to new messages, with its own cursor in the log */
+    private final class Subscriber extends LiveData<Conversation> {
+        // Sequence number of the next conversation delivered, or -1 until first observed
+        private long mCursor = -1;
+
+        @Override
+        protected void onActive() {
+            if (mCursor < 0) {
+                mCursor = mHead;
+            }
+            NewMessageHub.this.onActive(this);
+            drain();
+        }
+
+        @Override
+        protected void onInactive() {
+            NewMessageHub.this.onInactive(this);
+        }
+
+        /** Delivers the conversations from the cursor, one by one, while observed */
+        private void drain() {
+            if (mHead - mCursor > CAPACITY) {
+                L.w("New message subscriber skipped %d conversations", mHead - mCursor - CAPACITY);
+                mCursor = mHead - CAPACITY;
+            }
+            while (mCursor < mHead && hasActiveObservers()) {
+                Conversation conversation = mLog[(int) (mCursor % CAPACITY)];
+                mCursor++;
+                setValue(conversation);
+            }
+        }
+    }
+}
@@ -23,7 +23,13 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.CursorIndexOutOfBoundsException;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.provider.Telephony;
+import android.util.SparseArray;
+import android.util.SparseLongArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -35,24 +41,44 @@ import com.android.car.messenger.core.shared.MessageConstants;
 import com.android.car.messenger.core.util.CarStateListener;
 import com.android.car.messenger.core.util.ConversationUtil;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils;
+import com.android.car.messenger.impl.datamodels.util.FetchGenerations;
+import com.android.car.messenger.impl.datamodels.util.FetchGenerations.Generation;
+import com.android.car.messenger.impl.datamodels.util.QueryTimeoutException;
+import com.android.car.messenger.impl.datamodels.util.RetryBackoff;
 
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Publishes a stream of {@link Conversation} with unread messages that was received on the user
  * device after the car's connection to the{@link UserAccount}.
+ *
+ * <p>Observed by {@link NewMessageHub} only, which shares it between all subscribers.
  */
 public class NewMessageLiveData extends ContentProviderLiveData<Conversation> {
     @NonNull
     private final UserAccountLiveData mUserAccountLiveData = UserAccountLiveData.getInstance();
 
-    @NonNull private Collection<UserAccount> mUserAccounts = new ArrayList<>();
-    @NonNull private final HashMap<Integer, Instant> mOffsetMap = new HashMap<>();
+    @NonNull private volatile Collection<UserAccount> mUserAccounts = new ArrayList<>();
+
+    // Guarded by this, as scans run on the account lanes. Keyed by account id, offsets are the
+    // timestamps in milliseconds of the last messages posted, kept while no one observes so the
+    // messages already posted are not found again.
+    @NonNull private final SparseLongArray mOffsetMap = new SparseLongArray();
+    @NonNull private final SparseArray<FetchGenerations> mGenerationsMap = new SparseArray<>();
+    @NonNull private final SparseArray<RetryBackoff> mRetryBackoffMap = new SparseArray<>();
+
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Main thread only, the conversations posted after the last observer left, delivered to the
+    // next one in order
+    @NonNull private final List<Conversation> mUndelivered = new ArrayList<>();
 
     @NonNull
     private static final String MESSAGE_QUERY =
@@ -71,15 +97,31 @@ public class NewMessageLiveData extends ContentProviderLiveData<Conversation> {
     @Override
     protected void onActive() {
         super.onActive();
-        addSource(
-                mUserAccountLiveData,
-                it -> {
-                    mUserAccounts = it.getAccounts();
-                    it.getRemovedAccounts()
-                            .forEach(userAccount -> mOffsetMap.remove(userAccount.getId()));
-                });
+        List<Conversation> undelivered = new ArrayList<>(mUndelivered);
+        mUndelivered.clear();
+        for (Conversation conversation : undelivered) {
+            deliver(conversation);
+        }
+        addSource(mUserAccountLiveData, this::onUserAccountsChanged);
         if (getValue() == null) {
-            onDataChange();
+            ThreadUtil.runOnBackground(this::onDataChange);
+        }
+    }
+
+    /** Tracks the accounts to scan for new messages, and forgets the offsets of removed ones */
+    void onUserAccountsChanged(@NonNull UserAccountLiveData.UserAccountChangeList changeList) {
+        mUserAccounts = changeList.getAccounts();
+        changeList.getRemovedAccounts().forEach(this::forgetAccount);
+    }
+
+    private synchronized void forgetAccount(@NonNull UserAccount userAccount) {
+        int accountId = userAccount.getId();
+        mOffsetMap.delete(accountId);
+        mRetryBackoffMap.remove(accountId);
+        FetchGenerations generations = mGenerationsMap.get(accountId);
+        if (generations != null) {
+            mGenerationsMap.remove(accountId);
+            generations.next();
         }
     }
 
@@ -87,79 +129,219 @@ public class NewMessageLiveData extends ContentProviderLiveData<Conversation> {
     protected void onInactive() {
         super.onInactive();
         removeSource(mUserAccountLiveData);
-        mUserAccounts.clear();
-        mOffsetMap.clear();
+        mUserAccounts = new ArrayList<>();
+        // Offsets are kept, and the posts of scans already published are still delivered, while
+        // retries are dropped as their accounts are no longer tracked
+        synchronized (this) {
+            for (int i = 0; i < mGenerationsMap.size(); i++) {
+                mGenerationsMap.valueAt(i).next();
+            }
+            mGenerationsMap.clear();
+            mRetryBackoffMap.clear();
+        }
     }
 
     @Override
     public void onDataChange() {
+        // Each account scans on its own lane, so a slow phone does not delay the others.
+        // A scan reads from the last posted message, so a newer one covers the scans before it.
         for (UserAccount userAccount : mUserAccounts) {
-            if (hasProjectionInForeground(userAccount)) {
-                continue;
+            startScan(userAccount);
+        }
+    }
+
+    private void startScan(@NonNull UserAccount userAccount) {
+        Generation generation;
+        synchronized (this) {
+            FetchGenerations generations = mGenerationsMap.get(userAccount.getId());
+            if (generations == null) {
+                generations = new FetchGenerations();
+                mGenerationsMap.put(userAccount.getId(), generations);
+            }
+            generation = generations.next();
+        }
+        ThreadUtil.getAccountExecutor(userAccount.getId())
+                .execute(() -> scanForNewMessage(userAccount, generation));
+    }
+
+    /** Scans the account again after a back-off, unless it was removed in the meantime */
+    private void scheduleRetry(@NonNull UserAccount userAccount) {
+        long delayMillis;
+        synchronized (this) {
+            RetryBackoff retryBackoff = mRetryBackoffMap.get(userAccount.getId());
+            if (retryBackoff == null) {
+                retryBackoff = new RetryBackoff();
+                mRetryBackoffMap.put(userAccount.getId(), retryBackoff);
+            }
+            delayMillis = retryBackoff.nextDelayMillis();
+        }
+        mMainHandler.postDelayed(
+                () -> {
+                    if (isTracked(userAccount)) {
+                        startScan(userAccount);
+                    }
+                },
+                delayMillis);
+    }
+
+    private synchronized boolean isTracked(@NonNull UserAccount userAccount) {
+        return mGenerationsMap.get(userAccount.getId()) != null;
+    }
+
+    private void scanForNewMessage(
+            @NonNull UserAccount userAccount, @NonNull Generation generation) {
+        if (generation.isSuperseded()) {
+            return;
+        }
+        if (hasProjectionInForeground(userAccount)) {
+            Metrics.increment(Metrics.NOTIFICATIONS, Metrics.NOTIFICATION_SUPPRESSED);
+            return;
+        }
+        long offset;
+        long connectionTime = userAccount.getConnectionTime().toEpochMilli();
+        synchronized (this) {
+            // An offset kept from before the account reconnected is older than the connection
+            offset = Math.max(mOffsetMap.get(userAccount.getId(), connectionTime), connectionTime);
+        }
+        CancellationSignal cancellationSignal = generation.getCancellationSignal();
+        try {
+            // onDataChange is called per one message insert,
+            // so once a new message is found we can exit early
+            if (!postNewMessageIfFound(
+                    getMmsCursor(userAccount, offset, cancellationSignal),
+                    userAccount,
+                    generation)) {
+                postNewMessageIfFound(
+                        getSmsCursor(userAccount, offset, cancellationSignal),
+                        userAccount,
+                        generation);
+            }
+            synchronized (this) {
+                RetryBackoff retryBackoff = mRetryBackoffMap.get(userAccount.getId());
+                if (retryBackoff != null) {
+                    retryBackoff.reset();
+                }
             }
-            Instant offset =
-                    Objects.requireNonNull(
-                            mOffsetMap.getOrDefault(
-                                    userAccount.getId(), userAccount.getConnectionTime()));
-            Cursor mmsCursor = getMmsCursor(userAccount, offset);
-            boolean foundNewMms = postNewMessageIfFound(mmsCursor, userAccount);
-            Cursor smsCursor = getSmsCursor(userAccount, offset);
-            boolean foundNewSms = postNewMessageIfFound(smsCursor, userAccount);
-            if (foundNewMms || foundNewSms) {
-                // onDataChange is called per one message insert,
-                // so once a new message is found we can exit early
-                break;
+        } catch (QueryTimeoutException e) {
+            // The offset did not move, so the retry finds the message again
+            L.w("New message scan timed out on a %s query", e.getQueryClass().getMetricsKey());
+            if (!generation.isSuperseded()) {
+                scheduleRetry(userAccount);
             }
+        } catch (OperationCanceledException e) {
+            L.d("New message scan superseded for account %d", userAccount.getId());
         }
     }
 
-    /** Post a new message if one is found, and returns true if so, false otherwise */
+    /**
+     * Post a new message if one is found and the scan was not superseded, and returns true if
+     * so, false otherwise
+     */
     private boolean postNewMessageIfFound(
-            @Nullable Cursor cursor, @NonNull UserAccount userAccount) {
-        if (cursor == null || !cursor.moveToFirst()) {
+            @Nullable Cursor cursor,
+            @NonNull UserAccount userAccount,
+            @NonNull Generation generation) {
+        if (cursor == null) {
             return false;
         }
-        String conversationId =
-                cursor.getString(cursor.getColumnIndex(Telephony.TextBasedSmsColumns.THREAD_ID));
+        String conversationId;
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            conversationId =
+                    cursor.getString(
+                            cursor.getColumnIndex(Telephony.TextBasedSmsColumns.THREAD_ID));
+        } finally {
+            cursor.close();
+        }
 
         Conversation conversation;
         try {
-            conversation = fetchConversation(conversationId);
+            conversation = fetchConversation(conversationId, generation.getCancellationSignal());
         } catch (CursorIndexOutOfBoundsException e) {
-            L.w("Error occurred fetching conversation Id " + conversationId);
+            L.w("Error occurred fetching conversation Id %s", conversationId);
             return false;
         }
         conversation.getExtras().putInt(MessageConstants.EXTRA_ACCOUNT_ID, userAccount.getId());
-        Instant offset =
-                Instant.ofEpochMilli(ConversationUtil.getConversationTimestamp(conversation));
-        mOffsetMap.put(userAccount.getId(), offset);
-        postValue(conversation);
-        return true;
+        long offset = ConversationUtil.getConversationTimestamp(conversation);
+        // The offset only moves on publish, so the newer scan finds the message again
+        return generation.publishIfCurrent(
+                () -> {
+                    synchronized (this) {
+                        mOffsetMap.put(userAccount.getId(), offset);
+                    }
+                    // Set on the main thread rather than posted, as a post replaces the value
+                    // still pending, which would drop the message of another account
+                    mMainHandler.post(() -> deliver(conversation));
+                });
+    }
+
+    /**
+     * Hands a detected conversation to the observers, or keeps it for the next one if none is
+     * active. The trace section begins only here, so a scan suppressed, superseded or dropped
+     * before delivery leaves no section open.
+     */
+    private void deliver(@NonNull Conversation conversation) {
+        if (!hasActiveObservers()) {
+            mUndelivered.add(conversation);
+            return;
+        }
+        // Each detected conversation is its own section, even for the same thread
+        int cookie = TraceUtil.beginAsyncSection(TraceUtil.ASYNC_NEW_MESSAGE_TO_NOTIFICATION);
+        conversation.getExtras().putInt(MessageConstants.EXTRA_TRACE_COOKIE, cookie);
+        setValue(conversation);
     }
 
     /** Get the last message cursor, taking into account the last message posted */
     @Nullable
-    private Cursor getMmsCursor(@NonNull UserAccount userAccount, @NonNull Instant offset) {
-        return getCursor(Telephony.Mms.Inbox.CONTENT_URI, userAccount, offset.getEpochSecond());
+    private Cursor getMmsCursor(
+            @NonNull UserAccount userAccount,
+            long offset,
+            @NonNull CancellationSignal cancellationSignal) {
+        // MMS dates are in seconds
+        return getCursor(
+                Telephony.Mms.Inbox.CONTENT_URI,
+                userAccount,
+                TimeUnit.MILLISECONDS.toSeconds(offset),
+                cancellationSignal);
     }
 
     /** Get the last message cursor, taking into account the last message posted */
     @Nullable
-    private Cursor getSmsCursor(@NonNull UserAccount userAccount, @NonNull Instant offset) {
-        return getCursor(Telephony.Sms.Inbox.CONTENT_URI, userAccount, offset.toEpochMilli());
+    private Cursor getSmsCursor(
+            @NonNull UserAccount userAccount,
+            long offset,
+            @NonNull CancellationSignal cancellationSignal) {
+        return getCursor(
+                Telephony.Sms.Inbox.CONTENT_URI, userAccount, offset, cancellationSignal);
     }
+
     /** Get the last message cursor, taking into account an offset and subscription id */
     @Nullable
-    private Cursor getCursor(Uri uri, @NonNull UserAccount userAccount, long offset) {
+    private Cursor getCursor(
+            Uri uri,
+            @NonNull UserAccount userAccount,
+            long offset,
+            @NonNull CancellationSignal cancellationSignal) {
         Context context = AppFactory.get().getContext();
         String query = String.format(Locale.ENGLISH, MESSAGE_QUERY, offset, userAccount.getId());
-        return context.getContentResolver()
-                .query(
-                        uri,
-                        new String[] {Telephony.TextBasedSmsColumns.THREAD_ID},
-                        query,
-                        /* selectionArgs= */ null,
-                        DEFAULT_SORT_ORDER + " LIMIT 1");
+        TraceUtil.beginSection(TraceUtil.QUERY_NEW_MESSAGES);
+        try {
+            Cursor cursor =
+                    CursorUtils.query(
+                            context,
+                            TraceUtil.QUERY_NEW_MESSAGES,
+                            uri,
+                            new String[] {Telephony.TextBasedSmsColumns.THREAD_ID},
+                            query,
+                            DEFAULT_SORT_ORDER + " LIMIT 1",
+                            cancellationSignal);
+            TraceUtil.setRowCount(TraceUtil.QUERY_NEW_MESSAGES, cursor);
+            return cursor;
+        } finally {
+            TraceUtil.endSection();
+        }
     }
 
     private boolean hasProjectionInForeground(@NonNull UserAccount userAccount) {
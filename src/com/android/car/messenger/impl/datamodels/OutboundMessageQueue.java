@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.telephony.SmsManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+
+import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.ThreadUtil;
+import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
+import com.android.car.messenger.impl.datamodels.util.RetryBackoff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends outgoing SMS in the background, in order per conversation.
+ *
+ * <p>A message is sent only once the one before it to the same destination is confirmed by its
+ * sent intent. While the account's subscription is missing, such as when the phone is briefly
+ * disconnected, or the radio reports no service, messages wait and are retried with back-off. The
+ * whole queue is flushed as soon as an account connects. A message still unsent after {@link
+ * #MAX_AGE_MILLIS} fails.
+ *
+ * <p>A message whose sent intent does not arrive within {@link #SEND_TIMEOUT_MILLIS} fails rather
+ * than being retried, as the radio may have sent it, so that the messages after it are not held.
+ *
+ * <p>The sent intent receiver is registered off the main thread with the first message sent, and
+ * unregistered once the queue has been empty for {@link #RECEIVER_LINGER_MILLIS}.
+ */
+class OutboundMessageQueue {
+    /** How long a message may wait to be sent before it fails */
+    static final long MAX_AGE_MILLIS = 15 * 60_000;
+
+    /** How long a message may wait for its sent intent before it fails */
+    static final long SEND_TIMEOUT_MILLIS = 2 * 60_000;
+
+    /** How long the receiver stays registered once the queue is empty, for delivery reports */
+    static final long RECEIVER_LINGER_MILLIS = 60_000;
+
+    @NonNull
+    private static final String ACTION_MESSAGE_SENT =
+            "com.android.car.messenger.ACTION_MESSAGE_SENT";
+
+    @NonNull
+    private static final String ACTION_MESSAGE_DELIVERED =
+            "com.android.car.messenger.ACTION_MESSAGE_DELIVERED";
+
+    @NonNull private static final String EXTRA_ATTEMPT = "attempt";
+
+    /** Hands a message to the radio, replaced in tests */
+    interface SmsSender {
+        /**
+         * Sends the text, reporting the result through the sent intent
+         *
+         * @param attempt the request code of the intents, unique to this attempt
+         */
+        void sendTextMessage(
+                int accountId,
+                @NonNull String destination,
+                @NonNull String text,
+                int attempt,
+                @NonNull PendingIntent sentIntent,
+                @NonNull PendingIntent deliveryIntent);
+    }
+
+    @NonNull private final Context mContext;
+    @NonNull private final SmsSender mSender;
+    @NonNull private final LongSupplier mClock;
+    @NonNull private final Supplier<LiveData<UserAccountChangeList>> mAccounts;
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull private final RetryBackoff mRetryBackoff = new RetryBackoff();
+    @NonNull private final Runnable mRetry = () -> ThreadUtil.runOnBackground(this::flush);
+    // Posted once per send, so every message in flight is checked for its timeout
+    @NonNull
+    private final Runnable mCheckSendTimeouts = () -> ThreadUtil.runOnBackground(this::flush);
+
+    @NonNull
+    private final Runnable mUnregisterReceiver =
+            () -> ThreadUtil.runOnBackground(this::unregisterReceiverIfIdle);
+
+    // Guarded by this, as sends are confirmed on the main thread and started in the background
+    @NonNull private final Map<String, ArrayDeque<OutboundMessage>> mQueues = new HashMap<>();
+    // Keyed by attempt, so a late result of an earlier attempt does not confirm a retry
+    @NonNull private final Map<Integer, OutboundMessage> mMessagesInFlight = new HashMap<>();
+    private int mNextAttempt;
+    private boolean mObservingAccounts;
+    private boolean mReceiverRegistered;
+
+    @NonNull
+    private final BroadcastReceiver mReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(@NonNull Context context, @NonNull Intent intent) {
+                    if (ACTION_MESSAGE_DELIVERED.equals(intent.getAction())) {
+                        Metrics.increment(Metrics.OUTBOX_RESULTS, Metrics.OUTBOX_DELIVERED);
+                        return;
+                    }
+                    int attempt = intent.getIntExtra(EXTRA_ATTEMPT, -1);
+                    int resultCode = getResultCode();
+                    ThreadUtil.runOnBackground(() -> onSent(attempt, resultCode));
+                }
+            };
+
+    OutboundMessageQueue(@NonNull Context context) {
+        this(
+                context,
+                OutboundMessageQueue::sendWithSmsManager,
+                SystemClock::elapsedRealtime,
+                UserAccountLiveData::getInstance);
+    }
+
+    /** @param accounts returns the connected accounts, resolved with the first message queued */
+    @VisibleForTesting
+    OutboundMessageQueue(
+            @NonNull Context context,
+            @NonNull SmsSender sender,
+            @NonNull LongSupplier clock,
+            @NonNull Supplier<LiveData<UserAccountChangeList>> accounts) {
+        mContext = context;
+        mSender = sender;
+        mClock = clock;
+        mAccounts = accounts;
+    }
+
+    /**
+     * Queues a message to send from the account.
+     *
+     * @param destination the phone number or thread uri to send to, messages to the same
+     *     destination are sent in order
+     * @param onFailure called if the message cannot be sent
+     */
+    void enqueue(
+            int accountId,
+            @NonNull String destination,
+            @NonNull String text,
+            @Nullable Runnable onFailure) {
+        String key = accountId + "/" + destination;
+        synchronized (this) {
+            if (!mObservingAccounts) {
+                mObservingAccounts = true;
+                // Live data can only be observed on the main thread
+                mMainHandler.post(() -> mAccounts.get().observeForever(this::onAccountsChanged));
+            }
+            OutboundMessage message =
+                    new OutboundMessage(
+                            key, accountId, destination, text, onFailure, mClock.getAsLong());
+            mQueues.computeIfAbsent(key, it -> new ArrayDeque<>()).add(message);
+        }
+        Metrics.add(Metrics.OUTBOX_DEPTH, Integer.toString(accountId), 1);
+        ThreadUtil.runOnBackground(() -> sendNext(key));
+    }
+
+    @VisibleForTesting
+    void onAccountsChanged(@NonNull UserAccountChangeList changeList) {
+        if (changeList.getAddedAccounts().findAny().isPresent()) {
+            // The phone reconnected, so waiting messages are sent without further delay
+            mMainHandler.removeCallbacks(mRetry);
+            mRetryBackoff.reset();
+            ThreadUtil.runOnBackground(this::flush);
+        }
+    }
+
+    /**
+     * Fails the messages that waited too long or were never confirmed, and sends the next message
+     * of every queue
+     */
+    @VisibleForTesting
+    void flush() {
+        List<String> keys;
+        List<OutboundMessage> expiredMessages = new ArrayList<>();
+        long now = mClock.getAsLong();
+        synchronized (this) {
+            for (ArrayDeque<OutboundMessage> queue : mQueues.values()) {
+                Iterator<OutboundMessage> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    OutboundMessage message = iterator.next();
+                    boolean expired =
+                            message.mSending
+                                    ? now - message.mSendTime > SEND_TIMEOUT_MILLIS
+                                    : now - message.mEnqueueTime > MAX_AGE_MILLIS;
+                    if (expired) {
+                        if (message.mSending) {
+                            message.mSending = false;
+                            mMessagesInFlight.remove(message.mAttempt);
+                        }
+                        iterator.remove();
+                        expiredMessages.add(message);
+                    }
+                }
+            }
+            mQueues.values().removeIf(ArrayDeque::isEmpty);
+            keys = new ArrayList<>(mQueues.keySet());
+        }
+        for (OutboundMessage message : expiredMessages) {
+            L.w("Dropping a message not sent in time to account %d", message.mAccountId);
+            onFailed(message);
+        }
+        for (String key : keys) {
+            sendNext(key);
+        }
+        scheduleUnregisterIfIdle();
+    }
+
+    /** Sends the head of the queue, unless it is already being sent */
+    private void sendNext(@NonNull String key) {
+        OutboundMessage message;
+        int attempt;
+        synchronized (this) {
+            ArrayDeque<OutboundMessage> queue = mQueues.get(key);
+            message = queue == null ? null : queue.peek();
+            if (message == null || message.mSending) {
+                return;
+            }
+            if (!hasUserAccount(message.mAccountId)) {
+                scheduleRetry();
+                return;
+            }
+            registerReceiverIfNeeded();
+            attempt = mNextAttempt++;
+            message.mSending = true;
+            message.mSendTime = mClock.getAsLong();
+            message.mAttempt = attempt;
+            mMessagesInFlight.put(attempt, message);
+        }
+        Metrics.increment(Metrics.OUTBOX_RESULTS, Metrics.OUTBOX_ATTEMPTED);
+        mMainHandler.postDelayed(mCheckSendTimeouts, SEND_TIMEOUT_MILLIS);
+        try {
+            mSender.sendTextMessage(
+                    message.mAccountId,
+                    message.mDestination,
+                    message.mText,
+                    attempt,
+                    createPendingIntent(ACTION_MESSAGE_SENT, attempt),
+                    createPendingIntent(ACTION_MESSAGE_DELIVERED, attempt));
+        } catch (RuntimeException e) {
+            // Such as a missing subscription or permission, which retrying would not fix
+            L.e("Failed to send a message", e);
+            onSent(attempt, SmsManager.RESULT_ERROR_GENERIC_FAILURE);
+        }
+    }
+
+    /** Handles the result of a send attempt, ignored once the attempt is no longer in flight */
+    @VisibleForTesting
+    void onSent(int attempt, int resultCode) {
+        OutboundMessage message;
+        boolean retry = false;
+        synchronized (this) {
+            message = mMessagesInFlight.remove(attempt);
+            if (message == null) {
+                return;
+            }
+            message.mSending = false;
+            if (resultCode == SmsManager.RESULT_ERROR_NO_SERVICE
+                    || resultCode == SmsManager.RESULT_ERROR_RADIO_OFF) {
+                retry = true;
+            } else {
+                ArrayDeque<OutboundMessage> queue = mQueues.get(message.mKey);
+                queue.remove(message);
+                if (queue.isEmpty()) {
+                    mQueues.remove(message.mKey);
+                }
+            }
+        }
+        if (retry) {
+            Metrics.increment(Metrics.OUTBOX_RESULTS, Metrics.OUTBOX_RETRIED);
+            scheduleRetry();
+            return;
+        }
+        if (resultCode == Activity.RESULT_OK) {
+            mRetryBackoff.reset();
+            Metrics.increment(Metrics.OUTBOX_RESULTS, Metrics.OUTBOX_SENT);
+            Metrics.add(Metrics.OUTBOX_DEPTH, Integer.toString(message.mAccountId), -1);
+            Metrics.recordLatency(
+                    Metrics.LATENCY_SEND_MESSAGE, mClock.getAsLong() - message.mEnqueueTime);
+        } else {
+            L.w("Failed to send a message, result code %d", resultCode);
+            onFailed(message);
+        }
+        sendNext(message.mKey);
+        scheduleUnregisterIfIdle();
+    }
+
+    /** Returns the number of messages waiting or being sent */
+    @VisibleForTesting
+    synchronized int getQueuedCount() {
+        int count = 0;
+        for (ArrayDeque<OutboundMessage> queue : mQueues.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    @VisibleForTesting
+    synchronized boolean isReceiverRegistered() {
+        return mReceiverRegistered;
+    }
+
+    private void onFailed(@NonNull OutboundMessage message) {
+        Metrics.increment(Metrics.OUTBOX_RESULTS, Metrics.OUTBOX_FAILED);
+        Metrics.add(Metrics.OUTBOX_DEPTH, Integer.toString(message.mAccountId), -1);
+        if (message.mOnFailure != null) {
+            message.mOnFailure.run();
+        }
+    }
+
+    private void scheduleRetry() {
+        // A single retry flushes every queue, so pending ones are not delayed further
+        if (!mMainHandler.hasCallbacks(mRetry)) {
+            mMainHandler.postDelayed(mRetry, mRetryBackoff.nextDelayMillis());
+        }
+    }
+
+    private boolean hasUserAccount(int accountId) {
+        UserAccountChangeList changeList = mAccounts.get().getValue();
+        if (changeList == null) {
+            return false;
+        }
+        for (UserAccount account : changeList.getAccounts()) {
+            if (account.getId() == accountId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Registers the receiver, a binder call, so only from the background */
+    private synchronized void registerReceiverIfNeeded() {
+        mMainHandler.removeCallbacks(mUnregisterReceiver);
+        if (!mReceiverRegistered) {
+            IntentFilter filter = new IntentFilter(ACTION_MESSAGE_SENT);
+            filter.addAction(ACTION_MESSAGE_DELIVERED);
+            ContextCompat.registerReceiver(
+                    mContext, mReceiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+            mReceiverRegistered = true;
+        }
+    }
+
+    private synchronized void scheduleUnregisterIfIdle() {
+        if (mReceiverRegistered && mQueues.isEmpty()) {
+            mMainHandler.removeCallbacks(mUnregisterReceiver);
+            mMainHandler.postDelayed(mUnregisterReceiver, RECEIVER_LINGER_MILLIS);
+        }
+    }
+
+    /** Unregisters the receiver, unless a message was queued since this was scheduled */
+    @VisibleForTesting
+    synchronized void unregisterReceiverIfIdle() {
+        if (mReceiverRegistered && mQueues.isEmpty()) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiverRegistered = false;
+        }
+    }
+
+    @NonNull
+    private PendingIntent createPendingIntent(@NonNull String action, int attempt) {
+        Intent intent =
+                new Intent(action)
+                        .setPackage(mContext.getPackageName())
+                        .putExtra(EXTRA_ATTEMPT, attempt);
+        return PendingIntent.getBroadcast(
+                mContext,
+                attempt,
+                intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_ONE_SHOT);
+    }
+
+    private static void sendWithSmsManager(
+            int accountId,
+            @NonNull String destination,
+            @NonNull String text,
+            int attempt,
+            @NonNull PendingIntent sentIntent,
+            @NonNull PendingIntent deliveryIntent) {
+        SmsManager.getSmsManagerForSubscriptionId(accountId)
+                .sendTextMessage(
+                        destination, /* scAddress= */ null, text, sentIntent, deliveryIntent);
+    }
+
+    private static class OutboundMessage {
+        @NonNull private final String mKey;
+        private final int mAccountId;
+        @NonNull private final String mDestination;
+        @NonNull private final String mText;
+        @Nullable private final Runnable mOnFailure;
+        private final long mEnqueueTime;
+        private boolean mSending;
+        // When the message was last handed to the radio, and under which attempt, while sending
+        private long mSendTime;
+        private int mAttempt;
+
+        OutboundMessage(
+                @NonNull String key,
+                int accountId,
+                @NonNull String destination,
+                @NonNull String text,
+                @Nullable Runnable onFailure,
+                long enqueueTime) {
+            mKey = key;
+            mAccountId = accountId;
+            mDestination = destination;
+            mText = text;
+            mOnFailure = onFailure;
+            mEnqueueTime = enqueueTime;
+        }
+    }
+}
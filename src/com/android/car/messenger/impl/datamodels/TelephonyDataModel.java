@@ -18,31 +18,59 @@ package com.android.car.messenger.impl.datamodels;
 
 import static com.android.car.messenger.core.shared.MessageConstants.KEY_MUTED_CONVERSATIONS;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.provider.Telephony;
-import android.telephony.SmsManager;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
 
 import com.android.car.messenger.common.Conversation;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.interfaces.DataModel;
+import com.android.car.messenger.core.models.MessageHistoryPage;
+import com.android.car.messenger.core.models.SearchResults;
 import com.android.car.messenger.core.models.UserAccount;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.ThreadUtil;
 import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
 import com.android.car.messenger.impl.datamodels.util.CursorUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /** Queries the telephony data model to retrieve the SMS/MMS messages */
 public class TelephonyDataModel implements DataModel {
+    /** The provider announces an update of a thread's messages on its root uri only */
+    @NonNull
+    private static final List<Uri> READ_NOTIFIED_URIS =
+            Collections.singletonList(Telephony.MmsSms.CONTENT_URI);
+
+    @NonNull private final ConversationMirror mMirror;
+    @NonNull private final ConversationRepository mConversations;
+    @NonNull private final NewMessageHub mNewMessages = new NewMessageHub();
+    @NonNull private final OutboundMessageQueue mOutbox;
+
+    public TelephonyDataModel(@NonNull Context context) {
+        mMirror = new ConversationMirror(context);
+        mConversations = new ConversationRepository(mMirror);
+        mOutbox = new OutboundMessageQueue(context);
+    }
+
     @NonNull
     @Override
     public LiveData<Collection<UserAccount>> getAccounts() {
@@ -59,17 +87,40 @@ public class TelephonyDataModel implements DataModel {
     @NonNull
     @Override
     public LiveData<Collection<Conversation>> getConversations(@NonNull UserAccount userAccount) {
-        return new ConversationListLiveData(userAccount);
+        return mConversations.getConversations(userAccount);
+    }
+
+    @Override
+    public void loadMoreConversations(@NonNull UserAccount userAccount) {
+        LoadMoreLiveData.getInstance().loadMore(userAccount.getId());
+    }
+
+    @NonNull
+    @Override
+    public LiveData<MessageHistoryPage> getMessageHistory(
+            @NonNull String conversationId, @NonNull MessageHistoryPage.PageKey before) {
+        return new MessageHistoryLiveData(conversationId, before);
+    }
+
+    @NonNull
+    @Override
+    public LiveData<SearchResults> searchMessages(@NonNull String query) {
+        return new MessageSearchLiveData(query);
     }
 
     @NonNull
     @Override
     public LiveData<Conversation> getUnreadMessages() {
-        return new NewMessageLiveData();
+        return mNewMessages.subscribe();
     }
 
     @Override
     public void muteConversation(@NonNull String conversationId, boolean mute) {
+        LocalChangeLiveData.getInstance().addMute(conversationId, mute);
+        ThreadUtil.runOnBackground(() -> updateMutedConversations(conversationId, mute));
+    }
+
+    private static void updateMutedConversations(@NonNull String conversationId, boolean mute) {
         SharedPreferences sharedPreferences = AppFactory.get().getSharedPreferences();
         Set<String> mutedConversations =
                 sharedPreferences.getStringSet(KEY_MUTED_CONVERSATIONS, new HashSet<>());
@@ -79,17 +130,78 @@ public class TelephonyDataModel implements DataModel {
         } else {
             finalSet.remove(conversationId);
         }
-        sharedPreferences.edit().putStringSet(KEY_MUTED_CONVERSATIONS, finalSet).apply();
+        // Committed on this background thread, so a failure can be rolled back
+        if (!sharedPreferences.edit().putStringSet(KEY_MUTED_CONVERSATIONS, finalSet).commit()) {
+            L.e("Failed to save the mute state of conversation %s", conversationId);
+            LocalChangeLiveData.getInstance().removeMute(conversationId);
+        }
     }
 
     @Override
     public void markAsRead(@NonNull String conversationId) {
-        L.d("markAsRead for conversationId: " + conversationId);
-        Context context = AppFactory.get().getContext();
+        markAsRead(Collections.singletonList(conversationId));
+    }
+
+    @NonNull
+    @Override
+    public LiveData<Map<String, Integer>> markAsRead(@NonNull Collection<String> conversationIds) {
+        List<String> ids = new ArrayList<>(conversationIds);
+        for (String conversationId : ids) {
+            LocalChangeLiveData.getInstance().addRead(conversationId);
+        }
+        MutableLiveData<Map<String, Integer>> readCounts = new MutableLiveData<>();
+        ThreadUtil.runOnBackground(() -> readCounts.postValue(markAsReadInternal(ids)));
+        return readCounts;
+    }
+
+    /**
+     * Marks the unread messages of the conversations read in one batch, so neither the messages
+     * already read nor one binder call per conversation are paid for.
+     *
+     * <p>The provider notifies each update on a collection uri, and the conversation lists batch
+     * those notifications into one refetch of the written conversations.
+     */
+    @NonNull
+    private Map<String, Integer> markAsReadInternal(@NonNull List<String> conversationIds) {
+        L.d("markAsRead for %d conversations", conversationIds.size());
+        LocalChangeLiveData localChanges = LocalChangeLiveData.getInstance();
         ContentValues values = new ContentValues();
         values.put(Telephony.ThreadsColumns.READ, 1);
-        context.getContentResolver()
-                .update(CursorUtils.getConversationUri(conversationId), values, /* extras= */ null);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (String conversationId : conversationIds) {
+            // The thread date does not change when read, so the mirror would not see the change
+            mMirror.invalidateConversation(conversationId);
+            MessageHistoryLiveData.evictConversation(conversationId);
+            localChanges.onWrite(conversationId, READ_NOTIFIED_URIS);
+            operations.add(
+                    ContentProviderOperation.newUpdate(
+                                    CursorUtils.getConversationUri(conversationId))
+                            .withValues(values)
+                            .withSelection(
+                                    Telephony.ThreadsColumns.READ + " = 0",
+                                    /* selectionArgs= */ null)
+                            .build());
+        }
+        Map<String, Integer> readCounts = new HashMap<>();
+        Context context = AppFactory.get().getContext();
+        try {
+            ContentProviderResult[] results =
+                    context.getContentResolver()
+                            .applyBatch(Telephony.MmsSms.CONTENT_URI.getAuthority(), operations);
+            for (int i = 0; i < results.length; i++) {
+                Integer count = results[i].count;
+                readCounts.put(conversationIds.get(i), count == null ? 0 : count);
+            }
+        } catch (OperationApplicationException
+                | RemoteException
+                | IllegalArgumentException
+                | SecurityException e) {
+            L.e("Failed to mark conversations as read", e);
+            for (String conversationId : conversationIds) {
+                localChanges.removeRead(conversationId);
+            }
+        }
+        return readCounts;
     }
 
     @Override
@@ -102,25 +214,20 @@ public class TelephonyDataModel implements DataModel {
         L.d("Sending a message to a conversation");
         String destination =
                 Uri.withAppendedPath(Telephony.Threads.CONTENT_URI, conversationId).toString();
-        SmsManager.getSmsManagerForSubscriptionId(accountId)
-                .sendTextMessage(
-                        destination,
-                        /* scAddress= */ null,
-                        message,
-                        /* sentIntent= */ null,
-                        /* deliveryIntent= */ null);
+        LocalChangeLiveData localChanges = LocalChangeLiveData.getInstance();
+        long replyTimestamp = localChanges.addReply(conversationId, message);
+        // A reply that fails to send is removed from the conversation list again
+        mOutbox.enqueue(
+                accountId,
+                destination,
+                message,
+                () -> localChanges.removeReply(conversationId, replyTimestamp));
     }
 
     @Override
     public void sendMessage(int accountId, @NonNull String phoneNumber, @NonNull String message) {
         L.d("Sending a message to a phone number");
-        SmsManager.getSmsManagerForSubscriptionId(accountId)
-                .sendTextMessage(
-                        phoneNumber,
-                        /* scAddress= */ null,
-                        message,
-                        /* sentIntent= */ null,
-                        /* deliveryIntent= */ null);
+        mOutbox.enqueue(accountId, phoneNumber, message, /* onFailure= */ null);
     }
 
     @Override
@@ -141,6 +248,8 @@ public class TelephonyDataModel implements DataModel {
                 ConversationsPerDeviceFetchManager.getInstance().getRemovedConversationLiveData(),
                 id -> {
                     muteConversation(id, false);
+                    MessageHistoryLiveData.evictConversation(id);
+                    ThreadUtil.runOnBackground(() -> mMirror.deleteConversation(id));
                     return id;
                 });
     }
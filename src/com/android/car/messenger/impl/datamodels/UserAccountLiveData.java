@@ -16,6 +16,8 @@
 package com.android.car.messenger.impl.datamodels;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.telephony.SubscriptionManager.OnSubscriptionsChangedListener;
@@ -27,6 +29,8 @@ import androidx.lifecycle.LiveData;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.core.util.CollectionUtil;
+import com.android.car.messenger.core.util.ThreadUtil;
 import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
 
 import java.time.Instant;
@@ -72,10 +76,18 @@ public class UserAccountLiveData extends LiveData<UserAccountChangeList> {
 
     @Nullable private static UserAccountLiveData sInstance;
 
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Guarded by this, as loads run on background threads. The accounts last loaded, which may
+    // not be set as the value yet.
+    @NonNull private Collection<UserAccount> mLoadedAccounts = new ArrayList<>();
+
     private UserAccountLiveData() {
         Context context = AppFactory.get().getContext();
         mSubscriptionManager = context.getSystemService(SubscriptionManager.class);
-        mSubscriptionManager.addOnSubscriptionsChangedListener(mOnChangeListener);
+        // Instance may be created on a background thread with no looper, so an explicit executor
+        // is provided. Changes are loaded off the main thread as the query is a binder call.
+        mSubscriptionManager.addOnSubscriptionsChangedListener(
+                ThreadUtil.getBackgroundExecutor(), mOnChangeListener);
         loadValue();
     }
 
@@ -86,19 +98,19 @@ public class UserAccountLiveData extends LiveData<UserAccountChangeList> {
      * subscription is deleted.
      */
     public void refresh() {
-        loadValue();
+        ThreadUtil.runOnBackground(this::loadValue);
     }
 
     /** Gets the instance of {@link UserAccountLiveData} */
     @NonNull
-    public static UserAccountLiveData getInstance() {
+    public static synchronized UserAccountLiveData getInstance() {
         if (sInstance == null) {
             sInstance = new UserAccountLiveData();
         }
         return sInstance;
     }
 
-    private void loadValue() {
+    private synchronized void loadValue() {
         List<UserAccount> accounts =
                 getNullSafeSubscriptionInfoList().stream()
                         .map(
@@ -114,26 +126,31 @@ public class UserAccountLiveData extends LiveData<UserAccountChangeList> {
                                 })
                         .collect(Collectors.toList());
 
-        // get the removed accounts and added accounts.
-        Collection<UserAccount> prevUserAccounts = getValueOrEmpty().mAccounts;
-        Set<UserAccount> addedAccounts = getDifference(accounts, prevUserAccounts);
-        Set<UserAccount> removedAccounts = getDifference(prevUserAccounts, accounts);
+        // get the removed accounts and added accounts, against the last load rather than the
+        // value, which a load right before may not have set yet
+        Set<UserAccount> addedAccounts = getDifference(accounts, mLoadedAccounts);
+        Set<UserAccount> removedAccounts = getDifference(mLoadedAccounts, accounts);
+        mLoadedAccounts = accounts;
 
         if (addedAccounts.isEmpty() && removedAccounts.isEmpty()) {
             // Return early if no new accounts were added or removed since last change list.
             // However, if no account is found, post an empty changelist to allow
             // the subscriber update the UI with "no account found or all accounts disconnected"
             if (accounts.isEmpty()) {
-                postValue(new UserAccountChangeList());
+                setValueOnMainThread(new UserAccountChangeList());
             }
             return;
         }
 
-        UserAccountChangeList newAccountChangeList = new UserAccountChangeList();
-        newAccountChangeList.mAccounts = accounts;
-        newAccountChangeList.mAddedAccounts = addedAccounts;
-        newAccountChangeList.mRemovedAccounts = removedAccounts;
-        postValue(newAccountChangeList);
+        setValueOnMainThread(new UserAccountChangeList(accounts, addedAccounts, removedAccounts));
+    }
+
+    /**
+     * Sets the value on the main thread rather than posting it, as a post replaces the value still
+     * pending, which would drop the accounts it added or removed.
+     */
+    private void setValueOnMainThread(@NonNull UserAccountChangeList changeList) {
+        mMainHandler.post(() -> setValue(changeList));
     }
 
     /**
@@ -160,9 +177,7 @@ public class UserAccountLiveData extends LiveData<UserAccountChangeList> {
     public static Set<UserAccount> getDifference(
             @NonNull Collection<UserAccount> firstList,
             @NonNull Collection<UserAccount> secondList) {
-        return firstList.stream()
-                .filter(it -> secondList.stream().noneMatch(item -> item.getId() == it.getId()))
-                .collect(Collectors.toSet());
+        return CollectionUtil.getDifference(firstList, secondList, UserAccount::getId);
     }
 
     /** A list of {@link UserAccount} with information on what changed */
@@ -171,6 +186,17 @@ public class UserAccountLiveData extends LiveData<UserAccountChangeList> {
         @NonNull private Collection<UserAccount> mRemovedAccounts = new ArrayList<>();
         @NonNull private Collection<UserAccount> mAddedAccounts = new ArrayList<>();
 
+        UserAccountChangeList() {}
+
+        UserAccountChangeList(
+                @NonNull Collection<UserAccount> accounts,
+                @NonNull Collection<UserAccount> addedAccounts,
+                @NonNull Collection<UserAccount> removedAccounts) {
+            mAccounts = accounts;
+            mAddedAccounts = addedAccounts;
+            mRemovedAccounts = removedAccounts;
+        }
+
         /** Get all user accounts */
         @NonNull
         public Collection<UserAccount> getAccounts() {
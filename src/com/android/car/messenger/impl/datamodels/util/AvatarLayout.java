@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Computes where each avatar is drawn in a group avatar, as plain float arrays.
+ *
+ * <p>Only depends on the JDK, so it is also measured by the host side benchmarks. {@link
+ * AvatarUtil} wraps the result into {@link android.graphics.RectF}.
+ */
+public final class AvatarLayout {
+    /** Number of floats per rect in the arrays returned: left, top, right and bottom */
+    public static final int RECT_SIZE = 4;
+
+    private AvatarLayout() {}
+
+    /**
+     * Generates the bounds of each individual avatar in the final group avatar image, as {@link
+     * #RECT_SIZE} floats per avatar. The location of each avatar depends on the size of the group
+     * and the size of the overall group avatar size. If we're cropping to a circle, inset the
+     * rects so the circle surrounds all the mini-avatars.
+     */
+    @NonNull
+    public static float[] generateDestRects(
+            int desiredWidth, int desiredHeight, boolean cropToCircle, int groupSize) {
+        float halfWidth = desiredWidth / 2F;
+        float halfHeight = desiredHeight / 2F;
+
+        // If we're cropping to a circle, calculate an inset so that all the mini-avatars will fit
+        // inside the circle.
+        float inset =
+                cropToCircle ? (float) ((Math.hypot(halfWidth, halfHeight) - halfWidth) / 2f) : 0F;
+        float[] destArray = new float[groupSize * RECT_SIZE];
+        switch (groupSize) {
+            case 2:
+                /*
+                 * +-------+
+                 * | 0 |   |
+                 * +-------+
+                 * |   | 1 |
+                 * +-------+         *
+                 * We want two circles which touches in the center. To get this we know that
+                 * the diagonal
+                 * of the overall group avatar is squareRoot(2) * w We also know that the two
+                 * circles
+                 * touches the at the center of the overall group avatar and the distance from
+                 * the center of
+                 * the circle to the corner of the group avatar is radius * squareRoot(2).
+                 * Therefore, the
+                 * following emerges.
+                 *
+                 * w * squareRoot(2) = 2 (radius + radius * squareRoot(2)) Solving for radius
+                 * we get: d =
+                 * 2 * radius = ( squareRoot(2) / (squareRoot(2) + 1)) * w d = (2 - squareRoot(2)
+                 * ) * w
+                 */
+                float diameter = (float) ((2 - Math.sqrt(2)) * ((float) desiredWidth - inset));
+                setRect(
+                        destArray,
+                        /* index= */ 0,
+                        inset,
+                        inset,
+                        diameter,
+                        diameter);
+                setRect(
+                        destArray,
+                        /* index= */ 1,
+                        /* left= */ (float) desiredWidth - diameter,
+                        /* top= */ (float) desiredHeight - diameter,
+                        /* right= */ (float) desiredWidth - inset,
+                        /* bottom= */ (float) desiredHeight - inset);
+                break;
+            case 3:
+                /*
+                 * +-------+
+                 * | | 0 | |
+                 * +-------+
+                 * | 1 | 2 |
+                 * +-------+
+                 *   i0
+                 *   |\
+                 * a | \ c
+                 *   --- i2
+                 *    b
+                 *
+                 * a = radius * squareRoot(3) due to the triangle being a 30-60-90 right
+                 * triangle. b =
+                 * radius of circle c = 2 * radius of circle
+                 *
+                 * All three of the images are circles and therefore image zero will not touch
+                 * image one
+                 * or image two. Move image zero down so it touches image one and image two. This
+                 * can be
+                 * done by keeping image zero in the center and moving it down slightly. The
+                 * amount to move
+                 * down can be calculated by solving a right triangle. We know that the center x
+                 * of image
+                 * two to the center x of image zero is the radius of the circle, this is the
+                 * length of edge
+                 * b. Also we know that the distance from image zero to image two's center is 2 *
+                 * radius,
+                 * edge c. From this we know that the distance from center y of image two to
+                 * center y of
+                 * image one, edge a, is equal to radius * squareRoot(3) due to this triangle
+                 * being a
+                 * 30-60-90 right triangle.
+                 */
+                float quarterWidth = (float) desiredWidth / 4F;
+                float threeQuarterWidth = 3 * quarterWidth;
+                float radius = cropToCircle ? (halfHeight - inset) / 2 : (float) desiredHeight / 4F;
+                float imageTwoCenterY = (float) desiredHeight - radius;
+                float lengthOfEdgeA = (float) (radius * Math.sqrt(3));
+                float imageZeroCenterY = imageTwoCenterY - lengthOfEdgeA;
+                float imageZeroTop = imageZeroCenterY - radius - 2 * inset;
+                float imageZeroBottom = imageZeroCenterY + radius - 2 * inset;
+                setRect(
+                        destArray,
+                        /* index= */ 0,
+                        quarterWidth,
+                        imageZeroTop,
+                        threeQuarterWidth,
+                        imageZeroBottom);
+                setRect(
+                        destArray,
+                        /* index= */ 1,
+                        inset,
+                        /* top= */ halfHeight - inset,
+                        halfWidth,
+                        /* bottom= */ (float) desiredHeight - 2 * inset);
+                setRect(
+                        destArray,
+                        /* index= */ 2,
+                        halfWidth,
+                        /* top= */ halfHeight - inset,
+                        /* right= */ (float) desiredWidth - inset,
+                        /* bottom= */ (float) desiredHeight - 2 * inset);
+                break;
+            default:
+                /*
+                 * +-------+
+                 * | 0 | 1 |
+                 * +-------+
+                 * | 2 | 3 |
+                 * +-------+
+                 */
+                setRect(
+                        destArray,
+                        /* index= */ 0,
+                        inset,
+                        inset,
+                        halfWidth,
+                        halfHeight);
+                setRect(
+                        destArray,
+                        /* index= */ 1,
+                        halfWidth,
+                        inset,
+                        /* right= */ (float) desiredWidth - inset,
+                        halfHeight);
+                setRect(
+                        destArray,
+                        /* index= */ 2,
+                        inset,
+                        halfHeight,
+                        halfWidth,
+                        /* bottom= */ (float) desiredHeight - inset);
+                setRect(
+                        destArray,
+                        /* index= */ 3,
+                        halfWidth,
+                        halfHeight,
+                        /* right= */ (float) desiredWidth - inset,
+                        /* bottom= */ (float) desiredHeight - inset);
+                break;
+        }
+        return destArray;
+    }
+
+    private static void setRect(
+            @NonNull float[] rects, int index, float left, float top, float right, float bottom) {
+        int offset = index * RECT_SIZE;
+        rects[offset] = left;
+        rects[offset + 1] = top;
+        rects[offset + 2] = right;
+        rects[offset + 3] = bottom;
+    }
+}
@@ -38,6 +38,7 @@ import androidx.annotation.Nullable;
 
 import com.android.car.messenger.R;
 import com.android.car.messenger.core.ui.shared.LetterTileDrawable;
+import com.android.car.messenger.core.util.MainThreadGuard;
 
 import java.util.List;
 
@@ -110,6 +111,7 @@ public final class AvatarUtil {
     @Nullable
     public static Bitmap resolvePersonAvatar(
             @NonNull Context context, @Nullable Bitmap bitmap, @Nullable CharSequence name) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.CANVAS_COMPOSITION);
         if (bitmap != null) {
             return AvatarUtil.createClippedCircle(bitmap);
         } else {
@@ -159,6 +161,7 @@ public final class AvatarUtil {
     @NonNull
     private static Bitmap createGroupAvatarBitmap(
             @NonNull List<Bitmap> participantsIcon, GroupAvatarConfigs groupAvatarConfigs) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.CANVAS_COMPOSITION);
         int width = groupAvatarConfigs.mWidth;
         int height = groupAvatarConfigs.mHeight;
         Bitmap bitmap = createOrReuseBitmap(width, height, Color.TRANSPARENT);
@@ -272,140 +275,23 @@ public final class AvatarUtil {
 
     /**
      * Generates an array of {@link RectF} which represents where each of the individual avatar
-     * should be located in the final group avatar image. The location of each avatar depends on the
-     * size of the group and the size of the overall group avatar size. If we're cropping to a
-     * circle, inset the rects so the circle surrounds all the mini-avatars.
+     * should be located in the final group avatar image, see {@link
+     * AvatarLayout#generateDestRects}.
      */
     public static RectF[] generateDestRectArray(
             int desiredWidth, int desiredHeight, boolean cropToCircle, int groupSize) {
-        float halfWidth = desiredWidth / 2F;
-        float halfHeight = desiredHeight / 2F;
-
-        // If we're cropping to a circle, calculate an inset so that all the mini-avatars will fit
-        // inside the circle.
-        float inset =
-                cropToCircle ? (float) ((Math.hypot(halfWidth, halfHeight) - halfWidth) / 2f) : 0F;
+        float[] rects =
+                AvatarLayout.generateDestRects(
+                        desiredWidth, desiredHeight, cropToCircle, groupSize);
         RectF[] destArray = new RectF[groupSize];
-        switch (groupSize) {
-            case 2:
-                /*
-                 * +-------+
-                 * | 0 |   |
-                 * +-------+
-                 * |   | 1 |
-                 * +-------+         *
-                 * We want two circles which touches in the center. To get this we know that
-                 * the diagonal
-                 * of the overall group avatar is squareRoot(2) * w We also know that the two
-                 * circles
-                 * touches the at the center of the overall group avatar and the distance from
-                 * the center of
-                 * the circle to the corner of the group avatar is radius * squareRoot(2).
-                 * Therefore, the
-                 * following emerges.
-                 *
-                 * w * squareRoot(2) = 2 (radius + radius * squareRoot(2)) Solving for radius
-                 * we get: d =
-                 * 2 * radius = ( squareRoot(2) / (squareRoot(2) + 1)) * w d = (2 - squareRoot(2)
-                 * ) * w
-                 */
-                float diameter = (float) ((2 - Math.sqrt(2)) * ((float) desiredWidth - inset));
-                destArray[0] = new RectF(inset, inset, diameter, diameter);
-                destArray[1] =
-                        new RectF(
-                                /* left= */ (float) desiredWidth - diameter,
-                                /* top= */ (float) desiredHeight - diameter,
-                                /* right= */ (float) desiredWidth - inset,
-                                /* bottom= */ (float) desiredHeight - inset);
-                break;
-            case 3:
-                /*
-                 * +-------+
-                 * | | 0 | |
-                 * +-------+
-                 * | 1 | 2 |
-                 * +-------+
-                 *   i0
-                 *   |\
-                 * a | \ c
-                 *   --- i2
-                 *    b
-                 *
-                 * a = radius * squareRoot(3) due to the triangle being a 30-60-90 right
-                 * triangle. b =
-                 * radius of circle c = 2 * radius of circle
-                 *
-                 * All three of the images are circles and therefore image zero will not touch
-                 * image one
-                 * or image two. Move image zero down so it touches image one and image two. This
-                 * can be
-                 * done by keeping image zero in the center and moving it down slightly. The
-                 * amount to move
-                 * down can be calculated by solving a right triangle. We know that the center x
-                 * of image
-                 * two to the center x of image zero is the radius of the circle, this is the
-                 * length of edge
-                 * b. Also we know that the distance from image zero to image two's center is 2 *
-                 * radius,
-                 * edge c. From this we know that the distance from center y of image two to
-                 * center y of
-                 * image one, edge a, is equal to radius * squareRoot(3) due to this triangle
-                 * being a
-                 * 30-60-90 right triangle.
-                 */
-                float quarterWidth = (float) desiredWidth / 4F;
-                float threeQuarterWidth = 3 * quarterWidth;
-                float radius = cropToCircle ? (halfHeight - inset) / 2 : (float) desiredHeight / 4F;
-                float imageTwoCenterY = (float) desiredHeight - radius;
-                float lengthOfEdgeA = (float) (radius * Math.sqrt(3));
-                float imageZeroCenterY = imageTwoCenterY - lengthOfEdgeA;
-                float imageZeroTop = imageZeroCenterY - radius - 2 * inset;
-                float imageZeroBottom = imageZeroCenterY + radius - 2 * inset;
-                destArray[0] =
-                        new RectF(
-                                quarterWidth, imageZeroTop,
-                                threeQuarterWidth, imageZeroBottom);
-                destArray[1] =
-                        new RectF(
-                                inset,
-                                /* top= */ halfHeight - inset,
-                                halfWidth,
-                                /* bottom= */ (float) desiredHeight - 2 * inset);
-                destArray[2] =
-                        new RectF(
-                                halfWidth,
-                                /* top= */ halfHeight - inset,
-                                /* right= */ (float) desiredWidth - inset,
-                                /* bottom= */ (float) desiredHeight - 2 * inset);
-                break;
-            default:
-                /*
-                 * +-------+
-                 * | 0 | 1 |
-                 * +-------+
-                 * | 2 | 3 |
-                 * +-------+
-                 */
-                destArray[0] = new RectF(inset, inset, halfWidth, halfHeight);
-                destArray[1] =
-                        new RectF(
-                                halfWidth,
-                                inset,
-                                /* right= */ (float) desiredWidth - inset,
-                                halfHeight);
-                destArray[2] =
-                        new RectF(
-                                inset,
-                                halfHeight,
-                                halfWidth,
-                                /* bottom= */ (float) desiredHeight - inset);
-                destArray[3] =
-                        new RectF(
-                                halfWidth,
-                                halfHeight,
-                                /* right= */ (float) desiredWidth - inset,
-                                /* bottom= */ (float) desiredHeight - inset);
-                break;
+        for (int i = 0; i < groupSize; i++) {
+            int offset = i * AvatarLayout.RECT_SIZE;
+            destArray[i] =
+                    new RectF(
+                            /* left= */ rects[offset],
+                            /* top= */ rects[offset + 1],
+                            /* right= */ rects[offset + 2],
+                            /* bottom= */ rects[offset + 3]);
         }
         return destArray;
     }
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable form of a conversation held by the conversation lists, expanded into a
+ * {@code Conversation} only when handed to the UI.
+ *
+ * <p>Participants and senders are indexes into a {@link ParticipantTable}, the messages are
+ * parallel primitive arrays, and the avatar is referred to by key instead of holding a bitmap. A
+ * copy with a changed flag or count shares the arrays, so applying a local change does not copy
+ * the messages.
+ *
+ * <p>Only depends on the JDK, so it is also measured by the host side benchmarks.
+ */
+public final class CompactConversation {
+    @NonNull private static final int[] EMPTY_INTS = new int[0];
+    @NonNull private static final long[] EMPTY_LONGS = new long[0];
+    @NonNull private static final String[] EMPTY_STRINGS = new String[0];
+
+    @NonNull private final String mId;
+    @Nullable private final String mTitle;
+    @Nullable private final String mAvatarKey;
+    private final int mUnreadCount;
+    private final boolean mMuted;
+    private final boolean mStale;
+    private final long mReplyTimestamp;
+    @Nullable private final String mReplyText;
+    @NonNull private final int[] mParticipants;
+    @NonNull private final String[] mTexts;
+    @NonNull private final long[] mTimestamps;
+    @NonNull private final int[] mSenders;
+    @NonNull private final int[] mTypes;
+    @NonNull private final int[] mStatuses;
+    private final long mTimestamp;
+
+    private CompactConversation(
+            @NonNull String id,
+            @Nullable String title,
+            @Nullable String avatarKey,
+            int unreadCount,
+            boolean muted,
+            boolean stale,
+            long replyTimestamp,
+            @Nullable String replyText,
+            @NonNull int[] participants,
+            @NonNull String[] texts,
+            @NonNull long[] timestamps,
+            @NonNull int[] senders,
+            @NonNull int[] types,
+            @NonNull int[] statuses) {
+        mId = id;
+        mTitle = title;
+        mAvatarKey = avatarKey;
+        mUnreadCount = unreadCount;
+        mMuted = muted;
+        mStale = stale;
+        mReplyTimestamp = replyTimestamp;
+        mReplyText = replyText;
+        mParticipants = participants;
+        mTexts = texts;
+        mTimestamps = timestamps;
+        mSenders = senders;
+        mTypes = types;
+        mStatuses = statuses;
+        int messageCount = timestamps.length;
+        long lastMessageTimestamp = messageCount == 0 ? 0L : timestamps[messageCount - 1];
+        mTimestamp = Math.max(replyTimestamp, lastMessageTimestamp);
+    }
+
+    /** Returns the conversation id */
+    @NonNull
+    public String getId() {
+        return mId;
+    }
+
+    /** Returns the conversation title */
+    @Nullable
+    public String getTitle() {
+        return mTitle;
+    }
+
+    /** Returns the key of the conversation avatar, or null if it has none */
+    @Nullable
+    public String getAvatarKey() {
+        return mAvatarKey;
+    }
+
+    /** Returns the number of unread messages */
+    public int getUnreadCount() {
+        return mUnreadCount;
+    }
+
+    /** Returns true if the conversation is muted */
+    public boolean isMuted() {
+        return mMuted;
+    }
+
+    /** Returns true if the conversation was last synced before the provider stalled */
+    public boolean isStale() {
+        return mStale;
+    }
+
+    /** Returns true if the conversation has a reply */
+    public boolean hasReply() {
+        return mReplyTimestamp != 0L;
+    }
+
+    /** Returns the timestamp of the last reply, or 0 if there is none */
+    public long getReplyTimestamp() {
+        return mReplyTimestamp;
+    }
+
+    /** Returns the text of the last reply */
+    @Nullable
+    public String getReplyText() {
+        return mReplyText;
+    }
+
+    /**
+     * Returns the timestamp the conversation is sorted by, the later of its last reply and its
+     * last message, as {@code ConversationUtil#getConversationTimestamp}.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /** Returns the number of participants */
+    public int getParticipantCount() {
+        return mParticipants.length;
+    }
+
+    /** Returns the participant table index of a participant */
+    public int getParticipant(int position) {
+        return mParticipants[position];
+    }
+
+    /** Returns the number of messages, oldest first */
+    public int getMessageCount() {
+        return mTexts.length;
+    }
+
+    /** Returns the text of a message */
+    @Nullable
+    public String getText(int position) {
+        return mTexts[position];
+    }
+
+    /** Returns the timestamp of a message */
+    public long getMessageTimestamp(int position) {
+        return mTimestamps[position];
+    }
+
+    /** Returns the participant table index of the sender of a message */
+    public int getSender(int position) {
+        return mSenders[position];
+    }
+
+    /** Returns the type of a message */
+    public int getMessageType(int position) {
+        return mTypes[position];
+    }
+
+    /** Returns the status of a message */
+    public int getMessageStatus(int position) {
+        return mStatuses[position];
+    }
+
+    /** Returns a copy muted or unmuted */
+    @NonNull
+    public CompactConversation withMuted(boolean muted) {
+        return muted == mMuted
+                ? this
+                : copy(mAvatarKey, mUnreadCount, muted, mStale, mReplyTimestamp, mReplyText);
+    }
+
+    /** Returns a copy with the unread count */
+    @NonNull
+    public CompactConversation withUnreadCount(int unreadCount) {
+        return unreadCount == mUnreadCount
+                ? this
+                : copy(mAvatarKey, unreadCount, mMuted, mStale, mReplyTimestamp, mReplyText);
+    }
+
+    /** Returns a copy with the last reply */
+    @NonNull
+    public CompactConversation withReply(long timestamp, @Nullable String text) {
+        return copy(mAvatarKey, mUnreadCount, mMuted, mStale, timestamp, text);
+    }
+
+    /** Returns a copy flagged as stale */
+    @NonNull
+    public CompactConversation withStale() {
+        return mStale
+                ? this
+                : copy(mAvatarKey, mUnreadCount, mMuted, true, mReplyTimestamp, mReplyText);
+    }
+
+    /** Returns a copy without its avatar, which is then neither loaded nor held when expanded */
+    @NonNull
+    public CompactConversation withoutAvatar() {
+        return mAvatarKey == null
+                ? this
+                : copy(null, mUnreadCount, mMuted, mStale, mReplyTimestamp, mReplyText);
+    }
+
+    @NonNull
+    private CompactConversation copy(
+            @Nullable String avatarKey,
+            int unreadCount,
+            boolean muted,
+            boolean stale,
+            long replyTimestamp,
+            @Nullable String replyText) {
+        return new CompactConversation(
+                mId,
+                mTitle,
+                avatarKey,
+                unreadCount,
+                muted,
+                stale,
+                replyTimestamp,
+                replyText,
+                mParticipants,
+                mTexts,
+                mTimestamps,
+                mSenders,
+                mTypes,
+                mStatuses);
+    }
+
+    /** Builds a {@link CompactConversation}, adding its participants and messages one by one */
+    public static final class Builder {
+        private static final int INITIAL_CAPACITY = 4;
+
+        @NonNull private final String mId;
+        @Nullable private String mTitle;
+        @Nullable private String mAvatarKey;
+        private int mUnreadCount;
+        private boolean mMuted;
+        private long mReplyTimestamp;
+        @Nullable private String mReplyText;
+        @NonNull private int[] mParticipants = EMPTY_INTS;
+        private int mParticipantCount;
+        @NonNull private String[] mTexts = EMPTY_STRINGS;
+        @NonNull private long[] mTimestamps = EMPTY_LONGS;
+        @NonNull private int[] mSenders = EMPTY_INTS;
+        @NonNull private int[] mTypes = EMPTY_INTS;
+        @NonNull private int[] mStatuses = EMPTY_INTS;
+        private int mMessageCount;
+
+        public Builder(@NonNull String id) {
+            mId = id;
+        }
+
+        /** Sets the conversation title */
+        @NonNull
+        public Builder setTitle(@Nullable String title) {
+            mTitle = title;
+            return this;
+        }
+
+        /** Sets the key of the conversation avatar */
+        @NonNull
+        public Builder setAvatarKey(@Nullable String avatarKey) {
+            mAvatarKey = avatarKey;
+            return this;
+        }
+
+        /** Sets the number of unread messages */
+        @NonNull
+        public Builder setUnreadCount(int unreadCount) {
+            mUnreadCount = unreadCount;
+            return this;
+        }
+
+        /** Sets whether the conversation is muted */
+        @NonNull
+        public Builder setMuted(boolean muted) {
+            mMuted = muted;
+            return this;
+        }
+
+        /** Sets the last reply */
+        @NonNull
+        public Builder setReply(long timestamp, @Nullable String text) {
+            mReplyTimestamp = timestamp;
+            mReplyText = text;
+            return this;
+        }
+
+        /** Adds a participant by its participant table index */
+        @NonNull
+        public Builder addParticipant(int participant) {
+            if (mParticipantCount == mParticipants.length) {
+                mParticipants = Arrays.copyOf(mParticipants, grow(mParticipantCount));
+            }
+            mParticipants[mParticipantCount++] = participant;
+            return this;
+        }
+
+        /** Adds a message after the ones added before, which should be older */
+        @NonNull
+        public Builder addMessage(
+                @Nullable String text, long timestamp, int sender, int type, int status) {
+            if (mMessageCount == mTexts.length) {
+                int capacity = grow(mMessageCount);
+                mTexts = Arrays.copyOf(mTexts, capacity);
+                mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+                mSenders = Arrays.copyOf(mSenders, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mStatuses = Arrays.copyOf(mStatuses, capacity);
+            }
+            mTexts[mMessageCount] = text;
+            mTimestamps[mMessageCount] = timestamp;
+            mSenders[mMessageCount] = sender;
+            mTypes[mMessageCount] = type;
+            mStatuses[mMessageCount] = status;
+            mMessageCount++;
+            return this;
+        }
+
+        /** Builds the conversation, with arrays trimmed to the participants and messages added */
+        @NonNull
+        public CompactConversation build() {
+            return new CompactConversation(
+                    mId,
+                    mTitle,
+                    mAvatarKey,
+                    mUnreadCount,
+                    mMuted,
+                    /* stale= */ false,
+                    mReplyTimestamp,
+                    mReplyText,
+                    Arrays.copyOf(mParticipants, mParticipantCount),
+                    Arrays.copyOf(mTexts, mMessageCount),
+                    Arrays.copyOf(mTimestamps, mMessageCount),
+                    Arrays.copyOf(mSenders, mMessageCount),
+                    Arrays.copyOf(mTypes, mMessageCount),
+                    Arrays.copyOf(mStatuses, mMessageCount));
+        }
+
+        private static int grow(int size) {
+            return size == 0 ? INITIAL_CAPACITY : size * 2;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.provider.ContactsContract;
 import android.provider.Telephony.MmsSms;
 import android.text.TextUtils;
@@ -36,6 +37,8 @@ import androidx.core.app.Person;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.core.util.TraceUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -70,29 +73,52 @@ public class ContactUtils {
      *
      * @param conversationId The conversation id to retrieve the list of participants
      * @param processParticipant A nullable method to further process an individual participant
+     * @param cancellationSignal Cancels the lookups once the fetch issuing them is superseded
      */
     public static List<Person> getRecipients(
             @NonNull String conversationId,
-            @Nullable BiConsumer<String, Bitmap> processParticipant) {
-        String[] recipientIds = getRecipientIds(conversationId);
+            @Nullable BiConsumer<String, Bitmap> processParticipant,
+            @Nullable CancellationSignal cancellationSignal) {
+        TraceUtil.beginSection(TraceUtil.FETCH_CONTACTS);
+        try {
+            return getRecipientsInternal(conversationId, processParticipant, cancellationSignal);
+        } finally {
+            TraceUtil.endSection();
+        }
+    }
+
+    private static List<Person> getRecipientsInternal(
+            @NonNull String conversationId,
+            @Nullable BiConsumer<String, Bitmap> processParticipant,
+            @Nullable CancellationSignal cancellationSignal) {
+        String[] recipientIds = getRecipientIds(conversationId, cancellationSignal);
         List<Person> participants = new ArrayList<>();
         Context context = AppFactory.get().getContext();
         for (String contactId : recipientIds) {
             long contactIdLong = Long.parseLong(contactId);
-            String number = getCanonicalAddressesFromRecipientIds(context, contactIdLong);
+            String number =
+                    getCanonicalAddressesFromRecipientIds(
+                            context, contactIdLong, cancellationSignal);
             if (number == null) {
-                L.e("No phone number found for contactId: " + contactId);
+                L.e("No phone number found for contactId: %s", contactId);
                 continue;
             }
-            Person person = getPerson(context, number, processParticipant);
+            Person person = getPerson(context, number, processParticipant, cancellationSignal);
             participants.add(person);
         }
-
+        TraceUtil.setRowCount(TraceUtil.FETCH_CONTACTS, participants.size());
         return participants;
     }
 
-    private static String[] getRecipientIds(@NonNull String conversationId) {
-        Cursor threadCursor = CursorUtils.getThreadCursor(conversationId);
+    private static String[] getRecipientIds(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
+        Cursor threadCursor;
+        TraceUtil.beginSection(TraceUtil.QUERY_THREAD);
+        try {
+            threadCursor = CursorUtils.getThreadCursor(conversationId, cancellationSignal);
+        } finally {
+            TraceUtil.endSection();
+        }
         threadCursor.moveToFirst();
         return threadCursor
                 .getString(threadCursor.getColumnIndex(RECIPIENT_IDS))
@@ -107,16 +133,29 @@ public class ContactUtils {
     static Person getPerson(
             @NonNull Context context,
             @NonNull String phoneNo,
-            @Nullable BiConsumer<String, Bitmap> processParticipant) {
+            @Nullable BiConsumer<String, Bitmap> processParticipant,
+            @Nullable CancellationSignal cancellationSignal) {
         String name = phoneNo;
         Bitmap bitmap = null;
         Cursor cursor = null;
         try {
             Uri uri = CONTENT_FILTER_URI.buildUpon().appendEncodedPath(Uri.encode(phoneNo)).build();
-            cursor = CursorUtils.simpleQueryWithProjection(context, uri, PROJECTION);
+            TraceUtil.beginSection(TraceUtil.QUERY_CONTACT);
+            try {
+                cursor =
+                        CursorUtils.query(
+                                context,
+                                TraceUtil.QUERY_CONTACT,
+                                uri,
+                                PROJECTION,
+                                /* selection= */ null,
+                                /* sortOrder= */ null,
+                                cancellationSignal);
+            } finally {
+                TraceUtil.endSection();
+            }
         } catch (IllegalArgumentException e) {
-            L.w("Unable to retrieve PhoneLookup cursor");
-            L.w(e.toString());
+            L.w("Unable to retrieve PhoneLookup cursor: %s", e);
         }
 
         if (cursor != null && cursor.moveToFirst()) {
@@ -127,6 +166,7 @@ public class ContactUtils {
                     cursor.getString(cursor.getColumnIndex(ContactsContract.PhoneLookup.PHOTO_URI));
 
             if (thumbnailPath != null && processParticipant != null) {
+                MainThreadGuard.checkNotMainThread(MainThreadGuard.DECODE);
                 try {
                     Uri thumbnailUri = Uri.parse(thumbnailPath);
                     AssetFileDescriptor fd =
@@ -137,7 +177,7 @@ public class ContactUtils {
                         fd.close();
                     }
                 } catch (IOException e) {
-                    L.e(e.toString());
+                    L.e("Unable to decode the contact thumbnail", e);
                 }
             }
         }
@@ -159,11 +199,18 @@ public class ContactUtils {
 
     @Nullable
     private static String getCanonicalAddressesFromRecipientIds(
-            @NonNull Context context, long contactId) {
+            @NonNull Context context,
+            long contactId,
+            @Nullable CancellationSignal cancellationSignal) {
         Cursor cursor =
-                CursorUtils.simpleQuery(
+                CursorUtils.query(
                         context,
-                        ContentUris.withAppendedId(SINGLE_CANONICAL_ADDRESS_URI, contactId));
+                        TraceUtil.QUERY_CANONICAL_ADDRESS,
+                        ContentUris.withAppendedId(SINGLE_CANONICAL_ADDRESS_URI, contactId),
+                        /* projection= */ null,
+                        /* selection= */ null,
+                        /* sortOrder= */ null,
+                        cancellationSignal);
         if (cursor != null) {
             try {
                 if (cursor.moveToFirst()) {
@@ -22,19 +22,28 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.graphics.Bitmap;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.provider.Telephony;
 import androidx.core.graphics.drawable.IconCompat;
 import android.text.TextUtils;
 import android.util.Pair;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.Person;
 
 import com.android.car.messenger.R;
 import com.android.car.messenger.common.Conversation;
 import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.models.MessageHistoryPage;
+import com.android.car.messenger.core.models.MessageHistoryPage.PageKey;
 import com.android.car.messenger.core.shared.MessageConstants;
 import com.android.car.messenger.core.util.ConversationUtil;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.TraceUtil;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -48,19 +57,143 @@ public class ConversationFetchUtil {
     private static final int MESSAGE_LIMIT = 10;
     private static final String COMMA_DELIMITER = ", ";
     private static final int MAX_TITLE_NAMES = 3;
+    // The order of the cursors given to the merge, MMS first to win the ties
+    private static final int MMS_CURSOR = 0;
+    private static final int SMS_CURSOR = 1;
 
     private ConversationFetchUtil() {}
 
-    /** Fetches a conversation item based on a provided conversation id */
-    public static Conversation fetchConversation(@NonNull String conversationId) {
-        L.d("Fetching latest data for Conversation " + conversationId);
-        Conversation.Builder conversationBuilder = initConversationBuilder(conversationId);
-        Cursor mmsCursor = getMmsCursor(conversationId);
-        Cursor smsCursor = getSmsCursor(conversationId);
+    /**
+     * Fetches a conversation item based on a provided conversation id
+     *
+     * @param cancellationSignal Cancels the queries once the fetch issuing them is superseded
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public static Conversation fetchConversation(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
+        long startTime = SystemClock.elapsedRealtime();
+        TraceUtil.beginSection(TraceUtil.FETCH_CONVERSATION);
+        try {
+            return fetchConversationInternal(conversationId, cancellationSignal);
+        } finally {
+            TraceUtil.endSection();
+            Metrics.recordLatency(
+                    Metrics.LATENCY_FETCH_CONVERSATION, SystemClock.elapsedRealtime() - startTime);
+        }
+    }
+
+    /**
+     * Fetches the page of messages of a conversation before a key, newest first. SMS and MMS
+     * messages are merged lazily, so at most {@code limit} messages are parsed.
+     *
+     * @param conversationId The conversation or thread id for the conversation
+     * @param before Only messages before this key are fetched
+     * @param limit The maximum number of messages
+     */
+    @NonNull
+    public static MessageHistoryPage fetchMessageHistory(
+            @NonNull String conversationId, @NonNull PageKey before, int limit) {
+        TraceUtil.beginSection(TraceUtil.FETCH_MESSAGE_HISTORY);
+        Cursor mmsCursor = null;
+        Cursor smsCursor = null;
+        try {
+            mmsCursor =
+                    CursorUtils.getMessagesCursorBefore(
+                            conversationId,
+                            limit,
+                            before.getMmsDate(),
+                            before.getMmsId(),
+                            CursorUtils.ContentType.MMS);
+            smsCursor =
+                    CursorUtils.getMessagesCursorBefore(
+                            conversationId,
+                            limit,
+                            before.getSmsDate(),
+                            before.getSmsId(),
+                            CursorUtils.ContentType.SMS);
+            MessageUtils.MergedMessages merged =
+                    MessageUtils.mergeMessages(
+                            limit, /* cancellationSignal= */ null, mmsCursor, smsCursor);
+            TraceUtil.setRowCount(TraceUtil.FETCH_MESSAGE_HISTORY, merged.getMessages().size());
+            // Rows that were blank or could not be parsed are skipped by the merge, so whether
+            // older messages remain, and where the next page starts, follow the rows it read
+            int mmsRowCount = merged.getReadRowCount(MMS_CURSOR);
+            int smsRowCount = merged.getReadRowCount(SMS_CURSOR);
+            boolean hasMore =
+                    hasMoreRows(mmsCursor, mmsRowCount, limit)
+                            || hasMoreRows(smsCursor, smsRowCount, limit);
+            long[] lastMms =
+                    getLastReadRow(mmsCursor, mmsRowCount, before.getMmsDate(), before.getMmsId());
+            long[] lastSms =
+                    getLastReadRow(smsCursor, smsRowCount, before.getSmsDate(), before.getSmsId());
+            return new MessageHistoryPage(
+                    conversationId,
+                    merged.getMessages(),
+                    hasMore,
+                    new PageKey(lastSms[0], lastSms[1], lastMms[0], lastMms[1]));
+        } finally {
+            if (mmsCursor != null) {
+                mmsCursor.close();
+            }
+            if (smsCursor != null) {
+                smsCursor.close();
+            }
+            TraceUtil.endSection();
+        }
+    }
+
+    /**
+     * Returns true if the merge left rows of the cursor, or the cursor is full so the provider may
+     * hold older rows.
+     *
+     * @param readRowCount The number of rows of the cursor the merge read
+     */
+    private static boolean hasMoreRows(@Nullable Cursor cursor, int readRowCount, int limit) {
+        return cursor != null && (readRowCount < cursor.getCount() || cursor.getCount() >= limit);
+    }
+
+    /**
+     * Returns the date and id of the last row of the cursor read by the merge, or the given ones
+     * if it read none.
+     *
+     * @param readRowCount The number of rows of the cursor the merge read
+     */
+    @NonNull
+    private static long[] getLastReadRow(
+            @Nullable Cursor cursor, int readRowCount, long date, long id) {
+        if (cursor == null || readRowCount == 0 || !cursor.moveToPosition(readRowCount - 1)) {
+            return new long[] {date, id};
+        }
+        return new long[] {
+            cursor.getLong(cursor.getColumnIndexOrThrow(Telephony.TextBasedSmsColumns.DATE)),
+            cursor.getLong(cursor.getColumnIndexOrThrow(BaseColumns._ID))
+        };
+    }
 
-        // message list sorted by date desc
-        List<Conversation.Message> messages =
-                MessageUtils.getMessages(MESSAGE_LIMIT, mmsCursor, smsCursor);
+    private static Conversation fetchConversationInternal(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
+        L.d("Fetching latest data for Conversation %s", conversationId);
+        Conversation.Builder conversationBuilder =
+                initConversationBuilder(conversationId, cancellationSignal);
+        Cursor mmsCursor = null;
+        Cursor smsCursor = null;
+        List<Conversation.Message> messages;
+        try {
+            mmsCursor = getMmsCursor(conversationId, cancellationSignal);
+            smsCursor = getSmsCursor(conversationId, cancellationSignal);
+            // message list sorted by date desc
+            messages =
+                    MessageUtils.getMessages(
+                            MESSAGE_LIMIT, cancellationSignal, mmsCursor, smsCursor);
+        } finally {
+            // A cancelled query leaves the other cursor open otherwise
+            if (mmsCursor != null) {
+                mmsCursor.close();
+            }
+            if (smsCursor != null) {
+                smsCursor.close();
+            }
+        }
 
         // messages to read: first get unread messages
         // List should truncate at the latest reply or read message since reading a recent message
@@ -84,7 +217,8 @@ public class ConversationFetchUtil {
     }
 
     @NonNull
-    private static Conversation.Builder initConversationBuilder(@NonNull String conversationId) {
+    private static Conversation.Builder initConversationBuilder(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
         Context context = AppFactory.get().getContext();
         String userName = ContactUtils.DRIVER_NAME;
         Conversation.Builder builder =
@@ -95,11 +229,18 @@ public class ConversationFetchUtil {
                         conversationId,
                         (names, icons) -> {
                             builder.setConversationTitle(formatConversationTitle(names));
-                            Bitmap bitmap = AvatarUtil.createGroupAvatar(context, icons);
+                            Bitmap bitmap;
+                            TraceUtil.beginSection(TraceUtil.COMPOSE_AVATAR);
+                            try {
+                                bitmap = AvatarUtil.createGroupAvatar(context, icons);
+                            } finally {
+                                TraceUtil.endSection();
+                            }
                             if (bitmap != null) {
                                 builder.setConversationIcon(IconCompat.createWithBitmap(bitmap));
                             }
-                        });
+                        },
+                        cancellationSignal);
         builder.setParticipants(participants);
         builder.setMuted(loadMutedList().contains(conversationId));
         return builder;
@@ -139,7 +280,8 @@ public class ConversationFetchUtil {
      */
     private static List<Person> fetchParticipants(
             @NonNull String conversationId,
-            @NonNull BiConsumer<List<CharSequence>, List<Bitmap>> processNamesAndIcons) {
+            @NonNull BiConsumer<List<CharSequence>, List<Bitmap>> processNamesAndIcons,
+            @Nullable CancellationSignal cancellationSignal) {
         List<CharSequence> participantNames = new ArrayList<>();
         List<Bitmap> participantIcons = new ArrayList<>();
         List<Person> participants =
@@ -148,7 +290,8 @@ public class ConversationFetchUtil {
                         (name, bitmap) -> {
                             participantNames.add(name);
                             participantIcons.add(bitmap);
-                        });
+                        },
+                        cancellationSignal);
         processNamesAndIcons.accept(participantNames, participantIcons);
         return participants;
     }
@@ -161,13 +304,39 @@ public class ConversationFetchUtil {
                 MessageConstants.KEY_MUTED_CONVERSATIONS, new HashSet<>());
     }
 
-    private static Cursor getMmsCursor(@NonNull String conversationId) {
-        return CursorUtils.getMessagesCursor(
-                conversationId, MESSAGE_LIMIT, /* offset= */ 0, CursorUtils.ContentType.MMS);
+    private static Cursor getMmsCursor(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
+        TraceUtil.beginSection(TraceUtil.QUERY_MMS);
+        try {
+            Cursor cursor =
+                    CursorUtils.getMessagesCursor(
+                            conversationId,
+                            MESSAGE_LIMIT,
+                            /* offset= */ 0,
+                            CursorUtils.ContentType.MMS,
+                            cancellationSignal);
+            TraceUtil.setRowCount(TraceUtil.QUERY_MMS, cursor);
+            return cursor;
+        } finally {
+            TraceUtil.endSection();
+        }
     }
 
-    private static Cursor getSmsCursor(@NonNull String conversationId) {
-        return CursorUtils.getMessagesCursor(
-                conversationId, MESSAGE_LIMIT, /* offset= */ 0, CursorUtils.ContentType.SMS);
+    private static Cursor getSmsCursor(
+            @NonNull String conversationId, @Nullable CancellationSignal cancellationSignal) {
+        TraceUtil.beginSection(TraceUtil.QUERY_SMS);
+        try {
+            Cursor cursor =
+                    CursorUtils.getMessagesCursor(
+                            conversationId,
+                            MESSAGE_LIMIT,
+                            /* offset= */ 0,
+                            CursorUtils.ContentType.SMS,
+                            cancellationSignal);
+            TraceUtil.setRowCount(TraceUtil.QUERY_SMS, cursor);
+            return cursor;
+        } finally {
+            TraceUtil.endSection();
+        }
     }
 }
@@ -34,12 +34,25 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
 import android.provider.Telephony;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.core.util.Metrics;
+import com.android.car.messenger.core.util.QueryRecorder;
+import com.android.car.messenger.core.util.TraceUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /** Cursor Utils to get quick cursor or uri telephony information */
 public class CursorUtils {
@@ -61,9 +74,40 @@ public class CursorUtils {
     @NonNull
     public static final String DEFAULT_SORT_ORDER = Telephony.TextBasedSmsColumns.DATE + " DESC";
 
+    /**
+     * Path segments of the telephony and contacts uris that name a table or a kind of row. Any
+     * other segment may hold personal data, so it is masked in metrics keys.
+     */
+    @NonNull
+    private static final Set<String> STATIC_SEGMENTS =
+            Collections.unmodifiableSet(
+                    new HashSet<>(
+                            Arrays.asList(
+                                    "addr",
+                                    "canonical-address",
+                                    "canonical-addresses",
+                                    "complete-conversations",
+                                    "conversations",
+                                    "draft",
+                                    "inbox",
+                                    "locked",
+                                    "outbox",
+                                    "part",
+                                    "phone_lookup",
+                                    "sent",
+                                    "threadID",
+                                    "threads",
+                                    "undelivered")));
+
     private static final String MMS_QUERY =
             CONTENT_TYPE + " = '" + MMS_CONTENT_TYPE + "' AND " + DATE + " > ";
     private static final String SMS_QUERY = CONTENT_TYPE + " IS NULL AND " + DATE + " > ";
+    private static final String MMS_SELECTION = CONTENT_TYPE + " = '" + MMS_CONTENT_TYPE + "'";
+    private static final String SMS_SELECTION = CONTENT_TYPE + " IS NULL";
+    /** Orders messages sharing a date by id, so a page key can resume between them */
+    private static final String HISTORY_SORT_ORDER = DATE + " DESC, " + _ID + " DESC";
+    /** Orders messages sharing a date by id, so a watermark can resume between them */
+    private static final String INDEX_SORT_ORDER = DATE + " ASC, " + _ID + " ASC";
 
     /** This enum is used for describing the type of message being fetched by a cursor */
     public enum ContentType {
@@ -75,15 +119,17 @@ public class CursorUtils {
      * Get simplified thread cursor with metadata information on the thread, such as recipient ids
      */
     @Nullable
-    public static Cursor getThreadCursor(@NonNull String threadId) {
+    public static Cursor getThreadCursor(
+            @NonNull String threadId, @Nullable CancellationSignal cancellationSignal) {
         Context context = AppFactory.get().getContext();
-        ContentResolver contentResolver = context.getContentResolver();
-        return contentResolver.query(
+        return query(
+                context,
+                TraceUtil.QUERY_THREAD,
                 THREAD_INFO_URI,
                 THREAD_INFO_PROJECTION,
                 _ID + "=" + threadId,
-                /* selectionArgs= */ null,
-                DEFAULT_SORT_ORDER);
+                DEFAULT_SORT_ORDER,
+                cancellationSignal);
     }
 
     /**
@@ -92,23 +138,119 @@ public class CursorUtils {
      * @param conversationId The conversation or thread id for the conversation
      * @param limit The maximum number of message rows to fetch
      * @param offset The starting point in timestamp in millisecond to fetch for data
+     * @param cancellationSignal Cancels the query once the fetch issuing it is superseded
      */
     @Nullable
     public static Cursor getMessagesCursor(@NonNull String conversationId, int limit, long offset,
-            @NonNull ContentType contentType) {
+            @NonNull ContentType contentType, @Nullable CancellationSignal cancellationSignal) {
         Context context = AppFactory.get().getContext();
-        ContentResolver contentResolver = context.getContentResolver();
 
         String query = contentType == ContentType.MMS
                 ? MMS_QUERY + offset / 1000
                 : SMS_QUERY + offset;
 
-        return contentResolver.query(
+        return query(
+                context,
+                contentType == ContentType.MMS ? TraceUtil.QUERY_MMS : TraceUtil.QUERY_SMS,
+                getConversationUri(conversationId),
+                CONTENT_CONVERSATION_PROJECTION,
+                query,
+                DEFAULT_SORT_ORDER + " LIMIT " + limit,
+                cancellationSignal);
+    }
+
+    /**
+     * Get the cursor of the messages of a type after a timestamp and id, in ascending order of
+     * date then id, so a caller reading in batches can resume after the last message it read
+     *
+     * @param conversationId The conversation or thread id for the conversation
+     * @param limit The maximum number of message rows to fetch
+     * @param afterTimestamp Only messages newer than this timestamp in millisecond, or as new
+     *     with a higher id are fetched
+     * @param afterId The id messages as new as {@code afterTimestamp} are fetched above
+     */
+    @Nullable
+    public static Cursor getMessagesCursorAfter(
+            @NonNull String conversationId,
+            int limit,
+            long afterTimestamp,
+            long afterId,
+            @NonNull ContentType contentType) {
+        Context context = AppFactory.get().getContext();
+
+        // MMS dates are in seconds, and MMS timestamps read from them are whole seconds
+        long afterDate = contentType == ContentType.MMS ? afterTimestamp / 1000 : afterTimestamp;
+        String query =
+                (contentType == ContentType.MMS ? MMS_SELECTION : SMS_SELECTION)
+                        + " AND "
+                        + getKeySelection(">", afterDate, afterId);
+
+        return query(
+                context,
+                contentType == ContentType.MMS ? TraceUtil.QUERY_MMS : TraceUtil.QUERY_SMS,
+                getConversationUri(conversationId),
+                CONTENT_CONVERSATION_PROJECTION,
+                query,
+                INDEX_SORT_ORDER + " LIMIT " + limit);
+    }
+
+    /**
+     * Get the cursor of the messages of a type before a date and id, in descending order of date
+     * then id
+     *
+     * @param conversationId The conversation or thread id for the conversation
+     * @param limit The maximum number of message rows to fetch
+     * @param beforeDate Only messages older than this date, in the unit of the type, or as old
+     *     with a lower id are fetched
+     * @param beforeId The id messages as old as {@code beforeDate} are fetched below
+     */
+    @Nullable
+    public static Cursor getMessagesCursorBefore(
+            @NonNull String conversationId,
+            int limit,
+            long beforeDate,
+            long beforeId,
+            @NonNull ContentType contentType) {
+        Context context = AppFactory.get().getContext();
+        String query =
+                (contentType == ContentType.MMS ? MMS_SELECTION : SMS_SELECTION)
+                        + " AND "
+                        + getKeySelection("<", beforeDate, beforeId);
+
+        return query(
+                context,
+                contentType == ContentType.MMS ? TraceUtil.QUERY_MMS : TraceUtil.QUERY_SMS,
                 getConversationUri(conversationId),
                 CONTENT_CONVERSATION_PROJECTION,
                 query,
-                /* selectionArgs= */ null,
-                DEFAULT_SORT_ORDER + " LIMIT " + limit);
+                HISTORY_SORT_ORDER + " LIMIT " + limit);
+    }
+
+    /**
+     * Returns the selection of the messages on one side of a date and id, the id ordering the
+     * messages sharing the date
+     *
+     * @param comparison {@code "<"} or {@code ">"}
+     */
+    @NonNull
+    private static String getKeySelection(@NonNull String comparison, long date, long id) {
+        return "("
+                + DATE
+                + " "
+                + comparison
+                + " "
+                + date
+                + " OR ("
+                + DATE
+                + " = "
+                + date
+                + " AND "
+                + _ID
+                + " "
+                + comparison
+                + " "
+                + id
+                + "))";
     }
 
     /** Gets the Conversation Uri for the Conversation with specified conversationId */
@@ -119,21 +261,150 @@ public class CursorUtils {
 
     /** Returns a cursor query with the uri provided, with no filtering or projection */
     @Nullable
-    public static Cursor simpleQuery(@NonNull Context context, @NonNull Uri uri) {
-        return context.getContentResolver().query(uri, null, null, null, null);
+    public static Cursor simpleQuery(
+            @NonNull Context context, @NonNull String stage, @NonNull Uri uri) {
+        return query(context, stage, uri, null, null, null);
     }
 
     /** Returns a cursor query given a uri and projection */
     @Nullable
     public static Cursor simpleQueryWithProjection(
-            @NonNull Context context, @NonNull Uri uri, @Nullable String[] projection) {
-        return context.getContentResolver().query(uri, projection, null, null, null);
+            @NonNull Context context,
+            @NonNull String stage,
+            @NonNull Uri uri,
+            @Nullable String[] projection) {
+        return query(context, stage, uri, projection, null, null);
     }
 
     /** Returns a cursor query given a uri and selection */
     @Nullable
     public static Cursor simpleQueryWithSelection(
-            @NonNull Context context, @NonNull Uri uri, @Nullable String selection) {
-        return context.getContentResolver().query(uri, null, selection, null, null);
+            @NonNull Context context,
+            @NonNull String stage,
+            @NonNull Uri uri,
+            @Nullable String selection) {
+        return query(context, stage, uri, null, selection, null);
+    }
+
+    /** Queries the content resolver without a cancellation signal, see {@link #query} */
+    @Nullable
+    public static Cursor query(
+            @NonNull Context context,
+            @NonNull String stage,
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @Nullable String selection,
+            @Nullable String sortOrder) {
+        return query(
+                context,
+                stage,
+                uri,
+                projection,
+                selection,
+                sortOrder,
+                /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Queries the content resolver, records the query and the rows read in {@link Metrics} and
+     * records the query in the {@link QueryRecorder}.
+     *
+     * <p>All telephony and contact queries should go through this method, so that their cost is
+     * visible in the dump output.
+     *
+     * <p>Queries of a stage with a {@link QueryDeadlines.QueryClass} are cancelled once past the
+     * deadline of their class.
+     *
+     * @param stage the pipeline stage issuing the query, one of the {@link TraceUtil} sections
+     * @throws QueryTimeoutException if the query was cancelled by its deadline
+     * @throws OperationCanceledException if the query was cancelled by the signal
+     */
+    @Nullable
+    public static Cursor query(
+            @NonNull Context context,
+            @NonNull String stage,
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @Nullable String selection,
+            @Nullable String sortOrder,
+            @Nullable CancellationSignal cancellationSignal) {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.PROVIDER_ACCESS);
+        ContentResolver contentResolver = context.getContentResolver();
+        String metricsKey = getMetricsKey(uri);
+        int projectionSize = projection == null ? 0 : projection.length;
+        long startTimeMillis = System.currentTimeMillis();
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        QueryDeadlines.QueryClass queryClass = QueryDeadlines.getQueryClass(stage);
+        QueryDeadlines.Deadline deadline =
+                queryClass == null ? null : QueryDeadlines.start(queryClass, cancellationSignal);
+        Cursor cursor = null;
+        int rowCount;
+        try {
+            cursor =
+                    contentResolver.query(
+                            uri,
+                            projection,
+                            selection,
+                            /* selectionArgs= */ null,
+                            sortOrder,
+                            deadline == null
+                                    ? cancellationSignal
+                                    : deadline.getCancellationSignal());
+            // getCount fills the cursor window, where a slow provider spends most of the query,
+            // so it runs under the deadline too
+            rowCount = cursor == null ? -1 : cursor.getCount();
+        } catch (OperationCanceledException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            QueryRecorder.record(
+                    stage,
+                    metricsKey,
+                    selection,
+                    projectionSize,
+                    /* rowCount= */ -1,
+                    startTimeMillis,
+                    SystemClock.elapsedRealtimeNanos() - startNanos,
+                    /* cancelled= */ true);
+            if (deadline != null && deadline.hasExpired()) {
+                Metrics.increment(Metrics.QUERY_TIMEOUTS, queryClass.getMetricsKey());
+                throw new QueryTimeoutException(queryClass);
+            }
+            throw e;
+        } finally {
+            if (deadline != null) {
+                deadline.finish();
+            }
+        }
+        QueryRecorder.record(
+                stage,
+                metricsKey,
+                selection,
+                projectionSize,
+                rowCount,
+                startTimeMillis,
+                SystemClock.elapsedRealtimeNanos() - startNanos,
+                /* cancelled= */ false);
+        Metrics.increment(Metrics.QUERIES, metricsKey);
+        if (cursor != null) {
+            Metrics.add(Metrics.ROWS_READ, metricsKey, rowCount);
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the uri with its query removed and every path segment but the known static ones
+     * replaced by #, so queries of the same kind are counted together and no personal data, such
+     * as an id, a phone number or an alphanumeric sender address, is kept.
+     */
+    @NonNull
+    public static String getMetricsKey(@NonNull Uri uri) {
+        StringBuilder builder = new StringBuilder().append(uri.getAuthority());
+        List<String> pathSegments = uri.getPathSegments();
+        for (int i = 0; i < pathSegments.size(); i++) {
+            String segment = pathSegments.get(i);
+            builder.append('/').append(STATIC_SEGMENTS.contains(segment) ? segment : "#");
+        }
+        return builder.toString();
     }
 }
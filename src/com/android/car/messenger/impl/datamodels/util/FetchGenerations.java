@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Numbers the fetches of a data source, so that each new trigger supersedes the fetches before
+ * it.
+ *
+ * <p>Starting a generation cancels the {@link CancellationSignal} of the previous one, which
+ * aborts its queries in the provider, and the result of a superseded generation is never
+ * published.
+ */
+public class FetchGenerations {
+    @Nullable private Generation mCurrent;
+
+    /** A single fetch, holding the signal its queries and hydration work are cancelled with */
+    public final class Generation {
+        @NonNull private final CancellationSignal mCancellationSignal = new CancellationSignal();
+
+        private Generation() {}
+
+        /** Returns the signal cancelled once a newer generation starts */
+        @NonNull
+        public CancellationSignal getCancellationSignal() {
+            return mCancellationSignal;
+        }
+
+        /** Returns true if a newer generation started */
+        public boolean isSuperseded() {
+            return mCancellationSignal.isCanceled();
+        }
+
+        /**
+         * Runs the publish action if no newer generation has started.
+         *
+         * @return true if the action ran
+         */
+        public boolean publishIfCurrent(@NonNull Runnable publish) {
+            synchronized (FetchGenerations.this) {
+                if (mCurrent != this) {
+                    return false;
+                }
+                publish.run();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the current generation without cancelling it, starting one if there is none, for
+     * work that a newer generation should supersede but that supersedes nothing itself
+     */
+    @NonNull
+    public synchronized Generation current() {
+        if (mCurrent == null) {
+            mCurrent = new Generation();
+        }
+        return mCurrent;
+    }
+
+    /** Starts a new generation, cancelling the one it supersedes */
+    @NonNull
+    public Generation next() {
+        Generation previous;
+        Generation generation;
+        synchronized (this) {
+            previous = mCurrent;
+            generation = new Generation();
+            mCurrent = generation;
+        }
+        // Cancelling calls into the provider, so it is done outside the lock
+        if (previous != null) {
+            previous.mCancellationSignal.cancel();
+        }
+        return generation;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of primitive longs such as thread ids, in one open addressing array with linear probing,
+ * so adding and looking up an id neither boxes it nor allocates an entry.
+ *
+ * <p>Not thread safe. Only depends on the JDK, so it is also measured by the host side
+ * benchmarks.
+ */
+public final class LongHashSet {
+    /** Marks a free slot, the set tracks whether it holds this value itself */
+    private static final long FREE = 0L;
+
+    private static final int MIN_CAPACITY = 8;
+
+    @NonNull private long[] mKeys;
+    private int mSize;
+    private boolean mHasFree;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    /** Creates a set that holds {@code expectedSize} values without growing */
+    public LongHashSet(int expectedSize) {
+        mKeys = new long[capacityFor(expectedSize)];
+    }
+
+    /** Adds the value, and returns true if it was not in the set */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (mHasFree) {
+                return false;
+            }
+            mHasFree = true;
+            mSize++;
+            return true;
+        }
+        int mask = mKeys.length - 1;
+        int slot = hash(value) & mask;
+        while (mKeys[slot] != FREE) {
+            if (mKeys[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = value;
+        mSize++;
+        // Kept at most half full, so probe sequences stay short
+        if (mSize * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        return true;
+    }
+
+    /** Returns true if the value is in the set */
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return mHasFree;
+        }
+        int mask = mKeys.length - 1;
+        int slot = hash(value) & mask;
+        while (mKeys[slot] != FREE) {
+            if (mKeys[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /** Removes the value, and returns true if it was in the set */
+    public boolean remove(long value) {
+        if (value == FREE) {
+            if (!mHasFree) {
+                return false;
+            }
+            mHasFree = false;
+            mSize--;
+            return true;
+        }
+        int mask = mKeys.length - 1;
+        int slot = hash(value) & mask;
+        while (mKeys[slot] != value) {
+            if (mKeys[slot] == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Shifts back the values probed past the freed slot, so lookups still reach them
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (mKeys[next] != FREE) {
+            int home = hash(mKeys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                mKeys[free] = mKeys[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mKeys[free] = FREE;
+        mSize--;
+        return true;
+    }
+
+    /** Returns the number of values */
+    public int size() {
+        return mSize;
+    }
+
+    /** Returns true if the set holds no value */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /** Calls the consumer with every value, in no particular order */
+    public void forEach(@NonNull LongConsumer consumer) {
+        if (mHasFree) {
+            consumer.accept(FREE);
+        }
+        for (long key : mKeys) {
+            if (key != FREE) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    /** Returns the values in this set that are not in the other one, in no particular order */
+    @NonNull
+    public long[] difference(@NonNull LongHashSet other) {
+        long[] difference = new long[mSize];
+        int count = 0;
+        if (mHasFree && !other.mHasFree) {
+            difference[count++] = FREE;
+        }
+        for (long key : mKeys) {
+            if (key != FREE && !other.contains(key)) {
+                difference[count++] = key;
+            }
+        }
+        return count == difference.length ? difference : Arrays.copyOf(difference, count);
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        mKeys = new long[capacity];
+        int mask = capacity - 1;
+        for (long key : keys) {
+            if (key != FREE) {
+                int slot = hash(key) & mask;
+                while (mKeys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                mKeys[slot] = key;
+            }
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L + 1) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /** Spreads sequential ids such as thread ids across the table */
+    private static int hash(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -20,11 +20,10 @@ import static com.android.car.messenger.common.Conversation.Message.MessageStatu
 import static com.android.car.messenger.common.Conversation.Message.MessageStatus.MESSAGE_STATUS_READ;
 import static com.android.car.messenger.common.Conversation.Message.MessageStatus.MESSAGE_STATUS_UNREAD;
 
-import static java.lang.Math.min;
-import static java.util.Comparator.comparingLong;
-
 import android.content.Context;
 import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.provider.Telephony.TextBasedSmsColumns;
 import android.util.Pair;
 
@@ -34,38 +33,187 @@ import androidx.core.app.Person;
 
 import com.android.car.messenger.common.Conversation;
 import com.android.car.messenger.common.Conversation.Message;
-import com.android.car.messenger.common.Conversation.Message.MessageStatus;
 import com.android.car.messenger.common.Conversation.Message.MessageType;
 import com.android.car.messenger.core.interfaces.AppFactory;
 import com.android.car.messenger.core.util.L;
+import com.android.car.messenger.core.util.MessageSelection;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
 
 /** Message Parser that provides useful static methods to parse 1-1 and Group MMS messages. */
 public final class MessageUtils {
+    @NonNull
+    private static final MessageSelection.MessageFields<Message> MESSAGE_FIELDS =
+            new MessageSelection.MessageFields<Message>() {
+                @Override
+                public long getTimestamp(@NonNull Message message) {
+                    return message.getTimestamp();
+                }
+
+                @Override
+                public boolean isUnread(@NonNull Message message) {
+                    return message.getMessageStatus() == MESSAGE_STATUS_UNREAD;
+                }
+
+                @Override
+                public boolean isRead(@NonNull Message message) {
+                    int messageStatus = message.getMessageStatus();
+                    return messageStatus == MESSAGE_STATUS_READ
+                            || messageStatus == MESSAGE_STATUS_NONE;
+                }
+
+                @Override
+                public boolean isSent(@NonNull Message message) {
+                    return message.getMessageType() == MessageType.MESSAGE_TYPE_SENT;
+                }
+            };
+
+    /**
+     * Returns the newest messages in the given cursors, newest first.
+     *
+     * @see #mergeMessages(int, CancellationSignal, Cursor...)
+     */
+    @NonNull
+    public static List<Message> getMessages(
+            int limit,
+            @Nullable CancellationSignal cancellationSignal,
+            @Nullable Cursor... messageCursors) {
+        return mergeMessages(limit, cancellationSignal, messageCursors).getMessages();
+    }
 
     /**
-     * Returns all messages in the given cursors.
+     * Merges the newest messages in the given cursors, newest first, and counts the rows read of
+     * each cursor.
+     *
+     * <p>The cursors are merged lazily: only the rows returned are parsed, so older rows of one
+     * cursor cost no MMS part, address or contact queries when the other cursor is newer.
      *
      * @param limit The maximum number of messages
+     * @param cancellationSignal cancels the MMS part, address and contact queries of the rows
      * @param messageCursors The messageCursors of messages in descending order
+     * @throws OperationCanceledException if the signal was cancelled
      */
     @NonNull
-    public static List<Message> getMessages(int limit, @Nullable Cursor... messageCursors) {
+    public static MergedMessages mergeMessages(
+            int limit,
+            @Nullable CancellationSignal cancellationSignal,
+            @Nullable Cursor... messageCursors) {
+        Context context = AppFactory.get().getContext();
+        int cursorCount = messageCursors.length;
+        boolean[] hasRow = new boolean[cursorCount];
+        boolean[] hasBeenRepliedTo = new boolean[cursorCount];
+        int[] readRowCounts = new int[cursorCount];
+        for (int i = 0; i < cursorCount; i++) {
+            hasRow[i] = messageCursors[i] != null && messageCursors[i].moveToFirst();
+        }
         List<Message> messages = new ArrayList<>();
-        for (Cursor cursor : messageCursors) {
-            MessageUtils.forEachDesc(
-                    cursor,
-                    message -> {
-                        messages.add(message);
-                        return true;
-                    });
+        while (messages.size() < limit) {
+            int newest = -1;
+            long newestTimestamp = 0;
+            for (int i = 0; i < cursorCount; i++) {
+                if (!hasRow[i]) {
+                    continue;
+                }
+                long timestamp = getTimestamp(messageCursors[i]);
+                // Ties go to the earlier cursor, the order of a stable sort of all messages
+                if (newest == -1 || timestamp > newestTimestamp) {
+                    newest = i;
+                    newestTimestamp = timestamp;
+                }
+            }
+            if (newest == -1) {
+                break;
+            }
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            Cursor cursor = messageCursors[newest];
+            Message message =
+                    parseMessage(context, cursor, hasBeenRepliedTo[newest], cancellationSignal);
+            // Rows that cannot be parsed or are blank are read too, so a page never repeats them
+            readRowCounts[newest]++;
+            hasRow[newest] = cursor.moveToNext();
+            if (message == null) {
+                continue;
+            }
+            if (message.getMessageType() == MessageType.MESSAGE_TYPE_SENT) {
+                hasBeenRepliedTo[newest] = true;
+            }
+            messages.add(message);
+        }
+        return new MergedMessages(messages, readRowCounts);
+    }
+
+    /** The messages merged from cursors, and the number of rows of each cursor read */
+    public static final class MergedMessages {
+        @NonNull private final List<Message> mMessages;
+        @NonNull private final int[] mReadRowCounts;
+
+        private MergedMessages(@NonNull List<Message> messages, @NonNull int[] readRowCounts) {
+            mMessages = messages;
+            mReadRowCounts = readRowCounts;
+        }
+
+        /** Returns the messages, newest first */
+        @NonNull
+        public List<Message> getMessages() {
+            return mMessages;
+        }
+
+        /**
+         * Returns the number of rows read of the cursor at the index, including the rows skipped.
+         * These are the first rows of the cursor.
+         */
+        public int getReadRowCount(int cursorIndex) {
+            return mReadRowCounts[cursorIndex];
+        }
+    }
+
+    /** Receives the fields of a message needed to index its text */
+    public interface IndexableMessageConsumer {
+        /**
+         * Called for each message with a text body
+         *
+         * @param subscriptionId the subscription, or account, id of the message
+         * @param timestamp the timestamp of the message in millisecond
+         * @param body the text of the message
+         */
+        void accept(int subscriptionId, long timestamp, @NonNull String body);
+    }
+
+    /**
+     * Parses each message of the cursor without looking up its sender's contact, which is all a
+     * text index needs.
+     *
+     * @return the timestamp of the last row read, including rows that could not be parsed or have
+     *     no text, or -1 if the cursor is empty
+     */
+    public static long forEachIndexableMessage(
+            @Nullable Cursor messageCursor, @NonNull IndexableMessageConsumer consumer) {
+        long lastTimestamp = -1;
+        if (messageCursor == null || !messageCursor.moveToFirst()) {
+            return lastTimestamp;
         }
-        messages.sort(comparingLong(Message::getTimestamp).reversed());
-        return messages.subList(0, min(limit, messages.size()));
+        Context context = AppFactory.get().getContext();
+        do {
+            lastTimestamp = getTimestamp(messageCursor);
+            MmsSmsMessage message;
+            try {
+                message =
+                        MmsUtils.isMms(messageCursor)
+                                ? MmsUtils.parseMms(
+                                        context, messageCursor, /* cancellationSignal= */ null)
+                                : SmsUtils.parseSms(messageCursor);
+            } catch (IllegalArgumentException e) {
+                L.d("Message was not able to be parsed for indexing. Skipping.");
+                continue;
+            }
+            if (message.mBody != null && !message.mBody.trim().isEmpty()) {
+                consumer.accept(message.mSubscriptionId, lastTimestamp, message.mBody);
+            }
+        } while (messageCursor.moveToNext());
+        return lastTimestamp;
     }
 
     /**
@@ -75,19 +223,9 @@ public final class MessageUtils {
      */
     @NonNull
     public static List<Message> getUnreadMessages(@NonNull List<Message> messages) {
-        int i = 0;
-        for (Conversation.Message message : messages) {
-            if (message.getMessageStatus() != MessageStatus.MESSAGE_STATUS_UNREAD) {
-                break;
-            }
-            i++;
-        }
-        List<Message> unreadMessages = messages.subList(0, i);
-        unreadMessages.sort(comparingLong(Conversation.Message::getTimestamp));
-        return unreadMessages;
+        return MessageSelection.getUnreadMessages(messages, MESSAGE_FIELDS);
     }
 
-
     /**
      * Gets Read Messages and Last Reply
      *
@@ -96,75 +234,50 @@ public final class MessageUtils {
     @NonNull
     public static Pair<List<Message>, Message> getReadMessagesAndReplyTimestamp(
             @Nullable List<Message> messages) {
-        List<Message> readMessages = new ArrayList<>();
-        AtomicReference<Message> replyMessage = new AtomicReference<>();
-        AtomicReference<Long> lastReply = new AtomicReference<>(0L);
-
-        for (Message message : messages) {
-            // Desired impact: 4. Reply -> 3. Messages -> 2. Reply -> 1 Messages (stop
-            // parsing at 2.)
-            // lastReply references 4., messages references 3.
-            // Desired impact: 3. Messages -> 2. Reply -> 1. Messages (stop parsing at 2.)
-            // lastReply references 2., messages references 3.
-            int messageStatus = message.getMessageStatus();
-            if (message.getMessageType() == MessageType.MESSAGE_TYPE_SENT) {
-                if (lastReply.get() < message.getTimestamp()) {
-                    lastReply.set(message.getTimestamp());
-                    replyMessage.set(message);
-                }
-                if (!readMessages.isEmpty()) {
-                    break;
-                }
-            } else if (messageStatus == MessageStatus.MESSAGE_STATUS_READ
-                    || messageStatus == MessageStatus.MESSAGE_STATUS_NONE) {
-                readMessages.add(message);
-            } else {
-                break;
-            }
-        }
-        readMessages.sort(comparingLong(Message::getTimestamp));
-        return new Pair<>(readMessages, replyMessage.get());
+        MessageSelection.ReadMessages<Message> readMessages =
+                MessageSelection.getReadMessagesAndLastReply(messages, MESSAGE_FIELDS);
+        return new Pair<>(readMessages.getMessages(), readMessages.getLastReply());
     }
 
     /**
-     * Parses each message in the cursor and returns the item for further processing
-     *
-     * @param messageCursor The message cursor to be parsed for SMS and MMS messages
-     * @param processor A consumer that takes in the {@link Message} and returns true for the method
-     *     to continue parsing the cursor or false to return.
+     * Returns the timestamp in milliseconds of the message at the point in cursor, without parsing
+     * the message.
      */
-    private static void forEachDesc(
-            @Nullable Cursor messageCursor, @NonNull Function<Message, Boolean> processor) {
-        if (messageCursor == null || !messageCursor.moveToFirst()) {
-            return;
+    private static long getTimestamp(@NonNull Cursor cursor) {
+        long date = cursor.getLong(cursor.getColumnIndex(TextBasedSmsColumns.DATE));
+        // MMS dates are stored in seconds
+        return MmsUtils.isMms(cursor) ? date * 1000 : date;
+    }
+
+    /**
+     * Parses the message at the point in cursor, or returns null if it cannot be parsed or is
+     * blank.
+     */
+    @Nullable
+    private static Message parseMessage(
+            @NonNull Context context,
+            @NonNull Cursor cursor,
+            boolean hasBeenRepliedTo,
+            @Nullable CancellationSignal cancellationSignal) {
+        Message message;
+        try {
+            message = parseMessageAtPoint(context, cursor, hasBeenRepliedTo, cancellationSignal);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            L.d("Message was not able to be parsed. Skipping.");
+            return null;
         }
-        Context context = AppFactory.get().getContext();
-        boolean moveToNext = true;
-        boolean hasBeenRepliedTo = false;
-        do {
-            Message message;
-            try {
-                message = parseMessageAtPoint(context, messageCursor, hasBeenRepliedTo);
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
-                L.d("Message was not able to be parsed. Skipping.");
-                continue;
-            }
-            if (message.getText().trim().isEmpty()) {
-                // There are occasions where a user may send
-                // a text message plus an image or audio and
-                // bluetooth will post two messages to the database (b/182834412),
-                // one with a text and one blank
-                // This leads to boomerang notifications, one with text and one that is empty.
-                // Validating or removing messages when blank is a mitigation on our end.
-                L.d("Message is blank. Skipped. ");
-                continue;
-            }
-            if (message.getMessageType() == MessageType.MESSAGE_TYPE_SENT) {
-                hasBeenRepliedTo = true;
-            }
-            moveToNext = processor.apply(message);
-        } while (messageCursor.moveToNext() && moveToNext);
+        if (message.getText().trim().isEmpty()) {
+            // There are occasions where a user may send
+            // a text message plus an image or audio and
+            // bluetooth will post two messages to the database (b/182834412),
+            // one with a text and one blank
+            // This leads to boomerang notifications, one with text and one that is empty.
+            // Validating or removing messages when blank is a mitigation on our end.
+            L.d("Message is blank. Skipped. ");
+            return null;
+        }
+        return message;
     }
 
     /**
@@ -175,13 +288,20 @@ public final class MessageUtils {
      */
     @NonNull
     private static Conversation.Message parseMessageAtPoint(
-            @NonNull Context context, @NonNull Cursor cursor, boolean userHasReplied) {
+            @NonNull Context context,
+            @NonNull Cursor cursor,
+            boolean userHasReplied,
+            @Nullable CancellationSignal cancellationSignal) {
         MmsSmsMessage msg =
                 MmsUtils.isMms(cursor)
-                        ? MmsUtils.parseMms(context, cursor)
+                        ? MmsUtils.parseMms(context, cursor, cancellationSignal)
                         : SmsUtils.parseSms(cursor);
         Person person =
-                ContactUtils.getPerson(context, msg.mPhoneNumber, /* processParticipant= */ null);
+                ContactUtils.getPerson(
+                        context,
+                        msg.mPhoneNumber,
+                        /* processParticipant= */ null,
+                        cancellationSignal);
         Conversation.Message message =
                 new Conversation.Message(msg.mBody, msg.mDate.toEpochMilli(), person);
         if (msg.mType == TextBasedSmsColumns.MESSAGE_TYPE_SENT) {
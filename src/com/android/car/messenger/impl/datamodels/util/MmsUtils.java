@@ -22,12 +22,16 @@ import static android.provider.Telephony.BaseMmsColumns.CONTENT_TYPE;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.provider.Telephony;
 import android.provider.Telephony.Mms.Addr;
 import android.provider.Telephony.Mms.Part;
 import android.provider.Telephony.Sms;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.core.util.TraceUtil;
 
 import java.text.MessageFormat;
 import java.time.Instant;
@@ -56,11 +60,15 @@ class MmsUtils {
     /**
      * Returns the parsed result as {link @MmsSmsMessage}
      *
+     * @param cancellationSignal cancels the part and address queries
      * @throws IllegalArgumentException if desired columns are missing.
      * @see CursorUtils#CONTENT_CONVERSATION_PROJECTION
      */
     @NonNull
-    static MmsSmsMessage parseMms(@NonNull Context context, @NonNull Cursor cursor) {
+    static MmsSmsMessage parseMms(
+            @NonNull Context context,
+            @NonNull Cursor cursor,
+            @Nullable CancellationSignal cancellationSignal) {
         MmsSmsMessage message = new MmsSmsMessage();
         message.mId = cursor.getString(cursor.getColumnIndex(_ID));
         message.mThreadId = cursor.getInt(cursor.getColumnIndex(Sms.THREAD_ID));
@@ -68,34 +76,76 @@ class MmsUtils {
         message.mSubscriptionId = cursor.getInt(cursor.getColumnIndex(Sms.SUBSCRIPTION_ID));
         message.mDate = Instant.ofEpochSecond(cursor.getLong(cursor.getColumnIndex(Sms.DATE)));
         message.mRead = cursor.getInt(cursor.getColumnIndex(Sms.READ)) == 1;
-        message.mPhoneNumber = getOriginator(context, message.mId);
-        message.mBody = getMmsBody(context, message.mId);
+        message.mPhoneNumber = getOriginator(context, message.mId, cancellationSignal);
+        message.mBody = getMmsBody(context, message.mId, cancellationSignal);
         return message;
     }
 
-    private static String getMmsBody(@NonNull Context context, @NonNull String id) {
+    private static String getMmsBody(
+            @NonNull Context context,
+            @NonNull String id,
+            @Nullable CancellationSignal cancellationSignal) {
         String uriStr = MessageFormat.format(FORMAT_CONTENT_MMS_PART, id);
         Uri uriAddress = Uri.parse(uriStr);
-        Cursor cursor = CursorUtils.simpleQuery(context, uriAddress);
+        Cursor cursor;
+        TraceUtil.beginSection(TraceUtil.QUERY_MMS_PARTS);
+        try {
+            cursor =
+                    CursorUtils.query(
+                            context,
+                            TraceUtil.QUERY_MMS_PARTS,
+                            uriAddress,
+                            /* projection= */ null,
+                            /* selection= */ null,
+                            /* sortOrder= */ null,
+                            cancellationSignal);
+            TraceUtil.setRowCount(TraceUtil.QUERY_MMS_PARTS, cursor);
+        } finally {
+            TraceUtil.endSection();
+        }
         StringBuilder stringBuilder = new StringBuilder();
-        while (cursor != null && cursor.moveToNext()) {
-            stringBuilder.append(cursor.getString(cursor.getColumnIndex(Part.TEXT)));
-            stringBuilder.append(" ");
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    stringBuilder.append(cursor.getString(cursor.getColumnIndex(Part.TEXT)));
+                    stringBuilder.append(" ");
+                }
+            } finally {
+                cursor.close();
+            }
         }
 
         return stringBuilder.toString().replace(REPLACE_CHARS, "");
     }
 
     @NonNull
-    private static String getOriginator(@NonNull Context context, @NonNull String id) {
+    private static String getOriginator(
+            @NonNull Context context,
+            @NonNull String id,
+            @Nullable CancellationSignal cancellationSignal) {
         String selection =
                 MessageFormat.format(FORMAT_TYPE_AND_MSG_ID, ORIGINATOR_ADDRESS_TYPE, id);
         String uriStr = MessageFormat.format(FORMAT_CONTENT_MMS_ADDR, id);
-        Cursor cursor = CursorUtils.simpleQueryWithSelection(context, Uri.parse(uriStr), selection);
+        Cursor cursor;
+        TraceUtil.beginSection(TraceUtil.QUERY_MMS_ADDR);
+        try {
+            cursor =
+                    CursorUtils.query(
+                            context,
+                            TraceUtil.QUERY_MMS_ADDR,
+                            Uri.parse(uriStr),
+                            /* projection= */ null,
+                            selection,
+                            /* sortOrder= */ null,
+                            cancellationSignal);
+        } finally {
+            TraceUtil.endSection();
+        }
         String phoneNum = "";
-        if (cursor != null && cursor.moveToFirst()) {
-            cursor.moveToFirst();
-            phoneNum = cursor.getString(cursor.getColumnIndex(Addr.ADDRESS));
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                phoneNum = cursor.getString(cursor.getColumnIndex(Addr.ADDRESS));
+            }
             cursor.close();
         }
         return phoneNum;
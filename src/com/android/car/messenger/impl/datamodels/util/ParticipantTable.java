@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned participants of conversations, referred to by index from {@link CompactConversation},
+ * so each sender is stored once however many messages and conversations it appears in.
+ *
+ * <p>Participants are never removed, as the table is bounded by the contacts messaged with.
+ *
+ * <p>Only depends on the JDK, so it is also measured by the host side benchmarks.
+ */
+public final class ParticipantTable {
+    // Guarded by this, as conversations are compacted and expanded on several threads. Indexes
+    // are kept by name, then by uri, so looking up a known participant allocates nothing.
+    @NonNull private final Map<String, Map<String, Integer>> mIndexes = new HashMap<>();
+    @NonNull private final List<String> mNames = new ArrayList<>();
+    @NonNull private final List<String> mUris = new ArrayList<>();
+
+    /** Returns the index of the participant, adding it if it is new */
+    public synchronized int intern(@Nullable String name, @Nullable String uri) {
+        Map<String, Integer> indexesByUri = mIndexes.get(name);
+        if (indexesByUri == null) {
+            indexesByUri = new HashMap<>();
+            mIndexes.put(name, indexesByUri);
+        }
+        Integer index = indexesByUri.get(uri);
+        if (index == null) {
+            index = mNames.size();
+            mNames.add(name);
+            mUris.add(uri);
+            indexesByUri.put(uri, index);
+        }
+        return index;
+    }
+
+    /** Returns the name of the participant at the index */
+    @Nullable
+    public synchronized String getName(int index) {
+        return mNames.get(index);
+    }
+
+    /** Returns the uri of the participant at the index, such as its phone number */
+    @Nullable
+    public synchronized String getUri(int index) {
+        return mUris.get(index);
+    }
+
+    /** Returns the number of participants */
+    public synchronized int size() {
+        return mNames.size();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.core.util.TraceUtil;
+
+import java.util.EnumMap;
+import java.util.Locale;
+
+/**
+ * Deadlines of provider queries, by query class.
+ *
+ * <p>The MAP backed telephony provider can stall for a long time, such as during the phone's
+ * initial sync. A query past its deadline is cancelled through its {@link CancellationSignal} and
+ * fails with a {@link QueryTimeoutException}, so callers can fall back to cached data instead of
+ * blocking.
+ */
+public final class QueryDeadlines {
+    /** The classes of queries sharing a deadline */
+    public enum QueryClass {
+        THREAD_LIST,
+        MESSAGES,
+        PARTS,
+        CONTACTS;
+
+        /** Returns the key of the class in the metrics */
+        @NonNull
+        public String getMetricsKey() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @NonNull
+    private static final EnumMap<QueryClass, Long> sDeadlineMillis =
+            new EnumMap<>(QueryClass.class);
+
+    static {
+        sDeadlineMillis.put(QueryClass.THREAD_LIST, 5000L);
+        sDeadlineMillis.put(QueryClass.MESSAGES, 2000L);
+        sDeadlineMillis.put(QueryClass.PARTS, 2000L);
+        sDeadlineMillis.put(QueryClass.CONTACTS, 1000L);
+    }
+
+    @Nullable private static Handler sHandler;
+
+    private QueryDeadlines() {}
+
+    /** Sets the deadline of a query class. 0 disables the deadline. */
+    public static synchronized void setDeadlineMillis(
+            @NonNull QueryClass queryClass, long deadlineMillis) {
+        sDeadlineMillis.put(queryClass, deadlineMillis);
+    }
+
+    /** Returns the class of the queries issued by a pipeline stage, or null if it has none */
+    @Nullable
+    public static QueryClass getQueryClass(@NonNull String stage) {
+        switch (stage) {
+            case TraceUtil.QUERY_THREAD_LIST:
+                return QueryClass.THREAD_LIST;
+            case TraceUtil.QUERY_THREAD:
+            case TraceUtil.QUERY_CHANGED_MESSAGES:
+            case TraceUtil.QUERY_SMS:
+            case TraceUtil.QUERY_MMS:
+            case TraceUtil.QUERY_NEW_MESSAGES:
+                return QueryClass.MESSAGES;
+            case TraceUtil.QUERY_MMS_PARTS:
+            case TraceUtil.QUERY_MMS_ADDR:
+                return QueryClass.PARTS;
+            case TraceUtil.QUERY_CONTACT:
+            case TraceUtil.QUERY_CANONICAL_ADDRESS:
+                return QueryClass.CONTACTS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Starts the deadline of a query, or returns null if its class has none. The query must be
+     * issued with the signal of the returned deadline, and {@link Deadline#finish} called once it
+     * returns.
+     *
+     * @param cancellationSignal the caller's signal, which also cancels the query
+     */
+    @Nullable
+    public static Deadline start(
+            @NonNull QueryClass queryClass, @Nullable CancellationSignal cancellationSignal) {
+        long deadlineMillis;
+        Handler handler;
+        synchronized (QueryDeadlines.class) {
+            deadlineMillis = sDeadlineMillis.get(queryClass);
+            if (deadlineMillis <= 0) {
+                return null;
+            }
+            if (sHandler == null) {
+                HandlerThread thread = new HandlerThread("CarMessengerDeadlines");
+                thread.start();
+                sHandler = new Handler(thread.getLooper());
+            }
+            handler = sHandler;
+        }
+        Deadline deadline = new Deadline(queryClass, handler, cancellationSignal);
+        deadline.start(deadlineMillis);
+        return deadline;
+    }
+
+    /** The deadline of a single query */
+    public static final class Deadline {
+        @NonNull private final QueryClass mQueryClass;
+        @NonNull private final Handler mHandler;
+        @Nullable private final CancellationSignal mCallerSignal;
+        @NonNull private final CancellationSignal mCancellationSignal = new CancellationSignal();
+        @NonNull private final Runnable mExpire = this::expire;
+        private volatile boolean mExpired;
+
+        private Deadline(
+                @NonNull QueryClass queryClass,
+                @NonNull Handler handler,
+                @Nullable CancellationSignal callerSignal) {
+            mQueryClass = queryClass;
+            mHandler = handler;
+            mCallerSignal = callerSignal;
+        }
+
+        private void start(long deadlineMillis) {
+            mHandler.postDelayed(mExpire, deadlineMillis);
+            // The caller's signal cannot be passed along with ours, so it is forwarded
+            if (mCallerSignal != null) {
+                mCallerSignal.setOnCancelListener(mCancellationSignal::cancel);
+            }
+        }
+
+        private void expire() {
+            mExpired = true;
+            mCancellationSignal.cancel();
+        }
+
+        /** Returns the class of the query */
+        @NonNull
+        public QueryClass getQueryClass() {
+            return mQueryClass;
+        }
+
+        /** Returns the signal the query must be issued with */
+        @NonNull
+        public CancellationSignal getCancellationSignal() {
+            return mCancellationSignal;
+        }
+
+        /** Returns true if the query was cancelled by its deadline rather than by the caller */
+        public boolean hasExpired() {
+            return mExpired && (mCallerSignal == null || !mCallerSignal.isCanceled());
+        }
+
+        /** Stops the deadline once the query returned */
+        public void finish() {
+            mHandler.removeCallbacks(mExpire);
+            if (mCallerSignal != null) {
+                mCallerSignal.setOnCancelListener(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import android.os.OperationCanceledException;
+
+import androidx.annotation.NonNull;
+
+import com.android.car.messenger.impl.datamodels.util.QueryDeadlines.QueryClass;
+
+/**
+ * Thrown when a provider query is cancelled by its {@link QueryDeadlines deadline}. It extends
+ * {@link OperationCanceledException}, so callers not handling timeouts treat it as any other
+ * cancellation.
+ */
+public class QueryTimeoutException extends OperationCanceledException {
+    @NonNull private final QueryClass mQueryClass;
+
+    QueryTimeoutException(@NonNull QueryClass queryClass) {
+        super("Query deadline exceeded: " + queryClass.getMetricsKey());
+        mQueryClass = queryClass;
+    }
+
+    /** Returns the class of the query that timed out */
+    @NonNull
+    public QueryClass getQueryClass() {
+        return mQueryClass;
+    }
+}
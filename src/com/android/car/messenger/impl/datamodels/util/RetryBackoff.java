@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+/** Exponential back-off between retries of a timed out fetch */
+public class RetryBackoff {
+    private static final long INITIAL_DELAY_MILLIS = 1000;
+    private static final long MAX_DELAY_MILLIS = 60_000;
+
+    private long mNextDelayMillis = INITIAL_DELAY_MILLIS;
+
+    /** Returns the delay before the next retry, doubling the one after it up to a maximum */
+    public synchronized long nextDelayMillis() {
+        long delayMillis = mNextDelayMillis;
+        mNextDelayMillis = Math.min(delayMillis * 2, MAX_DELAY_MILLIS);
+        return delayMillis;
+    }
+
+    /** Starts over from the initial delay, once a fetch succeeded */
+    public synchronized void reset() {
+        mNextDelayMillis = INITIAL_DELAY_MILLIS;
+    }
+}
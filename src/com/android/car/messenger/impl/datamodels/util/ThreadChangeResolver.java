@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static android.provider.BaseColumns._ID;
+import static android.provider.Telephony.TextBasedSmsColumns.THREAD_ID;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.Telephony;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.core.util.TraceUtil;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps the uris of provider change notifications to the threads they changed, so observers can
+ * refetch those threads instead of reloading every conversation.
+ *
+ * <p>The telephony provider follows each change with notifications on its collection uris, such
+ * as {@link Telephony.MmsSms#CONTENT_URI}. These name no thread, so they are ignored when the
+ * batch also has a uri naming a thread or a message.
+ */
+public final class ThreadChangeResolver {
+    @NonNull private static final String CONVERSATIONS_SEGMENT = "conversations";
+    @NonNull private static final String MMS_PART_SEGMENT = "part";
+
+    private ThreadChangeResolver() {}
+
+    /**
+     * Returns the ids of the threads changed by a batch of change notifications, or null if they
+     * cannot all be resolved and a full reload is needed.
+     *
+     * <p>Thread uris are resolved directly, and message uris with one query per message type. A
+     * uri naming anything else, or a message that no longer exists, cannot be resolved.
+     */
+    @Nullable
+    public static Set<String> resolveThreadIds(
+            @NonNull Context context,
+            @NonNull Collection<Uri> uris,
+            @Nullable CancellationSignal cancellationSignal) {
+        Set<String> threadIds = new HashSet<>();
+        Set<String> smsIds = new HashSet<>();
+        Set<String> mmsIds = new HashSet<>();
+        for (Uri uri : uris) {
+            List<String> segments = uri.getPathSegments();
+            if (isCollection(segments)) {
+                continue;
+            }
+            String authority = uri.getAuthority();
+            if (Telephony.MmsSms.CONTENT_URI.getAuthority().equals(authority)) {
+                if (segments.size() != 2
+                        || !CONVERSATIONS_SEGMENT.equals(segments.get(0))
+                        || !TextUtils.isDigitsOnly(segments.get(1))) {
+                    return null;
+                }
+                threadIds.add(segments.get(1));
+            } else if (Telephony.Sms.CONTENT_URI.getAuthority().equals(authority)) {
+                String smsId = getMessageId(segments);
+                if (smsId == null) {
+                    return null;
+                }
+                smsIds.add(smsId);
+            } else if (Telephony.Mms.CONTENT_URI.getAuthority().equals(authority)) {
+                String mmsId = getMessageId(segments);
+                if (mmsId == null) {
+                    return null;
+                }
+                mmsIds.add(mmsId);
+            } else {
+                return null;
+            }
+        }
+        if (!addMessageThreadIds(
+                context, Telephony.Sms.CONTENT_URI, smsIds, threadIds, cancellationSignal)) {
+            return null;
+        }
+        if (!addMessageThreadIds(
+                context, Telephony.Mms.CONTENT_URI, mmsIds, threadIds, cancellationSignal)) {
+            return null;
+        }
+        // A batch of collection uris only could have changed anything
+        return threadIds.isEmpty() ? null : threadIds;
+    }
+
+    /**
+     * Returns true if every uri names a whole table or message box, so the batch tells nothing
+     * of what changed.
+     */
+    public static boolean isCollectionOnly(@NonNull Collection<Uri> uris) {
+        for (Uri uri : uris) {
+            if (!isCollection(uri.getPathSegments())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the path names a whole table or message box, rather than a row */
+    private static boolean isCollection(@NonNull List<String> segments) {
+        return segments.isEmpty()
+                || (segments.size() == 1 && !TextUtils.isDigitsOnly(segments.get(0)));
+    }
+
+    /**
+     * Returns the message id of an SMS or MMS path, such as {@code 12}, {@code inbox/12} or
+     * {@code 12/part}, or null if the path names no message.
+     */
+    @Nullable
+    private static String getMessageId(@NonNull List<String> segments) {
+        if (segments.size() == 1) {
+            return segments.get(0);
+        }
+        if (segments.size() != 2 || MMS_PART_SEGMENT.equals(segments.get(0))) {
+            // A part path holds a part id, which needs another lookup to find its message
+            return null;
+        }
+        if (TextUtils.isDigitsOnly(segments.get(0))) {
+            return segments.get(0);
+        }
+        return TextUtils.isDigitsOnly(segments.get(1)) ? segments.get(1) : null;
+    }
+
+    /**
+     * Adds the thread ids of the messages to the set.
+     *
+     * @return false if a message no longer exists
+     */
+    private static boolean addMessageThreadIds(
+            @NonNull Context context,
+            @NonNull Uri uri,
+            @NonNull Set<String> messageIds,
+            @NonNull Set<String> threadIds,
+            @Nullable CancellationSignal cancellationSignal) {
+        if (messageIds.isEmpty()) {
+            return true;
+        }
+        Cursor cursor =
+                CursorUtils.query(
+                        context,
+                        TraceUtil.QUERY_CHANGED_MESSAGES,
+                        uri,
+                        new String[] {_ID, THREAD_ID},
+                        _ID + " IN (" + TextUtils.join(",", messageIds) + ")",
+                        /* sortOrder= */ null,
+                        cancellationSignal);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            int threadIdColumn = cursor.getColumnIndex(THREAD_ID);
+            while (cursor.moveToNext()) {
+                threadIds.add(cursor.getString(threadIdColumn));
+            }
+            return cursor.getCount() == messageIds.size();
+        } finally {
+            cursor.close();
+        }
+    }
+}
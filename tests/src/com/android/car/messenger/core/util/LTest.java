@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assume.assumeFalse;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/** Checks that log calls on the hot paths do not allocate while logging is disabled. */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation") // Debug alloc counting is the only per-thread counter on device
+public class LTest {
+    private static final String TAG = "CarMessenger";
+    private static final int ITERATIONS = 10_000;
+    private static final String CONVERSATION_ID = "42";
+
+    @Before
+    public void setUp() {
+        assumeFalse(Log.isLoggable(TAG, Log.DEBUG));
+        L.enableRingLog(0);
+    }
+
+    @After
+    public void tearDown() {
+        L.enableRingLog(0);
+    }
+
+    @Test
+    public void testDisabledLogCalls_doNotAllocate() {
+        logInLoop();
+
+        long allocations = countAllocations(LTest::logInLoop);
+
+        assertThat(allocations).isEqualTo(0);
+    }
+
+    @Test
+    public void testRingLog_doesNotAllocate() {
+        L.enableRingLog(64);
+        logInLoop();
+
+        long allocations = countAllocations(LTest::logInLoop);
+
+        assertThat(allocations).isEqualTo(0);
+    }
+
+    @Test
+    public void testRingLog_formatsOnDump() {
+        L.enableRingLog(4);
+        L.d("Fetching latest data for Conversation %s", CONVERSATION_ID);
+        L.d("Rows read: %d", 7);
+
+        StringWriter output = new StringWriter();
+        L.dumpRingLog(new PrintWriter(output));
+
+        assertThat(output.toString()).contains("D Fetching latest data for Conversation 42");
+        assertThat(output.toString()).contains("D Rows read: 7");
+    }
+
+    @Test
+    public void testRingLog_capturesArgumentWhenLogged() {
+        L.enableRingLog(4);
+        StringBuilder state = new StringBuilder("loading");
+        L.d("State: %s", state);
+        state.replace(0, state.length(), "loaded");
+
+        StringWriter output = new StringWriter();
+        L.dumpRingLog(new PrintWriter(output));
+
+        assertThat(output.toString()).contains("D State: loading");
+    }
+
+    @Test
+    public void testRingLog_skipsSuppliersBelowItsLevel() {
+        L.enableRingLog(4, Log.INFO);
+        L.d(
+                () -> {
+                    throw new AssertionError("Supplier called for an unrecorded level");
+                });
+        L.i("Conversation list published");
+
+        StringWriter output = new StringWriter();
+        L.dumpRingLog(new PrintWriter(output));
+
+        assertThat(output.toString()).contains("I Conversation list published");
+    }
+
+    private static void logInLoop() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            L.d("Fetching latest data for Conversation %s", CONVERSATION_ID);
+            L.d("Rows read: %d", i);
+            L.v("Conversation %s has %s", CONVERSATION_ID, CONVERSATION_ID);
+        }
+    }
+
+    private static long countAllocations(Runnable runnable) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        try {
+            runnable.run();
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
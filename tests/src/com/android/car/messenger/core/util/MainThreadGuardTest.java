@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.impl.datamodels.util.AvatarUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(AndroidJUnit4.class)
+public class MainThreadGuardTest {
+
+    @Before
+    public void setUp() {
+        MainThreadGuard.reset();
+        MainThreadGuard.setThrowOnViolation(true);
+    }
+
+    @After
+    public void tearDown() {
+        MainThreadGuard.setThrowOnViolation(false);
+        MainThreadGuard.reset();
+    }
+
+    @Test
+    public void testCheckOnMainThread_throwsAndCounts() {
+        Throwable thrown =
+                runOnMainThread(
+                        () -> MainThreadGuard.checkNotMainThread(MainThreadGuard.PROVIDER_ACCESS));
+
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(MainThreadGuard.getViolationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCheckOffMainThread_noViolation() {
+        MainThreadGuard.checkNotMainThread(MainThreadGuard.PROVIDER_ACCESS);
+
+        assertThat(MainThreadGuard.getViolationCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAvatarCompositionOnMainThread_throws() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        Throwable thrown =
+                runOnMainThread(() -> AvatarUtil.resolvePersonAvatar(context, null, "Name"));
+
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+        assertThat(MainThreadGuard.getViolationCount()).isEqualTo(1);
+    }
+
+    private static Throwable runOnMainThread(Runnable runnable) {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(
+                        () -> {
+                            try {
+                                runnable.run();
+                            } catch (Throwable t) {
+                                thrown.set(t);
+                            }
+                        });
+        return thrown.get();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.core.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+public class ThreadUtilTest {
+    private static final long TIMEOUT_SECONDS = 5;
+    private static final int TASK_COUNT = 50;
+
+    @Test
+    public void testAccountExecutor_runsTasksInOrderOneAtATime() throws InterruptedException {
+        Executor lane = ThreadUtil.getAccountExecutor(1001);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+
+        for (int i = 0; i < TASK_COUNT; i++) {
+            int task = i;
+            lane.execute(
+                    () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        order.add(task);
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+        }
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(1);
+        assertThat(order).isInOrder();
+    }
+
+    @Test
+    public void testAccountExecutor_busyLaneDoesNotBlockOtherLanes() throws InterruptedException {
+        Executor busyLane = ThreadUtil.getAccountExecutor(1002);
+        Executor otherLane = ThreadUtil.getAccountExecutor(1003);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            busyLane.execute(
+                    () -> {
+                        try {
+                            release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+        }
+
+        otherLane.execute(otherDone::countDown);
+
+        try {
+            assertThat(otherDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+        }
+    }
+}
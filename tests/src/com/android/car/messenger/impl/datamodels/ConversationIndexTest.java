@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RunWith(AndroidJUnit4.class)
+public class ConversationIndexTest {
+    private final ConversationIndex mIndex = new ConversationIndex();
+
+    @Test
+    public void testReplaceAll_ordersMostRecentFirst() {
+        mIndex.replaceAll(
+                Arrays.asList(
+                        createConversation("1", 1000),
+                        createConversation("2", 3000),
+                        createConversation("3", 2000)));
+
+        assertThat(getIds()).containsExactly("2", "3", "1").inOrder();
+    }
+
+    @Test
+    public void testUpsert_movesChangedConversation() {
+        mIndex.replaceAll(
+                Arrays.asList(createConversation("1", 1000), createConversation("2", 2000)));
+
+        mIndex.upsert(createConversation("1", 3000));
+
+        assertThat(getIds()).containsExactly("1", "2").inOrder();
+        assertThat(mIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSnapshot_sharesUnchangedConversationsAndIsReusedUntilChanged() {
+        CompactConversation unchanged = createConversation("2", 2000);
+        mIndex.replaceAll(Arrays.asList(createConversation("1", 1000), unchanged));
+        List<CompactConversation> first = mIndex.snapshot();
+
+        assertThat(mIndex.snapshot()).isSameInstanceAs(first);
+        mIndex.remove("1");
+        List<CompactConversation> second = mIndex.snapshot();
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(second.get(0)).isSameInstanceAs(unchanged);
+        assertThat(first).hasSize(2);
+    }
+
+    @Test
+    public void testIsLast() {
+        mIndex.replaceAll(
+                Arrays.asList(createConversation("1", 1000), createConversation("2", 2000)));
+
+        assertThat(mIndex.isLast("1")).isTrue();
+        assertThat(mIndex.isLast("2")).isFalse();
+    }
+
+    private List<String> getIds() {
+        return mIndex.snapshot().stream()
+                .map(CompactConversation::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static CompactConversation createConversation(String id, long timestamp) {
+        return new CompactConversation.Builder(id)
+                .addMessage("Message " + timestamp, timestamp, /* sender= */ 0, 0, 0)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.R;
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.testing.FakeTelephonyContext;
+import com.android.car.messenger.testing.SyntheticTelephonyData;
+import com.android.car.messenger.testing.TestAppFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class ConversationListLiveDataTest {
+    private static final int ACCOUNT_ID = 1;
+    // Less than a page past the first, so the second page is the last
+    private static final int EXTRA_THREAD_COUNT = 5;
+    private static final long NEWEST_MESSAGE_MILLIS = 1_600_000_000_000L;
+    private static final long TIMEOUT_MILLIS = 5_000;
+    private static final long QUIET_MILLIS = 500;
+
+    private final BlockingQueue<Collection<Conversation>> mValues = new LinkedBlockingQueue<>();
+    private final Observer<Collection<Conversation>> mObserver = mValues::add;
+
+    private TestAppFactory mAppFactory;
+    private UserAccount mAccount;
+    private int mPageSize;
+    private ConversationListLiveData mConversationList;
+
+    @Before
+    public void setUp() {
+        FakeTelephonyContext context =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mPageSize = context.getResources().getInteger(R.integer.conversation_page_size);
+        SyntheticTelephonyData.builder()
+                .setThreadCount(mPageSize + EXTRA_THREAD_COUNT)
+                .setMessagesPerThread(1)
+                .setParticipantsPerThread(1)
+                .setMmsRatio(0)
+                .setSubscriptionId(ACCOUNT_ID)
+                .setNewestMessageMillis(NEWEST_MESSAGE_MILLIS)
+                .build()
+                .populate(context.getProvider());
+        mAppFactory = new TestAppFactory(context);
+        mAppFactory.install();
+        mAccount =
+                new UserAccount(
+                        ACCOUNT_ID,
+                        "Phone",
+                        "icc1",
+                        Instant.ofEpochMilli(NEWEST_MESSAGE_MILLIS + 1_000));
+        mConversationList =
+                (ConversationListLiveData) mAppFactory.getDataModel().getConversations(mAccount);
+    }
+
+    @After
+    public void tearDown() {
+        runOnMainSync(
+                () -> {
+                    mConversationList.removeObserver(mObserver);
+                    mConversationList.release();
+                });
+        mAppFactory.uninstall();
+    }
+
+    @Test
+    public void testLoadMore_addsPagesUntilNoMore() throws InterruptedException {
+        runOnMainSync(() -> mConversationList.observeForever(mObserver));
+        awaitSize(mPageSize);
+
+        mAppFactory.getDataModel().loadMoreConversations(mAccount);
+        awaitSize(mPageSize + EXTRA_THREAD_COUNT);
+
+        // All threads are listed, so a further request fetches nothing
+        mAppFactory.getDataModel().loadMoreConversations(mAccount);
+        assertThat(mValues.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testRelease_resetsToFirstPage() throws InterruptedException {
+        runOnMainSync(() -> mConversationList.observeForever(mObserver));
+        awaitSize(mPageSize);
+        mAppFactory.getDataModel().loadMoreConversations(mAccount);
+        awaitSize(mPageSize + EXTRA_THREAD_COUNT);
+        runOnMainSync(
+                () -> {
+                    mConversationList.removeObserver(mObserver);
+                    mConversationList.release();
+                });
+
+        runOnMainSync(() -> mConversationList.observeForever(mObserver));
+        RefreshLiveData.getInstance().refresh();
+
+        awaitSize(mPageSize);
+    }
+
+    /** Waits for a list of the size, skipping the lists published before it */
+    private void awaitSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            Collection<Conversation> value =
+                    mValues.poll(
+                            deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            if (value != null && value.size() == size) {
+                return;
+            }
+        }
+        throw new AssertionError("No list of " + size + " conversations published");
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.core.app.Person;
+import androidx.core.graphics.drawable.IconCompat;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.common.Conversation.Message;
+import com.android.car.messenger.common.Conversation.Message.MessageStatus;
+import com.android.car.messenger.common.Conversation.Message.MessageType;
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ConversationMirrorTest {
+    private static final int ACCOUNT_ID = 1;
+
+    private Context mContext;
+    private ConversationMirror mMirror;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mContext.deleteDatabase(ConversationMirror.DATABASE_NAME);
+        mMirror = new ConversationMirror(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mMirror.close();
+        mContext.deleteDatabase(ConversationMirror.DATABASE_NAME);
+    }
+
+    @Test
+    public void testPutConversation_roundTrips() {
+        mMirror.putConversation(ACCOUNT_ID, /* threadDate= */ 2000, createConversation("1", 2000));
+
+        List<CompactConversation> conversations =
+                mMirror.getConversations(ACCOUNT_ID, /* limit= */ 10, Collections.singleton("1"));
+
+        assertThat(conversations).hasSize(1);
+        Conversation conversation = mMirror.expand(conversations.get(0));
+        assertThat(conversation.getId()).isEqualTo("1");
+        assertThat(conversation.getConversationTitle()).isEqualTo("Alice");
+        assertThat(conversation.isMuted()).isTrue();
+        assertThat(conversation.getUnreadCount()).isEqualTo(1);
+        assertThat(conversation.getParticipants()).hasSize(1);
+        assertThat(conversation.getMessages()).hasSize(2);
+        Message message = conversation.getMessages().get(1);
+        assertThat(message.getText()).isEqualTo("Message 2000");
+        assertThat(message.getTimestamp()).isEqualTo(2000);
+        assertThat(message.getMessageStatus()).isEqualTo(MessageStatus.MESSAGE_STATUS_UNREAD);
+    }
+
+    @Test
+    public void testGetConversations_mostRecentFirst() {
+        mMirror.putConversation(ACCOUNT_ID, 1000, createConversation("1", 1000));
+        mMirror.putConversation(ACCOUNT_ID, 3000, createConversation("2", 3000));
+        mMirror.putConversation(ACCOUNT_ID, 2000, createConversation("3", 2000));
+
+        List<CompactConversation> conversations =
+                mMirror.getConversations(ACCOUNT_ID, /* limit= */ 2, Collections.emptySet());
+
+        assertThat(conversations).hasSize(2);
+        assertThat(conversations.get(0).getId()).isEqualTo("2");
+        assertThat(conversations.get(1).getId()).isEqualTo("3");
+    }
+
+    @Test
+    public void testExpand_sharesParticipants() {
+        CompactConversation first =
+                mMirror.putConversation(ACCOUNT_ID, 1000, createConversation("1", 1000));
+        CompactConversation second =
+                mMirror.putConversation(ACCOUNT_ID, 2000, createConversation("2", 2000));
+
+        assertThat(first.getParticipant(0)).isEqualTo(second.getParticipant(0));
+        assertThat(first.getSender(0)).isEqualTo(first.getParticipant(0));
+        Person sender = mMirror.expand(first).getMessages().get(0).getSender();
+        assertThat(mMirror.expand(second).getParticipants().get(0)).isSameInstanceAs(sender);
+    }
+
+    @Test
+    public void testInvalidateConversation_changesThreadDate() {
+        mMirror.putConversation(ACCOUNT_ID, 1000, createConversation("1", 1000));
+
+        mMirror.invalidateConversation("1");
+
+        assertThat(mMirror.getThreadDates(ACCOUNT_ID).get("1")).isNotEqualTo(1000);
+    }
+
+    @Test
+    public void testExpand_defersMissingAvatarToNextSync() {
+        Conversation conversation =
+                createConversationBuilder("1", 1000)
+                        .setConversationIcon(
+                                IconCompat.createWithBitmap(
+                                        Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888)))
+                        .build();
+        mMirror.putConversation(ACCOUNT_ID, 1000, conversation);
+        // Cleared with the cache, and read by a mirror with no avatar in memory
+        for (File file : new File(mContext.getCacheDir(), "avatars").listFiles()) {
+            file.delete();
+        }
+        mMirror.close();
+        mMirror = new ConversationMirror(mContext);
+
+        List<CompactConversation> conversations =
+                mMirror.getConversations(ACCOUNT_ID, /* limit= */ 10, Collections.emptySet());
+        assertThat(mMirror.getThreadDates(ACCOUNT_ID).get("1")).isEqualTo(1000);
+        assertThat(mMirror.expand(conversations.get(0)).getConversationIcon()).isNull();
+        assertThat(mMirror.getThreadDates(ACCOUNT_ID).get("1")).isEqualTo(1000);
+
+        mMirror.invalidateMissingAvatars();
+
+        assertThat(mMirror.getThreadDates(ACCOUNT_ID).get("1")).isNotEqualTo(1000);
+    }
+
+    @Test
+    public void testRetainConversations_keepsOlderThreads() {
+        mMirror.putConversation(ACCOUNT_ID, 1000, createConversation("1", 1000));
+        mMirror.putConversation(ACCOUNT_ID, 2000, createConversation("2", 2000));
+        mMirror.putConversation(ACCOUNT_ID, 3000, createConversation("3", 3000));
+
+        mMirror.retainConversations(ACCOUNT_ID, new HashSet<>(Arrays.asList("3")), 2000);
+
+        assertThat(mMirror.getThreadDates(ACCOUNT_ID).keySet()).containsExactly("1", "3");
+    }
+
+    private static Conversation createConversation(String id, long timestamp) {
+        return createConversationBuilder(id, timestamp).build();
+    }
+
+    private static Conversation.Builder createConversationBuilder(String id, long timestamp) {
+        Person alice = new Person.Builder().setName("Alice").setUri("+15550100").build();
+        Message read = new Message("Message " + (timestamp - 1), timestamp - 1, alice);
+        read.setMessageType(MessageType.MESSAGE_TYPE_INBOX);
+        read.setMessageStatus(MessageStatus.MESSAGE_STATUS_READ);
+        Message unread = new Message("Message " + timestamp, timestamp, alice);
+        unread.setMessageType(MessageType.MESSAGE_TYPE_INBOX);
+        unread.setMessageStatus(MessageStatus.MESSAGE_STATUS_UNREAD);
+        return new Conversation.Builder(new Person.Builder().setName("Driver").build(), id)
+                .setConversationTitle("Alice")
+                .setParticipants(Collections.singletonList(alice))
+                .setMessages(Arrays.asList(read, unread))
+                .setUnreadCount(1);
+    }
+}
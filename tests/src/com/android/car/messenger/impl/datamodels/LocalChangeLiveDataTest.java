@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import android.provider.Telephony;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.car.messenger.impl.datamodels.util.CompactConversation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class LocalChangeLiveDataTest {
+    private final LocalChangeLiveData mLocalChanges = new LocalChangeLiveData();
+
+    @Test
+    public void testApply_readShowsUntilConfirmed() {
+        mLocalChanges.addRead("1");
+
+        assertThat(apply(createConversation("1", 1000, 2)).getUnreadCount()).isEqualTo(0);
+        // The provider confirms the read, then a new message arrives
+        apply(createConversation("1", 1000, 0));
+        assertThat(apply(createConversation("1", 2000, 1)).getUnreadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testApply_readDroppedByNewerMessage() {
+        mLocalChanges.addRead("1");
+
+        assertThat(apply(createConversation("1", 1000, 2)).getUnreadCount()).isEqualTo(0);
+        // A message arrives before the provider confirms the read
+        assertThat(apply(createConversation("1", 2000, 3)).getUnreadCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testApply_rolledBackRead() {
+        mLocalChanges.addRead("1");
+        mLocalChanges.removeRead("1");
+
+        assertThat(apply(createConversation("1", 1000, 2)).getUnreadCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testApply_muteShowsUntilConfirmed() {
+        mLocalChanges.addMute("1", /* mute= */ true);
+
+        assertThat(apply(createConversation("1", 1000, 0)).isMuted()).isTrue();
+    }
+
+    @Test
+    public void testApply_replyMovesConversationFirst() {
+        CompactConversation older = createConversation("1", 1000, 0);
+        CompactConversation newer = createConversation("2", 2000, 0);
+
+        long timestamp = mLocalChanges.addReply("1", "On my way");
+        List<CompactConversation> conversations =
+                mLocalChanges.apply(Arrays.asList(newer, older));
+
+        assertThat(conversations.get(0).getId()).isEqualTo("1");
+        assertThat(conversations.get(0).getReplyText()).isEqualTo("On my way");
+        assertThat(older.hasReply()).isFalse();
+        mLocalChanges.removeReply("1", timestamp);
+        assertThat(mLocalChanges.apply(Arrays.asList(newer, older)).get(0).getId())
+                .isEqualTo("2");
+    }
+
+    @Test
+    public void testApply_replyConfirmedByText() {
+        mLocalChanges.addReply("1", "On my way");
+
+        // The phone's clock is behind, so the sent reply is older than the local one
+        assertThat(apply(createConversation("1", 1000, 0)).getReplyText()).isEqualTo("On my way");
+        CompactConversation sent = createConversation("1", 1000, 0).withReply(500, "On my way");
+        assertThat(apply(sent).getReplyTimestamp()).isEqualTo(500);
+    }
+
+    @Test
+    public void testGetRecentWrites_matchesAnnouncedUris() {
+        mLocalChanges.onWrite("1", Collections.singletonList(Telephony.MmsSms.CONTENT_URI));
+        List<Uri> own = Collections.singletonList(Uri.parse("content://mms-sms"));
+        // An incoming message is announced on the SMS uri as well
+        List<Uri> mixed = Arrays.asList(Telephony.MmsSms.CONTENT_URI, Telephony.Sms.CONTENT_URI);
+
+        assertThat(mLocalChanges.getRecentWrites(own)).containsExactly("1");
+        assertThat(mLocalChanges.getRecentWrites(mixed)).isNull();
+    }
+
+    private CompactConversation apply(CompactConversation conversation) {
+        return mLocalChanges.apply(Collections.singletonList(conversation)).get(0);
+    }
+
+    private static CompactConversation createConversation(
+            String id, long timestamp, int unreadCount) {
+        return new CompactConversation.Builder(id)
+                .setTitle("Alice")
+                .addParticipant(0)
+                .addMessage("Message " + timestamp, timestamp, /* sender= */ 0, 0, 0)
+                .setUnreadCount(unreadCount)
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.provider.Telephony;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.core.models.SearchResults;
+import com.android.car.messenger.impl.datamodels.MessageSearchIndex.Watermark;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils.ContentType;
+import com.android.car.messenger.testing.FakeTelephonyContext;
+import com.android.car.messenger.testing.TestAppFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+@RunWith(AndroidJUnit4.class)
+public class MessageIndexerTest {
+    private static final int ACCOUNT_ID = 1;
+    private static final String CONVERSATION_ID = "1";
+    private static final long TIMESTAMP_MILLIS = 1_600_000_000_000L;
+    // More than a batch, so a batch ends among messages sharing its last timestamp
+    private static final int TIED_MESSAGE_COUNT = 250;
+
+    private FakeTelephonyContext mContext;
+    private TestAppFactory mAppFactory;
+    private MessageSearchIndex mIndex;
+    private MessageIndexer mIndexer;
+
+    @Before
+    public void setUp() {
+        mContext =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mAppFactory = new TestAppFactory(mContext);
+        mAppFactory.install();
+        mIndex = new MessageSearchIndex(mContext, /* name= */ null);
+        mIndexer = new MessageIndexer(mIndex);
+    }
+
+    @After
+    public void tearDown() {
+        mIndex.close();
+        mAppFactory.uninstall();
+    }
+
+    @Test
+    public void testIndexConversation_indexesEveryMessageSharingATimestamp() {
+        long lastId = 0;
+        for (int i = 0; i < TIED_MESSAGE_COUNT; i++) {
+            lastId = insertSms(TIMESTAMP_MILLIS, "Tied message " + i);
+        }
+        Watermark watermark = new Watermark();
+
+        assertThat(indexSms(watermark)).isTrue();
+
+        assertThat(getHitCount("tied")).isEqualTo(TIED_MESSAGE_COUNT);
+        assertThat(watermark.get(ContentType.SMS)).isEqualTo(TIMESTAMP_MILLIS);
+        assertThat(watermark.getId(ContentType.SMS)).isEqualTo(lastId);
+    }
+
+    @Test
+    public void testIndexConversation_resumesAfterWatermarkWithoutDuplicates() {
+        for (int i = 0; i < TIED_MESSAGE_COUNT; i++) {
+            insertSms(TIMESTAMP_MILLIS, "Tied message " + i);
+        }
+        indexSms(new Watermark());
+        // A message arriving later with the same timestamp, as from another device
+        insertSms(TIMESTAMP_MILLIS, "Tied message late");
+
+        assertThat(indexSms(mIndex.getWatermarks().get(CONVERSATION_ID))).isTrue();
+
+        assertThat(getHitCount("tied")).isEqualTo(TIED_MESSAGE_COUNT + 1);
+        assertThat(getHitCount("late")).isEqualTo(1);
+    }
+
+    private boolean indexSms(Watermark watermark) {
+        return mIndexer.indexConversation(CONVERSATION_ID, ACCOUNT_ID, watermark, ContentType.SMS);
+    }
+
+    private int getHitCount(String query) {
+        SearchResults results = mIndex.search(query, Collections.singletonList(ACCOUNT_ID));
+        assertThat(results.getConversationHits()).hasSize(1);
+        return results.getConversationHits().get(0).getHitCount();
+    }
+
+    private long insertSms(long dateMillis, String body) {
+        ContentValues values = new ContentValues();
+        values.put(Telephony.Sms.THREAD_ID, Long.parseLong(CONVERSATION_ID));
+        values.put(Telephony.Sms.ADDRESS, "+15550100");
+        values.put(Telephony.Sms.DATE, dateMillis);
+        values.put(Telephony.Sms.TYPE, Telephony.Sms.MESSAGE_TYPE_INBOX);
+        values.put(Telephony.Sms.BODY, body);
+        values.put(Telephony.Sms.SUBSCRIPTION_ID, ACCOUNT_ID);
+        return mContext.getProvider()
+                .getDatabase()
+                .insert("sms", /* nullColumnHack= */ null, values);
+    }
+}
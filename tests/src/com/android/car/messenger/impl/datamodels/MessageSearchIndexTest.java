@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.core.models.SearchResults;
+import com.android.car.messenger.impl.datamodels.MessageSearchIndex.Entry;
+import com.android.car.messenger.impl.datamodels.MessageSearchIndex.Watermark;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils.ContentType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class MessageSearchIndexTest {
+    private static final int ACCOUNT_ID = 1;
+    private static final int OTHER_ACCOUNT_ID = 2;
+    private static final List<Integer> ACCOUNTS = Arrays.asList(ACCOUNT_ID, OTHER_ACCOUNT_ID);
+
+    private MessageSearchIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex =
+                new MessageSearchIndex(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                        /* name= */ null);
+        add("10", ACCOUNT_ID, new Entry(ACCOUNT_ID, 1000, "Running late, dinner at eight"));
+        add("10", ACCOUNT_ID, new Entry(ACCOUNT_ID, 2000, "Dinner dinner dinner"));
+        add("11", ACCOUNT_ID, new Entry(ACCOUNT_ID, 3000, "Lunch tomorrow?"));
+        add("12", OTHER_ACCOUNT_ID, new Entry(OTHER_ACCOUNT_ID, 4000, "dinner is ready"));
+    }
+
+    @After
+    public void tearDown() {
+        mIndex.close();
+    }
+
+    @Test
+    public void testSearch_ranksMessagesByMatchCount() {
+        SearchResults results = mIndex.search("dinner", ACCOUNTS);
+
+        assertThat(results.getMessageHits()).hasSize(3);
+        assertThat(results.getMessageHits().get(0).getTimestamp()).isEqualTo(2000);
+        assertThat(results.getMessageHits().get(0).getSnippet()).contains("dinner");
+    }
+
+    @Test
+    public void testSearch_ranksConversationsByHitCount() {
+        SearchResults results = mIndex.search("dinner", ACCOUNTS);
+
+        assertThat(results.getConversationHits()).hasSize(2);
+        assertThat(results.getConversationHits().get(0).getConversationId()).isEqualTo("10");
+        assertThat(results.getConversationHits().get(0).getHitCount()).isEqualTo(2);
+        assertThat(results.getConversationHits().get(0).getLatestTimestamp()).isEqualTo(2000);
+    }
+
+    @Test
+    public void testSearch_matchesLastWordAsPrefix() {
+        SearchResults results = mIndex.search("lunch tom", ACCOUNTS);
+
+        assertThat(results.getMessageHits()).hasSize(1);
+        assertThat(results.getMessageHits().get(0).getConversationId()).isEqualTo("11");
+    }
+
+    @Test
+    public void testSearch_onlyMatchesGivenAccounts() {
+        SearchResults results =
+                mIndex.search("dinner", Collections.singletonList(OTHER_ACCOUNT_ID));
+
+        assertThat(results.getMessageHits()).hasSize(1);
+        assertThat(results.getMessageHits().get(0).getAccountId()).isEqualTo(OTHER_ACCOUNT_ID);
+    }
+
+    @Test
+    public void testSearch_ignoresQuerySyntax() {
+        assertThat(mIndex.search("\"dinner OR", ACCOUNTS).getMessageHits()).isEmpty();
+        assertThat(mIndex.search("  ", ACCOUNTS).getMessageHits()).isEmpty();
+    }
+
+    @Test
+    public void testAddMessages_advancesWatermark() {
+        Watermark watermark = mIndex.getWatermarks().get("10");
+
+        assertThat(watermark.get(ContentType.SMS)).isEqualTo(2000);
+        assertThat(watermark.getId(ContentType.SMS)).isEqualTo(2000);
+        assertThat(watermark.get(ContentType.MMS)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDeleteAccount_removesMessagesAndWatermarks() {
+        mIndex.deleteAccount(OTHER_ACCOUNT_ID);
+
+        assertThat(mIndex.search("dinner", ACCOUNTS).getMessageHits()).hasSize(2);
+        assertThat(mIndex.getWatermarks()).doesNotContainKey("12");
+    }
+
+    @Test
+    public void testDeleteConversation_removesMessagesAndWatermark() {
+        mIndex.deleteConversation("10");
+
+        assertThat(mIndex.search("dinner", ACCOUNTS).getConversationHits()).hasSize(1);
+        assertThat(mIndex.getWatermarks()).doesNotContainKey("10");
+    }
+
+    private void add(String conversationId, int accountId, Entry entry) {
+        mIndex.addMessages(
+                conversationId,
+                accountId,
+                ContentType.SMS,
+                Collections.singletonList(entry),
+                entry.mTimestamp,
+                /* lastId= */ entry.mTimestamp);
+    }
+}
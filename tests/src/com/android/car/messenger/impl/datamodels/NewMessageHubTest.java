@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.core.app.Person;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.common.Conversation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+public class NewMessageHubTest {
+    private final MutableLiveData<Conversation> mDetector = new MutableLiveData<>();
+    private final AtomicInteger mDetectorsCreated = new AtomicInteger();
+    private final NewMessageHub mHub =
+            new NewMessageHub(
+                    () -> {
+                        mDetectorsCreated.incrementAndGet();
+                        return mDetector;
+                    });
+
+    @Test
+    public void testSubscribe_fansOutEveryConversation() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        runOnMainSync(
+                () -> {
+                    mHub.subscribe().observeForever(collect(first));
+                    mHub.subscribe().observeForever(collect(second));
+                    // Found for two accounts back to back, neither is dropped
+                    mDetector.setValue(createConversation("1"));
+                    mDetector.setValue(createConversation("2"));
+                });
+
+        assertThat(first).containsExactly("1", "2").inOrder();
+        assertThat(second).containsExactly("1", "2").inOrder();
+        assertThat(mDetectorsCreated.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSubscribe_inactiveSubscriberCatchesUp() {
+        List<String> active = new ArrayList<>();
+        List<String> paused = new ArrayList<>();
+        LiveData<Conversation> pausedSubscription = mHub.subscribe();
+        Observer<Conversation> pausedObserver = collect(paused);
+        runOnMainSync(
+                () -> {
+                    mHub.subscribe().observeForever(collect(active));
+                    pausedSubscription.observeForever(pausedObserver);
+                    pausedSubscription.removeObserver(pausedObserver);
+                    mDetector.setValue(createConversation("1"));
+                    mDetector.setValue(createConversation("2"));
+                });
+        assertThat(active).containsExactly("1", "2").inOrder();
+        assertThat(paused).isEmpty();
+
+        runOnMainSync(() -> pausedSubscription.observeForever(pausedObserver));
+
+        assertThat(paused).containsExactly("1", "2").inOrder();
+    }
+
+    @Test
+    public void testSubscribe_detectsOnlyWhileObserved() {
+        LiveData<Conversation> subscription = mHub.subscribe();
+        Observer<Conversation> observer = conversation -> {};
+        assertThat(mDetector.hasObservers()).isFalse();
+
+        runOnMainSync(() -> subscription.observeForever(observer));
+        assertThat(mDetector.hasObservers()).isTrue();
+
+        runOnMainSync(() -> subscription.removeObserver(observer));
+        assertThat(mDetector.hasObservers()).isFalse();
+    }
+
+    private static Observer<Conversation> collect(List<String> conversationIds) {
+        return conversation -> conversationIds.add(conversation.getId());
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private static Conversation createConversation(String id) {
+        return new Conversation.Builder(new Person.Builder().setName("Driver").build(), id)
+                .build();
+    }
+}
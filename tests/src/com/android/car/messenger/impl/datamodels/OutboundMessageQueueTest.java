@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Activity;
+import android.telephony.SmsManager;
+
+import androidx.lifecycle.MutableLiveData;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(AndroidJUnit4.class)
+public class OutboundMessageQueueTest {
+    private static final int ACCOUNT_ID = 1;
+    private static final String DESTINATION = "+15550100";
+    private static final long TIMEOUT_MILLIS = 5_000;
+    private static final long QUIET_MILLIS = 200;
+
+    private final AtomicLong mNow = new AtomicLong(1_000_000);
+    private final MutableLiveData<UserAccountChangeList> mAccounts = new MutableLiveData<>();
+    private final BlockingQueue<Send> mSends = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> mFailures = new LinkedBlockingQueue<>();
+
+    private OutboundMessageQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue =
+                new OutboundMessageQueue(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                        (accountId, destination, text, attempt, sentIntent, deliveryIntent) ->
+                                mSends.add(new Send(text, attempt)),
+                        mNow::get,
+                        () -> mAccounts);
+    }
+
+    @After
+    public void tearDown() {
+        mQueue.unregisterReceiverIfIdle();
+    }
+
+    @Test
+    public void testEnqueue_registersReceiverWithFirstSend() throws InterruptedException {
+        assertThat(mQueue.isReceiverRegistered()).isFalse();
+        setAccountConnected();
+
+        enqueue("Hello");
+        Send send = mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertThat(mQueue.isReceiverRegistered()).isTrue();
+
+        mQueue.onSent(send.mAttempt, Activity.RESULT_OK);
+        mQueue.unregisterReceiverIfIdle();
+        assertThat(mQueue.isReceiverRegistered()).isFalse();
+    }
+
+    @Test
+    public void testFlush_failsSendWithoutSentIntentAndSendsNext() throws InterruptedException {
+        setAccountConnected();
+        enqueue("First");
+        enqueue("Second");
+        assertThat(mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).mText).isEqualTo("First");
+
+        mNow.addAndGet(OutboundMessageQueue.SEND_TIMEOUT_MILLIS + 1);
+        mQueue.flush();
+
+        assertThat(mFailures.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isEqualTo("First");
+        assertThat(mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).mText).isEqualTo("Second");
+    }
+
+    @Test
+    public void testOnSent_lateResultOfEarlierAttemptDoesNotConfirmRetry()
+            throws InterruptedException {
+        setAccountConnected();
+        enqueue("Hello");
+        Send first = mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        mQueue.onSent(first.mAttempt, SmsManager.RESULT_ERROR_NO_SERVICE);
+
+        mQueue.flush();
+        Send retry = mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertThat(retry.mAttempt).isNotEqualTo(first.mAttempt);
+
+        mQueue.onSent(first.mAttempt, Activity.RESULT_OK);
+        assertThat(mQueue.getQueuedCount()).isEqualTo(1);
+        mQueue.onSent(retry.mAttempt, Activity.RESULT_OK);
+        assertThat(mQueue.getQueuedCount()).isEqualTo(0);
+        assertThat(mFailures).isEmpty();
+    }
+
+    @Test
+    public void testAccountAdded_flushesWaitingMessages() throws InterruptedException {
+        enqueue("Hello");
+        assertThat(mSends.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)).isNull();
+
+        setAccountConnected();
+
+        assertThat(mSends.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).mText).isEqualTo("Hello");
+    }
+
+    @Test
+    public void testFlush_failsMessagesPastMaxAge() throws InterruptedException {
+        enqueue("Hello");
+
+        mNow.addAndGet(OutboundMessageQueue.MAX_AGE_MILLIS + 1);
+        mQueue.flush();
+
+        assertThat(mFailures.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isEqualTo("Hello");
+        assertThat(mQueue.getQueuedCount()).isEqualTo(0);
+        assertThat(mSends).isEmpty();
+    }
+
+    private void enqueue(String text) {
+        mQueue.enqueue(ACCOUNT_ID, DESTINATION, text, () -> mFailures.add(text));
+    }
+
+    /** Connects the account, as the subscription listener would */
+    private void setAccountConnected() {
+        List<UserAccount> accounts =
+                Collections.singletonList(
+                        new UserAccount(ACCOUNT_ID, "Phone", "icc1", Instant.now()));
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(
+                        () ->
+                                mAccounts.setValue(
+                                        new UserAccountChangeList(
+                                                accounts, accounts, Collections.emptyList())));
+    }
+
+    private static final class Send {
+        private final String mText;
+        private final int mAttempt;
+
+        Send(String text, int attempt) {
+            mText = text;
+            mAttempt = attempt;
+        }
+    }
+}
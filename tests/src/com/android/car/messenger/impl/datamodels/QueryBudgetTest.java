@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.provider.Telephony;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.interfaces.DataModel;
+import com.android.car.messenger.core.models.UserAccount;
+import com.android.car.messenger.impl.datamodels.UserAccountLiveData.UserAccountChangeList;
+import com.android.car.messenger.testing.FakeTelephonyContext;
+import com.android.car.messenger.testing.ProviderCallRecorder;
+import com.android.car.messenger.testing.QueryBudget;
+import com.android.car.messenger.testing.SyntheticTelephonyData;
+import com.android.car.messenger.testing.TestAppFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the number of provider calls each {@link DataModel} operation makes against the budgets
+ * below, on a fixed synthetic inbox.
+ *
+ * <p>A failure lists every uri called. If an increase is intended, update the budget and explain
+ * the new breakdown in its comment.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryBudgetTest {
+    private static final int THREAD_COUNT = 3;
+    private static final int MESSAGES_PER_THREAD = 4;
+    private static final int SECOND_ACCOUNT_THREAD_COUNT = 2;
+    private static final long NEWEST_MESSAGE_MILLIS = 1_600_000_000_000L;
+    private static final long TIMEOUT_MILLIS = 5_000;
+    private static final long QUIET_MILLIS = 200;
+
+    /**
+     * Fetching one conversation: thread info, canonical address and contact of its participant,
+     * the MMS and SMS cursors, and a contact lookup per message parsed.
+     */
+    private static final int FETCH_CONVERSATION_QUERIES = 5 + MESSAGES_PER_THREAD;
+
+    /** The conversation list query, then each conversation fetched */
+    private static final QueryBudget FIRST_LOAD =
+            QueryBudget.of(
+                    1 + THREAD_COUNT * FETCH_CONVERSATION_QUERIES,
+                    /* updates= */ 0,
+                    1 + THREAD_COUNT * FETCH_CONVERSATION_QUERIES);
+
+    /** A refresh only reads the conversation list, as no thread changed since it was mirrored */
+    private static final QueryBudget REFRESH =
+            QueryBudget.of(/* queries= */ 1, /* updates= */ 0, /* transactions= */ 1);
+
+    /**
+     * The insert, the MMS and SMS inbox queries and fetch of the new conversation by the new
+     * message observer, then the conversation list query and fetch of the only changed
+     * conversation, with one more message, by the list.
+     */
+    private static final QueryBudget NEW_MESSAGE =
+            QueryBudget.of(
+                    2 + (FETCH_CONVERSATION_QUERIES + 1) + 1 + (FETCH_CONVERSATION_QUERIES + 1),
+                    /* updates= */ 0,
+                    1 + 2 + (FETCH_CONVERSATION_QUERIES + 1)
+                            + 1 + (FETCH_CONVERSATION_QUERIES + 1));
+
+    /** A batch with the update of the conversation */
+    private static final QueryBudget MARK_AS_READ =
+            QueryBudget.of(/* queries= */ 0, /* updates= */ 0, /* transactions= */ 1);
+
+    /** A single batch, whatever the number of conversations */
+    private static final QueryBudget MARK_ALL_AS_READ =
+            QueryBudget.of(/* queries= */ 0, /* updates= */ 0, /* transactions= */ 1);
+
+    /** Muting only touches preferences, the list republishes its cached conversations */
+    private static final QueryBudget MUTE_CONVERSATION =
+            QueryBudget.of(/* queries= */ 0, /* updates= */ 0, /* transactions= */ 0);
+
+    /** The shared list is replayed to the new subscriber, as it lingers after the last one left */
+    private static final QueryBudget RESUBSCRIBE =
+            QueryBudget.of(/* queries= */ 0, /* updates= */ 0, /* transactions= */ 0);
+
+    /** The conversation list of the added account is loaded */
+    private static final QueryBudget ACCOUNT_ADDED =
+            QueryBudget.of(
+                    1 + SECOND_ACCOUNT_THREAD_COUNT * FETCH_CONVERSATION_QUERIES,
+                    /* updates= */ 0,
+                    1 + SECOND_ACCOUNT_THREAD_COUNT * FETCH_CONVERSATION_QUERIES);
+
+    /** Only the remaining account's MMS and SMS inboxes are scanned for new messages */
+    private static final QueryBudget ACCOUNT_REMOVED =
+            QueryBudget.of(/* queries= */ 2, /* updates= */ 0, /* transactions= */ 2);
+
+    private final List<Runnable> mCleanups = new ArrayList<>();
+
+    private FakeTelephonyContext mContext;
+    private TestAppFactory mAppFactory;
+    private ProviderCallRecorder mRecorder;
+    private UserAccount mAccount;
+
+    @Before
+    public void setUp() {
+        mContext =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        SyntheticTelephonyData.builder()
+                .setThreadCount(THREAD_COUNT)
+                .setMessagesPerThread(MESSAGES_PER_THREAD)
+                .setParticipantsPerThread(1)
+                .setMmsRatio(0)
+                .setUnreadRatio(0.5f)
+                .setSubscriptionId(1)
+                .setNewestMessageMillis(NEWEST_MESSAGE_MILLIS)
+                .build()
+                .populate(mContext.getProvider());
+        mAppFactory = new TestAppFactory(mContext);
+        mAppFactory.install();
+        mRecorder = mContext.getProvider().getCallRecorder();
+        mAccount = createAccount(1);
+    }
+
+    @After
+    public void tearDown() {
+        for (Runnable cleanup : mCleanups) {
+            cleanup.run();
+        }
+        mAppFactory.uninstall();
+    }
+
+    @Test
+    public void testGetConversations_firstLoad() throws InterruptedException {
+        mRecorder.reset();
+
+        BlockingQueue<Collection<Conversation>> values = observe(getDataModel(), mAccount);
+        assertThat(values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).hasSize(THREAD_COUNT);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        FIRST_LOAD.assertWithin("getConversations first load", mRecorder);
+    }
+
+    @Test
+    public void testGetConversations_refresh() throws InterruptedException {
+        BlockingQueue<Collection<Conversation>> values = observe(getDataModel(), mAccount);
+        values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+        mRecorder.reset();
+
+        getDataModel().refresh();
+        assertThat(values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNotNull();
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        REFRESH.assertWithin("getConversations refresh", mRecorder);
+    }
+
+    @Test
+    public void testGetConversations_resubscribe() throws InterruptedException {
+        LiveData<Collection<Conversation>> conversationList =
+                getDataModel().getConversations(mAccount);
+        BlockingQueue<Collection<Conversation>> values = new LinkedBlockingQueue<>();
+        Observer<Collection<Conversation>> observer = values::add;
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(() -> conversationList.observeForever(observer));
+        values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(() -> conversationList.removeObserver(observer));
+        mRecorder.reset();
+
+        assertThat(getDataModel().getConversations(mAccount)).isSameInstanceAs(conversationList);
+        BlockingQueue<Collection<Conversation>> replayed = observe(conversationList);
+        assertThat(replayed.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).hasSize(THREAD_COUNT);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        RESUBSCRIBE.assertWithin("getConversations resubscribe", mRecorder);
+    }
+
+    @Test
+    public void testGetConversations_reobserveAfterRelease() throws InterruptedException {
+        ConversationListLiveData conversationList =
+                (ConversationListLiveData) getDataModel().getConversations(mAccount);
+        BlockingQueue<Collection<Conversation>> values = new LinkedBlockingQueue<>();
+        Observer<Collection<Conversation>> observer = values::add;
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(() -> conversationList.observeForever(observer));
+        values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(
+                        () -> {
+                            conversationList.removeObserver(observer);
+                            conversationList.release();
+                        });
+
+        // A subscriber still holding the released list observes it again
+        BlockingQueue<Collection<Conversation>> replayed = observe(conversationList);
+        assertThat(replayed.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).hasSize(THREAD_COUNT);
+
+        assertThat(getDataModel().getConversations(mAccount)).isSameInstanceAs(conversationList);
+    }
+
+    @Test
+    public void testNewMessageInsert() throws InterruptedException {
+        ConversationListLiveData conversationList =
+                (ConversationListLiveData) getDataModel().getConversations(mAccount);
+        BlockingQueue<Collection<Conversation>> values = observe(conversationList);
+        values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        NewMessageLiveData newMessages = new NewMessageLiveData();
+        newMessages.onUserAccountsChanged(
+                new UserAccountChangeList(
+                        Collections.singletonList(mAccount),
+                        Collections.singletonList(mAccount),
+                        Collections.emptyList()));
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+        mRecorder.reset();
+
+        insertIncomingSms(/* threadId= */ 1, NEWEST_MESSAGE_MILLIS + 2_000);
+        // The mock resolver does not deliver change notifications, so run the observers here
+        newMessages.onDataChange();
+        conversationList.onDataChange();
+        // Both scan on the account's lane
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        NEW_MESSAGE.assertWithin("new message insert", mRecorder);
+    }
+
+    @Test
+    public void testMarkAsRead() throws InterruptedException {
+        mRecorder.reset();
+
+        getDataModel().markAsRead("1");
+        mRecorder.awaitCalls(ProviderCallRecorder.APPLY_BATCH, 1, QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        MARK_AS_READ.assertWithin("markAsRead", mRecorder);
+    }
+
+    @Test
+    public void testMarkAllAsRead() throws InterruptedException {
+        List<String> conversationIds = Arrays.asList("1", "2", "3");
+        mRecorder.reset();
+
+        BlockingQueue<Map<String, Integer>> readCounts =
+                observe(getDataModel().markAsRead(conversationIds));
+        Map<String, Integer> firstCounts = readCounts.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        MARK_ALL_AS_READ.assertWithin("markAsRead of all conversations", mRecorder);
+        assertThat(firstCounts.keySet()).containsExactlyElementsIn(conversationIds);
+        assertThat(firstCounts.values().stream().mapToInt(Integer::intValue).sum())
+                .isGreaterThan(0);
+        // Only unread messages are written, so marking them again changes nothing
+        Map<String, Integer> secondCounts =
+                observe(getDataModel().markAsRead(conversationIds))
+                        .poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertThat(secondCounts.values()).containsExactly(0, 0, 0);
+    }
+
+    @Test
+    public void testMuteConversation() throws InterruptedException {
+        BlockingQueue<Collection<Conversation>> values = observe(getDataModel(), mAccount);
+        values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+        mRecorder.reset();
+
+        getDataModel().muteConversation("1", /* mute= */ true);
+        assertThat(values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNotNull();
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        MUTE_CONVERSATION.assertWithin("muteConversation", mRecorder);
+    }
+
+    @Test
+    public void testAccountAdded() throws InterruptedException {
+        UserAccount addedAccount = createAccount(2);
+        populateSecondAccount();
+        mRecorder.reset();
+
+        BlockingQueue<Collection<Conversation>> values = observe(getDataModel(), addedAccount);
+        assertThat(values.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                .hasSize(SECOND_ACCOUNT_THREAD_COUNT);
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        ACCOUNT_ADDED.assertWithin("account add", mRecorder);
+    }
+
+    @Test
+    public void testAccountRemoved() throws InterruptedException {
+        UserAccount removedAccount = createAccount(2);
+        populateSecondAccount();
+        NewMessageLiveData newMessages = new NewMessageLiveData();
+        List<UserAccount> accounts = Arrays.asList(mAccount, removedAccount);
+        newMessages.onUserAccountsChanged(
+                new UserAccountChangeList(accounts, accounts, Collections.emptyList()));
+        mRecorder.reset();
+
+        newMessages.onUserAccountsChanged(
+                new UserAccountChangeList(
+                        Collections.singletonList(mAccount),
+                        Collections.emptyList(),
+                        Collections.singletonList(removedAccount)));
+        newMessages.onDataChange();
+        mRecorder.awaitIdle(QUIET_MILLIS, TIMEOUT_MILLIS);
+
+        ACCOUNT_REMOVED.assertWithin("account remove", mRecorder);
+    }
+
+    private DataModel getDataModel() {
+        return mAppFactory.getDataModel();
+    }
+
+    private BlockingQueue<Collection<Conversation>> observe(
+            DataModel dataModel, UserAccount account) {
+        return observe(dataModel.getConversations(account));
+    }
+
+    /** Observes the live data on the main thread until the end of the test */
+    private <T> BlockingQueue<T> observe(LiveData<T> liveData) {
+        BlockingQueue<T> values = new LinkedBlockingQueue<>();
+        Observer<T> observer = values::add;
+        InstrumentationRegistry.getInstrumentation()
+                .runOnMainSync(() -> liveData.observeForever(observer));
+        mCleanups.add(
+                () ->
+                        InstrumentationRegistry.getInstrumentation()
+                                .runOnMainSync(
+                                        () -> {
+                                            liveData.removeObserver(observer);
+                                            // Lists would otherwise linger into the next test
+                                            if (liveData instanceof ConversationListLiveData) {
+                                                ((ConversationListLiveData) liveData).release();
+                                            }
+                                        }));
+        return values;
+    }
+
+    private void populateSecondAccount() {
+        SyntheticTelephonyData.builder()
+                .setThreadCount(SECOND_ACCOUNT_THREAD_COUNT)
+                .setFirstThreadId(THREAD_COUNT + 1)
+                .setMessagesPerThread(MESSAGES_PER_THREAD)
+                .setParticipantsPerThread(1)
+                .setMmsRatio(0)
+                .setSubscriptionId(2)
+                .setNewestMessageMillis(NEWEST_MESSAGE_MILLIS)
+                .build()
+                .populate(mContext.getProvider());
+    }
+
+    private void insertIncomingSms(long threadId, long dateMillis) {
+        ContentValues values = new ContentValues();
+        values.put(Telephony.Sms.THREAD_ID, threadId);
+        values.put(Telephony.Sms.ADDRESS, SyntheticTelephonyData.getPhoneNumber(threadId, 0));
+        values.put(Telephony.Sms.DATE, dateMillis);
+        values.put(Telephony.Sms.READ, 0);
+        values.put(Telephony.Sms.TYPE, Telephony.Sms.MESSAGE_TYPE_INBOX);
+        values.put(Telephony.Sms.BODY, "New message");
+        values.put(Telephony.Sms.SUBSCRIPTION_ID, mAccount.getId());
+        mContext.getContentResolver().insert(Telephony.Sms.CONTENT_URI, values);
+    }
+
+    private static UserAccount createAccount(int id) {
+        // Connected after the synthetic messages, so only messages inserted by a test are new
+        return new UserAccount(
+                id, "Phone " + id, "icc" + id, Instant.ofEpochMilli(NEWEST_MESSAGE_MILLIS + 1_000));
+    }
+}
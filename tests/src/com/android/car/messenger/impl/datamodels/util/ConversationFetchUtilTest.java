@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.Telephony;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.common.Conversation;
+import com.android.car.messenger.core.models.MessageHistoryPage;
+import com.android.car.messenger.testing.FakeTelephonyContext;
+import com.android.car.messenger.testing.FakeTelephonyProvider;
+import com.android.car.messenger.testing.TestAppFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ConversationFetchUtilTest {
+    private static final long THREAD_ID = 1;
+    private static final String CONVERSATION_ID = Long.toString(THREAD_ID);
+    private static final String ADDRESS = "+15550100";
+    private static final String MMS_CONTENT_TYPE = "application/vnd.wap.multipart.related";
+    // Whole seconds, so the MMS dates, stored in seconds, equal the SMS ones
+    private static final long NEWEST_DATE_MILLIS = 1_600_000_000_000L;
+    private static final int DATE_COUNT = 6;
+    // Splits the messages sharing a date across pages
+    private static final int PAGE_SIZE = 4;
+    private static final int MAX_PAGES = 20;
+
+    private TestAppFactory mAppFactory;
+    private SQLiteDatabase mDatabase;
+    private int mMessageCount;
+
+    @Before
+    public void setUp() {
+        FakeTelephonyContext context =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        mDatabase = context.getProvider().getDatabase();
+        mAppFactory = new TestAppFactory(context);
+        mAppFactory.install();
+    }
+
+    @After
+    public void tearDown() {
+        mAppFactory.uninstall();
+    }
+
+    @Test
+    public void testFetchMessageHistory_pagesInterleavedMessagesSharingDates() {
+        List<String> expected = new ArrayList<>();
+        // Each date holds an MMS between two SMS, oldest first as a phone receives them
+        for (int i = DATE_COUNT - 1; i >= 0; i--) {
+            long dateMillis = NEWEST_DATE_MILLIS - i * 1_000;
+            expected.add(insertSms(dateMillis));
+            expected.add(insertMms(dateMillis));
+            expected.add(insertSms(dateMillis));
+        }
+
+        List<String> fetched = fetchAllPages();
+
+        assertThat(fetched).containsExactlyElementsIn(expected);
+        assertThat(new HashSet<>(fetched)).hasSize(fetched.size());
+    }
+
+    @Test
+    public void testFetchMessageHistory_skipsBlankRowsOnce() {
+        List<String> expected = new ArrayList<>();
+        for (int i = DATE_COUNT - 1; i >= 0; i--) {
+            long dateMillis = NEWEST_DATE_MILLIS - i * 1_000;
+            expected.add(insertMms(dateMillis));
+            // Skipped by the merge, but still read, so the next page starts after it
+            insertSmsWithBody(dateMillis, " ");
+            expected.add(insertSms(dateMillis));
+        }
+
+        List<String> fetched = fetchAllPages();
+
+        assertThat(fetched).containsExactlyElementsIn(expected);
+        assertThat(new HashSet<>(fetched)).hasSize(fetched.size());
+    }
+
+    /** Fetches pages until none is left, and returns the bodies of the messages, in order */
+    private List<String> fetchAllPages() {
+        List<String> bodies = new ArrayList<>();
+        MessageHistoryPage.PageKey key = MessageHistoryPage.NEWEST;
+        long lastTimestamp = Long.MAX_VALUE;
+        for (int page = 0; page < MAX_PAGES; page++) {
+            MessageHistoryPage history =
+                    ConversationFetchUtil.fetchMessageHistory(CONVERSATION_ID, key, PAGE_SIZE);
+            assertThat(history.getMessages().size()).isAtMost(PAGE_SIZE);
+            for (Conversation.Message message : history.getMessages()) {
+                assertThat(message.getTimestamp()).isAtMost(lastTimestamp);
+                lastTimestamp = message.getTimestamp();
+                bodies.add(message.getText());
+            }
+            if (!history.hasMore()) {
+                return bodies;
+            }
+            key = history.getNextPageKey();
+        }
+        throw new AssertionError("Paging did not end after " + MAX_PAGES + " pages");
+    }
+
+    private String insertSms(long dateMillis) {
+        return insertSmsWithBody(dateMillis, "Message " + mMessageCount++);
+    }
+
+    private String insertSmsWithBody(long dateMillis, String body) {
+        ContentValues values = new ContentValues();
+        values.put(Telephony.Sms.THREAD_ID, THREAD_ID);
+        values.put(Telephony.Sms.ADDRESS, ADDRESS);
+        values.put(Telephony.Sms.DATE, dateMillis);
+        values.put(Telephony.Sms.READ, 1);
+        values.put(Telephony.Sms.TYPE, Telephony.Sms.MESSAGE_TYPE_INBOX);
+        values.put(Telephony.Sms.BODY, body);
+        mDatabase.insert("sms", null, values);
+        return body;
+    }
+
+    private String insertMms(long dateMillis) {
+        String body = "Message " + mMessageCount++;
+        ContentValues values = new ContentValues();
+        values.put(Telephony.Mms.THREAD_ID, THREAD_ID);
+        values.put(Telephony.Mms.DATE, dateMillis / 1000);
+        values.put(Telephony.Mms.READ, 1);
+        values.put(Telephony.Mms.MESSAGE_BOX, Telephony.Mms.MESSAGE_BOX_INBOX);
+        values.put(Telephony.Mms.CONTENT_TYPE, MMS_CONTENT_TYPE);
+        long id = mDatabase.insert("pdu", null, values);
+
+        values.clear();
+        values.put(Telephony.Mms.Part.MSG_ID, id);
+        values.put(Telephony.Mms.Part.CONTENT_TYPE, "text/plain");
+        values.put(Telephony.Mms.Part.TEXT, body);
+        mDatabase.insert("part", null, values);
+
+        values.clear();
+        values.put(Telephony.Mms.Addr.MSG_ID, id);
+        values.put(Telephony.Mms.Addr.ADDRESS, ADDRESS);
+        values.put(Telephony.Mms.Addr.TYPE, FakeTelephonyProvider.MMS_ORIGINATOR_ADDRESS_TYPE);
+        mDatabase.insert("addr", null, values);
+        return body;
+    }
+}
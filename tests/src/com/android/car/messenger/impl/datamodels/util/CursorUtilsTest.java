@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class CursorUtilsTest {
+    @Test
+    public void testGetMetricsKey_masksIds() {
+        assertThat(CursorUtils.getMetricsKey(Uri.parse("content://mms/12/part?x=1")))
+                .isEqualTo("mms/#/part");
+    }
+
+    @Test
+    public void testGetMetricsKey_masksAlphanumericAddresses() {
+        Uri uri =
+                Uri.parse("content://com.android.contacts/phone_lookup/")
+                        .buildUpon()
+                        .appendPath("MyBank")
+                        .build();
+
+        assertThat(CursorUtils.getMetricsKey(uri)).isEqualTo("com.android.contacts/phone_lookup/#");
+        assertThat(CursorUtils.getMetricsKey(Uri.parse("content://sms/inbox/alice@example.com")))
+                .isEqualTo("sms/inbox/#");
+    }
+}
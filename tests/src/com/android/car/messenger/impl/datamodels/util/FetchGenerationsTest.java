@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.car.messenger.impl.datamodels.util.FetchGenerations.Generation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class FetchGenerationsTest {
+    private final FetchGenerations mGenerations = new FetchGenerations();
+
+    @Test
+    public void testNext_cancelsSupersededGeneration() {
+        Generation first = mGenerations.next();
+
+        Generation second = mGenerations.next();
+
+        assertThat(first.isSuperseded()).isTrue();
+        assertThat(first.getCancellationSignal().isCanceled()).isTrue();
+        assertThat(second.isSuperseded()).isFalse();
+    }
+
+    @Test
+    public void testPublishIfCurrent_onlyPublishesNewestGeneration() {
+        List<String> published = new ArrayList<>();
+        Generation first = mGenerations.next();
+        Generation second = mGenerations.next();
+
+        assertThat(second.publishIfCurrent(() -> published.add("second"))).isTrue();
+        assertThat(first.publishIfCurrent(() -> published.add("first"))).isFalse();
+
+        assertThat(published).containsExactly("second");
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class LongHashSetTest {
+    private final LongHashSet mSet = new LongHashSet();
+
+    @Test
+    public void testAdd_growsPastInitialCapacity() {
+        for (long id = 0; id < 1000; id++) {
+            assertThat(mSet.add(id)).isTrue();
+        }
+
+        assertThat(mSet.add(500)).isFalse();
+        assertThat(mSet.size()).isEqualTo(1000);
+        assertThat(mSet.contains(0)).isTrue();
+        assertThat(mSet.contains(999)).isTrue();
+        assertThat(mSet.contains(1000)).isFalse();
+    }
+
+    @Test
+    public void testRemove_keepsCollidingValuesReachable() {
+        for (long id = 1; id <= 100; id++) {
+            mSet.add(id);
+        }
+
+        for (long id = 1; id <= 100; id += 2) {
+            assertThat(mSet.remove(id)).isTrue();
+        }
+
+        assertThat(mSet.remove(1)).isFalse();
+        assertThat(mSet.size()).isEqualTo(50);
+        for (long id = 2; id <= 100; id += 2) {
+            assertThat(mSet.contains(id)).isTrue();
+        }
+    }
+
+    @Test
+    public void testDifference() {
+        LongHashSet other = new LongHashSet();
+        mSet.add(1);
+        mSet.add(2);
+        mSet.add(3);
+        other.add(2);
+        other.add(4);
+
+        assertThat(mSet.difference(other)).asList().containsExactly(1L, 3L);
+        assertThat(other.difference(mSet)).asList().containsExactly(4L);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.CancellationSignal;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.impl.datamodels.util.QueryDeadlines.Deadline;
+import com.android.car.messenger.impl.datamodels.util.QueryDeadlines.QueryClass;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class QueryDeadlinesTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @After
+    public void tearDown() {
+        QueryDeadlines.setDeadlineMillis(QueryClass.CONTACTS, 1000);
+    }
+
+    @Test
+    public void testGetQueryClass_mapsStages() {
+        assertThat(QueryDeadlines.getQueryClass(TraceUtil.QUERY_THREAD_LIST))
+                .isEqualTo(QueryClass.THREAD_LIST);
+        assertThat(QueryDeadlines.getQueryClass(TraceUtil.QUERY_SMS))
+                .isEqualTo(QueryClass.MESSAGES);
+        assertThat(QueryDeadlines.getQueryClass(TraceUtil.QUERY_MMS_PARTS))
+                .isEqualTo(QueryClass.PARTS);
+        assertThat(QueryDeadlines.getQueryClass(TraceUtil.QUERY_CONTACT))
+                .isEqualTo(QueryClass.CONTACTS);
+    }
+
+    @Test
+    public void testDeadline_expiresAndCancelsQuery() throws InterruptedException {
+        QueryDeadlines.setDeadlineMillis(QueryClass.CONTACTS, 10);
+        Deadline deadline =
+                QueryDeadlines.start(QueryClass.CONTACTS, /* cancellationSignal= */ null);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        deadline.getCancellationSignal().setOnCancelListener(cancelled::countDown);
+
+        assertThat(cancelled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(deadline.hasExpired()).isTrue();
+        deadline.finish();
+    }
+
+    @Test
+    public void testDeadline_forwardsCallerCancellation() {
+        CancellationSignal callerSignal = new CancellationSignal();
+        Deadline deadline = QueryDeadlines.start(QueryClass.CONTACTS, callerSignal);
+
+        callerSignal.cancel();
+
+        assertThat(deadline.getCancellationSignal().isCanceled()).isTrue();
+        assertThat(deadline.hasExpired()).isFalse();
+        deadline.finish();
+    }
+
+    @Test
+    public void testDeadline_disabledByZero() {
+        QueryDeadlines.setDeadlineMillis(QueryClass.CONTACTS, 0);
+
+        assertThat(QueryDeadlines.start(QueryClass.CONTACTS, /* cancellationSignal= */ null))
+                .isNull();
+    }
+
+    @Test
+    public void testRetryBackoff_doublesUntilReset() {
+        RetryBackoff retryBackoff = new RetryBackoff();
+        long first = retryBackoff.nextDelayMillis();
+
+        assertThat(retryBackoff.nextDelayMillis()).isEqualTo(first * 2);
+        retryBackoff.reset();
+        assertThat(retryBackoff.nextDelayMillis()).isEqualTo(first);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.impl.datamodels.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.testing.FakeTelephonyContext;
+import com.android.car.messenger.testing.SyntheticTelephonyData;
+import com.android.car.messenger.testing.TestAppFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Set;
+
+@RunWith(AndroidJUnit4.class)
+public class ThreadChangeResolverTest {
+    private FakeTelephonyContext mContext;
+    private TestAppFactory mAppFactory;
+
+    @Before
+    public void setUp() {
+        mContext =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        SyntheticTelephonyData.builder()
+                .setThreadCount(2)
+                .setMessagesPerThread(2)
+                .setParticipantsPerThread(1)
+                .setMmsRatio(0)
+                .setSubscriptionId(1)
+                .build()
+                .populate(mContext.getProvider());
+        mAppFactory = new TestAppFactory(mContext);
+        mAppFactory.install();
+    }
+
+    @After
+    public void tearDown() {
+        mAppFactory.uninstall();
+    }
+
+    @Test
+    public void testResolveThreadIds_threadUri() {
+        Uri uri = Telephony.MmsSms.CONTENT_CONVERSATIONS_URI.buildUpon().appendPath("7").build();
+
+        assertThat(resolve(uri)).containsExactly("7");
+    }
+
+    @Test
+    public void testResolveThreadIds_messageUriIgnoresCollectionUris() {
+        long smsId = getAnySmsId();
+        String threadId = getSmsThreadId(smsId);
+
+        assertThat(
+                        resolve(
+                                ContentUris.withAppendedId(Telephony.Sms.CONTENT_URI, smsId),
+                                Telephony.MmsSms.CONTENT_URI,
+                                Telephony.MmsSms.CONTENT_CONVERSATIONS_URI))
+                .containsExactly(threadId);
+    }
+
+    @Test
+    public void testResolveThreadIds_deletedMessageNeedsFullReload() {
+        assertThat(resolve(ContentUris.withAppendedId(Telephony.Sms.CONTENT_URI, 9999)))
+                .isNull();
+    }
+
+    @Test
+    public void testResolveThreadIds_collectionUrisOnlyNeedFullReload() {
+        assertThat(resolve(Telephony.MmsSms.CONTENT_URI, Telephony.Sms.CONTENT_URI)).isNull();
+    }
+
+    private Set<String> resolve(Uri... uris) {
+        return ThreadChangeResolver.resolveThreadIds(
+                mContext, Arrays.asList(uris), /* cancellationSignal= */ null);
+    }
+
+    private long getAnySmsId() {
+        try (Cursor cursor =
+                mContext.getProvider()
+                        .getDatabase()
+                        .rawQuery("SELECT _id FROM sms LIMIT 1", /* selectionArgs= */ null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+
+    private String getSmsThreadId(long smsId) {
+        try (Cursor cursor =
+                mContext.getProvider()
+                        .getDatabase()
+                        .rawQuery(
+                                "SELECT thread_id FROM sms WHERE _id = ?",
+                                new String[] {String.valueOf(smsId)})) {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.test.mock.MockContentResolver;
+
+import androidx.annotation.NonNull;
+
+/** Context whose content resolver is served by a {@link FakeTelephonyProvider} */
+public class FakeTelephonyContext extends ContextWrapper {
+    @NonNull private final FakeTelephonyProvider mProvider;
+    @NonNull private final MockContentResolver mContentResolver;
+
+    public FakeTelephonyContext(@NonNull Context base) {
+        super(base);
+        mProvider = new FakeTelephonyProvider();
+        mProvider.attachInfo(base, /* info= */ null);
+        mContentResolver = mProvider.registerWith(new MockContentResolver(this));
+    }
+
+    /** Returns the provider backing {@link #getContentResolver()} */
+    @NonNull
+    public FakeTelephonyProvider getProvider() {
+        return mProvider;
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return mContentResolver;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+}
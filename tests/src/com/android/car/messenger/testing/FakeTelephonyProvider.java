@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.provider.Telephony;
+import android.test.mock.MockContentResolver;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * In-memory stand-in for the MmsSms, Sms, Mms, canonical address and PhoneLookup providers, backed
+ * by a SQLite schema with the columns the data layer reads.
+ *
+ * <p>The provider has a no-arg constructor, so it can be registered with Robolectric, or with a
+ * {@link MockContentResolver} through {@link #createContentResolver(Context)}. An optional latency
+ * can be injected per call to mimic the Bluetooth MAP client, and honours cancellation.
+ */
+public class FakeTelephonyProvider extends ContentProvider {
+    /** Type of the originator address of an MMS, as read by MmsUtils */
+    public static final int MMS_ORIGINATOR_ADDRESS_TYPE = 137;
+
+    @NonNull private static final String SMS_AUTHORITY = "sms";
+    @NonNull private static final String MMS_AUTHORITY = "mms";
+    @NonNull private static final String MMS_SMS_AUTHORITY = "mms-sms";
+
+    private static final int CONVERSATIONS = 1;
+    private static final int CONVERSATION_MESSAGES = 2;
+    private static final int CANONICAL_ADDRESS = 3;
+    private static final int SMS = 4;
+    private static final int SMS_INBOX = 5;
+    private static final int MMS = 6;
+    private static final int MMS_INBOX = 7;
+    private static final int MMS_PART = 8;
+    private static final int MMS_ADDR = 9;
+    private static final int PHONE_LOOKUP = 10;
+
+    private static final long LATENCY_POLL_MILLIS = 5;
+
+    @NonNull private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        sUriMatcher.addURI(MMS_SMS_AUTHORITY, "conversations", CONVERSATIONS);
+        sUriMatcher.addURI(MMS_SMS_AUTHORITY, "conversations/#", CONVERSATION_MESSAGES);
+        sUriMatcher.addURI(MMS_SMS_AUTHORITY, "canonical-address/#", CANONICAL_ADDRESS);
+        sUriMatcher.addURI(SMS_AUTHORITY, null, SMS);
+        sUriMatcher.addURI(SMS_AUTHORITY, "inbox", SMS_INBOX);
+        sUriMatcher.addURI(MMS_AUTHORITY, null, MMS);
+        sUriMatcher.addURI(MMS_AUTHORITY, "inbox", MMS_INBOX);
+        sUriMatcher.addURI(MMS_AUTHORITY, "#/part", MMS_PART);
+        sUriMatcher.addURI(MMS_AUTHORITY, "#/addr", MMS_ADDR);
+        sUriMatcher.addURI(ContactsContract.AUTHORITY, "phone_lookup/*", PHONE_LOOKUP);
+    }
+
+    /**
+     * Schema of the fake. MMS dates are in seconds and SMS dates in milliseconds, as in the real
+     * providers.
+     */
+    @NonNull
+    private static final String[] SCHEMA = {
+        "CREATE TABLE threads (_id INTEGER PRIMARY KEY, recipient_ids TEXT, date INTEGER,"
+                + " read INTEGER DEFAULT 1)",
+        "CREATE TABLE canonical_addresses (_id INTEGER PRIMARY KEY, address TEXT)",
+        "CREATE TABLE sms (_id INTEGER PRIMARY KEY, thread_id INTEGER, address TEXT,"
+                + " date INTEGER, read INTEGER DEFAULT 0, type INTEGER, body TEXT,"
+                + " sub_id INTEGER)",
+        "CREATE TABLE pdu (_id INTEGER PRIMARY KEY, thread_id INTEGER, date INTEGER,"
+                + " read INTEGER DEFAULT 0, msg_box INTEGER, ct_t TEXT, sub_id INTEGER)",
+        "CREATE TABLE part (_id INTEGER PRIMARY KEY, mid INTEGER, ct TEXT, text TEXT)",
+        "CREATE TABLE addr (_id INTEGER PRIMARY KEY, msg_id INTEGER, address TEXT, type INTEGER)",
+        "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, number TEXT, display_name TEXT,"
+                + " contact_id INTEGER, photo_id INTEGER, photo_thumb_uri TEXT,"
+                + " photo_file_id INTEGER, photo_uri TEXT)",
+        "CREATE INDEX sms_thread ON sms (thread_id, date)",
+        "CREATE INDEX pdu_thread ON pdu (thread_id, date)",
+        "CREATE INDEX part_mid ON part (mid)",
+        "CREATE INDEX addr_msg_id ON addr (msg_id)",
+        "CREATE INDEX contacts_number ON contacts (number)",
+        // Messages of both kinds, with the columns of CursorUtils#CONTENT_CONVERSATION_PROJECTION
+        "CREATE VIEW messages AS"
+                + " SELECT _id, type, date, read, NULL AS ct_t, body, address, thread_id, sub_id,"
+                + " NULL AS msg_box FROM sms"
+                + " UNION ALL"
+                + " SELECT _id, NULL AS type, date, read, ct_t, NULL AS body, NULL AS address,"
+                + " thread_id, sub_id, msg_box FROM pdu",
+        // One row per thread, newest first, as returned for the conversations uri
+        "CREATE VIEW conversations AS"
+                + " SELECT thread_id AS _id, thread_id, sub_id, MAX(date_ms) AS date FROM ("
+                + " SELECT thread_id, sub_id, date AS date_ms FROM sms"
+                + " UNION ALL"
+                + " SELECT thread_id, sub_id, date * 1000 AS date_ms FROM pdu)"
+                + " GROUP BY thread_id",
+    };
+
+    @NonNull private final Random mLatencyRandom = new Random();
+    @NonNull private final ProviderCallRecorder mCallRecorder = new ProviderCallRecorder();
+
+    private SQLiteDatabase mDatabase;
+    @Nullable private ContentResolver mResolver;
+    // The operations of a batch are made in its single call, so they are not recorded
+    @NonNull private final ThreadLocal<Boolean> mInBatch = ThreadLocal.withInitial(() -> false);
+    private volatile long mLatencyMillis;
+    private volatile long mLatencyJitterMillis;
+
+    /**
+     * Returns a resolver with a new fake registered for all the authorities it serves.
+     *
+     * @param context used as the context of the resolver and the provider
+     */
+    @NonNull
+    public static MockContentResolver createContentResolver(@NonNull Context context) {
+        FakeTelephonyProvider provider = new FakeTelephonyProvider();
+        provider.attachInfo(context, /* info= */ null);
+        return provider.registerWith(new MockContentResolver(context));
+    }
+
+    /** Registers this provider for all the authorities it serves, and returns the resolver */
+    @NonNull
+    public MockContentResolver registerWith(@NonNull MockContentResolver resolver) {
+        resolver.addProvider(SMS_AUTHORITY, this);
+        resolver.addProvider(MMS_AUTHORITY, this);
+        resolver.addProvider(MMS_SMS_AUTHORITY, this);
+        resolver.addProvider(ContactsContract.AUTHORITY, this);
+        mResolver = resolver;
+        return resolver;
+    }
+
+    @Override
+    public boolean onCreate() {
+        mDatabase = SQLiteDatabase.create(/* factory= */ null);
+        for (String statement : SCHEMA) {
+            mDatabase.execSQL(statement);
+        }
+        return true;
+    }
+
+    /** Returns the backing database, to populate it directly */
+    @NonNull
+    public SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    /** Returns the recorder of all calls made into this provider */
+    @NonNull
+    public ProviderCallRecorder getCallRecorder() {
+        return mCallRecorder;
+    }
+
+    /**
+     * Delays every call by the given latency plus a uniform random jitter, as the Bluetooth MAP
+     * client does when it round trips to the phone.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        mLatencyMillis = latencyMillis;
+        mLatencyJitterMillis = jitterMillis;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs,
+            @Nullable String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs,
+            @Nullable String sortOrder,
+            @Nullable CancellationSignal cancellationSignal) {
+        mCallRecorder.record(ProviderCallRecorder.QUERY, uri);
+        injectLatency(cancellationSignal);
+        String columns = projection == null ? "*" : TextUtils.join(", ", projection);
+        String table;
+        String where;
+        String defaultSortOrder = null;
+        switch (sUriMatcher.match(uri)) {
+            case CONVERSATIONS:
+                if ("true".equals(uri.getQueryParameter("simple"))) {
+                    table = "threads";
+                    where = null;
+                } else {
+                    table = "conversations";
+                    where = null;
+                    defaultSortOrder = "date DESC";
+                }
+                break;
+            case CONVERSATION_MESSAGES:
+                table = "messages";
+                where = "thread_id = " + uri.getLastPathSegment();
+                break;
+            case CANONICAL_ADDRESS:
+                // The real provider only returns the address column
+                columns = "address";
+                table = "canonical_addresses";
+                where = "_id = " + uri.getLastPathSegment();
+                break;
+            case SMS:
+                table = "sms";
+                where = null;
+                break;
+            case SMS_INBOX:
+                table = "sms";
+                where = "type = " + Telephony.Sms.MESSAGE_TYPE_INBOX;
+                break;
+            case MMS:
+                table = "pdu";
+                where = null;
+                break;
+            case MMS_INBOX:
+                table = "pdu";
+                where = "msg_box = " + Telephony.Mms.MESSAGE_BOX_INBOX;
+                break;
+            case MMS_PART:
+                table = "part";
+                where = "mid = " + uri.getPathSegments().get(0);
+                break;
+            case MMS_ADDR:
+                table = "addr";
+                where = "msg_id = " + uri.getPathSegments().get(0);
+                break;
+            case PHONE_LOOKUP:
+                table = "contacts";
+                where = "number = " + DatabaseUtils.sqlEscapeString(uri.getLastPathSegment());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported uri " + uri);
+        }
+        StringBuilder sql =
+                new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table);
+        String combinedWhere = combine(where, selection);
+        if (combinedWhere != null) {
+            sql.append(" WHERE ").append(combinedWhere);
+        }
+        String order = sortOrder != null ? sortOrder : defaultSortOrder;
+        if (order != null) {
+            // Callers append LIMIT to the sort order, which SQLite accepts after ORDER BY
+            sql.append(" ORDER BY ").append(order);
+        }
+        Cursor cursor = mDatabase.rawQuery(sql.toString(), selectionArgs, cancellationSignal);
+        // Fill the window now, so the latency of the query is paid here as with a real provider
+        cursor.getCount();
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        mCallRecorder.record(ProviderCallRecorder.INSERT, uri);
+        injectLatency(/* cancellationSignal= */ null);
+        String table;
+        switch (sUriMatcher.match(uri)) {
+            case SMS:
+            case SMS_INBOX:
+                table = "sms";
+                break;
+            case MMS:
+            case MMS_INBOX:
+                table = "pdu";
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported uri " + uri);
+        }
+        long id = mDatabase.insert(table, /* nullColumnHack= */ null, values);
+        notifyChange(uri);
+        return Uri.withAppendedPath(uri, Long.toString(id));
+    }
+
+    @Override
+    public int update(
+            @NonNull Uri uri,
+            @Nullable ContentValues values,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs) {
+        if (!mInBatch.get()) {
+            mCallRecorder.record(ProviderCallRecorder.UPDATE, uri);
+            injectLatency(/* cancellationSignal= */ null);
+        }
+        if (sUriMatcher.match(uri) != CONVERSATION_MESSAGES) {
+            throw new IllegalArgumentException("Unsupported uri " + uri);
+        }
+        String threadId = uri.getLastPathSegment();
+        String where = combine("thread_id = " + threadId, selection);
+        int count = 0;
+        mDatabase.beginTransaction();
+        try {
+            count += mDatabase.update("sms", values, where, selectionArgs);
+            count += mDatabase.update("pdu", values, where, selectionArgs);
+            if (values != null && values.containsKey(Telephony.ThreadsColumns.READ)) {
+                ContentValues threadValues = new ContentValues();
+                threadValues.put(
+                        Telephony.ThreadsColumns.READ,
+                        values.getAsInteger(Telephony.ThreadsColumns.READ));
+                mDatabase.update("threads", threadValues, "_id = " + threadId, null);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        notifyChange(uri);
+        return count;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull String authority, @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        mCallRecorder.record(
+                ProviderCallRecorder.APPLY_BATCH, Uri.parse("content://" + authority));
+        injectLatency(/* cancellationSignal= */ null);
+        mInBatch.set(true);
+        try {
+            return super.applyBatch(authority, operations);
+        } finally {
+            mInBatch.set(false);
+        }
+    }
+
+    @Override
+    public int delete(
+            @NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        mCallRecorder.record(ProviderCallRecorder.DELETE, uri);
+        throw new UnsupportedOperationException("delete is not supported by the fake");
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    private void notifyChange(@NonNull Uri uri) {
+        ContentResolver resolver = mResolver;
+        if (resolver != null) {
+            resolver.notifyChange(uri, /* observer= */ null);
+        }
+    }
+
+    private void injectLatency(@Nullable CancellationSignal cancellationSignal) {
+        long latency = mLatencyMillis;
+        long jitter = mLatencyJitterMillis;
+        if (jitter > 0) {
+            synchronized (mLatencyRandom) {
+                latency += (long) (mLatencyRandom.nextDouble() * jitter);
+            }
+        }
+        long deadline = SystemClock.uptimeMillis() + latency;
+        while (SystemClock.uptimeMillis() < deadline) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            SystemClock.sleep(Math.min(LATENCY_POLL_MILLIS, deadline - SystemClock.uptimeMillis()));
+        }
+        if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    @Nullable
+    private static String combine(@Nullable String first, @Nullable String second) {
+        if (TextUtils.isEmpty(first)) {
+            return TextUtils.isEmpty(second) ? null : second;
+        }
+        return TextUtils.isEmpty(second) ? first : "(" + first + ") AND (" + second + ")";
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.provider.Telephony;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.car.messenger.core.util.TraceUtil;
+import com.android.car.messenger.impl.datamodels.util.CursorUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class FakeTelephonyProviderTest {
+    private static final int THREAD_COUNT = 5;
+    private static final int MESSAGES_PER_THREAD = 4;
+
+    private FakeTelephonyContext mContext;
+
+    @Before
+    public void setUp() {
+        mContext =
+                new FakeTelephonyContext(
+                        InstrumentationRegistry.getInstrumentation().getTargetContext());
+        SyntheticTelephonyData.builder()
+                .setThreadCount(THREAD_COUNT)
+                .setMessagesPerThread(MESSAGES_PER_THREAD)
+                .setMmsRatio(0.5f)
+                .setSubscriptionId(1)
+                .build()
+                .populate(mContext.getProvider());
+    }
+
+    @Test
+    public void testConversationsQuery_returnsThreadsNewestFirst() {
+        try (Cursor cursor =
+                CursorUtils.query(
+                        mContext,
+                        TraceUtil.QUERY_THREAD_LIST,
+                        Telephony.MmsSms.CONTENT_CONVERSATIONS_URI,
+                        new String[] {Telephony.ThreadsColumns.SUBSCRIPTION_ID, "thread_id"},
+                        Telephony.ThreadsColumns.SUBSCRIPTION_ID + "=1",
+                        /* sortOrder= */ null)) {
+            assertThat(cursor.getCount()).isEqualTo(THREAD_COUNT);
+            cursor.moveToFirst();
+            assertThat(cursor.getLong(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testConversationQuery_returnsSmsAndMms() {
+        int smsCount = countMessages("1", Telephony.Mms.CONTENT_TYPE + " IS NULL");
+        int mmsCount = countMessages("1", Telephony.Mms.CONTENT_TYPE + " IS NOT NULL");
+
+        assertThat(smsCount + mmsCount).isEqualTo(MESSAGES_PER_THREAD);
+    }
+
+    @Test
+    public void testMarkAsRead_updatesMessages() {
+        ContentValues values = new ContentValues();
+        values.put(Telephony.ThreadsColumns.READ, 1);
+
+        mContext.getContentResolver()
+                .update(
+                        CursorUtils.getConversationUri("1"),
+                        values,
+                        /* where= */ null,
+                        /* selectionArgs= */ null);
+
+        assertThat(countMessages("1", Telephony.ThreadsColumns.READ + "=0")).isEqualTo(0);
+    }
+
+    @Test
+    public void testLatency_honoursCancellation() {
+        mContext.getProvider().setLatency(/* latencyMillis= */ 10_000, /* jitterMillis= */ 0);
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        assertThrows(
+                OperationCanceledException.class,
+                () ->
+                        CursorUtils.query(
+                                mContext,
+                                TraceUtil.QUERY_THREAD_LIST,
+                                Telephony.MmsSms.CONTENT_CONVERSATIONS_URI,
+                                /* projection= */ null,
+                                /* selection= */ null,
+                                /* sortOrder= */ null,
+                                signal));
+    }
+
+    private int countMessages(String conversationId, String selection) {
+        try (Cursor cursor =
+                CursorUtils.simpleQueryWithSelection(
+                        mContext,
+                        TraceUtil.QUERY_SMS,
+                        CursorUtils.getConversationUri(conversationId),
+                        selection)) {
+            return cursor.getCount();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.android.car.messenger.impl.datamodels.util.CursorUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records every call made into a {@link FakeTelephonyProvider}. Each call is one binder transaction
+ * against the real providers, so the counts are the cost of the operation under test.
+ */
+public final class ProviderCallRecorder {
+    /** A query, including the ones issued by a cursor reload */
+    @NonNull public static final String QUERY = "query";
+
+    /** An insert of a single row */
+    @NonNull public static final String INSERT = "insert";
+
+    /** An update of any number of rows */
+    @NonNull public static final String UPDATE = "update";
+
+    /** A batch of operations, made in a single call */
+    @NonNull public static final String APPLY_BATCH = "applyBatch";
+
+    /** A delete of any number of rows */
+    @NonNull public static final String DELETE = "delete";
+
+    private static final long POLL_MILLIS = 10;
+
+    @NonNull private final List<String> mCalls = new ArrayList<>();
+    private long mLastCallUptimeMillis;
+
+    /** Records a call, with the uri masked as in the metrics */
+    public synchronized void record(@NonNull String kind, @NonNull Uri uri) {
+        mCalls.add(kind + " " + CursorUtils.getMetricsKey(uri));
+        mLastCallUptimeMillis = SystemClock.uptimeMillis();
+        notifyAll();
+    }
+
+    /** Forgets all recorded calls */
+    public synchronized void reset() {
+        mCalls.clear();
+    }
+
+    /** Returns the recorded calls in order, each as the kind followed by the masked uri */
+    @NonNull
+    public synchronized List<String> getCalls() {
+        return new ArrayList<>(mCalls);
+    }
+
+    /** Returns the number of recorded calls of the given kind, such as {@link #QUERY} */
+    public synchronized int getCount(@NonNull String kind) {
+        int count = 0;
+        for (String call : mCalls) {
+            if (call.startsWith(kind + " ")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of recorded calls of all kinds */
+    public synchronized int getTransactionCount() {
+        return mCalls.size();
+    }
+
+    /**
+     * Returns the recorded calls grouped by kind and uri, with the number of times each was made
+     */
+    @NonNull
+    public synchronized Map<String, Integer> getCallCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String call : mCalls) {
+            counts.merge(call, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Waits until at least the given number of calls of a kind were recorded, then until no call
+     * was recorded for the quiet period, so work posted to background threads has finished.
+     */
+    public synchronized void awaitCalls(
+            @NonNull String kind, int count, long quietMillis, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+        while (getCount(kind) < count && SystemClock.uptimeMillis() < deadline) {
+            wait(POLL_MILLIS);
+        }
+        awaitIdle(quietMillis, deadline - SystemClock.uptimeMillis());
+    }
+
+    /** Waits until no call was recorded for the quiet period, or the timeout elapses */
+    public synchronized void awaitIdle(long quietMillis, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+        long quietStart = Math.max(mLastCallUptimeMillis, SystemClock.uptimeMillis());
+        while (SystemClock.uptimeMillis() < Math.min(quietStart + quietMillis, deadline)) {
+            wait(POLL_MILLIS);
+            quietStart = Math.max(quietStart, mLastCallUptimeMillis);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+
+/** The maximum number of provider calls an operation may make */
+public final class QueryBudget {
+    private final int mQueries;
+    private final int mUpdates;
+    private final int mTransactions;
+
+    private QueryBudget(int queries, int updates, int transactions) {
+        mQueries = queries;
+        mUpdates = updates;
+        mTransactions = transactions;
+    }
+
+    /**
+     * Returns a budget.
+     *
+     * @param queries the maximum number of queries
+     * @param updates the maximum number of updates
+     * @param transactions the maximum number of calls of all kinds, inserts and deletes included
+     */
+    @NonNull
+    public static QueryBudget of(int queries, int updates, int transactions) {
+        return new QueryBudget(queries, updates, transactions);
+    }
+
+    /**
+     * Fails if the recorded calls exceed this budget, listing every uri called and how often.
+     *
+     * @param operation the name of the operation, used in the failure message
+     */
+    public void assertWithin(@NonNull String operation, @NonNull ProviderCallRecorder recorder) {
+        int queries = recorder.getCount(ProviderCallRecorder.QUERY);
+        int updates = recorder.getCount(ProviderCallRecorder.UPDATE);
+        int transactions = recorder.getTransactionCount();
+        if (queries <= mQueries && updates <= mUpdates && transactions <= mTransactions) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(operation).append(" exceeded its budget\n");
+        appendLine(message, "queries", mQueries, queries);
+        appendLine(message, "updates", mUpdates, updates);
+        appendLine(message, "transactions", mTransactions, transactions);
+        message.append("Calls made:\n");
+        for (Map.Entry<String, Integer> entry : recorder.getCallCounts().entrySet()) {
+            message.append("  ")
+                    .append(entry.getValue())
+                    .append("x ")
+                    .append(entry.getKey())
+                    .append('\n');
+        }
+        throw new AssertionError(message.toString());
+    }
+
+    private static void appendLine(
+            @NonNull StringBuilder message, @NonNull String name, int budget, int actual) {
+        message.append(actual > budget ? "- " : "  ")
+                .append(name)
+                .append(": budget ")
+                .append(budget)
+                .append(", actual ")
+                .append(actual)
+                .append('\n');
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.Telephony;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Generates a reproducible inbox of SMS and MMS conversations into a {@link FakeTelephonyProvider}.
+ *
+ * <p>The same seed and parameters always produce the same rows, so tests and benchmarks can compare
+ * runs. Thread {@code i} has the conversation id {@code firstThreadId + i}, and its newest message
+ * is older than the newest message of thread {@code i - 1}.
+ */
+public final class SyntheticTelephonyData {
+    @NonNull private static final String MMS_CONTENT_TYPE = "application/vnd.wap.multipart.related";
+    private static final long MESSAGE_INTERVAL_MILLIS = 60_000;
+
+    private final int mThreadCount;
+    private final long mFirstThreadId;
+    private final int mParticipantsPerThread;
+    private final int mMessagesPerThread;
+    private final float mMmsRatio;
+    private final float mUnreadRatio;
+    private final int mSubscriptionId;
+    private final long mNewestMessageMillis;
+    private final long mSeed;
+
+    private SyntheticTelephonyData(@NonNull Builder builder) {
+        mThreadCount = builder.mThreadCount;
+        mFirstThreadId = builder.mFirstThreadId;
+        mParticipantsPerThread = builder.mParticipantsPerThread;
+        mMessagesPerThread = builder.mMessagesPerThread;
+        mMmsRatio = builder.mMmsRatio;
+        mUnreadRatio = builder.mUnreadRatio;
+        mSubscriptionId = builder.mSubscriptionId;
+        mNewestMessageMillis = builder.mNewestMessageMillis;
+        mSeed = builder.mSeed;
+    }
+
+    /** Returns a builder with a small single account inbox */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Inserts the generated conversations into the provider in a single transaction */
+    public void populate(@NonNull FakeTelephonyProvider provider) {
+        SQLiteDatabase database = provider.getDatabase();
+        Random random = new Random(mSeed);
+        ContentValues values = new ContentValues();
+        database.beginTransaction();
+        try {
+            long timestamp = mNewestMessageMillis;
+            for (int thread = 0; thread < mThreadCount; thread++) {
+                long threadId = mFirstThreadId + thread;
+                String[] participants = insertParticipants(database, values, threadId);
+                boolean threadRead = true;
+                for (int message = 0; message < mMessagesPerThread; message++) {
+                    boolean incoming = message % 3 != 2;
+                    boolean read = !incoming || random.nextFloat() >= mUnreadRatio;
+                    threadRead &= read;
+                    String address = participants[random.nextInt(participants.length)];
+                    String body = "Message " + message + " in thread " + threadId;
+                    if (random.nextFloat() < mMmsRatio) {
+                        insertMms(database, values, threadId, timestamp, read, incoming, address,
+                                body);
+                    } else {
+                        insertSms(database, values, threadId, timestamp, read, incoming, address,
+                                body);
+                    }
+                    timestamp -= MESSAGE_INTERVAL_MILLIS;
+                }
+                if (!threadRead) {
+                    values.clear();
+                    values.put(Telephony.ThreadsColumns.READ, 0);
+                    database.update("threads", values, "_id = " + threadId, null);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /** Returns the number of a participant, which is unique across threads */
+    @NonNull
+    public static String getPhoneNumber(long threadId, int participant) {
+        return String.format("+1555%03d%04d", participant, threadId);
+    }
+
+    @NonNull
+    private String[] insertParticipants(
+            @NonNull SQLiteDatabase database, @NonNull ContentValues values, long threadId) {
+        String[] participants = new String[mParticipantsPerThread];
+        StringBuilder recipientIds = new StringBuilder();
+        for (int i = 0; i < mParticipantsPerThread; i++) {
+            participants[i] = getPhoneNumber(threadId, i);
+            values.clear();
+            values.put(Telephony.CanonicalAddressesColumns.ADDRESS, participants[i]);
+            long id = database.insert("canonical_addresses", null, values);
+            if (i > 0) {
+                recipientIds.append(' ');
+            }
+            recipientIds.append(id);
+        }
+        values.clear();
+        values.put(Telephony.Threads._ID, threadId);
+        values.put(Telephony.ThreadsColumns.RECIPIENT_IDS, recipientIds.toString());
+        database.insert("threads", null, values);
+        return participants;
+    }
+
+    private void insertSms(
+            @NonNull SQLiteDatabase database,
+            @NonNull ContentValues values,
+            long threadId,
+            long dateMillis,
+            boolean read,
+            boolean incoming,
+            @NonNull String address,
+            @NonNull String body) {
+        values.clear();
+        values.put(Telephony.Sms.THREAD_ID, threadId);
+        values.put(Telephony.Sms.ADDRESS, address);
+        values.put(Telephony.Sms.DATE, dateMillis);
+        values.put(Telephony.Sms.READ, read ? 1 : 0);
+        values.put(
+                Telephony.Sms.TYPE,
+                incoming ? Telephony.Sms.MESSAGE_TYPE_INBOX : Telephony.Sms.MESSAGE_TYPE_SENT);
+        values.put(Telephony.Sms.BODY, body);
+        values.put(Telephony.Sms.SUBSCRIPTION_ID, mSubscriptionId);
+        database.insert("sms", null, values);
+    }
+
+    private void insertMms(
+            @NonNull SQLiteDatabase database,
+            @NonNull ContentValues values,
+            long threadId,
+            long dateMillis,
+            boolean read,
+            boolean incoming,
+            @NonNull String address,
+            @NonNull String body) {
+        values.clear();
+        values.put(Telephony.Mms.THREAD_ID, threadId);
+        values.put(Telephony.Mms.DATE, dateMillis / 1000);
+        values.put(Telephony.Mms.READ, read ? 1 : 0);
+        values.put(
+                Telephony.Mms.MESSAGE_BOX,
+                incoming ? Telephony.Mms.MESSAGE_BOX_INBOX : Telephony.Mms.MESSAGE_BOX_SENT);
+        values.put(Telephony.Mms.CONTENT_TYPE, MMS_CONTENT_TYPE);
+        values.put(Telephony.Mms.SUBSCRIPTION_ID, mSubscriptionId);
+        long id = database.insert("pdu", null, values);
+
+        values.clear();
+        values.put(Telephony.Mms.Part.MSG_ID, id);
+        values.put(Telephony.Mms.Part.CONTENT_TYPE, "text/plain");
+        values.put(Telephony.Mms.Part.TEXT, body);
+        database.insert("part", null, values);
+
+        values.clear();
+        values.put(Telephony.Mms.Addr.MSG_ID, id);
+        values.put(Telephony.Mms.Addr.ADDRESS, address);
+        values.put(Telephony.Mms.Addr.TYPE, FakeTelephonyProvider.MMS_ORIGINATOR_ADDRESS_TYPE);
+        database.insert("addr", null, values);
+    }
+
+    /** Builder of {@link SyntheticTelephonyData} */
+    public static final class Builder {
+        private int mThreadCount = 10;
+        private long mFirstThreadId = 1;
+        private int mParticipantsPerThread = 1;
+        private int mMessagesPerThread = 10;
+        private float mMmsRatio = 0.1f;
+        private float mUnreadRatio = 0.2f;
+        private int mSubscriptionId = 1;
+        private long mNewestMessageMillis = System.currentTimeMillis();
+        private long mSeed = 0;
+
+        private Builder() {}
+
+        /** Sets the number of conversations */
+        @NonNull
+        public Builder setThreadCount(int threadCount) {
+            mThreadCount = threadCount;
+            return this;
+        }
+
+        /** Sets the id of the first conversation, to populate several accounts without overlap */
+        @NonNull
+        public Builder setFirstThreadId(long firstThreadId) {
+            mFirstThreadId = firstThreadId;
+            return this;
+        }
+
+        /** Sets the number of participants besides the user, more than one makes group threads */
+        @NonNull
+        public Builder setParticipantsPerThread(int participantsPerThread) {
+            mParticipantsPerThread = participantsPerThread;
+            return this;
+        }
+
+        /** Sets the number of messages in each conversation */
+        @NonNull
+        public Builder setMessagesPerThread(int messagesPerThread) {
+            mMessagesPerThread = messagesPerThread;
+            return this;
+        }
+
+        /** Sets the fraction of messages stored as MMS rather than SMS */
+        @NonNull
+        public Builder setMmsRatio(float mmsRatio) {
+            mMmsRatio = mmsRatio;
+            return this;
+        }
+
+        /** Sets the fraction of incoming messages left unread */
+        @NonNull
+        public Builder setUnreadRatio(float unreadRatio) {
+            mUnreadRatio = unreadRatio;
+            return this;
+        }
+
+        /** Sets the subscription id, which is the account id, of all messages */
+        @NonNull
+        public Builder setSubscriptionId(int subscriptionId) {
+            mSubscriptionId = subscriptionId;
+            return this;
+        }
+
+        /** Sets the timestamp of the newest message, older ones are a minute apart */
+        @NonNull
+        public Builder setNewestMessageMillis(long newestMessageMillis) {
+            mNewestMessageMillis = newestMessageMillis;
+            return this;
+        }
+
+        /** Sets the seed of the random choices */
+        @NonNull
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /** Returns the generator */
+        @NonNull
+        public SyntheticTelephonyData build() {
+            return new SyntheticTelephonyData(this);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.messenger.testing;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.messenger.core.interfaces.AppFactory;
+import com.android.car.messenger.core.interfaces.DataModel;
+import com.android.car.messenger.core.util.MainThreadGuard;
+import com.android.car.messenger.impl.datamodels.ConversationMirror;
+import com.android.car.messenger.impl.datamodels.TelephonyDataModel;
+
+/**
+ * App factory backed by a {@link FakeTelephonyContext}, a private preferences file and an empty
+ * conversation mirror, installed in place of the app's factory for the duration of a test.
+ */
+public class TestAppFactory extends AppFactory {
+    @NonNull private static final String PREFERENCES_NAME = "car_messenger_test";
+
+    @NonNull private final FakeTelephonyContext mContext;
+    @NonNull private final DataModel mDataModel;
+    @NonNull private final SharedPreferences mSharedPreferences;
+    @Nullable private AppFactory mPreviousFactory;
+
+    public TestAppFactory(@NonNull FakeTelephonyContext context) {
+        mContext = context;
+        mSharedPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mSharedPreferences.edit().clear().commit();
+        context.deleteDatabase(ConversationMirror.DATABASE_NAME);
+        mDataModel = new TelephonyDataModel(context);
+    }
+
+    /**
+     * Makes this factory the one returned by {@link AppFactory#get()}. Work checked by {@link
+     * MainThreadGuard} then throws on the main thread, so a test reaching it there fails.
+     */
+    public void install() {
+        mPreviousFactory = AppFactory.get();
+        AppFactory.setInstance(this);
+        MainThreadGuard.setThrowOnViolation(true);
+    }
+
+    /** Restores the factory that was installed before {@link #install()} */
+    public void uninstall() {
+        MainThreadGuard.setThrowOnViolation(false);
+        MainThreadGuard.reset();
+        if (mPreviousFactory != null) {
+            AppFactory.setInstance(mPreviousFactory);
+        }
+    }
+
+    @NonNull
+    @Override
+    public FakeTelephonyContext getContext() {
+        return mContext;
+    }
+
+    @NonNull
+    @Override
+    public DataModel getDataModel() {
+        return mDataModel;
+    }
+
+    @NonNull
+    @Override
+    public SharedPreferences getSharedPreferences() {
+        return mSharedPreferences;
+    }
+}